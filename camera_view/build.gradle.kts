@@ -3,6 +3,8 @@ plugins {
     id("org.jetbrains.kotlin.android")
     
     id("kotlin-parcelize")
+    // 產生單元測試中JMH benchmark的harness
+    id("kotlin-kapt")
 }
 
 android {
@@ -17,7 +19,12 @@ android {
     }
 
     buildTypes {
+        debug {
+            // GlUtil.checkGlError 只在debug build檢查，glGetError在部分driver上會造成pipeline同步
+            buildConfigField("boolean", "GL_ERROR_CHECK", "true")
+        }
         release {
+            buildConfigField("boolean", "GL_ERROR_CHECK", "false")
             isMinifyEnabled = false
             proguardFiles(
                 getDefaultProguardFile("proguard-android-optimize.txt"),
@@ -32,8 +39,14 @@ android {
     kotlinOptions {
         jvmTarget = "1.8"
     }
+    buildFeatures {
+        buildConfig = true
+    }
 }
 
+val lwjglVersion = "3.3.3"
+val jmhVersion = "1.37"
+
 dependencies {
 
     implementation("androidx.core:core-ktx:1.12.0")
@@ -41,10 +54,55 @@ dependencies {
     implementation("com.google.android.material:material:1.11.0")
 
     testImplementation("junit:junit:4.13.2")
+    // 讓JVM測試使用實際的android.util.Size等類別，GL呼叫則由測試中的GlApi取代
+    testImplementation("org.robolectric:android-all:14-robolectric-10818077")
+    // DesktopRenderTest：以桌面EGL/GLES(Mesa llvmpipe)執行真正的shader，libEGL/libGLESv2由系統提供
+    testImplementation("org.lwjgl:lwjgl:$lwjglVersion")
+    testImplementation("org.lwjgl:lwjgl-egl:$lwjglVersion")
+    testImplementation("org.lwjgl:lwjgl-opengles:$lwjglVersion")
+    testRuntimeOnly("org.lwjgl:lwjgl:$lwjglVersion:natives-linux")
+    testRuntimeOnly("org.lwjgl:lwjgl-opengles:$lwjglVersion:natives-linux")
+    // benchmark：與單元測試共用classpath，可以量測internal class並使用桌面EGL/GLES
+    testImplementation("org.openjdk.jmh:jmh-core:$jmhVersion")
+    kaptTest("org.openjdk.jmh:jmh-generator-annprocess:$jmhVersion")
     androidTestImplementation("androidx.test.ext:junit:1.1.5")
     androidTestImplementation("androidx.test.espresso:espresso-core:3.5.1")
 
     implementation("androidx.camera:camera-core:1.3.1")
     implementation("androidx.camera:camera-lifecycle:1.3.1")
     implementation("androidx.camera:camera-camera2:1.3.1")
-}
\ No newline at end of file
+
+    implementation("androidx.concurrent:concurrent-futures:1.1.0")
+    implementation("androidx.heifwriter:heifwriter:1.0.0")
+}
+
+/**
+ * 以JMH執行src/test中的benchmark，使用release單元測試的classpath(GL_ERROR_CHECK關閉)
+ *
+ * ./gradlew :camera_view:jmh -Pjmh.includes=Matrix4Util 只執行部分benchmark
+ */
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks in the unit test source set."
+    val unitTest = tasks.named<Test>("testReleaseUnitTest")
+    classpath = files(unitTest.map { it.classpath })
+    mainClass.set("org.openjdk.jmh.Main")
+
+    val resultsFile = layout.buildDirectory.file("results/jmh/results.json")
+    outputs.file(resultsFile)
+    // 每次都重新量測
+    outputs.upToDateWhen { false }
+    doFirst {
+        resultsFile.get().asFile.parentFile.mkdirs()
+    }
+    // 每個frame的配置量與CPU時間同樣重要，開啟GC profiler
+    args(
+        "-wi", "3",
+        "-i", "5",
+        "-f", "1",
+        "-prof", "gc",
+        "-rf", "json",
+        "-rff", resultsFile.get().asFile.absolutePath
+    )
+    (findProperty("jmh.includes") as String?)?.let { args(it) }
+}
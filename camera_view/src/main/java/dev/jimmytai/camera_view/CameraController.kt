@@ -3,92 +3,337 @@ package dev.jimmytai.camera_view
 import android.content.Context
 import android.graphics.SurfaceTexture
 import android.media.MediaRecorder
+import android.os.Handler
+import android.os.Looper
 import android.util.Size
 import android.view.Surface
 import android.view.SurfaceView
-import androidx.camera.core.CameraInfo
-import androidx.camera.core.CameraState
+import android.view.TextureView
+import android.view.View
+import androidx.concurrent.futures.CallbackToFutureAdapter
+import com.google.common.util.concurrent.ListenableFuture
+import dev.jimmytai.camera_view.constant.BackpressureStrategy
+import dev.jimmytai.camera_view.constant.SnapshotFormat
+import dev.jimmytai.camera_view.export.AnalysisOutput
+import dev.jimmytai.camera_view.export.BurstCapture
+import dev.jimmytai.camera_view.export.FrameExporter
+import dev.jimmytai.camera_view.export.SnapshotCapture
+import dev.jimmytai.camera_view.export.SurfaceViewOutput
+import dev.jimmytai.camera_view.export.TextureViewOutput
+import dev.jimmytai.camera_view.export.ViewOutput
+import dev.jimmytai.camera_view.export.removeOutputSurfaceAndWait
+import dev.jimmytai.camera_view.glthread.GLThread
 import dev.jimmytai.camera_view.glthread.GLThreadCallback
+import dev.jimmytai.camera_view.glthread.HeadlessGLThread
 import dev.jimmytai.camera_view.glthread.SurfaceViewGLThread
+import dev.jimmytai.camera_view.glthread.TextureViewGLThread
 import dev.jimmytai.camera_view.interfaces.CameraTextureProcessor
+import dev.jimmytai.camera_view.interfaces.FrameSource
+import dev.jimmytai.camera_view.model.BurstResult
+import dev.jimmytai.camera_view.model.DisplayLatencyStats
+import dev.jimmytai.camera_view.model.DualCameraStats
+import dev.jimmytai.camera_view.model.FrameExportConfig
+import dev.jimmytai.camera_view.model.FrameStageTimings
+import dev.jimmytai.camera_view.model.GLThreadConfig
 import dev.jimmytai.camera_view.model.OutputSurfaceOption
+import dev.jimmytai.camera_view.model.PresentationTimeReport
+import dev.jimmytai.camera_view.model.Snapshot
 import dev.jimmytai.camera_view.recorder.VideoRecorderConfig
 import dev.jimmytai.camera_view.recorder.createRecorder
+import dev.jimmytai.camera_view.replay.ReplayFrameSource
+import dev.jimmytai.camera_view.replay.StreamCapture
+import dev.jimmytai.camera_view.source.CameraFrameSource
 import dev.jimmytai.camera_view.utils.Logger
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.CopyOnWriteArrayList
+import java.util.concurrent.Executor
 
+/**
+ * @param frameSource       Producer of the processed frames, the camera or e.g. a video file.
+ * @param glThreadConfig    Priority and performance hint configuration of the GL thread.
+ */
 class CameraController(
     private val context: Context,
-    cameraSize: Size,
-    private val cameraTextureProcessor: CameraTextureProcessor
+    private val frameSource: FrameSource,
+    private val cameraTextureProcessor: CameraTextureProcessor,
+    private val glThreadConfig: GLThreadConfig = GLThreadConfig.Builder().build()
 ) : GLThreadCallback {
     companion object {
         private val TAG = CameraController::class.java.simpleName
     }
 
     /**
-     * 相機主要操作
+     * Process the frames of the front camera.
+     *
+     * @param cameraSize    Resolution requested from the camera.
      */
-    private var mCameraSource: CameraSource = CameraSource(context, cameraSize)
+    constructor(
+        context: Context,
+        cameraSize: Size,
+        cameraTextureProcessor: CameraTextureProcessor,
+        glThreadConfig: GLThreadConfig = GLThreadConfig.Builder().build()
+    ) : this(context, CameraFrameSource(context, cameraSize), cameraTextureProcessor, glThreadConfig)
 
     /**
      * 渲染執行緒，負責將資料繪至目標的Surface上
      */
-    private var mGlThread: SurfaceViewGLThread? = null
+    private var mGlThread: GLThread? = null
 
     /**
-     * CameraX的API，主要負責連接Camera與SurfaceTexture，讓相機畫面綁定texture
+     * 來源的frame尺寸或旋轉角度改變時，更新GLThread的配置
      */
-    private var mSurfaceProvider: GLSurfaceProvider =
-        GLSurfaceProvider { resolution, rotationDegrees ->
-            mCameraResolution = resolution
-            mGlThread?.updateCameraConfigs(resolution, rotationDegrees)
+    private val mFrameSourceListener: FrameSource.Listener =
+        object : FrameSource.Listener {
+            override fun onFrameSizeChanged(size: Size, rotationDegrees: Int) {
+                mGlThread?.updateCameraConfigs(size, rotationDegrees)
+                mFrameSize = size
+                mFrameSizeListeners.forEach { it(size) }
+            }
+
+            override fun onSecondaryFrameSizeChanged(size: Size, rotationDegrees: Int) {
+                mGlThread?.updateSecondaryCameraConfigs(size, rotationDegrees)
+            }
         }
 
     /**
-     * 相機所使用的像素
+     * 來源目前的frame尺寸(旋轉前)，尚未收到時為null
+     */
+    @Volatile
+    private var mFrameSize: Size? = null
+
+    /**
+     * 來源的frame尺寸改變時通知的CameraView，在任意執行緒呼叫
      */
-    private var mCameraResolution: Size? = null
+    private val mFrameSizeListeners: MutableList<(Size) -> Unit> = CopyOnWriteArrayList()
 
     /**
      * 相機資料綁定的SurfaceTexture
      */
     private var mSurfaceTexture: SurfaceTexture? = null
 
-    internal fun attachFromView(
-        surfaceView: SurfaceView,
-    ) {
+    /**
+     * 已有GLThread後再加入的CameraView，作為額外的顯示窗口，key為CameraView，每個CameraView只有一個窗口
+     */
+    private val mViewOutputs: MutableMap<Any, ViewOutput> = LinkedHashMap()
+
+    /**
+     * GLThread直接繪製的View
+     */
+    private var mGlThreadView: View? = null
+
+    /**
+     * 已呼叫[release]，CameraView之後切換previewBackend時不再建立GLThread
+     */
+    private var mReleased: Boolean = false
+
+    /**
+     * 透過[attachSurface]加入的外部顯示窗口
+     */
+    private val mExternalSurfaces: MutableList<Surface> = mutableListOf()
+
+    /**
+     * 顯示frame時的回呼，GLThread建立前設定時在建立後套用
+     */
+    @Volatile
+    private var mFramePresentedListener: ((Long) -> Unit)? = null
+
+    /**
+     * frame swap至螢幕的繪製窗口時的回呼，GLThread建立前設定時在建立後套用
+     */
+    @Volatile
+    private var mFrameSwappedListener: ((Long) -> Unit)? = null
+
+    /**
+     * @param view  CameraView中的SurfaceView或TextureView
+     * @param owner 擁有[view]的CameraView，切換previewBackend後以新的View取代舊的View
+     */
+    internal fun attachFromView(view: View, owner: Any = view) {
         Logger.d(TAG, "attachFromView")
+        if (mReleased) {
+            Logger.w(TAG, "attachFromView -> controller is released")
+            return
+        }
+        mGlThread?.let { glThread ->
+            // 已經在繪製此View，例如對同一個CameraView重複setController
+            if (view === mGlThreadView || mViewOutputs[owner]?.view === view) {
+                Logger.d(TAG, "attachFromView -> view is already attached")
+                return
+            }
+            // 同一個CameraView切換了previewBackend，移除舊View的顯示窗口
+            mViewOutputs.remove(owner)?.detach()
+            // 同一個controller的第二個View共用GLThread與處理後的texture，只多繪製一次
+            Logger.d(TAG, "attachFromView -> render to an additional view")
+            val output: ViewOutput = when (view) {
+                is TextureView -> TextureViewOutput(view, glThread, mDetachingOutputs)
+                else -> SurfaceViewOutput(view as SurfaceView, glThread, mDetachingOutputs)
+            }
+            mViewOutputs[owner] = output
+            output.attach()
+            return
+        }
+        mGlThreadView = view
+        val glThread: GLThread = when (view) {
+            is TextureView -> TextureViewGLThread(
+                "GL_THREAD",
+                view,
+                glThreadConfig,
+                this,
+                cameraTextureProcessor
+            )
+
+            else -> SurfaceViewGLThread(
+                "GL_THREAD",
+                view as SurfaceView,
+                glThreadConfig,
+                this,
+                cameraTextureProcessor
+            )
+        }.also { this.mGlThread = it }
+        glThread.onFramePresented = mFramePresentedListener
+        glThread.onFrameSwapped = mFrameSwappedListener
+        glThread.start()
+        if (!frameSource.isRealTime) {
+            // 離線處理時frame的速度只受GPU限制，螢幕不等待vsync
+            glThread.setDisplaySwapInterval(0)
+        }
+        frameSource.secondaryLayout?.let { glThread.setSecondaryInput(it) }
+    }
+
+    /**
+     * Run the pipeline without a view, e.g. in a background service. Frames are processed and
+     * rendered to the recording, analysis and export outputs only; nothing is composited on screen.
+     *
+     * Use instead of attaching the controller to a CameraView, and [release] when done.
+     *
+     * @param surfaceSize   Size the frames are processed for, taking the place of the view size,
+     *                      e.g. the recording size when none is given.
+     * @throws IllegalStateException if the controller already runs, attached to a CameraView or
+     *                               a surface, or headless.
+     */
+    fun attachHeadless(surfaceSize: Size) {
+        Logger.d(TAG, "attachHeadless -> $surfaceSize")
+        // 取代執行中的GLThread會遺失它的EGLContext與SurfaceTexture
+        check(mGlThread == null) { "controller is already attached" }
         val glThread =
-            SurfaceViewGLThread(
+            HeadlessGLThread(
                 "GL_THREAD",
-                surfaceView,
+                context,
+                surfaceSize,
+                glThreadConfig,
                 this,
                 cameraTextureProcessor
             ).also { this.mGlThread = it }
+        glThread.onFramePresented = mFramePresentedListener
+        glThread.onFrameSwapped = mFrameSwappedListener
         glThread.start()
+        frameSource.secondaryLayout?.let { glThread.setSecondaryInput(it) }
+    }
+
+    /**
+     * Render the preview into a [Surface] owned by someone else, e.g. the one of a Compose
+     * `AndroidExternalSurface`, without a CameraView. Without a view attached the controller runs
+     * headless with [size] as processing size, see [attachHeadless].
+     *
+     * Call [detachSurface] before the surface is destroyed, and detach and attach it again when
+     * its size changes.
+     */
+    fun attachSurface(surface: Surface, size: Size) {
+        Logger.d(TAG, "attachSurface -> $size")
+        if (mGlThread == null) {
+            attachHeadless(size)
+        }
+        val glThread: GLThread = mGlThread ?: return
+        glThread.addOutputSurface(surface, OutputSurfaceOption(outputSize = size, isDisplay = true))
+        mExternalSurfaces.add(surface)
+    }
+
+    /**
+     * Stop rendering into a surface added with [attachSurface]. Returns once the GL thread no longer
+     * uses it, so it is safe to destroy afterwards. Must not be called on the GL thread.
+     */
+    fun detachSurface(surface: Surface) {
+        if (!mExternalSurfaces.remove(surface)) return
+        mGlThread?.removeOutputSurfaceAndWait(surface, mDetachingOutputs)
+    }
+
+    /**
+     * 每個frame顯示在螢幕上時以frame的timestamp呼叫，在任意執行緒呼叫
+     */
+    internal fun setFramePresentedListener(listener: ((Long) -> Unit)?) {
+        mFramePresentedListener = listener
+        mGlThread?.onFramePresented = listener
+    }
+
+    /**
+     * 每個frame swap至螢幕的繪製窗口時以frame的timestamp呼叫，在GLThread中呼叫
+     */
+    internal fun setFrameSwappedListener(listener: ((Long) -> Unit)?) {
+        mFrameSwappedListener = listener
+        mGlThread?.onFrameSwapped = listener
+    }
+
+    /**
+     * 註冊後立即以目前的frame尺寸呼叫一次
+     */
+    internal fun addFrameSizeListener(listener: (Size) -> Unit) {
+        mFrameSizeListeners.add(listener)
+        mFrameSize?.let { listener(it) }
+    }
+
+    internal fun removeFrameSizeListener(listener: (Size) -> Unit) {
+        mFrameSizeListeners.remove(listener)
     }
 
     internal fun onViewResumed() {
-        handleCameraResume()
+        frameSource.onResume()
     }
 
     /**
-     * Open camera and start producing data on screen.
+     * Start the frame source (open the camera) and start producing data on screen.
      */
     fun startPreview() {
-        mCameraSource.startPreview(mSurfaceProvider)
+        frameSource.start(mFrameSourceListener)
     }
 
     /**
-     * Close camera and stop producing data on screen
+     * Stop the frame source (close the camera) and stop producing data on screen
      */
     fun stopPreview() {
-        mCameraSource.stopPreview()
+        frameSource.stop()
     }
 
     private var mRecorder: MediaRecorder? = null
     private var mSurface: Surface? = null
 
+    /**
+     * Presentation time statistics of the last finished recording, null before the first recording ends.
+     */
+    @Volatile
+    var lastRecordReport: PresentationTimeReport? = null
+        private set
+
+    /**
+     * Drops and timestamp skew of both streams when the frame source has a second stream, e.g.
+     * [dev.jimmytai.camera_view.source.DualCameraFrameSource], otherwise null.
+     */
+    val dualCameraStats: DualCameraStats?
+        get() = if (frameSource.secondaryLayout != null) mGlThread?.dualCameraStats else null
+
+    /**
+     * Percentiles of the latency from capture to display since the GL thread started or
+     * [resetDisplayLatencyStats] was called, null while no GL thread is running.
+     */
+    val displayLatencyStats: DisplayLatencyStats?
+        get() = mGlThread?.displayLatencyStats
+
+    /**
+     * Start measuring [displayLatencyStats] again, e.g. after warming up or changing a setting.
+     */
+    fun resetDisplayLatencyStats() {
+        mGlThread?.resetDisplayLatencyStats()
+    }
+
     /**
      * Start record video with configurations
      * @param filePath      Where to store the video file.
@@ -96,14 +341,15 @@ class CameraController(
      * @param config        Video/Audio configuration for output file.
      */
     fun startRecord(filePath: String, outputSize: Size?, config: VideoRecorderConfig) {
-        val glThread: SurfaceViewGLThread? = mGlThread
+        val glThread: GLThread? = mGlThread
         if (glThread == null) {
             Logger.e(TAG, "GLThread is not running, please attach controller to CameraView first")
             return
         }
 
-        // 如果未指定outputSize，則使用當前螢幕長寬為output file長寬尺寸
-        val finalOutputSize: Size = outputSize ?: glThread.surfaceViewSize
+        // 如果未指定outputSize，則使用當前螢幕長寬為output file長寬尺寸，
+        // 螢幕的buffer縮小時仍以View的尺寸錄影
+        val finalOutputSize: Size = outputSize ?: glThread.viewSize
         val recorder =
             config.createRecorder(context, filePath, finalOutputSize).also {
                 mRecorder = it
@@ -127,7 +373,7 @@ class CameraController(
     }
 
     fun stopRecord() {
-        val glThread: SurfaceViewGLThread = mGlThread ?: return
+        val glThread: GLThread = mGlThread ?: return
         val recorder: MediaRecorder = mRecorder ?: return
         try {
             // 停止錄影
@@ -147,47 +393,293 @@ class CameraController(
         }
     }
 
-    fun release() {
-        mSurfaceTexture = null
+    /**
+     * 目前輸出中的FrameExporter
+     */
+    private val mFrameExporters: MutableList<FrameExporter> = mutableListOf()
 
-        mCameraSource.release()
+    /**
+     * 目前輸出中的AnalysisOutput
+     */
+    private val mAnalysisOutputs: MutableList<AnalysisOutput> = mutableListOf()
 
-        mSurfaceProvider.release()
+    /**
+     * 等待GLThread釋放繪製窗口的ImageReader輸出，key為Surface的hash code，value為釋放ImageReader的動作
+     */
+    private val mDetachingOutputs: MutableMap<Int, () -> Unit> = ConcurrentHashMap()
 
-        mGlThread?.release()
-        mGlThread = null
+    /**
+     * Export processed frames as HardwareBuffers (Android 10+) or read back pixels.
+     *
+     * @param config    Output size, number of frames a consumer may hold and buffer usage.
+     * @param handler   Thread [listener] is called on, prefer a background thread.
+     * @param listener  Receives every exported frame, which must be closed when done.
+     * @return null if the controller is not attached to a CameraView.
+     */
+    fun addFrameExporter(
+        config: FrameExportConfig,
+        handler: Handler = Handler(Looper.getMainLooper()),
+        listener: FrameExporter.Listener
+    ): FrameExporter? {
+        val glThread: GLThread? = mGlThread
+        if (glThread == null) {
+            Logger.e(TAG, "GLThread is not running, please attach controller to CameraView first")
+            return null
+        }
+        val exporter = FrameExporter(config, handler, listener)
+        exporter.attach(glThread)
+        mFrameExporters.add(exporter)
+        return exporter
+    }
 
-        mRecorder?.release()
-        mRecorder = null
+    /**
+     * Stop exporting frames. Frames still held by the consumer stay valid until they are closed.
+     */
+    fun removeFrameExporter(exporter: FrameExporter) {
+        if (!mFrameExporters.remove(exporter)) return
+        detachFrameExporter(exporter)
+    }
+
+    private fun detachFrameExporter(exporter: FrameExporter) {
+        val glThread: GLThread = mGlThread ?: return
+        exporter.surface?.let { mDetachingOutputs[it.hashCode()] = exporter::onSurfaceRemoved }
+        exporter.detach(glThread)
+    }
+
+    /**
+     * Deliver processed frames as [android.media.Image]s to a CPU analyzer.
+     *
+     * @param size      Size of the images, the processed frame is center cropped to it.
+     * @param format    [android.graphics.PixelFormat.RGBA_8888] or RGBX_8888, the formats GL can
+     *                  render into. For YUV use GLRenderer.transferTextureToBuffer instead.
+     * @param maxImages Images queued or being analyzed at the same time.
+     * @param fps       Frames per second delivered at most, 0 for every frame.
+     * @param strategy  What to do with new frames while [maxImages] images are held.
+     * @param executor  Where [analyzer] runs, a dedicated thread if null.
+     * @return null if the controller is not attached to a CameraView.
+     */
+    fun addAnalysisOutput(
+        size: Size,
+        format: Int = android.graphics.PixelFormat.RGBA_8888,
+        maxImages: Int = 2,
+        fps: Int = 0,
+        strategy: BackpressureStrategy = BackpressureStrategy.DROP_OLDEST,
+        executor: Executor? = null,
+        analyzer: AnalysisOutput.Analyzer
+    ): AnalysisOutput? {
+        val glThread: GLThread? = mGlThread
+        if (glThread == null) {
+            Logger.e(TAG, "GLThread is not running, please attach controller to CameraView first")
+            return null
+        }
+        val output = AnalysisOutput(size, format, maxImages, fps, strategy, executor, analyzer)
+        output.attach(glThread)
+        mAnalysisOutputs.add(output)
+        return output
     }
 
     /**
-     * 檢查相機是否需要被重新開啟
+     * Stop delivering frames to the analyzer. An image being analyzed finishes normally.
      */
-    private fun handleCameraResume() {
-        // 可以透過cameraInfo判斷目前是不是在Preview中
-        val cameraInfo: CameraInfo = mCameraSource.cameraInfo ?: return
-        val cameraState: CameraState? = cameraInfo.cameraState.value
-        when (cameraState?.type) {
-            // 如果相機不是開啟的狀態，重新打開相機
-            null, CameraState.Type.PENDING_OPEN, CameraState.Type.CLOSING, CameraState.Type.CLOSED -> {
-                Logger.d(TAG, "handleCameraResume -> resume camera due to reason \"$cameraState\"")
-                startPreview()
+    fun removeAnalysisOutput(output: AnalysisOutput) {
+        if (!mAnalysisOutputs.remove(output)) return
+        detachAnalysisOutput(output)
+    }
+
+    private fun detachAnalysisOutput(output: AnalysisOutput) {
+        val glThread: GLThread = mGlThread ?: return
+        mDetachingOutputs[output.surface.hashCode()] = output::onSurfaceRemoved
+        output.detach(glThread)
+    }
+
+    /**
+     * 拍照流程，第一次拍照時才加入GLThread，被GLThread捨棄後下次拍照時重新建立
+     */
+    private var mSnapshotCapture: SnapshotCapture? = null
+
+    /**
+     * Take a still of the processed frame without stalling the preview.
+     *
+     * The next frame is read back asynchronously on the GL thread and encoded on a background
+     * thread, so the preview keeps its frame rate while the image is compressed.
+     *
+     * @param size      Size of the image, the processed frame is center cropped to it. The size of
+     *                  the processed frame if null.
+     * @param format    Encoding of the image.
+     * @param quality   Compression quality from 0 to 100.
+     * @return future of the encoded image, failed if the controller is not attached to a
+     *         CameraView or the GL thread is released before the frame is read back.
+     */
+    fun takeSnapshot(
+        size: Size? = null,
+        format: SnapshotFormat = SnapshotFormat.JPEG,
+        quality: Int = 95
+    ): ListenableFuture<Snapshot> {
+        val glThread: GLThread? = mGlThread
+        if (glThread == null) {
+            Logger.e(TAG, "GLThread is not running, please attach controller to CameraView first")
+            return CallbackToFutureAdapter.getFuture {
+                it.setException(IllegalStateException("controller is not attached to CameraView"))
+                "takeSnapshot"
+            }
+        }
+        val capture: SnapshotCapture = mSnapshotCapture?.takeUnless { it.isDetached }
+            ?: SnapshotCapture(context.cacheDir).also {
+                mSnapshotCapture = it
+                glThread.addFrameReadback(it)
             }
+        return capture.request(size, format, quality)
+    }
 
-            else -> {
-                Logger.d(TAG, "handleCameraResume -> no need to re-open camera")
+    /**
+     * Capture [frameCount] consecutive processed frames, e.g. for a best shot picker.
+     *
+     * Frames are copied into [maxInFlight] GPU textures at camera rate and read back one per frame
+     * while a background thread encodes them. When the encoder falls behind and every texture is
+     * taken, frames are skipped instead of stalling the preview; the result reports how many.
+     *
+     * @param frameCount    Number of frames to capture.
+     * @param size          Size of the images, the processed frame is center cropped to it. The size
+     *                      of the processed frame if null.
+     * @param format        Encoding of the images.
+     * @param quality       Compression quality from 0 to 100.
+     * @param maxInFlight   GPU textures kept for the burst, also the number of frames read back or
+     *                      encoded at the same time. Each costs width * height * 4 bytes.
+     * @return future of the encoded frames in capture order, failed if the controller is not
+     *         attached to a CameraView, any frame fails to encode or the GL thread is released
+     *         during the burst.
+     */
+    fun takeBurst(
+        frameCount: Int,
+        size: Size? = null,
+        format: SnapshotFormat = SnapshotFormat.JPEG,
+        quality: Int = 90,
+        maxInFlight: Int = 4
+    ): ListenableFuture<BurstResult> {
+        val glThread: GLThread? = mGlThread
+        if (glThread == null) {
+            Logger.e(TAG, "GLThread is not running, please attach controller to CameraView first")
+            return CallbackToFutureAdapter.getFuture {
+                it.setException(IllegalStateException("controller is not attached to CameraView"))
+                "takeBurst"
             }
         }
+        val capture = BurstCapture(
+            frameCount = frameCount,
+            size = size,
+            format = format,
+            quality = quality,
+            slotCount = maxInFlight,
+            cacheDir = context.cacheDir,
+            onDrained = { glThread.removeFrameReadback(it) }
+        )
+        glThread.addFrameReadback(capture)
+        return capture.future
+    }
+
+    /**
+     * 錄製中的原始串流
+     */
+    private val mStreamCaptures: MutableList<StreamCapture> = mutableListOf()
+
+    /**
+     * Record the unprocessed camera stream with the timestamp, rotation and transform matrix of
+     * every frame, to replay it later through a [ReplayFrameSource].
+     *
+     * @param outputDir Directory the stream and the frame metadata are written to.
+     * @param bitRate   Bit rate of the stream in bits per second, 0 for the highest quality the
+     *                  encoder supports.
+     * @return null if the controller is not attached to a CameraView.
+     */
+    fun startStreamCapture(outputDir: File, bitRate: Int = 0): StreamCapture? {
+        val glThread: GLThread? = mGlThread
+        if (glThread == null) {
+            Logger.e(TAG, "GLThread is not running, please attach controller to CameraView first")
+            return null
+        }
+        val capture = StreamCapture(outputDir, bitRate)
+        glThread.addFrameReadback(capture)
+        mStreamCaptures.add(capture)
+        return capture
+    }
+
+    /**
+     * Stop recording the stream.
+     *
+     * @return [StreamCapture.future], completed once the files are written.
+     */
+    fun stopStreamCapture(capture: StreamCapture): ListenableFuture<File> {
+        if (mStreamCaptures.remove(capture)) {
+            mGlThread?.removeFrameReadback(capture)
+        }
+        return capture.future
+    }
+
+    fun release() {
+        mReleased = true
+        mSurfaceTexture = null
+
+        mViewOutputs.values.forEach { it.detach() }
+        mViewOutputs.clear()
+        mGlThreadView = null
+        // GLThread釋放時一併釋放外部顯示窗口的EGL繪製窗口
+        mExternalSurfaces.clear()
+
+        frameSource.release()
+
+        mFrameExporters.forEach { detachFrameExporter(it) }
+        mFrameExporters.clear()
+        mAnalysisOutputs.forEach { detachAnalysisOutput(it) }
+        mAnalysisOutputs.clear()
+
+        // GLThread釋放時會讓尚未讀取的拍照請求失敗
+        mSnapshotCapture = null
+        // GLThread釋放時會結束錄製中的串流
+        mStreamCaptures.clear()
+
+        mGlThread?.release()
+        mGlThread = null
+
+        // GLThread釋放時不會逐一回報輸出窗口的移除
+        mDetachingOutputs.values.forEach { it() }
+        mDetachingOutputs.clear()
+
+        mRecorder?.release()
+        mRecorder = null
     }
 
     override fun onCreateSurfaceTexture(surfaceTexture: SurfaceTexture) {
         Logger.d(TAG, "onCreateSurfaceTexture")
         mSurfaceTexture = surfaceTexture
-        mSurfaceProvider.provideSurfaceTexture(surfaceTexture)
+        frameSource.setSurfaceTexture(surfaceTexture)
         setOnFrameAvailableListener(surfaceTexture)
     }
 
+    override fun onCreateSecondarySurfaceTexture(surfaceTexture: SurfaceTexture) {
+        Logger.d(TAG, "onCreateSecondarySurfaceTexture")
+        frameSource.setSecondarySurfaceTexture(surfaceTexture)
+        // 副相機的frame只記錄數量，由主相機的frame觸發合成
+        surfaceTexture.setOnFrameAvailableListener {
+            mGlThread?.processSecondary()
+        }
+    }
+
+    override fun onOutputSurfaceRemoved(surfaceHashCode: Int, report: PresentationTimeReport) {
+        if (surfaceHashCode == mSurface?.hashCode()) {
+            Logger.d(TAG, "onOutputSurfaceRemoved -> record report: $report")
+            lastRecordReport = report
+        }
+        mDetachingOutputs.remove(surfaceHashCode)?.invoke()
+    }
+
+    override fun onTransformMatrix(timestampNs: Long, transformMatrix: FloatArray) {
+        frameSource.overrideTransformMatrix(timestampNs, transformMatrix)
+    }
+
+    override fun onFrameProcessed(timestampNs: Long, timings: FrameStageTimings) {
+        frameSource.onFrameProcessed(timestampNs, timings)
+    }
+
     private fun setOnFrameAvailableListener(surfaceTexture: SurfaceTexture) {
         surfaceTexture.setOnFrameAvailableListener {
             mGlThread?.process()
@@ -7,7 +7,9 @@ import androidx.camera.core.Camera
 import androidx.camera.core.CameraInfo
 import androidx.camera.core.CameraInfoUnavailableException
 import androidx.camera.core.CameraSelector
+import androidx.camera.core.ConcurrentCamera
 import androidx.camera.core.Preview
+import androidx.camera.core.UseCaseGroup
 import androidx.camera.core.resolutionselector.AspectRatioStrategy
 import androidx.camera.core.resolutionselector.ResolutionSelector
 import androidx.camera.core.resolutionselector.ResolutionStrategy
@@ -31,21 +33,60 @@ class CameraSource(
     private var mPreview: Preview? = null
     private var mCamera: Camera? = null
 
+    /**
+     * 同時開啟兩個相機時，副相機的Preview與Camera
+     */
+    private var mSecondaryPreview: Preview? = null
+    private var mSecondaryCamera: Camera? = null
+
+    /**
+     * 單一相機或雙相機中主相機的鏡頭方向
+     */
+    private var mLensFacing: Int = CameraSelector.LENS_FACING_FRONT
+
     val isPreviewing: Boolean
         get() = mCamera?.cameraInfo != null
 
     val cameraInfo: CameraInfo?
         get() = mCamera?.cameraInfo
 
+    /**
+     * 同時開啟兩個相機時副相機的資訊，只開啟一個相機時為null
+     */
+    val secondaryCameraInfo: CameraInfo?
+        get() = mSecondaryCamera?.cameraInfo
+
     fun startPreview(surfaceProvider: GLSurfaceProvider) {
         Logger.d(TAG, "start preview")
         stopPreview()
+        mLensFacing = CameraSelector.LENS_FACING_FRONT
 
         cameraLifecycleOwner.doOnCreate()
         cameraLifecycleOwner.doOnStart()
         cameraLifecycleOwner.doOnResume()
 
-        initCameraWhenCreated(surfaceProvider)
+        initCameraWhenCreated(surfaceProvider, null)
+    }
+
+    /**
+     * 透過CameraX concurrent camera同時開啟兩個相機，各自輸出至自己的SurfaceProvider
+     *
+     * 裝置不支援同時開啟包含[primaryLensFacing]的兩個相機時，只開啟主相機
+     */
+    fun startConcurrentPreview(
+        primarySurfaceProvider: GLSurfaceProvider,
+        secondarySurfaceProvider: GLSurfaceProvider,
+        primaryLensFacing: Int
+    ) {
+        Logger.d(TAG, "start concurrent preview -> primary lens facing: $primaryLensFacing")
+        stopPreview()
+        mLensFacing = primaryLensFacing
+
+        cameraLifecycleOwner.doOnCreate()
+        cameraLifecycleOwner.doOnStart()
+        cameraLifecycleOwner.doOnResume()
+
+        initCameraWhenCreated(primarySurfaceProvider, secondarySurfaceProvider)
     }
 
     fun stopPreview() {
@@ -56,9 +97,13 @@ class CameraSource(
 
         mPreview?.setSurfaceProvider(null)
         mPreview = null
+        mSecondaryPreview?.setSurfaceProvider(null)
+        mSecondaryPreview = null
 
         mCamera?.cameraInfo?.cameraState?.removeObservers(cameraLifecycleOwner)
         mCamera = null
+        mSecondaryCamera?.cameraInfo?.cameraState?.removeObservers(cameraLifecycleOwner)
+        mSecondaryCamera = null
 
         mCameraProvider?.unbindAll()
         mCameraProvider = null
@@ -68,7 +113,10 @@ class CameraSource(
         stopPreview()
     }
 
-    private fun initCameraWhenCreated(surfaceProvider: GLSurfaceProvider) {
+    private fun initCameraWhenCreated(
+        surfaceProvider: GLSurfaceProvider,
+        secondarySurfaceProvider: GLSurfaceProvider?
+    ) {
         val cameraProviderFuture: ListenableFuture<ProcessCameraProvider> =
             ProcessCameraProvider.getInstance(context.applicationContext)
         cameraProviderFuture.addListener(
@@ -80,41 +128,101 @@ class CameraSource(
                     e.printStackTrace()
                 }
 
-                val preferredCameraSize: Size = this.preferredCameraSize
-                val builder: Preview.Builder = Preview.Builder()
-
-                val resolutionSelectorBuilder: ResolutionSelector.Builder =
-                    ResolutionSelector.Builder()
-                        .setAllowedResolutionMode(ResolutionSelector.PREFER_CAPTURE_RATE_OVER_HIGHER_RESOLUTION)
-                resolutionSelectorBuilder
-                    .setResolutionStrategy(
-                        ResolutionStrategy(
-                            preferredCameraSize,
-                            ResolutionStrategy.FALLBACK_RULE_CLOSEST_HIGHER
-                        )
-                    ).setAspectRatioStrategy(AspectRatioStrategy.RATIO_16_9_FALLBACK_AUTO_STRATEGY)
-                    .build()
-
-                val preview: Preview =
-                    builder
-                        .setResolutionSelector(resolutionSelectorBuilder.build())
-                        .setTargetFrameRate(Range(15, 30))
-                        .build()
-                preview.setSurfaceProvider(surfaceProvider)
-                mPreview = preview
-
-                setupCamera()
+                mPreview = createPreview(surfaceProvider)
+                mSecondaryPreview = secondarySurfaceProvider?.let { createPreview(it) }
+
+                if (mSecondaryPreview == null || !setupConcurrentCamera()) {
+                    setupCamera()
+                }
             },
             ContextCompat.getMainExecutor(context.applicationContext)
         )
     }
 
+    private fun createPreview(surfaceProvider: GLSurfaceProvider): Preview {
+        val preferredCameraSize: Size = this.preferredCameraSize
+        val builder: Preview.Builder = Preview.Builder()
+
+        val resolutionSelectorBuilder: ResolutionSelector.Builder =
+            ResolutionSelector.Builder()
+                .setAllowedResolutionMode(ResolutionSelector.PREFER_CAPTURE_RATE_OVER_HIGHER_RESOLUTION)
+        resolutionSelectorBuilder
+            .setResolutionStrategy(
+                ResolutionStrategy(
+                    preferredCameraSize,
+                    ResolutionStrategy.FALLBACK_RULE_CLOSEST_HIGHER
+                )
+            ).setAspectRatioStrategy(AspectRatioStrategy.RATIO_16_9_FALLBACK_AUTO_STRATEGY)
+            .build()
+
+        val preview: Preview =
+            builder
+                .setResolutionSelector(resolutionSelectorBuilder.build())
+                .setTargetFrameRate(Range(15, 30))
+                .build()
+        preview.setSurfaceProvider(surfaceProvider)
+        return preview
+    }
+
+    /**
+     * 綁定兩個相機，裝置不支援時回傳false，改為只開啟主相機
+     */
+    private fun setupConcurrentCamera(): Boolean {
+        val cameraProvider: ProcessCameraProvider = mCameraProvider ?: return false
+        val preview: Preview = mPreview ?: return false
+        val secondaryPreview: Preview = mSecondaryPreview ?: return false
+        cameraProvider.unbindAll()
+
+        // 找出包含主相機鏡頭方向的相機組合
+        val cameraInfos: List<CameraInfo>? = cameraProvider.availableConcurrentCameraInfos
+            .firstOrNull { infos -> infos.size >= 2 && infos.any { it.lensFacing == mLensFacing } }
+        if (cameraInfos == null) {
+            Logger.e(TAG, "concurrent camera is not supported, open the primary camera only")
+            return false
+        }
+        val primaryInfo: CameraInfo = cameraInfos.first { it.lensFacing == mLensFacing }
+        val secondaryInfo: CameraInfo = cameraInfos.first { it !== primaryInfo }
+
+        if (cameraLifecycleOwner.lifecycle.currentState == Lifecycle.State.DESTROYED) return true
+        val concurrentCamera: ConcurrentCamera = try {
+            cameraProvider.bindToLifecycle(
+                listOf(
+                    ConcurrentCamera.SingleCameraConfig(
+                        primaryInfo.cameraSelector,
+                        UseCaseGroup.Builder().addUseCase(preview).build(),
+                        cameraLifecycleOwner
+                    ),
+                    ConcurrentCamera.SingleCameraConfig(
+                        secondaryInfo.cameraSelector,
+                        UseCaseGroup.Builder().addUseCase(secondaryPreview).build(),
+                        cameraLifecycleOwner
+                    )
+                )
+            )
+        } catch (e: Exception) {
+            // 例如兩個Preview的解析度超過同時開啟時的限制
+            Logger.e(TAG, "failed to bind concurrent camera, open the primary camera only", e)
+            cameraProvider.unbindAll()
+            return false
+        }
+
+        val camera: Camera = concurrentCamera.cameras[0].also { mCamera = it }
+        val secondaryCamera: Camera = concurrentCamera.cameras[1].also { mSecondaryCamera = it }
+        camera.cameraInfo.cameraState.observe(cameraLifecycleOwner) { state ->
+            Logger.d(TAG, "camera state: $state")
+        }
+        secondaryCamera.cameraInfo.cameraState.observe(cameraLifecycleOwner) { state ->
+            Logger.d(TAG, "secondary camera state: $state")
+        }
+        return true
+    }
+
     private fun setupCamera() {
         val cameraProvider: ProcessCameraProvider = mCameraProvider ?: return
         cameraProvider.unbindAll()
 
         val cameraSelector: CameraSelector =
-            CameraSelector.Builder().requireLensFacing(CameraSelector.LENS_FACING_FRONT).build()
+            CameraSelector.Builder().requireLensFacing(mLensFacing).build()
         val hasCamera: Boolean = try {
             cameraProvider.hasCamera(cameraSelector)
         } catch (e: CameraInfoUnavailableException) {
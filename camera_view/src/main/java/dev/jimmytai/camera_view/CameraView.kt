@@ -1,11 +1,17 @@
 package dev.jimmytai.camera_view
 
 import android.content.Context
+import android.content.res.TypedArray
 import android.graphics.Color
 import android.util.AttributeSet
+import android.util.Size
 import android.view.SurfaceView
+import android.view.TextureView
+import android.view.View
 import android.widget.FrameLayout
 import androidx.camera.core.CameraInfo
+import dev.jimmytai.camera_view.constant.PreviewBackend
+import dev.jimmytai.camera_view.constant.PreviewResolution
 import dev.jimmytai.camera_view.utils.Logger
 
 class CameraView(context: Context, attrs: AttributeSet?, defStyleAttr: Int, defStyleRes: Int) :
@@ -14,10 +20,25 @@ class CameraView(context: Context, attrs: AttributeSet?, defStyleAttr: Int, defS
         private val TAG: String = CameraView::class.java.simpleName
     }
 
-    private val surfaceView: SurfaceView
+    /**
+     * 繪製預覽的View，SurfaceView或TextureView
+     */
+    private var mPreviewView: View
 
     private var mCameraController: CameraController? = null
 
+    /**
+     * 只有SurfaceView可以設定buffer尺寸
+     */
+    private var mBufferSizer: PreviewBufferSizer? = null
+
+    private var mPreviewResolution: PreviewResolution = PreviewResolution.FULL
+
+    /**
+     * 目前controller的frame短邊，切換至SurfaceView時提供給[PreviewBufferSizer]
+     */
+    private var mCameraShortSide: Int = 0
+
     constructor(context: Context) : this(context, null)
 
     constructor(context: Context, attrs: AttributeSet?) : this(context, attrs, 0)
@@ -31,14 +52,83 @@ class CameraView(context: Context, attrs: AttributeSet?, defStyleAttr: Int, defS
 
     init {
         setBackgroundColor(Color.BLACK)
-        surfaceView = SurfaceView(context)
-        removeAllViews()
-        addView(surfaceView)
+        val typedArray: TypedArray = context.obtainStyledAttributes(
+            attrs, R.styleable.CameraView, defStyleAttr, defStyleRes
+        )
+        val backend: PreviewBackend = try {
+            PreviewBackend.values()[typedArray.getInt(R.styleable.CameraView_previewBackend, 0)]
+        } finally {
+            typedArray.recycle()
+        }
+        mPreviewView = createPreviewView(backend)
     }
 
+    /**
+     * controller的frame尺寸改變時，在主執行緒更新[PreviewResolution.MATCH_CAMERA]的尺寸
+     */
+    private val mFrameSizeListener: (Size) -> Unit = { size ->
+        post {
+            mCameraShortSide = minOf(size.width, size.height)
+            mBufferSizer?.cameraShortSide = mCameraShortSide
+        }
+    }
+
+    /**
+     * View the preview is rendered into, [PreviewBackend.SURFACE_VIEW] by default or as set with
+     * the `previewBackend` attribute. A controller already set renders into the new view instead
+     * of the previous one.
+     */
+    var previewBackend: PreviewBackend =
+        if (mPreviewView is TextureView) PreviewBackend.TEXTURE_VIEW else PreviewBackend.SURFACE_VIEW
+        set(value) {
+            if (field == value) return
+            field = value
+            mPreviewView = createPreviewView(value)
+            mCameraController?.attachFromView(mPreviewView, this)
+        }
+
+    /**
+     * Resolution the preview is rendered at, [PreviewResolution.FULL] by default. A lower one is
+     * upscaled to the view by the display hardware, which cuts the GPU cost of the preview on
+     * large screens. Only applies to [PreviewBackend.SURFACE_VIEW]. Must be called on the main
+     * thread.
+     */
+    var previewResolution: PreviewResolution
+        get() = mPreviewResolution
+        set(value) {
+            mPreviewResolution = value
+            mBufferSizer?.resolution = value
+        }
+
+    /**
+     * Show the frames of [cameraController] in this view.
+     *
+     * A controller can be set on several views, e.g. a preview and a mini-preview. The first view
+     * starts the controller's GL thread, every further view is rendered from the same thread,
+     * context and processed texture, costing one extra draw per frame.
+     */
     fun setController(cameraController: CameraController) {
+        mCameraController?.removeFrameSizeListener(mFrameSizeListener)
         mCameraController = cameraController
-        cameraController.attachFromView(surfaceView)
+        cameraController.addFrameSizeListener(mFrameSizeListener)
+        cameraController.attachFromView(mPreviewView, this)
+    }
+
+    private fun createPreviewView(backend: PreviewBackend): View {
+        removeAllViews()
+        mBufferSizer = null
+        val view: View = when (backend) {
+            PreviewBackend.SURFACE_VIEW -> SurfaceView(context).also { surfaceView ->
+                mBufferSizer = PreviewBufferSizer(surfaceView).also {
+                    it.cameraShortSide = mCameraShortSide
+                    it.resolution = mPreviewResolution
+                }
+            }
+
+            PreviewBackend.TEXTURE_VIEW -> TextureView(context)
+        }
+        addView(view)
+        return view
     }
 
     // 因為是要判斷使否從背景回到前景，所以忽略View created後首次的 focus change
@@ -0,0 +1,92 @@
+package dev.jimmytai.camera_view
+
+import android.util.Size
+import android.view.SurfaceHolder
+import android.view.SurfaceView
+import android.view.View
+import dev.jimmytai.camera_view.constant.PreviewResolution
+import dev.jimmytai.camera_view.utils.Logger
+import kotlin.math.roundToInt
+
+/**
+ * 依照[PreviewResolution]設定SurfaceView的buffer尺寸(SurfaceHolder.setFixedSize)，由螢幕硬體放大至View的尺寸
+ *
+ * buffer與View的長寬比相同，crop的計算只依buffer尺寸，畫面不會變形；只在主執行緒中使用
+ */
+internal class PreviewBufferSizer(private val surfaceView: SurfaceView) :
+    View.OnLayoutChangeListener {
+    companion object {
+        private val TAG: String = PreviewBufferSizer::class.java.simpleName
+
+        /**
+         * 短邊不超過[maxShortSide]的buffer尺寸，保持[viewSize]的長寬比且不放大
+         *
+         * @param maxShortSide  0代表不限制
+         */
+        fun compute(viewSize: Size, maxShortSide: Int): Size {
+            val shortSide: Int = minOf(viewSize.width, viewSize.height)
+            if (maxShortSide <= 0 || shortSide <= maxShortSide) return viewSize
+            val scale: Float = maxShortSide.toFloat() / shortSide
+            // 部分裝置的硬體合成需要偶數的buffer尺寸
+            val width: Int = maxOf(2, (viewSize.width * scale / 2f).roundToInt() * 2)
+            val height: Int = maxOf(2, (viewSize.height * scale / 2f).roundToInt() * 2)
+            return Size(width, height)
+        }
+    }
+
+    var resolution: PreviewResolution = PreviewResolution.FULL
+        set(value) {
+            field = value
+            apply()
+        }
+
+    /**
+     * 相機frame的短邊，[PreviewResolution.MATCH_CAMERA]使用，未知時為0
+     */
+    var cameraShortSide: Int = 0
+        set(value) {
+            if (field == value) return
+            field = value
+            if (resolution == PreviewResolution.MATCH_CAMERA) apply()
+        }
+
+    /**
+     * 目前設定的buffer尺寸，null代表跟隨View的尺寸
+     */
+    private var mFixedSize: Size? = null
+
+    init {
+        surfaceView.addOnLayoutChangeListener(this)
+    }
+
+    override fun onLayoutChange(
+        v: View, left: Int, top: Int, right: Int, bottom: Int,
+        oldLeft: Int, oldTop: Int, oldRight: Int, oldBottom: Int
+    ) {
+        if (right - left != oldRight - oldLeft || bottom - top != oldBottom - oldTop) {
+            apply()
+        }
+    }
+
+    private fun apply() {
+        val viewSize = Size(surfaceView.width, surfaceView.height)
+        if (viewSize.width <= 0 || viewSize.height <= 0) return
+        val maxShortSide: Int = when (resolution) {
+            PreviewResolution.MATCH_CAMERA -> cameraShortSide
+            else -> resolution.maxShortSide
+        }
+        val bufferSize: Size = compute(viewSize, maxShortSide)
+        val fixedSize: Size? = if (bufferSize == viewSize) null else bufferSize
+        if (fixedSize == mFixedSize) return
+        mFixedSize = fixedSize
+
+        Logger.d(TAG, "apply -> $resolution, view: $viewSize, buffer: ${fixedSize ?: viewSize}")
+        val holder: SurfaceHolder = surfaceView.holder
+        if (fixedSize == null) {
+            holder.setSizeFromLayout()
+        } else {
+            // Surface改變尺寸後會觸發surfaceChanged，GLThread以新的尺寸繪製
+            holder.setFixedSize(fixedSize.width, fixedSize.height)
+        }
+    }
+}
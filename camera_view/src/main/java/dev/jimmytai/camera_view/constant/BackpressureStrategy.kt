@@ -0,0 +1,22 @@
+package dev.jimmytai.camera_view.constant
+
+/**
+ * What an analysis output does with a new frame while its queue is full.
+ */
+enum class BackpressureStrategy {
+    /**
+     * Close the oldest queued frame and queue the new one, the analyzer always gets recent frames.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Close the new frame, queued frames are analyzed in order.
+     */
+    DROP_NEWEST,
+
+    /**
+     * Leave the new frame in the ImageReader. Once all of its buffers are in use the GL thread
+     * waits for the analyzer, which also slows down the preview.
+     */
+    BLOCK
+}
@@ -0,0 +1,18 @@
+package dev.jimmytai.camera_view.constant
+
+/**
+ * How the frames of two cameras are composited into one frame, see
+ * [dev.jimmytai.camera_view.source.DualCameraFrameSource].
+ */
+enum class DualCameraLayout {
+    /**
+     * The primary camera fills the frame, the secondary one is inset in the top right corner.
+     */
+    PICTURE_IN_PICTURE,
+
+    /**
+     * Both cameras next to each other at the same height, the primary one on the left. The frame
+     * is as wide as both together.
+     */
+    SIDE_BY_SIDE
+}
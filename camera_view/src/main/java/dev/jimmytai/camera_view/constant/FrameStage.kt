@@ -0,0 +1,17 @@
+package dev.jimmytai.camera_view.constant
+
+/**
+ * Stages of one frame on the GL thread, see [dev.jimmytai.camera_view.model.FrameStageTimings].
+ */
+enum class FrameStage(val label: String) {
+    UPDATE_TEX_IMAGE("updateTexImage"),
+    PRE_PROCESS("preProcess"),
+    PROCESS("process"),
+    READBACK("readback"),
+    RENDER("render"),
+
+    /**
+     * Sum of every stage.
+     */
+    TOTAL("total")
+}
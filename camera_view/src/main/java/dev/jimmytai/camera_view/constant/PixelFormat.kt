@@ -7,5 +7,10 @@ enum class PixelFormat(val value: Int) {
     RGB888(3),
     BEF_AI_PIX_FMT_YUV420P(5),
     BEF_AI_PIX_FMT_NV12(6),
-    BEF_AI_PIX_FMT_NV21(7);
+    BEF_AI_PIX_FMT_NV21(7),
+
+    /**
+     * 單通道的亮度(BT.601 limited range Y)，每個pixel 1 byte
+     */
+    LUMA8(8);
 }
\ No newline at end of file
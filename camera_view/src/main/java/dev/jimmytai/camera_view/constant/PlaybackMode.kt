@@ -0,0 +1,19 @@
+package dev.jimmytai.camera_view.constant
+
+/**
+ * How a video file source paces its frames.
+ */
+enum class PlaybackMode {
+    /**
+     * Frames are rendered at the presentation times of the file, like a camera. Frames the GL
+     * thread is too slow for are skipped.
+     */
+    REAL_TIME,
+
+    /**
+     * Every frame is rendered as soon as the GL thread finished the previous one, e.g. to re-render
+     * a clip with effects or for reproducible performance tests. Frame timestamps still follow the
+     * file, so an encoder output keeps the timing of the clip.
+     */
+    OFFLINE
+}
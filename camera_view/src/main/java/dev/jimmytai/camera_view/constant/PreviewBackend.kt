@@ -0,0 +1,22 @@
+package dev.jimmytai.camera_view.constant
+
+/**
+ * View a [dev.jimmytai.camera_view.CameraView] renders the preview into, set with the
+ * `previewBackend` attribute or [dev.jimmytai.camera_view.CameraView.previewBackend].
+ *
+ * [dev.jimmytai.camera_view.soak.PreviewBackendBenchmark] measures the latency to the swap and the
+ * dropped frames of each on a device.
+ */
+enum class PreviewBackend {
+    /**
+     * Frames go straight to the system compositor, usually the lowest latency and GPU cost.
+     */
+    SURFACE_VIEW,
+
+    /**
+     * Frames are composited by the app's UI rendering with the rest of the views. The preview can
+     * be animated, transformed and made translucent like any view, at the cost of an extra
+     * composition pass and latency.
+     */
+    TEXTURE_VIEW
+}
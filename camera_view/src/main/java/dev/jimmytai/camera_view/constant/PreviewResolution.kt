@@ -0,0 +1,38 @@
+package dev.jimmytai.camera_view.constant
+
+/**
+ * Resolution the preview of a [dev.jimmytai.camera_view.CameraView] is rendered at. A lower one
+ * is rendered into a smaller buffer with the aspect ratio of the view and upscaled by the display
+ * hardware, which saves fragment shading and swap bandwidth on large screens.
+ *
+ * Only the preview is affected, recordings and other outputs keep their own size.
+ *
+ * @param maxShortSide  Largest short side of the buffer in pixels, 0 for no fixed limit.
+ */
+enum class PreviewResolution(internal val maxShortSide: Int) {
+    /**
+     * The size of the view.
+     */
+    FULL(0),
+
+    /**
+     * The resolution of the camera frames, when the view is larger. Rendering above it only
+     * interpolates pixels the display can upscale as well.
+     */
+    MATCH_CAMERA(0),
+
+    /**
+     * At most 480 pixels on the short side.
+     */
+    SD(480),
+
+    /**
+     * At most 720 pixels on the short side.
+     */
+    HD(720),
+
+    /**
+     * At most 1080 pixels on the short side.
+     */
+    FULL_HD(1080)
+}
@@ -0,0 +1,18 @@
+package dev.jimmytai.camera_view.constant
+
+/**
+ * Image format of a snapshot taken by [dev.jimmytai.camera_view.CameraController.takeSnapshot].
+ */
+enum class SnapshotFormat(val mimeType: String) {
+    JPEG("image/jpeg"),
+
+    /**
+     * Lossy WebP.
+     */
+    WEBP("image/webp"),
+
+    /**
+     * HEIF with a single HEVC coded image, Android 9+ and a device HEVC encoder are required.
+     */
+    HEIF("image/heif")
+}
@@ -0,0 +1,223 @@
+package dev.jimmytai.camera_view.export
+
+import android.media.Image
+import android.media.ImageReader
+import android.os.Handler
+import android.os.HandlerThread
+import android.util.Size
+import android.view.Surface
+import dev.jimmytai.camera_view.constant.BackpressureStrategy
+import dev.jimmytai.camera_view.glthread.GLThread
+import dev.jimmytai.camera_view.model.AnalysisOutputStats
+import dev.jimmytai.camera_view.model.OutputSurfaceOption
+import dev.jimmytai.camera_view.utils.Logger
+import java.util.concurrent.Executor
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import android.graphics.PixelFormat as AndroidPixelFormat
+
+/**
+ * Delivers processed frames as [Image]s to a CPU analyzer.
+ *
+ * The GL thread renders into the surface of an [ImageReader], at most [fps] frames per second.
+ * Images are analyzed one at a time on [executor], in capture order. At most [maxImages] of them
+ * are queued or being analyzed; what happens to newer frames is decided by [strategy].
+ *
+ * Create it through [dev.jimmytai.camera_view.CameraController.addAnalysisOutput].
+ */
+class AnalysisOutput internal constructor(
+    val size: Size,
+    val format: Int,
+    val maxImages: Int,
+    val fps: Int,
+    val strategy: BackpressureStrategy,
+    executor: Executor?,
+    private val analyzer: Analyzer
+) {
+    companion object {
+        private val TAG: String = AnalysisOutput::class.java.simpleName
+    }
+
+    fun interface Analyzer {
+        /**
+         * Called on the output's executor. The image is closed once this returns, copy what is
+         * needed later.
+         */
+        fun analyze(image: Image)
+    }
+
+    init {
+        require(format == AndroidPixelFormat.RGBA_8888 || format == AndroidPixelFormat.RGBX_8888) {
+            "GL can only render RGBA_8888 or RGBX_8888 into an ImageReader, got $format"
+        }
+        require(maxImages > 0) { "maxImages must be positive" }
+    }
+
+    /**
+     * 沒有指定executor時使用自己的執行緒，移除時關閉
+     */
+    private val mOwnedExecutor: ExecutorService? =
+        if (executor == null) Executors.newSingleThreadExecutor { Thread(it, "AnalysisOutput") } else null
+
+    private val mExecutor: Executor = executor ?: mOwnedExecutor!!
+
+    private val mReaderThread: HandlerThread = HandlerThread("AnalysisOutputReader").apply { start() }
+
+    private val mReaderHandler: Handler = Handler(mReaderThread.looper)
+
+    /**
+     * 丟棄模式多保留一個slot，佇列已滿時仍可取出新的Image再決定丟棄哪一個，GLThread不會等待
+     */
+    private val mImageReader: ImageReader = ImageReader.newInstance(
+        size.width,
+        size.height,
+        format,
+        if (strategy == BackpressureStrategy.BLOCK) maxImages else maxImages + 1
+    ).apply {
+        setOnImageAvailableListener({ onImageAvailable() }, mReaderHandler)
+    }
+
+    private val mLock = Any()
+
+    /**
+     * 等待分析的Image，與已取出的數量
+     */
+    private val mQueue: AnalysisQueue<Image> = AnalysisQueue(maxImages, strategy)
+
+    private var mAnalyzing: Boolean = false
+
+    private var mClosed: Boolean = false
+
+    private var mAnalyzedFrameCount: Long = 0L
+
+    private var mLastLatencyNs: Long = 0L
+
+    private var mLatencySumNs: Long = 0L
+
+    private var mMaxLatencyNs: Long = 0L
+
+    internal val surface: Surface
+        get() = mImageReader.surface
+
+    internal fun attach(glThread: GLThread) {
+        glThread.addOutputSurface(
+            mImageReader.surface,
+            OutputSurfaceOption(outputSize = size, maxFps = fps)
+        )
+    }
+
+    /**
+     * 從GLThread移除，ImageReader在GLThread回報移除後才透過[onSurfaceRemoved]釋放
+     */
+    internal fun detach(glThread: GLThread) {
+        glThread.removeOutputSurface(mImageReader.surface)
+    }
+
+    fun stats(): AnalysisOutputStats =
+        synchronized(mLock) {
+            AnalysisOutputStats(
+                analyzedFrameCount = mAnalyzedFrameCount,
+                droppedFrameCount = mQueue.droppedFrameCount,
+                queueDepth = mQueue.queueDepth,
+                maxQueueDepth = mQueue.maxQueueDepth,
+                lastLatencyNs = mLastLatencyNs,
+                averageLatencyNs = if (mAnalyzedFrameCount == 0L) 0L else mLatencySumNs / mAnalyzedFrameCount,
+                maxLatencyNs = mMaxLatencyNs
+            )
+        }
+
+    private fun onImageAvailable() {
+        synchronized(mLock) {
+            if (mClosed) return
+            // BLOCK模式已滿時留在ImageReader中，有Image close後再取出
+            if (!mQueue.shouldAcquire()) return
+            val image: Image = acquireNextImage() ?: return
+            mQueue.offer(image)?.close()
+            scheduleIfIdle()
+        }
+    }
+
+    private fun acquireNextImage(): Image? =
+        try {
+            mImageReader.acquireNextImage()
+        } catch (e: IllegalStateException) {
+            Logger.w(TAG, "acquireNextImage failed", e)
+            null
+        }
+
+    private fun scheduleIfIdle() {
+        if (mAnalyzing || mQueue.queueDepth == 0) return
+        mAnalyzing = true
+        mExecutor.execute { drain() }
+    }
+
+    /**
+     * 在executor中依序分析佇列中的Image
+     */
+    private fun drain() {
+        while (true) {
+            val image: Image = synchronized(mLock) {
+                mQueue.poll() ?: run {
+                    mAnalyzing = false
+                    return
+                }
+            }
+            try {
+                analyzer.analyze(image)
+            } catch (e: Exception) {
+                Logger.e(TAG, "analyzer failed", e)
+            }
+            // Image的timestamp是送進GLThread輸出窗口的presentation time，與System.nanoTime同時基
+            val latencyNs: Long = System.nanoTime() - image.timestamp
+            synchronized(mLock) {
+                image.close()
+                mQueue.release()
+                mAnalyzedFrameCount++
+                mLastLatencyNs = latencyNs
+                mLatencySumNs += latencyNs
+                if (latencyNs > mMaxLatencyNs) mMaxLatencyNs = latencyNs
+
+                if (mClosed) {
+                    releaseIfIdle()
+                } else if (mQueue.pendingInReader > 0) {
+                    mReaderHandler.post { acquirePending() }
+                }
+            }
+        }
+    }
+
+    /**
+     * BLOCK模式下有空間後，取出留在ImageReader中的Image
+     */
+    private fun acquirePending() {
+        synchronized(mLock) {
+            while (!mClosed && mQueue.takePending()) {
+                val image: Image = acquireNextImage() ?: break
+                mQueue.offer(image)?.close()
+            }
+            scheduleIfIdle()
+        }
+    }
+
+    /**
+     * GLThread已經釋放ImageReader Surface上的EGL繪製窗口
+     */
+    internal fun onSurfaceRemoved() {
+        synchronized(mLock) {
+            if (mClosed) return
+            mClosed = true
+            mQueue.clear().forEach { it.close() }
+            releaseIfIdle()
+        }
+    }
+
+    /**
+     * 分析中的Image close後才能關閉ImageReader
+     */
+    private fun releaseIfIdle() {
+        if (mQueue.inFlight > 0) return
+        mImageReader.close()
+        mReaderThread.quitSafely()
+        mOwnedExecutor?.shutdown()
+    }
+}
@@ -0,0 +1,113 @@
+package dev.jimmytai.camera_view.export
+
+import dev.jimmytai.camera_view.constant.BackpressureStrategy
+
+/**
+ * [AnalysisOutput]的排隊與丟棄規則，不持有鎖，由呼叫端同步
+ *
+ * 最多[maxImages]個frame同時被取出(等待中 + 分析中)，已取出的數量在新frame被接受前比較，
+ * 因此maxImages為1時仍可分析每一個frame。BLOCK模式永遠不丟棄，超過的frame留在ImageReader中
+ */
+internal class AnalysisQueue<T>(
+    private val maxImages: Int,
+    private val strategy: BackpressureStrategy
+) {
+    init {
+        require(maxImages > 0) { "maxImages must be positive" }
+    }
+
+    private val mQueue: ArrayDeque<T> = ArrayDeque()
+
+    /**
+     * 已取出且尚未釋放的frame數量(等待中 + 分析中)
+     */
+    var inFlight: Int = 0
+        private set
+
+    /**
+     * BLOCK模式下留在ImageReader中、尚未取出的frame數量
+     */
+    var pendingInReader: Int = 0
+        private set
+
+    var droppedFrameCount: Long = 0L
+        private set
+
+    var maxQueueDepth: Int = 0
+        private set
+
+    val queueDepth: Int
+        get() = mQueue.size
+
+    /**
+     * 有新的frame可取出時呼叫
+     *
+     * @return false代表BLOCK模式下已滿，frame留在ImageReader中，有空間後由[takePending]取出
+     */
+    fun shouldAcquire(): Boolean {
+        if (strategy == BackpressureStrategy.BLOCK && inFlight >= maxImages) {
+            pendingInReader++
+            return false
+        }
+        return true
+    }
+
+    /**
+     * 加入剛取出的frame
+     *
+     * @return 被丟棄、需要close的frame，沒有丟棄時為null
+     */
+    fun offer(frame: T): T? {
+        // BLOCK模式由shouldAcquire限制取出的數量，不會走到丟棄
+        if (inFlight < maxImages || strategy == BackpressureStrategy.BLOCK) {
+            inFlight++
+            enqueue(frame)
+            return null
+        }
+        droppedFrameCount++
+        if (strategy == BackpressureStrategy.DROP_OLDEST && mQueue.isNotEmpty()) {
+            val oldest: T = mQueue.removeFirst()
+            enqueue(frame)
+            return oldest
+        }
+        // DROP_NEWEST，或所有frame都在分析中
+        return frame
+    }
+
+    /**
+     * 取出下一個要分析的frame，分析完後呼叫[release]
+     */
+    fun poll(): T? = mQueue.removeFirstOrNull()
+
+    /**
+     * 分析完的frame已close
+     */
+    fun release() {
+        inFlight--
+    }
+
+    /**
+     * BLOCK模式下有空間且ImageReader中還有frame時，預留一個並回傳true，取出後交給[offer]
+     */
+    fun takePending(): Boolean {
+        if (pendingInReader == 0 || inFlight >= maxImages) return false
+        pendingInReader--
+        return true
+    }
+
+    /**
+     * 移除所有等待中的frame，回傳需要close的frame；分析中的frame仍需[release]
+     */
+    fun clear(): List<T> {
+        val frames: List<T> = mQueue.toList()
+        mQueue.clear()
+        inFlight -= frames.size
+        pendingInReader = 0
+        return frames
+    }
+
+    private fun enqueue(frame: T) {
+        mQueue.addLast(frame)
+        if (mQueue.size > maxQueueDepth) maxQueueDepth = mQueue.size
+    }
+}
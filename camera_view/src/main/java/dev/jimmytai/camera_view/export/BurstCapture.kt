@@ -0,0 +1,330 @@
+package dev.jimmytai.camera_view.export
+
+import android.opengl.GLES20
+import android.util.Size
+import androidx.concurrent.futures.CallbackToFutureAdapter
+import com.google.common.util.concurrent.ListenableFuture
+import dev.jimmytai.camera_view.constant.CropScaleType
+import dev.jimmytai.camera_view.constant.SnapshotFormat
+import dev.jimmytai.camera_view.constant.TextureFormat
+import dev.jimmytai.camera_view.gles.EglCore
+import dev.jimmytai.camera_view.gles.GlApi
+import dev.jimmytai.camera_view.gles.GlStateCache
+import dev.jimmytai.camera_view.gles.GlUtil
+import dev.jimmytai.camera_view.gles.TextureReader
+import dev.jimmytai.camera_view.glrenderer.GLRenderer
+import dev.jimmytai.camera_view.glthread.FrameReadback
+import dev.jimmytai.camera_view.model.BurstResult
+import dev.jimmytai.camera_view.model.Snapshot
+import dev.jimmytai.camera_view.utils.DirectBufferPool
+import dev.jimmytai.camera_view.utils.Logger
+import java.io.File
+import java.nio.ByteBuffer
+
+/**
+ * 連拍流程：在GLThread中將連續的frame複製到GPU上的texture slot，再逐一讀回交給[SnapshotEncoder]
+ *
+ * 擷取只是一次繪製與glCopyTexSubImage2D，不會等待GPU，可以跟上相機的frame rate；
+ * 讀回每個frame最多一張，GLES3時透過PBO延遲一個frame。slot與編碼的數量上限由[BurstScheduler]控制，
+ * 編碼跟不上時略過frame而不是讓預覽停頓
+ *
+ * @param size          null代表使用處理後texture的尺寸
+ * @param slotCount     GPU上保留的texture數量，同時也是讀回中與編碼中frame的上限
+ * @param onDrained     所有frame都已讀回，可以從GLThread移除，在GLThread中呼叫
+ */
+internal class BurstCapture(
+    frameCount: Int,
+    private val size: Size?,
+    private val format: SnapshotFormat,
+    private val quality: Int,
+    slotCount: Int,
+    private val cacheDir: File,
+    private val onDrained: (BurstCapture) -> Unit
+) : FrameReadback {
+    companion object {
+        private val TAG: String = BurstCapture::class.java.simpleName
+    }
+
+    init {
+        require(quality in 0..100) { "quality must be in 0..100, got $quality" }
+    }
+
+    private val mLock = Any()
+
+    private val mScheduler: BurstScheduler = BurstScheduler(frameCount, slotCount, slotCount)
+
+    private val mSnapshots: Array<Snapshot?> = arrayOfNulls(frameCount)
+
+    private var mCompleter: CallbackToFutureAdapter.Completer<BurstResult>? = null
+
+    val future: ListenableFuture<BurstResult> = CallbackToFutureAdapter.getFuture { completer ->
+        mCompleter = completer
+        completer.addCancellationListener({ mCancelled = true }, { it.run() })
+        "takeBurst"
+    }
+
+    @Volatile
+    private var mCancelled: Boolean = false
+
+    /**
+     * 第一個編碼失敗的原因
+     */
+    private var mError: Exception? = null
+
+    private var mGlVersion: Int = 2
+
+    private var mStateCache: GlStateCache? = null
+
+    private var mTextureReader: TextureReader? = null
+
+    /**
+     * 第一個frame時決定的輸出尺寸，整個連拍固定
+     */
+    private var mOutputSize: Size? = null
+
+    private var mSlotTextures: IntArray? = null
+
+    private val mSlotTimestamps: LongArray = LongArray(slotCount)
+
+    /**
+     * 將處理後的texture複製到slot時使用的FBO
+     */
+    private var mCopyFrameBuffer: Int = 0
+
+    /**
+     * 已排入PBO、等待下一個frame map的slot
+     */
+    private var mDrainingSlot: Int = BurstScheduler.NO_SLOT
+
+    private var mFinished: Boolean = false
+
+    override fun onAttach(eglCore: EglCore) {
+        mGlVersion = eglCore.glVersion
+    }
+
+    override fun onFrame(
+        renderer: GLRenderer,
+        textureId: Int,
+        textureSize: Size,
+        timestampNs: Long
+    ) {
+        if (mFinished) return
+        if (mCancelled) {
+            finish()
+            return
+        }
+        val outputSize: Size = mOutputSize ?: (size ?: textureSize).also { mOutputSize = it }
+        val textureReader: TextureReader = mTextureReader
+            ?: TextureReader(renderer.stateCache, mGlVersion).also { mTextureReader = it }
+        val slotTextures: IntArray = mSlotTextures ?: createSlots(renderer.stateCache, outputSize)
+
+        // 先交付上一個frame排入PBO的slot
+        val drainingSlot: Int = mDrainingSlot
+        if (drainingSlot != BurstScheduler.NO_SLOT) {
+            mDrainingSlot = BurstScheduler.NO_SLOT
+            textureReader.flush(SlotReadback(drainingSlot))
+            // 讀回失敗時連拍已結束
+            if (mFinished) return
+        }
+
+        val slot: Int = synchronized(mLock) { mScheduler.acquireSlot() }
+        if (slot != BurstScheduler.NO_SLOT) {
+            capture(renderer, textureId, textureSize, slotTextures[slot], outputSize)
+            mSlotTimestamps[slot] = timestampNs
+        }
+
+        val drain: Int = synchronized(mLock) { mScheduler.nextToDrain() }
+        if (drain != BurstScheduler.NO_SLOT) {
+            textureReader.read(
+                slotTextures[drain], outputSize.width, outputSize.height, mSlotTimestamps[drain],
+                SlotReadback(drain)
+            )
+            if (mFinished) return
+            if (textureReader.isAsynchronous) mDrainingSlot = drain
+        }
+
+        if (synchronized(mLock) { mScheduler.isDrainComplete }) finish()
+    }
+
+    override fun onDetach() {
+        releaseGl()
+        val drained: Boolean = synchronized(mLock) { mScheduler.isDrainComplete }
+        if (!drained) {
+            // 已交給編碼執行緒的frame仍會完成，但連拍不完整
+            mCompleter?.setException(IllegalStateException("GLThread is released during burst"))
+        }
+    }
+
+    override fun onDiscarded() {
+        mCompleter?.setException(IllegalStateException("GLThread is released before burst"))
+    }
+
+    /**
+     * 不再擷取，等待GLThread移除後釋放GL資源
+     */
+    private fun finish() {
+        mFinished = true
+        onDrained(this)
+    }
+
+    private fun createSlots(stateCache: GlStateCache, outputSize: Size): IntArray {
+        val gl: GlApi = stateCache.gl
+        val slotTextures = IntArray(mSlotTimestamps.size).also { mSlotTextures = it }
+        gl.glGenTextures(slotTextures.size, slotTextures, 0)
+        for (texture in slotTextures) {
+            stateCache.bindTexture(GLES20.GL_TEXTURE_2D, texture)
+            gl.glTexImage2D(
+                GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, outputSize.width, outputSize.height, 0,
+                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null
+            )
+            gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_NEAREST)
+            gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_NEAREST)
+        }
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, 0)
+
+        val frameBuffers = IntArray(1)
+        gl.glGenFramebuffers(1, frameBuffers, 0)
+        mCopyFrameBuffer = frameBuffers[0]
+        mStateCache = stateCache
+        GlUtil.checkGlError(gl, "create burst slots")
+        Logger.d(TAG, "${slotTextures.size} slots of $outputSize for ${mSnapshots.size} frames")
+        return slotTextures
+    }
+
+    /**
+     * 裁切至輸出尺寸後複製到slot的texture
+     */
+    private fun capture(
+        renderer: GLRenderer,
+        textureId: Int,
+        textureSize: Size,
+        slotTexture: Int,
+        outputSize: Size
+    ) {
+        val transition: GLRenderer.Transition = renderer.transitionCache.crop(
+            scaleType = CropScaleType.CENTER_CROP,
+            rotation = 0,
+            textureSize = textureSize,
+            surfaceSize = outputSize
+        )
+        val outputTextureId: Int = renderer.transferTextureToTexture(
+            inputTextureId = textureId,
+            inputTextureFormat = TextureFormat.Texture2D,
+            outputTextureFormat = TextureFormat.Texture2D,
+            size = outputSize,
+            transition = transition
+        )
+        val stateCache: GlStateCache = renderer.stateCache
+        val gl: GlApi = stateCache.gl
+        stateCache.bindFrameBuffer(mCopyFrameBuffer)
+        gl.glFramebufferTexture2D(
+            GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+            GLES20.GL_TEXTURE_2D, outputTextureId, 0
+        )
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, slotTexture)
+        gl.glCopyTexSubImage2D(
+            GLES20.GL_TEXTURE_2D, 0, 0, 0, 0, 0, outputSize.width, outputSize.height
+        )
+        GlUtil.checkGlError(gl, "glCopyTexSubImage2D")
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, 0)
+        stateCache.bindFrameBuffer(0)
+    }
+
+    /**
+     * 讀回一個slot的結果
+     */
+    private inner class SlotReadback(private val slot: Int) : TextureReader.OnPixelsReady {
+        override fun onPixelsReady(pixels: ByteBuffer, width: Int, height: Int, timestampNs: Long) {
+            submit(slot, pixels, width, height, timestampNs)
+        }
+
+        override fun onReadFailed(timestampNs: Long) {
+            onSlotLost(slot)
+        }
+    }
+
+    /**
+     * slot的資料無法讀回，連拍不完整：釋放slot並結束連拍
+     */
+    private fun onSlotLost(slot: Int) {
+        val error = IllegalStateException("failed to map the pixel buffer of burst frame")
+        val frameIndex: Int = synchronized(mLock) {
+            mScheduler.onDrained(slot)
+            mScheduler.onEncoded()
+            if (mError == null) mError = error
+            mScheduler.frameIndexOf(slot)
+        }
+        Logger.e(TAG, "read back burst frame $frameIndex failed", error)
+        mCompleter?.setException(error)
+        finish()
+    }
+
+    /**
+     * 在GLThread中複製讀回的資料，slot立即可以再使用，壓縮交給編碼執行緒
+     */
+    private fun submit(slot: Int, pixels: ByteBuffer, width: Int, height: Int, timestampNs: Long) {
+        val size: Int = width * height * 4
+        val copy: ByteBuffer = DirectBufferPool.shared.acquire(size)
+        pixels.position(0)
+        pixels.limit(size)
+        copy.put(pixels)
+        copy.position(0)
+
+        val frameIndex: Int = synchronized(mLock) {
+            mScheduler.onDrained(slot)
+            mScheduler.frameIndexOf(slot)
+        }
+        SnapshotEncoder.execute { encode(frameIndex, copy, width, height, timestampNs) }
+    }
+
+    private fun encode(frameIndex: Int, pixels: ByteBuffer, width: Int, height: Int, timestampNs: Long) {
+        var snapshot: Snapshot? = null
+        var error: Exception? = null
+        try {
+            val data: ByteArray = SnapshotEncoder.encode(pixels, width, height, format, quality, cacheDir)
+            snapshot = Snapshot(data, width, height, format, timestampNs)
+        } catch (e: Exception) {
+            Logger.e(TAG, "encode burst frame $frameIndex failed", e)
+            error = e
+        }
+
+        val result: BurstResult? = synchronized(mLock) {
+            mSnapshots[frameIndex] = snapshot
+            if (mError == null) mError = error
+            mScheduler.onEncoded()
+            if (!mScheduler.isFinished) return
+            if (mError != null) {
+                null
+            } else {
+                BurstResult(
+                    snapshots = mSnapshots.map { it!! },
+                    skippedFrameCount = mScheduler.skippedFrameCount,
+                    maxSlotsInUse = mScheduler.maxSlotsInUse
+                )
+            }
+        }
+        if (result != null) {
+            mCompleter?.set(result)
+        } else {
+            mCompleter?.setException(mError!!)
+        }
+    }
+
+    private fun releaseGl() {
+        mTextureReader?.release()
+        mTextureReader = null
+        // 尚未建立slot時沒有GL資源需要釋放
+        val stateCache: GlStateCache = mStateCache ?: return
+        val gl: GlApi = stateCache.gl
+        mSlotTextures?.let { slotTextures ->
+            gl.glDeleteTextures(slotTextures.size, slotTextures, 0)
+            slotTextures.forEach { stateCache.onTextureDeleted(it) }
+        }
+        mSlotTextures = null
+        if (mCopyFrameBuffer != 0) {
+            gl.glDeleteFramebuffers(1, intArrayOf(mCopyFrameBuffer), 0)
+            stateCache.onFrameBufferDeleted(mCopyFrameBuffer)
+            mCopyFrameBuffer = 0
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package dev.jimmytai.camera_view.export
+
+/**
+ * 連拍的排程，決定每個frame是否擷取、哪個slot要讀回；不含GL操作，可以在JVM上測試
+ *
+ * 擷取的frame先複製到GPU上的slot(共[slotCount]個)，之後依擷取順序逐一讀回CPU交給編碼。
+ * 讀回中與編碼中的frame最多[maxEncoding]個，編碼跟不上時slot不會被讀回，
+ * slot用完後新的frame直接略過並計入[skippedFrameCount]，GLThread永遠不會等待
+ *
+ * 非thread-safe，呼叫端需自行同步
+ *
+ * @param frameCount    要擷取的frame數量
+ */
+internal class BurstScheduler(
+    val frameCount: Int,
+    val slotCount: Int,
+    val maxEncoding: Int
+) {
+    companion object {
+        const val NO_SLOT: Int = -1
+    }
+
+    private enum class SlotState {
+        FREE,
+
+        /**
+         * 已擷取，等待讀回
+         */
+        CAPTURED,
+
+        /**
+         * 讀回中
+         */
+        DRAINING
+    }
+
+    init {
+        require(frameCount > 0) { "frameCount must be positive" }
+        require(slotCount > 0) { "slotCount must be positive" }
+        require(maxEncoding > 0) { "maxEncoding must be positive" }
+    }
+
+    private val mSlots: Array<SlotState> = Array(slotCount) { SlotState.FREE }
+
+    /**
+     * 每個slot中的frame是連拍中的第幾張
+     */
+    private val mSlotFrameIndex: IntArray = IntArray(slotCount)
+
+    /**
+     * 等待讀回的slot，依擷取順序
+     */
+    private val mCapturedSlots: ArrayDeque<Int> = ArrayDeque()
+
+    var capturedFrameCount: Int = 0
+        private set
+
+    /**
+     * slot用完而略過的frame數量
+     */
+    var skippedFrameCount: Int = 0
+        private set
+
+    var encodedFrameCount: Int = 0
+        private set
+
+    /**
+     * 讀回中與編碼中的frame數量
+     */
+    var encodingCount: Int = 0
+        private set
+
+    /**
+     * 同時使用中的slot數量最大值
+     */
+    var maxSlotsInUse: Int = 0
+        private set
+
+    val isCaptureComplete: Boolean
+        get() = capturedFrameCount == frameCount
+
+    /**
+     * 所有frame都已讀回，GPU上的slot不再需要
+     */
+    val isDrainComplete: Boolean
+        get() = isCaptureComplete && mSlots.all { it == SlotState.FREE }
+
+    val isFinished: Boolean
+        get() = encodedFrameCount == frameCount
+
+    /**
+     * 每個frame呼叫一次，取得擷取這個frame的slot
+     *
+     * @return [NO_SLOT]代表已擷取完成，或沒有空的slot而略過這個frame
+     */
+    fun acquireSlot(): Int {
+        if (isCaptureComplete) return NO_SLOT
+        val slot: Int = mSlots.indexOfFirst { it == SlotState.FREE }
+        if (slot < 0) {
+            skippedFrameCount++
+            return NO_SLOT
+        }
+        mSlots[slot] = SlotState.CAPTURED
+        mSlotFrameIndex[slot] = capturedFrameCount++
+        mCapturedSlots.addLast(slot)
+
+        val slotsInUse: Int = mSlots.count { it != SlotState.FREE }
+        if (slotsInUse > maxSlotsInUse) maxSlotsInUse = slotsInUse
+        return slot
+    }
+
+    /**
+     * 取得下一個要讀回的slot，編碼中的數量已達[maxEncoding]時不讀回
+     *
+     * @return [NO_SLOT]代表沒有可以讀回的slot
+     */
+    fun nextToDrain(): Int {
+        if (encodingCount >= maxEncoding) return NO_SLOT
+        val slot: Int = mCapturedSlots.removeFirstOrNull() ?: return NO_SLOT
+        mSlots[slot] = SlotState.DRAINING
+        encodingCount++
+        return slot
+    }
+
+    fun frameIndexOf(slot: Int): Int = mSlotFrameIndex[slot]
+
+    /**
+     * slot的資料已複製到CPU，可以再用來擷取
+     */
+    fun onDrained(slot: Int) {
+        check(mSlots[slot] == SlotState.DRAINING) { "slot $slot is not draining" }
+        mSlots[slot] = SlotState.FREE
+    }
+
+    /**
+     * 一個frame編碼完成(或失敗)
+     */
+    fun onEncoded() {
+        check(encodingCount > 0) { "no frame is encoding" }
+        encodingCount--
+        encodedFrameCount++
+    }
+}
@@ -0,0 +1,79 @@
+package dev.jimmytai.camera_view.export
+
+import android.hardware.HardwareBuffer
+import android.hardware.SyncFence
+import android.media.Image
+import android.os.Build
+import androidx.annotation.RequiresApi
+import java.nio.ByteBuffer
+import java.util.concurrent.atomic.AtomicBoolean
+
+/**
+ * One processed frame handed out by a [FrameExporter].
+ *
+ * Exactly one of [hardwareBuffer] and [buffer] is non-null, depending on
+ * [FrameExporter.isZeroCopy]. The frame must be closed once the consumer is done with it, the
+ * exporter drops new frames while [dev.jimmytai.camera_view.model.FrameExportConfig.maxImages]
+ * frames are still open.
+ *
+ * @param width         Width of the frame in pixels.
+ * @param height        Height of the frame in pixels.
+ * @param timestampNs   Time the camera captured the frame, in nanoseconds on the
+ *                      [System.nanoTime] time base, the same on both export paths.
+ */
+class ExportedFrame internal constructor(
+    val width: Int,
+    val height: Int,
+    val timestampNs: Long,
+    private val image: Image?,
+    internal val pixels: ByteBuffer?,
+    private val onClose: (ExportedFrame) -> Unit
+) : AutoCloseable {
+    private val mClosed: AtomicBoolean = AtomicBoolean(false)
+
+    private var mHardwareBuffer: HardwareBuffer? = null
+
+    /**
+     * The GPU buffer the frame was rendered into, shared without any copy. It stays valid until
+     * the frame is closed.
+     */
+    val hardwareBuffer: HardwareBuffer?
+        get() {
+            check(!mClosed.get()) { "frame is closed" }
+            if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) return null
+            return mHardwareBuffer ?: image?.hardwareBuffer.also { mHardwareBuffer = it }
+        }
+
+    /**
+     * Fence that signals when the GPU finished rendering into [hardwareBuffer]. Consumers on
+     * another GPU API should wait on it instead of blocking the CPU.
+     */
+    val fence: SyncFence?
+        @RequiresApi(Build.VERSION_CODES.TIRAMISU)
+        get() {
+            check(!mClosed.get()) { "frame is closed" }
+            return image?.fence
+        }
+
+    /**
+     * RGBA8888 pixels, top row first, width * 4 bytes per row. Only set by the read back path.
+     */
+    val buffer: ByteBuffer?
+        get() {
+            check(!mClosed.get()) { "frame is closed" }
+            return pixels
+        }
+
+    /**
+     * Returns the frame to the exporter. Calling it more than once has no effect.
+     */
+    override fun close() {
+        if (!mClosed.compareAndSet(false, true)) return
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.P) {
+            mHardwareBuffer?.close()
+        }
+        mHardwareBuffer = null
+        image?.close()
+        onClose(this)
+    }
+}
@@ -0,0 +1,282 @@
+package dev.jimmytai.camera_view.export
+
+import android.hardware.HardwareBuffer
+import android.media.ImageReader
+import android.os.Build
+import android.os.Handler
+import android.os.SystemClock
+import android.util.Size
+import android.view.Surface
+import androidx.annotation.RequiresApi
+import dev.jimmytai.camera_view.constant.CropScaleType
+import dev.jimmytai.camera_view.constant.TextureFormat
+import dev.jimmytai.camera_view.gles.EglCore
+import dev.jimmytai.camera_view.gles.TextureReader
+import dev.jimmytai.camera_view.glrenderer.GLRenderer
+import dev.jimmytai.camera_view.glthread.FrameReadback
+import dev.jimmytai.camera_view.glthread.GLThread
+import dev.jimmytai.camera_view.glthread.PresentationTimeTracker
+import dev.jimmytai.camera_view.model.FrameExportConfig
+import dev.jimmytai.camera_view.model.OutputSurfaceOption
+import dev.jimmytai.camera_view.utils.DirectBufferPool
+import dev.jimmytai.camera_view.utils.Logger
+import java.nio.ByteBuffer
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.concurrent.atomic.AtomicLong
+import android.graphics.PixelFormat as AndroidPixelFormat
+
+/**
+ * Hands processed frames to consumers outside of the GL thread.
+ *
+ * On Android 10+ the GL thread renders straight into the [HardwareBuffer]s of an [ImageReader],
+ * which are handed out without any copy ([isZeroCopy]). Older devices, or
+ * [FrameExportConfig.forceReadback], fall back to reading the frame back through a pair of
+ * pixel pack buffers (synchronous glReadPixels on GLES2 contexts) into pooled direct buffers.
+ *
+ * Create it through [dev.jimmytai.camera_view.CameraController.addFrameExporter].
+ */
+class FrameExporter internal constructor(
+    private val config: FrameExportConfig,
+    private val handler: Handler,
+    private val listener: Listener
+) {
+    companion object {
+        private val TAG: String = FrameExporter::class.java.simpleName
+    }
+
+    fun interface Listener {
+        /**
+         * Called on the exporter's handler thread. The frame must be closed when done.
+         */
+        fun onFrameExported(frame: ExportedFrame)
+    }
+
+    /**
+     * Whether frames are exported as [HardwareBuffer]s without copy.
+     */
+    val isZeroCopy: Boolean =
+        !config.forceReadback && Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q
+
+    /**
+     * Frames handed to the listener so far.
+     */
+    val exportedFrameCount: Long
+        get() = mExportedFrameCount.get()
+
+    /**
+     * Frames dropped because the consumer still held [FrameExportConfig.maxImages] frames.
+     */
+    val droppedFrameCount: Long
+        get() = mDroppedFrameCount.get()
+
+    /**
+     * 零拷貝路徑在handler執行緒計數，讀取路徑在GLThread計數
+     */
+    private val mExportedFrameCount: AtomicLong = AtomicLong(0L)
+
+    private val mDroppedFrameCount: AtomicLong = AtomicLong(0L)
+
+    /**
+     * 消費端尚未close的frame數量
+     */
+    private val mOpenFrames: AtomicInteger = AtomicInteger(0)
+
+    @Volatile
+    private var mImageReader: ImageReader? = null
+
+    /**
+     * 已從GLThread移除，等所有frame close後釋放ImageReader
+     */
+    @Volatile
+    private var mDetached: Boolean = false
+
+    private val mReadback: Readback = Readback()
+
+    /**
+     * ImageReader的Surface，只有[isZeroCopy]時存在
+     */
+    internal val surface: Surface?
+        get() = mImageReader?.surface
+
+    internal fun attach(glThread: GLThread) {
+        if (isZeroCopy) {
+            val imageReader: ImageReader = Api29Impl.newImageReader(config).also { mImageReader = it }
+            imageReader.setOnImageAvailableListener({ onImageAvailable(it) }, handler)
+            glThread.addOutputSurface(
+                imageReader.surface,
+                OutputSurfaceOption(outputSize = config.outputSize)
+            )
+        } else {
+            glThread.addFrameReadback(mReadback)
+        }
+    }
+
+    /**
+     * 從GLThread移除，ImageReader的Surface在GLThread回報移除後才透過[onSurfaceRemoved]釋放
+     */
+    internal fun detach(glThread: GLThread) {
+        val imageReader: ImageReader? = mImageReader
+        if (imageReader != null) {
+            glThread.removeOutputSurface(imageReader.surface)
+        } else {
+            glThread.removeFrameReadback(mReadback)
+        }
+    }
+
+    /**
+     * GLThread已經釋放ImageReader Surface上的EGL繪製窗口
+     */
+    internal fun onSurfaceRemoved() {
+        handler.post {
+            mDetached = true
+            closeImageReaderIfIdle()
+        }
+    }
+
+    private fun onImageAvailable(imageReader: ImageReader) {
+        if (mDetached) return
+        // ImageReader多保留一個slot，消費端持有maxImages個frame時仍可取出最新的frame丟棄，
+        // 不會讓GLThread在swapBuffers時等待
+        val image = try {
+            imageReader.acquireLatestImage()
+        } catch (e: IllegalStateException) {
+            Logger.w(TAG, "onImageAvailable -> acquire failed", e)
+            null
+        } ?: return
+
+        if (mOpenFrames.get() >= config.maxImages) {
+            image.close()
+            mDroppedFrameCount.incrementAndGet()
+            return
+        }
+        mOpenFrames.incrementAndGet()
+        mExportedFrameCount.incrementAndGet()
+        listener.onFrameExported(
+            ExportedFrame(
+                width = image.width,
+                height = image.height,
+                timestampNs = image.timestamp,
+                image = image,
+                pixels = null,
+                onClose = ::onFrameClosed
+            )
+        )
+    }
+
+    private fun onFrameClosed(frame: ExportedFrame) {
+        mOpenFrames.decrementAndGet()
+        if (!isZeroCopy) {
+            // 讀取路徑的buffer來自DirectBufferPool
+            frame.pixels?.let { DirectBufferPool.shared.release(it) }
+        }
+        if (mDetached) {
+            handler.post { closeImageReaderIfIdle() }
+        }
+    }
+
+    private fun closeImageReaderIfIdle() {
+        if (mOpenFrames.get() > 0) return
+        mImageReader?.close()
+        mImageReader = null
+    }
+
+    /**
+     * GLThread中的讀取流程：縮放裁切至輸出尺寸後透過[TextureReader]讀回
+     */
+    private inner class Readback : FrameReadback, TextureReader.OnPixelsReady {
+        private var mTextureReader: TextureReader? = null
+
+        private val mOutputSize: Size = config.outputSize
+
+        private var mGlVersion: Int = 2
+
+        /**
+         * 與零拷貝路徑的ImageReader相同，將相機timestamp轉換為System.nanoTime時基的presentation time
+         */
+        private val mPresentationTimeTracker: PresentationTimeTracker = PresentationTimeTracker()
+
+        override fun onAttach(eglCore: EglCore) {
+            mGlVersion = eglCore.glVersion
+            Logger.d(TAG, "readback attached, GLES $mGlVersion")
+        }
+
+        override fun onFrame(
+            renderer: GLRenderer,
+            textureId: Int,
+            textureSize: Size,
+            timestampNs: Long
+        ) {
+            if (mOpenFrames.get() >= config.maxImages) {
+                mDroppedFrameCount.incrementAndGet()
+                return
+            }
+            val textureReader: TextureReader = mTextureReader
+                ?: TextureReader(renderer.stateCache, mGlVersion).also { mTextureReader = it }
+
+            val transition: GLRenderer.Transition = renderer.transitionCache.crop(
+                scaleType = CropScaleType.CENTER_CROP,
+                rotation = 0,
+                textureSize = textureSize,
+                surfaceSize = mOutputSize
+            )
+            val outputTextureId: Int = renderer.transferTextureToTexture(
+                inputTextureId = textureId,
+                inputTextureFormat = TextureFormat.Texture2D,
+                outputTextureFormat = TextureFormat.Texture2D,
+                size = mOutputSize,
+                transition = transition
+            )
+            val presentationTimeNs: Long = mPresentationTimeTracker.next(
+                timestampNs,
+                System.nanoTime(),
+                SystemClock.elapsedRealtimeNanos()
+            )
+            textureReader.read(
+                outputTextureId, mOutputSize.width, mOutputSize.height, presentationTimeNs, this
+            )
+        }
+
+        override fun onPixelsReady(pixels: ByteBuffer, width: Int, height: Int, timestampNs: Long) {
+            // PBO延遲一個frame，交付時再檢查一次
+            if (mOpenFrames.get() >= config.maxImages) {
+                mDroppedFrameCount.incrementAndGet()
+                return
+            }
+            val size: Int = width * height * 4
+            val copy: ByteBuffer = DirectBufferPool.shared.acquire(size)
+            pixels.position(0)
+            pixels.limit(size)
+            copy.put(pixels)
+            copy.position(0)
+
+            mOpenFrames.incrementAndGet()
+            mExportedFrameCount.incrementAndGet()
+            val frame = ExportedFrame(
+                width = width,
+                height = height,
+                timestampNs = timestampNs,
+                image = null,
+                pixels = copy,
+                onClose = ::onFrameClosed
+            )
+            handler.post { listener.onFrameExported(frame) }
+        }
+
+        override fun onDetach() {
+            mTextureReader?.release()
+            mTextureReader = null
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.Q)
+    private object Api29Impl {
+        fun newImageReader(config: FrameExportConfig): ImageReader =
+            ImageReader.newInstance(
+                config.outputSize.width,
+                config.outputSize.height,
+                AndroidPixelFormat.RGBA_8888,
+                config.maxImages + 1,
+                config.usage or HardwareBuffer.USAGE_GPU_COLOR_OUTPUT
+            )
+    }
+}
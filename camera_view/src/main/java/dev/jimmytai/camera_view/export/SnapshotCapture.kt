@@ -0,0 +1,181 @@
+package dev.jimmytai.camera_view.export
+
+import android.util.Size
+import androidx.concurrent.futures.CallbackToFutureAdapter
+import com.google.common.util.concurrent.ListenableFuture
+import dev.jimmytai.camera_view.constant.CropScaleType
+import dev.jimmytai.camera_view.constant.SnapshotFormat
+import dev.jimmytai.camera_view.constant.TextureFormat
+import dev.jimmytai.camera_view.gles.EglCore
+import dev.jimmytai.camera_view.gles.TextureReader
+import dev.jimmytai.camera_view.glrenderer.GLRenderer
+import dev.jimmytai.camera_view.glthread.FrameReadback
+import dev.jimmytai.camera_view.model.Snapshot
+import dev.jimmytai.camera_view.utils.DirectBufferPool
+import dev.jimmytai.camera_view.utils.Logger
+import java.io.File
+import java.nio.ByteBuffer
+
+/**
+ * 拍照流程：在GLThread中將處理後的frame讀回，交給背景的編碼執行緒壓縮成圖檔
+ *
+ * GLES3時透過[TextureReader]的PBO讀取，第N個frame排入讀取、第N+1個frame才map回CPU，
+ * GLThread不會等待GPU，預覽的frame time不受拍照影響；GLES2退回同步讀取。
+ * 讀回的資料複製到DirectBufferPool的buffer後就交給[SnapshotEncoder]，GLThread不做任何壓縮
+ *
+ * @param cacheDir HEIF透過MediaMuxer寫檔，需要暫存的目錄
+ */
+internal class SnapshotCapture(private val cacheDir: File) : FrameReadback {
+    companion object {
+        private val TAG: String = SnapshotCapture::class.java.simpleName
+    }
+
+    private class Request(
+        val size: Size?,
+        val format: SnapshotFormat,
+        val quality: Int,
+        val completer: CallbackToFutureAdapter.Completer<Snapshot>
+    )
+
+    private val mLock = Any()
+
+    /**
+     * 等待GLThread讀取的請求
+     */
+    private val mRequests: ArrayDeque<Request> = ArrayDeque()
+
+    /**
+     * 已排入PBO、等待下一個frame map的請求
+     */
+    private var mPending: Request? = null
+
+    private var mDetached: Boolean = false
+
+    /**
+     * 已從GLThread移除或被捨棄，之後的請求都會失敗，需要建立新的SnapshotCapture
+     */
+    val isDetached: Boolean
+        get() = synchronized(mLock) { mDetached }
+
+    private var mTextureReader: TextureReader? = null
+
+    private var mGlVersion: Int = 2
+
+    /**
+     * 排入下一個frame的拍照請求
+     *
+     * @param size null代表使用處理後texture的尺寸
+     */
+    fun request(size: Size?, format: SnapshotFormat, quality: Int): ListenableFuture<Snapshot> {
+        require(quality in 0..100) { "quality must be in 0..100, got $quality" }
+        return CallbackToFutureAdapter.getFuture { completer ->
+            val request = Request(size, format, quality, completer)
+            val accepted: Boolean = synchronized(mLock) {
+                if (!mDetached) mRequests.addLast(request)
+                !mDetached
+            }
+            if (!accepted) {
+                completer.setException(IllegalStateException("GLThread is released"))
+            }
+            "takeSnapshot"
+        }
+    }
+
+    override fun onAttach(eglCore: EglCore) {
+        mGlVersion = eglCore.glVersion
+    }
+
+    override fun onFrame(
+        renderer: GLRenderer,
+        textureId: Int,
+        textureSize: Size,
+        timestampNs: Long
+    ) {
+        // 先交付上一個frame排入PBO的請求，再處理新的請求，避免TextureReader尺寸改變時丟棄資料
+        mPending?.let { pending ->
+            mPending = null
+            mTextureReader?.flush(object : TextureReader.OnPixelsReady {
+                override fun onPixelsReady(
+                    pixels: ByteBuffer, width: Int, height: Int, timestampNs: Long
+                ) {
+                    submit(pending, pixels, width, height, timestampNs)
+                }
+
+                override fun onReadFailed(timestampNs: Long) {
+                    pending.completer.setException(
+                        IllegalStateException("failed to map the pixel buffer of the snapshot")
+                    )
+                }
+            })
+        }
+
+        val request: Request = synchronized(mLock) { mRequests.removeFirstOrNull() } ?: return
+        val outputSize: Size = request.size ?: textureSize
+        val textureReader: TextureReader = mTextureReader
+            ?: TextureReader(renderer.stateCache, mGlVersion).also { mTextureReader = it }
+
+        val transition: GLRenderer.Transition = renderer.transitionCache.crop(
+            scaleType = CropScaleType.CENTER_CROP,
+            rotation = 0,
+            textureSize = textureSize,
+            surfaceSize = outputSize
+        )
+        val outputTextureId: Int = renderer.transferTextureToTexture(
+            inputTextureId = textureId,
+            inputTextureFormat = TextureFormat.Texture2D,
+            outputTextureFormat = TextureFormat.Texture2D,
+            size = outputSize,
+            transition = transition
+        )
+        textureReader.read(
+            outputTextureId, outputSize.width, outputSize.height, timestampNs
+        ) { pixels, width, height, frameTimestampNs ->
+            submit(request, pixels, width, height, frameTimestampNs)
+        }
+        if (textureReader.isAsynchronous) mPending = request
+    }
+
+    override fun onDetach() {
+        mTextureReader?.release()
+        mTextureReader = null
+
+        mPending?.completer?.setException(IllegalStateException("GLThread is released"))
+        mPending = null
+        // 已交給編碼執行緒的請求仍會完成
+        onDiscarded()
+    }
+
+    override fun onDiscarded() {
+        val requests: List<Request> = synchronized(mLock) {
+            mDetached = true
+            mRequests.toList().also { mRequests.clear() }
+        }
+        val error = IllegalStateException("GLThread is released")
+        requests.forEach { it.completer.setException(error) }
+    }
+
+    /**
+     * 在GLThread中複製讀回的資料，壓縮交給編碼執行緒
+     */
+    private fun submit(request: Request, pixels: ByteBuffer, width: Int, height: Int, timestampNs: Long) {
+        val size: Int = width * height * 4
+        val copy: ByteBuffer = DirectBufferPool.shared.acquire(size)
+        pixels.position(0)
+        pixels.limit(size)
+        copy.put(pixels)
+        copy.position(0)
+        SnapshotEncoder.execute { encode(request, copy, width, height, timestampNs) }
+    }
+
+    private fun encode(request: Request, pixels: ByteBuffer, width: Int, height: Int, timestampNs: Long) {
+        try {
+            val data: ByteArray = SnapshotEncoder.encode(
+                pixels, width, height, request.format, request.quality, cacheDir
+            )
+            request.completer.set(Snapshot(data, width, height, request.format, timestampNs))
+        } catch (e: Exception) {
+            Logger.e(TAG, "encode ${request.format} snapshot failed", e)
+            request.completer.setException(e)
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package dev.jimmytai.camera_view.export
+
+import android.graphics.Bitmap
+import android.os.Build
+import androidx.annotation.RequiresApi
+import androidx.heifwriter.HeifWriter
+import dev.jimmytai.camera_view.constant.SnapshotFormat
+import dev.jimmytai.camera_view.utils.DirectBufferPool
+import java.io.ByteArrayOutputStream
+import java.io.File
+import java.nio.ByteBuffer
+import java.util.concurrent.LinkedBlockingQueue
+import java.util.concurrent.ThreadFactory
+import java.util.concurrent.ThreadPoolExecutor
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/**
+ * 拍照與連拍共用的背景編碼執行緒
+ *
+ * 執行緒閒置一段時間後自動結束，不需要跟著CameraController釋放
+ */
+internal object SnapshotEncoder {
+    /**
+     * 編碼執行緒數量，連拍時可以同時壓縮，但不與預覽搶太多CPU
+     */
+    private val ENCODER_THREAD_COUNT: Int =
+        Runtime.getRuntime().availableProcessors().coerceIn(1, 2)
+
+    private const val KEEP_ALIVE_SECONDS: Long = 5L
+
+    private const val HEIF_TIMEOUT_MS: Long = 5_000L
+
+    private val mThreadIndex: AtomicInteger = AtomicInteger(0)
+
+    private val mExecutor: ThreadPoolExecutor = ThreadPoolExecutor(
+        ENCODER_THREAD_COUNT,
+        ENCODER_THREAD_COUNT,
+        KEEP_ALIVE_SECONDS,
+        TimeUnit.SECONDS,
+        LinkedBlockingQueue(),
+        ThreadFactory {
+            Thread(it, "SnapshotEncoder-${mThreadIndex.incrementAndGet()}").apply {
+                priority = Thread.NORM_PRIORITY - 1
+            }
+        }
+    ).apply {
+        allowCoreThreadTimeOut(true)
+    }
+
+    fun execute(task: Runnable) {
+        mExecutor.execute(task)
+    }
+
+    /**
+     * 在編碼執行緒中呼叫
+     *
+     * @param pixels    RGBA，由上往下逐列排列，來自DirectBufferPool，不論成功與否都會在此歸還
+     * @param cacheDir  HEIF透過MediaMuxer寫檔，需要暫存的目錄
+     */
+    fun encode(
+        pixels: ByteBuffer,
+        width: Int,
+        height: Int,
+        format: SnapshotFormat,
+        quality: Int,
+        cacheDir: File
+    ): ByteArray {
+        val bitmap: Bitmap = try {
+            // ARGB_8888在記憶體中的排列即為RGBA
+            Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888).apply {
+                pixels.position(0)
+                copyPixelsFromBuffer(pixels)
+            }
+        } finally {
+            DirectBufferPool.shared.release(pixels)
+        }
+        try {
+            return when (format) {
+                SnapshotFormat.JPEG -> compress(bitmap, Bitmap.CompressFormat.JPEG, quality)
+                SnapshotFormat.WEBP -> compress(bitmap, webpFormat(), quality)
+                SnapshotFormat.HEIF -> {
+                    if (Build.VERSION.SDK_INT < Build.VERSION_CODES.P) {
+                        throw UnsupportedOperationException("HEIF requires Android 9")
+                    }
+                    Api28Impl.encodeHeif(bitmap, quality, cacheDir)
+                }
+            }
+        } finally {
+            bitmap.recycle()
+        }
+    }
+
+    private fun compress(bitmap: Bitmap, format: Bitmap.CompressFormat, quality: Int): ByteArray {
+        val stream = ByteArrayOutputStream(bitmap.width * bitmap.height / 4)
+        check(bitmap.compress(format, quality, stream)) { "Bitmap.compress($format) failed" }
+        return stream.toByteArray()
+    }
+
+    @Suppress("DEPRECATION")
+    private fun webpFormat(): Bitmap.CompressFormat =
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            Bitmap.CompressFormat.WEBP_LOSSY
+        } else {
+            Bitmap.CompressFormat.WEBP
+        }
+
+    @RequiresApi(Build.VERSION_CODES.P)
+    private object Api28Impl {
+        fun encodeHeif(bitmap: Bitmap, quality: Int, cacheDir: File): ByteArray {
+            val file: File = File.createTempFile("snapshot", ".heic", cacheDir)
+            try {
+                val writer: HeifWriter = HeifWriter.Builder(
+                    file.absolutePath, bitmap.width, bitmap.height, HeifWriter.INPUT_MODE_BITMAP
+                )
+                    .setQuality(quality)
+                    .setMaxImages(1)
+                    .build()
+                try {
+                    writer.start()
+                    writer.addBitmap(bitmap)
+                    writer.stop(HEIF_TIMEOUT_MS)
+                } finally {
+                    writer.close()
+                }
+                return file.readBytes()
+            } finally {
+                file.delete()
+            }
+        }
+    }
+}
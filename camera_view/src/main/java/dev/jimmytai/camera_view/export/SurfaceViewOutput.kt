@@ -0,0 +1,85 @@
+package dev.jimmytai.camera_view.export
+
+import android.util.Size
+import android.view.Surface
+import android.view.SurfaceHolder
+import android.view.SurfaceView
+import android.view.View
+import dev.jimmytai.camera_view.glthread.GLThread
+import dev.jimmytai.camera_view.model.OutputSurfaceOption
+import dev.jimmytai.camera_view.utils.Logger
+
+/**
+ * 另一個CameraView作為已運作中GLThread的顯示窗口，與主畫面共用GLThread、EGLContext與處理後的texture，
+ * 每個frame只多一次繪製與swap
+ *
+ * Surface建立/改變尺寸時加入GLThread，銷毀時等待GLThread釋放EGL繪製窗口後才返回，
+ * SurfaceView不會在EGL仍使用Surface時銷毀它
+ *
+ * @param detachingOutputs  GLThread回報輸出窗口移除時呼叫的動作，key為Surface的hash code
+ */
+internal class SurfaceViewOutput(
+    private val surfaceView: SurfaceView,
+    private val glThread: GLThread,
+    private val detachingOutputs: MutableMap<Int, () -> Unit>
+) : ViewOutput, SurfaceHolder.Callback {
+    companion object {
+        private val TAG: String = SurfaceViewOutput::class.java.simpleName
+    }
+
+    /**
+     * 已加入GLThread的Surface
+     */
+    private var mSurface: Surface? = null
+
+    private var mSize: Size? = null
+
+    override val view: View
+        get() = surfaceView
+
+    override fun attach() {
+        val holder: SurfaceHolder = surfaceView.holder
+        holder.addCallback(this)
+        // SurfaceView已經顯示時不會再收到surfaceCreated/surfaceChanged
+        if (holder.surface?.isValid == true) {
+            val frame = holder.surfaceFrame
+            addSurface(holder.surface, Size(frame.width(), frame.height()))
+        }
+    }
+
+    override fun detach() {
+        surfaceView.holder.removeCallback(this)
+        removeSurface()
+    }
+
+    override fun surfaceCreated(holder: SurfaceHolder) {
+        Logger.d(TAG, "surfaceCreated")
+    }
+
+    override fun surfaceChanged(holder: SurfaceHolder, format: Int, width: Int, height: Int) {
+        Logger.d(TAG, "surfaceChanged -> width: $width, height: $height")
+        val size = Size(width, height)
+        if (mSurface === holder.surface && mSize == size) return
+        // 輸出尺寸在加入時決定，尺寸改變時重新加入
+        removeSurface()
+        addSurface(holder.surface, size)
+    }
+
+    override fun surfaceDestroyed(holder: SurfaceHolder) {
+        Logger.d(TAG, "surfaceDestroyed")
+        removeSurface()
+    }
+
+    private fun addSurface(surface: Surface, size: Size) {
+        glThread.addOutputSurface(surface, OutputSurfaceOption(outputSize = size, isDisplay = true))
+        mSurface = surface
+        mSize = size
+    }
+
+    private fun removeSurface() {
+        val surface: Surface = mSurface ?: return
+        mSurface = null
+        mSize = null
+        glThread.removeOutputSurfaceAndWait(surface, detachingOutputs)
+    }
+}
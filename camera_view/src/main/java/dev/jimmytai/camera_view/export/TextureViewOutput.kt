@@ -0,0 +1,84 @@
+package dev.jimmytai.camera_view.export
+
+import android.graphics.SurfaceTexture
+import android.util.Size
+import android.view.Surface
+import android.view.TextureView
+import android.view.View
+import dev.jimmytai.camera_view.glthread.GLThread
+import dev.jimmytai.camera_view.model.OutputSurfaceOption
+import dev.jimmytai.camera_view.utils.Logger
+
+/**
+ * 另一個使用TextureView的CameraView作為已運作中GLThread的顯示窗口，與[SurfaceViewOutput]相同
+ *
+ * TextureView銷毀SurfaceTexture前等待GLThread釋放EGL繪製窗口
+ *
+ * @param detachingOutputs  GLThread回報輸出窗口移除時呼叫的動作，key為Surface的hash code
+ */
+internal class TextureViewOutput(
+    private val textureView: TextureView,
+    private val glThread: GLThread,
+    private val detachingOutputs: MutableMap<Int, () -> Unit>
+) : ViewOutput, TextureView.SurfaceTextureListener {
+    companion object {
+        private val TAG: String = TextureViewOutput::class.java.simpleName
+    }
+
+    /**
+     * 已加入GLThread的Surface，由TextureView的SurfaceTexture建立
+     */
+    private var mSurface: Surface? = null
+
+    override val view: View
+        get() = textureView
+
+    override fun attach() {
+        textureView.surfaceTextureListener = this
+        // TextureView已經顯示時不會再收到onSurfaceTextureAvailable
+        val surfaceTexture: SurfaceTexture? = textureView.surfaceTexture
+        if (textureView.isAvailable && surfaceTexture != null) {
+            addSurface(surfaceTexture, Size(textureView.width, textureView.height))
+        }
+    }
+
+    override fun detach() {
+        textureView.surfaceTextureListener = null
+        removeSurface()
+    }
+
+    override fun onSurfaceTextureAvailable(surface: SurfaceTexture, width: Int, height: Int) {
+        Logger.d(TAG, "onSurfaceTextureAvailable -> width: $width, height: $height")
+        addSurface(surface, Size(width, height))
+    }
+
+    override fun onSurfaceTextureSizeChanged(surface: SurfaceTexture, width: Int, height: Int) {
+        Logger.d(TAG, "onSurfaceTextureSizeChanged -> width: $width, height: $height")
+        // 輸出尺寸在加入時決定，尺寸改變時重新加入
+        removeSurface()
+        addSurface(surface, Size(width, height))
+    }
+
+    override fun onSurfaceTextureDestroyed(surface: SurfaceTexture): Boolean {
+        Logger.d(TAG, "onSurfaceTextureDestroyed")
+        removeSurface()
+        // GLThread已釋放EGL繪製窗口，由TextureView釋放SurfaceTexture
+        return true
+    }
+
+    override fun onSurfaceTextureUpdated(surface: SurfaceTexture) {
+    }
+
+    private fun addSurface(surfaceTexture: SurfaceTexture, size: Size) {
+        val surface = Surface(surfaceTexture)
+        glThread.addOutputSurface(surface, OutputSurfaceOption(outputSize = size, isDisplay = true))
+        mSurface = surface
+    }
+
+    private fun removeSurface() {
+        val surface: Surface = mSurface ?: return
+        mSurface = null
+        glThread.removeOutputSurfaceAndWait(surface, detachingOutputs)
+        surface.release()
+    }
+}
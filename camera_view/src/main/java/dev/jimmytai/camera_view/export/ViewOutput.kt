@@ -0,0 +1,43 @@
+package dev.jimmytai.camera_view.export
+
+import android.view.Surface
+import android.view.View
+import dev.jimmytai.camera_view.glthread.GLThread
+import dev.jimmytai.camera_view.utils.Logger
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/**
+ * 已運作中GLThread的額外顯示窗口(SurfaceView、TextureView)
+ */
+internal interface ViewOutput {
+    /**
+     * 繪製的SurfaceView或TextureView
+     */
+    val view: View
+
+    fun attach()
+
+    fun detach()
+}
+
+// 等待GLThread釋放EGL繪製窗口的上限，GLThread卡住時不讓主執行緒ANR
+private const val REMOVE_TIMEOUT_MS: Long = 500L
+
+/**
+ * 從GLThread移除輸出窗口，等待GLThread釋放EGL繪製窗口後才返回，之後可以安全地銷毀[surface]
+ *
+ * @param detachingOutputs  GLThread回報輸出窗口移除時呼叫的動作，key為Surface的hash code
+ */
+internal fun GLThread.removeOutputSurfaceAndWait(
+    surface: Surface,
+    detachingOutputs: MutableMap<Int, () -> Unit>
+) {
+    val latch = CountDownLatch(1)
+    detachingOutputs[surface.hashCode()] = { latch.countDown() }
+    removeOutputSurface(surface)
+    if (!latch.await(REMOVE_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+        Logger.w(GLThread.TAG, "removeOutputSurface -> GLThread did not release the surface in time")
+        detachingOutputs.remove(surface.hashCode())
+    }
+}
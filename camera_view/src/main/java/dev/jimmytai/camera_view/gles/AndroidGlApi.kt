@@ -0,0 +1,219 @@
+package dev.jimmytai.camera_view.gles
+
+import android.opengl.GLES20
+import android.opengl.GLES30
+import java.nio.Buffer
+
+/**
+ * 直接呼叫android.opengl.GLES20/GLES30的[GlApi]
+ */
+object AndroidGlApi : GlApi {
+    override fun glActiveTexture(texture: Int) {
+        GLES20.glActiveTexture(texture)
+    }
+
+    override fun glAttachShader(program: Int, shader: Int) {
+        GLES20.glAttachShader(program, shader)
+    }
+
+    override fun glBindFramebuffer(target: Int, framebuffer: Int) {
+        GLES20.glBindFramebuffer(target, framebuffer)
+    }
+
+    override fun glBindTexture(target: Int, texture: Int) {
+        GLES20.glBindTexture(target, texture)
+    }
+
+    override fun glCheckFramebufferStatus(target: Int): Int =
+        GLES20.glCheckFramebufferStatus(target)
+
+    override fun glClear(mask: Int) {
+        GLES20.glClear(mask)
+    }
+
+    override fun glClearColor(red: Float, green: Float, blue: Float, alpha: Float) {
+        GLES20.glClearColor(red, green, blue, alpha)
+    }
+
+    override fun glCompileShader(shader: Int) {
+        GLES20.glCompileShader(shader)
+    }
+
+    override fun glCopyTexSubImage2D(
+        target: Int, level: Int, xoffset: Int, yoffset: Int, x: Int, y: Int, width: Int, height: Int
+    ) {
+        GLES20.glCopyTexSubImage2D(target, level, xoffset, yoffset, x, y, width, height)
+    }
+
+    override fun glCreateProgram(): Int =
+        GLES20.glCreateProgram()
+
+    override fun glCreateShader(type: Int): Int =
+        GLES20.glCreateShader(type)
+
+    override fun glDeleteFramebuffers(n: Int, framebuffers: IntArray, offset: Int) {
+        GLES20.glDeleteFramebuffers(n, framebuffers, offset)
+    }
+
+    override fun glDeleteProgram(program: Int) {
+        GLES20.glDeleteProgram(program)
+    }
+
+    override fun glDeleteShader(shader: Int) {
+        GLES20.glDeleteShader(shader)
+    }
+
+    override fun glDeleteTextures(n: Int, textures: IntArray, offset: Int) {
+        GLES20.glDeleteTextures(n, textures, offset)
+    }
+
+    override fun glDisableVertexAttribArray(index: Int) {
+        GLES20.glDisableVertexAttribArray(index)
+    }
+
+    override fun glDrawArrays(mode: Int, first: Int, count: Int) {
+        GLES20.glDrawArrays(mode, first, count)
+    }
+
+    override fun glEnableVertexAttribArray(index: Int) {
+        GLES20.glEnableVertexAttribArray(index)
+    }
+
+    override fun glFramebufferTexture2D(
+        target: Int, attachment: Int, textarget: Int, texture: Int, level: Int
+    ) {
+        GLES20.glFramebufferTexture2D(target, attachment, textarget, texture, level)
+    }
+
+    override fun glGenFramebuffers(n: Int, framebuffers: IntArray, offset: Int) {
+        GLES20.glGenFramebuffers(n, framebuffers, offset)
+    }
+
+    override fun glGenTextures(n: Int, textures: IntArray, offset: Int) {
+        GLES20.glGenTextures(n, textures, offset)
+    }
+
+    override fun glGetAttribLocation(program: Int, name: String): Int =
+        GLES20.glGetAttribLocation(program, name)
+
+    override fun glGetError(): Int =
+        GLES20.glGetError()
+
+    override fun glGetIntegerv(pname: Int, params: IntArray, offset: Int) {
+        GLES20.glGetIntegerv(pname, params, offset)
+    }
+
+    override fun glGetProgramInfoLog(program: Int): String =
+        GLES20.glGetProgramInfoLog(program)
+
+    override fun glGetProgramiv(program: Int, pname: Int, params: IntArray, offset: Int) {
+        GLES20.glGetProgramiv(program, pname, params, offset)
+    }
+
+    override fun glGetShaderInfoLog(shader: Int): String =
+        GLES20.glGetShaderInfoLog(shader)
+
+    override fun glGetShaderiv(shader: Int, pname: Int, params: IntArray, offset: Int) {
+        GLES20.glGetShaderiv(shader, pname, params, offset)
+    }
+
+    override fun glGetString(name: Int): String? =
+        GLES20.glGetString(name)
+
+    override fun glGetUniformLocation(program: Int, name: String): Int =
+        GLES20.glGetUniformLocation(program, name)
+
+    override fun glIsTexture(texture: Int): Boolean =
+        GLES20.glIsTexture(texture)
+
+    override fun glLinkProgram(program: Int) {
+        GLES20.glLinkProgram(program)
+    }
+
+    override fun glReadPixels(
+        x: Int, y: Int, width: Int, height: Int, format: Int, type: Int, pixels: Buffer
+    ) {
+        GLES20.glReadPixels(x, y, width, height, format, type, pixels)
+    }
+
+    override fun glShaderSource(shader: Int, string: String) {
+        GLES20.glShaderSource(shader, string)
+    }
+
+    override fun glTexImage2D(
+        target: Int, level: Int, internalformat: Int, width: Int, height: Int, border: Int,
+        format: Int, type: Int, pixels: Buffer?
+    ) {
+        GLES20.glTexImage2D(
+            target, level, internalformat, width, height, border, format, type, pixels
+        )
+    }
+
+    override fun glTexParameterf(target: Int, pname: Int, param: Float) {
+        GLES20.glTexParameterf(target, pname, param)
+    }
+
+    override fun glTexParameteri(target: Int, pname: Int, param: Int) {
+        GLES20.glTexParameteri(target, pname, param)
+    }
+
+    override fun glUniform1f(location: Int, x: Float) {
+        GLES20.glUniform1f(location, x)
+    }
+
+    override fun glUniform1i(location: Int, x: Int) {
+        GLES20.glUniform1i(location, x)
+    }
+
+    override fun glUniform2f(location: Int, x: Float, y: Float) {
+        GLES20.glUniform2f(location, x, y)
+    }
+
+    override fun glUniformMatrix4fv(
+        location: Int, count: Int, transpose: Boolean, value: FloatArray, offset: Int
+    ) {
+        GLES20.glUniformMatrix4fv(location, count, transpose, value, offset)
+    }
+
+    override fun glUseProgram(program: Int) {
+        GLES20.glUseProgram(program)
+    }
+
+    override fun glVertexAttribPointer(
+        indx: Int, size: Int, type: Int, normalized: Boolean, stride: Int, ptr: Buffer
+    ) {
+        GLES20.glVertexAttribPointer(indx, size, type, normalized, stride, ptr)
+    }
+
+    override fun glViewport(x: Int, y: Int, width: Int, height: Int) {
+        GLES20.glViewport(x, y, width, height)
+    }
+
+    override fun glBindBuffer(target: Int, buffer: Int) {
+        GLES30.glBindBuffer(target, buffer)
+    }
+
+    override fun glBufferData(target: Int, size: Int, data: Buffer?, usage: Int) {
+        GLES30.glBufferData(target, size, data, usage)
+    }
+
+    override fun glDeleteBuffers(n: Int, buffers: IntArray, offset: Int) {
+        GLES30.glDeleteBuffers(n, buffers, offset)
+    }
+
+    override fun glGenBuffers(n: Int, buffers: IntArray, offset: Int) {
+        GLES30.glGenBuffers(n, buffers, offset)
+    }
+
+    override fun glMapBufferRange(target: Int, offset: Int, length: Int, access: Int): Buffer? =
+        GLES30.glMapBufferRange(target, offset, length, access)
+
+    override fun glReadPixels(
+        x: Int, y: Int, width: Int, height: Int, format: Int, type: Int, offset: Int
+    ) {
+        GLES30.glReadPixels(x, y, width, height, format, type, offset)
+    }
+
+    override fun glUnmapBuffer(target: Int): Boolean =
+        GLES30.glUnmapBuffer(target)
+}
@@ -56,6 +56,12 @@ public final class EglCore {
     // Android-specific extension.
     private static final int EGL_RECORDABLE_ANDROID = 0x3142;
 
+    /**
+     * Surface attribute of EGL_ANDROID_front_buffer_auto_refresh: the display keeps showing the
+     * single buffer of the surface without waiting for eglSwapBuffers.
+     */
+    public static final int EGL_FRONT_BUFFER_AUTO_REFRESH_ANDROID = 0x314C;
+
     private EGLDisplay mEGLDisplay = EGL14.EGL_NO_DISPLAY;
     private EGLContext mEGLContext = EGL14.EGL_NO_CONTEXT;
     private EGLConfig mEGLConfig = null;
@@ -320,6 +326,41 @@ public final class EglCore {
         EGLExt.eglPresentationTimeANDROID(mEGLDisplay, eglSurface, nsecs);
     }
 
+    /**
+     * Sets the minimum number of vsyncs between buffer swaps of the current draw surface.
+     * 0 lets eglSwapBuffers return without waiting for the display.
+     *
+     * @return false on failure
+     */
+    public boolean setSwapInterval(int interval) {
+        return EGL14.eglSwapInterval(mEGLDisplay, interval);
+    }
+
+    /**
+     * Sets an attribute of the specified surface.
+     *
+     * @return false on failure
+     */
+    public boolean setSurfaceAttrib(EGLSurface eglSurface, int attribute, int value) {
+        return EGL14.eglSurfaceAttrib(mEGLDisplay, eglSurface, attribute, value);
+    }
+
+    /**
+     * Returns true if the display supports the named EGL extension.
+     */
+    public boolean isExtensionSupported(String extension) {
+        String extensions = queryString(EGL14.EGL_EXTENSIONS);
+        if (extensions == null) {
+            return false;
+        }
+        for (String name : extensions.split(" ")) {
+            if (name.equals(extension)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns true if our context and the specified surface are current.
      */
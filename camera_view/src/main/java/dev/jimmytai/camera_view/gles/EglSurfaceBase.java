@@ -28,6 +28,7 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 
+import dev.jimmytai.camera_view.utils.DirectBufferPool;
 import dev.jimmytai.camera_view.utils.Logger;
 
 /*
@@ -39,7 +40,7 @@ import dev.jimmytai.camera_view.utils.Logger;
  * <p>
  * There can be multiple surfaces associated with a single context.
  */
-public class EglSurfaceBase {
+public class EglSurfaceBase implements EglRenderTarget {
     protected static final String TAG = GlUtil.TAG;
 
     // EglCore object we're associated with.  It may be associated with multiple surfaces.
@@ -118,9 +119,19 @@ public class EglSurfaceBase {
         mWidth = mHeight = -1;
     }
 
+    /**
+     * Releases any resources associated with the surface.
+     * <p>
+     * Does not require that the surface's EGL context be current.
+     */
+    public void release() {
+        releaseEglSurface();
+    }
+
     /**
      * Makes our EGL context and surface current.
      */
+    @Override
     public void makeCurrent() {
         mEglCore.makeCurrent(mEGLSurface);
     }
@@ -155,6 +166,15 @@ public class EglSurfaceBase {
         mEglCore.setPresentationTime(mEGLSurface, nsecs);
     }
 
+    /**
+     * Sets an attribute of the EGL surface.
+     *
+     * @return false on failure
+     */
+    public boolean setSurfaceAttrib(int attribute, int value) {
+        return mEglCore.setSurfaceAttrib(mEGLSurface, attribute, value);
+    }
+
     /**
      * Saves the EGL surface to a file.
      * <p>
@@ -170,8 +190,8 @@ public class EglSurfaceBase {
         // constructor that takes an int[] wants little-endian ARGB (blue/red swapped), the
         // Bitmap "copy pixels" method wants the same format GL provides.
         //
-        // Ideally we'd have some way to re-use the ByteBuffer, especially if we're calling
-        // here often.
+        // The ByteBuffer is borrowed from DirectBufferPool so calling here often does not
+        // allocate a new direct buffer every time.
         //
         // Making this even more interesting is the upside-down nature of GL, which means
         // our output will look upside down relative to what appears on screen if the
@@ -181,21 +201,22 @@ public class EglSurfaceBase {
 
         int width = getWidth();
         int height = getHeight();
-        ByteBuffer buf = ByteBuffer.allocateDirect(width * height * 4);
-        buf.order(ByteOrder.LITTLE_ENDIAN);
-        GLES20.glReadPixels(0, 0, width, height,
-                GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buf);
-        checkGlError("glReadPixels");
-        buf.rewind();
-
+        ByteBuffer buf = DirectBufferPool.getShared().acquire(width * height * 4);
         BufferedOutputStream bos = null;
         try {
+            buf.order(ByteOrder.LITTLE_ENDIAN);
+            GLES20.glReadPixels(0, 0, width, height,
+                    GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, buf);
+            checkGlError("glReadPixels");
+            buf.rewind();
+
             bos = new BufferedOutputStream(new FileOutputStream(filename));
             Bitmap bmp = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
             bmp.copyPixelsFromBuffer(buf);
             bmp.compress(Bitmap.CompressFormat.PNG, 90, bos);
             bmp.recycle();
         } finally {
+            DirectBufferPool.getShared().release(buf);
             if (bos != null) bos.close();
         }
         Logger.d(TAG, "Saved " + width + "x" + height + " frame as '" + filename + "'", null);
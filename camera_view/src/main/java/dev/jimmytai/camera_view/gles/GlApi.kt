@@ -0,0 +1,137 @@
+package dev.jimmytai.camera_view.gles
+
+import java.nio.Buffer
+
+/**
+ * 渲染流程使用到的GLES呼叫，簽名與android.opengl.GLES20/GLES30相同
+ *
+ * 透過[GlStateCache.gl]取得，正式環境為[AndroidGlApi]；
+ * JVM測試可以換成記錄呼叫的實作，在沒有裝置的情況下驗證每個frame的draw、FBO配置與讀取量
+ */
+interface GlApi {
+    // region GLES20
+
+    fun glActiveTexture(texture: Int)
+
+    fun glAttachShader(program: Int, shader: Int)
+
+    fun glBindFramebuffer(target: Int, framebuffer: Int)
+
+    fun glBindTexture(target: Int, texture: Int)
+
+    fun glCheckFramebufferStatus(target: Int): Int
+
+    fun glClear(mask: Int)
+
+    fun glClearColor(red: Float, green: Float, blue: Float, alpha: Float)
+
+    fun glCompileShader(shader: Int)
+
+    fun glCopyTexSubImage2D(
+        target: Int, level: Int, xoffset: Int, yoffset: Int, x: Int, y: Int, width: Int, height: Int
+    )
+
+    fun glCreateProgram(): Int
+
+    fun glCreateShader(type: Int): Int
+
+    fun glDeleteFramebuffers(n: Int, framebuffers: IntArray, offset: Int)
+
+    fun glDeleteProgram(program: Int)
+
+    fun glDeleteShader(shader: Int)
+
+    fun glDeleteTextures(n: Int, textures: IntArray, offset: Int)
+
+    fun glDisableVertexAttribArray(index: Int)
+
+    fun glDrawArrays(mode: Int, first: Int, count: Int)
+
+    fun glEnableVertexAttribArray(index: Int)
+
+    fun glFramebufferTexture2D(
+        target: Int, attachment: Int, textarget: Int, texture: Int, level: Int
+    )
+
+    fun glGenFramebuffers(n: Int, framebuffers: IntArray, offset: Int)
+
+    fun glGenTextures(n: Int, textures: IntArray, offset: Int)
+
+    fun glGetAttribLocation(program: Int, name: String): Int
+
+    fun glGetError(): Int
+
+    fun glGetIntegerv(pname: Int, params: IntArray, offset: Int)
+
+    fun glGetProgramInfoLog(program: Int): String
+
+    fun glGetProgramiv(program: Int, pname: Int, params: IntArray, offset: Int)
+
+    fun glGetShaderInfoLog(shader: Int): String
+
+    fun glGetShaderiv(shader: Int, pname: Int, params: IntArray, offset: Int)
+
+    fun glGetString(name: Int): String?
+
+    fun glGetUniformLocation(program: Int, name: String): Int
+
+    fun glIsTexture(texture: Int): Boolean
+
+    fun glLinkProgram(program: Int)
+
+    fun glReadPixels(
+        x: Int, y: Int, width: Int, height: Int, format: Int, type: Int, pixels: Buffer
+    )
+
+    fun glShaderSource(shader: Int, string: String)
+
+    fun glTexImage2D(
+        target: Int, level: Int, internalformat: Int, width: Int, height: Int, border: Int,
+        format: Int, type: Int, pixels: Buffer?
+    )
+
+    fun glTexParameterf(target: Int, pname: Int, param: Float)
+
+    fun glTexParameteri(target: Int, pname: Int, param: Int)
+
+    fun glUniform1f(location: Int, x: Float)
+
+    fun glUniform1i(location: Int, x: Int)
+
+    fun glUniform2f(location: Int, x: Float, y: Float)
+
+    fun glUniformMatrix4fv(
+        location: Int, count: Int, transpose: Boolean, value: FloatArray, offset: Int
+    )
+
+    fun glUseProgram(program: Int)
+
+    fun glVertexAttribPointer(
+        indx: Int, size: Int, type: Int, normalized: Boolean, stride: Int, ptr: Buffer
+    )
+
+    fun glViewport(x: Int, y: Int, width: Int, height: Int)
+
+    // endregion
+
+    // region GLES30，只有GLES3 context可以呼叫
+
+    fun glBindBuffer(target: Int, buffer: Int)
+
+    fun glBufferData(target: Int, size: Int, data: Buffer?, usage: Int)
+
+    fun glDeleteBuffers(n: Int, buffers: IntArray, offset: Int)
+
+    fun glGenBuffers(n: Int, buffers: IntArray, offset: Int)
+
+    fun glMapBufferRange(target: Int, offset: Int, length: Int, access: Int): Buffer?
+
+    /**
+     * 讀取至目前綁定的GL_PIXEL_PACK_BUFFER
+     */
+    fun glReadPixels(x: Int, y: Int, width: Int, height: Int, format: Int, type: Int, offset: Int)
+
+    fun glUnmapBuffer(target: Int): Boolean
+
+    // endregion
+}
@@ -0,0 +1,217 @@
+package dev.jimmytai.camera_view.gles
+
+import android.opengl.GLES11Ext
+import android.opengl.GLES20
+
+/**
+ * GL狀態快取，記錄目前綁定的program、texture、framebuffer、viewport與current的繪製窗口，
+ * 重複設定相同的狀態時直接略過GL/EGL呼叫
+ *
+ * 注意：GL狀態屬於EGLContext，此類別只能在持有該EGLContext的GLThread中使用，且非thread-safe。
+ * 外部程式(例如CameraTextureProcessor)直接呼叫GLES修改狀態後，必須呼叫[invalidate]讓快取失效
+ *
+ * @param gl    實際發出GL呼叫的介面，render pipeline中的其他類別都透過這裡取得，測試時可以替換
+ */
+class GlStateCache(val gl: GlApi = AndroidGlApi) {
+    companion object {
+        private const val UNKNOWN: Int = Int.MIN_VALUE
+
+        private const val MAX_TEXTURE_UNITS: Int = 8
+    }
+
+    private var mProgram: Int = UNKNOWN
+
+    private var mActiveTextureUnit: Int = UNKNOWN
+
+    private val mTexture2DBindings: IntArray = IntArray(MAX_TEXTURE_UNITS) { UNKNOWN }
+
+    private val mTextureOESBindings: IntArray = IntArray(MAX_TEXTURE_UNITS) { UNKNOWN }
+
+    private var mFrameBuffer: Int = UNKNOWN
+
+    private val mViewport: IntArray = intArrayOf(UNKNOWN, UNKNOWN, UNKNOWN, UNKNOWN)
+
+    private var mCurrentSurface: EglRenderTarget? = null
+
+    /**
+     * 每次[invalidate]都會遞增，[CachedUniformMatrix4]透過它判斷快取的uniform是否仍然有效
+     */
+    var generation: Int = 0
+        private set
+
+    /**
+     * 被略過的GL呼叫次數，用來觀察快取的效果
+     */
+    var skippedCalls: Long = 0L
+        private set
+
+    /**
+     * 實際呼叫eglMakeCurrent的次數
+     */
+    var makeCurrentCount: Long = 0L
+        private set
+
+    /**
+     * 目標已經是current而略過的eglMakeCurrent次數
+     */
+    var skippedMakeCurrentCount: Long = 0L
+        private set
+
+    /**
+     * 目前EGLContext綁定(current)的繪製窗口，null代表未知
+     */
+    val currentSurface: EglRenderTarget?
+        get() = mCurrentSurface
+
+    /**
+     * 只有在[surface]不是目前的current surface時才呼叫eglMakeCurrent
+     */
+    fun makeCurrent(surface: EglRenderTarget) {
+        if (mCurrentSurface === surface) {
+            skippedMakeCurrentCount++
+            return
+        }
+        surface.makeCurrent()
+        mCurrentSurface = surface
+        makeCurrentCount++
+    }
+
+    /**
+     * current的繪製窗口被釋放，或外部直接呼叫eglMakeCurrent後呼叫，下一次[makeCurrent]一定會切換
+     */
+    fun clearCurrentSurface() {
+        mCurrentSurface = null
+    }
+
+    fun useProgram(program: Int) {
+        if (mProgram == program) {
+            skippedCalls++
+            return
+        }
+        gl.glUseProgram(program)
+        mProgram = program
+    }
+
+    fun activeTexture(textureUnit: Int) {
+        if (mActiveTextureUnit == textureUnit) {
+            skippedCalls++
+            return
+        }
+        gl.glActiveTexture(textureUnit)
+        mActiveTextureUnit = textureUnit
+    }
+
+    fun bindTexture(target: Int, textureId: Int) {
+        val bindings: IntArray? = when (target) {
+            GLES20.GL_TEXTURE_2D -> mTexture2DBindings
+            GLES11Ext.GL_TEXTURE_EXTERNAL_OES -> mTextureOESBindings
+            else -> null
+        }
+        val unit: Int = mActiveTextureUnit - GLES20.GL_TEXTURE0
+        if (bindings == null || unit !in 0 until MAX_TEXTURE_UNITS) {
+            // 無法確定目前的texture unit，直接綁定且不記錄
+            gl.glBindTexture(target, textureId)
+            return
+        }
+        if (bindings[unit] == textureId) {
+            skippedCalls++
+            return
+        }
+        gl.glBindTexture(target, textureId)
+        bindings[unit] = textureId
+    }
+
+    fun bindFrameBuffer(frameBuffer: Int) {
+        if (mFrameBuffer == frameBuffer) {
+            skippedCalls++
+            return
+        }
+        gl.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBuffer)
+        mFrameBuffer = frameBuffer
+    }
+
+    fun viewport(x: Int, y: Int, width: Int, height: Int) {
+        val viewport: IntArray = mViewport
+        if (viewport[0] == x && viewport[1] == y && viewport[2] == width && viewport[3] == height) {
+            skippedCalls++
+            return
+        }
+        gl.glViewport(x, y, width, height)
+        viewport[0] = x
+        viewport[1] = y
+        viewport[2] = width
+        viewport[3] = height
+    }
+
+    /**
+     * 刪除texture/framebuffer後呼叫，避免之後重新產生相同ID時被誤判為已綁定
+     */
+    fun onTextureDeleted(textureId: Int) {
+        for (i in 0 until MAX_TEXTURE_UNITS) {
+            if (mTexture2DBindings[i] == textureId) mTexture2DBindings[i] = UNKNOWN
+            if (mTextureOESBindings[i] == textureId) mTextureOESBindings[i] = UNKNOWN
+        }
+    }
+
+    fun onFrameBufferDeleted(frameBuffer: Int) {
+        if (mFrameBuffer == frameBuffer) mFrameBuffer = UNKNOWN
+    }
+
+    fun onProgramDeleted(program: Int) {
+        if (mProgram == program) mProgram = UNKNOWN
+    }
+
+    /**
+     * 讓所有快取的狀態失效，下一次設定狀態時一定會呼叫GL
+     */
+    fun invalidate() {
+        mProgram = UNKNOWN
+        mActiveTextureUnit = UNKNOWN
+        mTexture2DBindings.fill(UNKNOWN)
+        mTextureOESBindings.fill(UNKNOWN)
+        mFrameBuffer = UNKNOWN
+        mViewport.fill(UNKNOWN)
+        generation++
+    }
+}
+
+/**
+ * 可以綁定至EGLContext的繪製窗口，見[GlStateCache.makeCurrent]
+ */
+interface EglRenderTarget {
+    fun makeCurrent()
+}
+
+/**
+ * 快取單一program中一個mat4 uniform的值，只有在數值改變或[GlStateCache]失效後才會重新上傳
+ *
+ * uniform的值屬於program本身，所以每個program的每個uniform各自持有一個實例
+ */
+class CachedUniformMatrix4 {
+    private val mValue: FloatArray = FloatArray(16)
+
+    private var mGeneration: Int = -1
+
+    private var mLocation: Int = -1
+
+    /**
+     * 呼叫前必須已經透過[GlStateCache.useProgram]選擇此uniform所屬的program
+     */
+    fun upload(stateCache: GlStateCache, location: Int, matrix: FloatArray) {
+        if (mGeneration == stateCache.generation && mLocation == location && sameValue(matrix)) {
+            return
+        }
+        stateCache.gl.glUniformMatrix4fv(location, 1, false, matrix, 0)
+        System.arraycopy(matrix, 0, mValue, 0, 16)
+        mGeneration = stateCache.generation
+        mLocation = location
+    }
+
+    private fun sameValue(matrix: FloatArray): Boolean {
+        val value: FloatArray = mValue
+        for (i in 0 until 16) {
+            if (value[i] != matrix[i]) return false
+        }
+        return true
+    }
+}
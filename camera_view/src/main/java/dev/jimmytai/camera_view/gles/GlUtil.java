@@ -21,7 +21,6 @@ import android.opengl.GLES11Ext;
 import android.opengl.GLES20;
 import android.opengl.GLES30;
 import android.opengl.GLUtils;
-import android.opengl.Matrix;
 import android.util.Log;
 
 import java.nio.ByteBuffer;
@@ -30,6 +29,7 @@ import java.nio.FloatBuffer;
 
 import javax.microedition.khronos.opengles.GL10;
 
+import dev.jimmytai.camera_view.BuildConfig;
 import dev.jimmytai.camera_view.utils.Logger;
 
 /*
@@ -54,7 +54,7 @@ public class GlUtil {
 
     static {
         IDENTITY_MATRIX = new float[16];
-        Matrix.setIdentityM(IDENTITY_MATRIX, 0);
+        Matrix4Util.INSTANCE.setIdentity(IDENTITY_MATRIX);
     }
 
     private static final int SIZEOF_FLOAT = 4;
@@ -89,37 +89,46 @@ public class GlUtil {
      * @return A handle to the program, or 0 on failure.
      */
     public static int createProgram(String vertexSource, String fragmentSource) {
-        int vertexShader = loadShader(GLES20.GL_VERTEX_SHADER, vertexSource);
+        return createProgram(AndroidGlApi.INSTANCE, vertexSource, fragmentSource);
+    }
+
+    /**
+     * Creates a new program through the given {@link GlApi}.
+     *
+     * @return A handle to the program, or 0 on failure.
+     */
+    public static int createProgram(GlApi gl, String vertexSource, String fragmentSource) {
+        int vertexShader = loadShader(gl, GLES20.GL_VERTEX_SHADER, vertexSource);
         if (vertexShader == 0) {
             return 0;
         }
-        int pixelShader = loadShader(GLES20.GL_FRAGMENT_SHADER, fragmentSource);
+        int pixelShader = loadShader(gl, GLES20.GL_FRAGMENT_SHADER, fragmentSource);
         if (pixelShader == 0) {
             return 0;
         }
 
-        int program = GLES20.glCreateProgram();
-        checkGlError("glCreateProgram");
+        int program = gl.glCreateProgram();
+        checkGlError(gl, "glCreateProgram");
         if (program == 0) {
             Logger.e(TAG, "Could not create program", null);
         }
-        GLES20.glAttachShader(program, vertexShader);
-        checkGlError("glAttachShader");
-        GLES20.glAttachShader(program, pixelShader);
-        checkGlError("glAttachShader");
-        GLES20.glLinkProgram(program);
+        gl.glAttachShader(program, vertexShader);
+        checkGlError(gl, "glAttachShader");
+        gl.glAttachShader(program, pixelShader);
+        checkGlError(gl, "glAttachShader");
+        gl.glLinkProgram(program);
         int[] linkStatus = new int[1];
-        GLES20.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
+        gl.glGetProgramiv(program, GLES20.GL_LINK_STATUS, linkStatus, 0);
         if (linkStatus[0] != GLES20.GL_TRUE) {
             Logger.e(TAG, "Could not link program: ", null);
-            Logger.e(TAG, GLES20.glGetProgramInfoLog(program), null);
-            GLES20.glDeleteProgram(program);
+            Logger.e(TAG, gl.glGetProgramInfoLog(program), null);
+            gl.glDeleteProgram(program);
             program = 0;
         }
 
         // Remove shader reference
-        GLES20.glDeleteShader(vertexShader);
-        GLES20.glDeleteShader(pixelShader);
+        gl.glDeleteShader(vertexShader);
+        gl.glDeleteShader(pixelShader);
 
         return program;
     }
@@ -130,16 +139,25 @@ public class GlUtil {
      * @return A handle to the shader, or 0 on failure.
      */
     public static int loadShader(int shaderType, String source) {
-        int shader = GLES20.glCreateShader(shaderType);
-        checkGlError("glCreateShader type=" + shaderType);
-        GLES20.glShaderSource(shader, source);
-        GLES20.glCompileShader(shader);
+        return loadShader(AndroidGlApi.INSTANCE, shaderType, source);
+    }
+
+    /**
+     * Compiles the provided shader source through the given {@link GlApi}.
+     *
+     * @return A handle to the shader, or 0 on failure.
+     */
+    public static int loadShader(GlApi gl, int shaderType, String source) {
+        int shader = gl.glCreateShader(shaderType);
+        checkGlError(gl, "glCreateShader type=" + shaderType);
+        gl.glShaderSource(shader, source);
+        gl.glCompileShader(shader);
         int[] compiled = new int[1];
-        GLES20.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
+        gl.glGetShaderiv(shader, GLES20.GL_COMPILE_STATUS, compiled, 0);
         if (compiled[0] == 0) {
             Logger.e(TAG, "Could not compile shader " + shaderType + ":", null);
-            Logger.e(TAG, " " + GLES20.glGetShaderInfoLog(shader), null);
-            GLES20.glDeleteShader(shader);
+            Logger.e(TAG, " " + gl.glGetShaderInfoLog(shader), null);
+            gl.glDeleteShader(shader);
             shader = 0;
         }
         return shader;
@@ -147,9 +165,23 @@ public class GlUtil {
 
     /**
      * Checks to see if a GLES error has been raised.
+     * <p>
+     * Every glGetError() may force a pipeline sync on some drivers, so the check is controlled by
+     * the compile-time constant BuildConfig.GL_ERROR_CHECK: enabled for debug builds (and the tests
+     * running against them) and compiled away for release builds.
      */
     public static void checkGlError(String op) {
-        int error = GLES20.glGetError();
+        checkGlError(AndroidGlApi.INSTANCE, op);
+    }
+
+    /**
+     * Same as {@link #checkGlError(String)}, querying the error through the given {@link GlApi}.
+     */
+    public static void checkGlError(GlApi gl, String op) {
+        if (!BuildConfig.GL_ERROR_CHECK) {
+            return;
+        }
+        int error = gl.glGetError();
         if (error != GLES20.GL_NO_ERROR) {
             String msg = op + ": glError 0x" + Integer.toHexString(error);
             Logger.e(TAG, msg, null);
@@ -1,8 +1,15 @@
 package dev.jimmytai.camera_view.gles
 
-import android.opengl.Matrix
 import dev.jimmytai.camera_view.constant.CropScaleType
+import kotlin.math.cos
+import kotlin.math.sin
+import kotlin.math.sqrt
 
+/**
+ * 4x4矩陣運算，與android.opengl.Matrix相同使用column-major排列
+ *
+ * 不依賴android.opengl.Matrix，可以在JVM上測試與量測
+ */
 object Matrix4Util {
     fun crop(
         matrix: FloatArray?,
@@ -12,133 +19,251 @@ object Matrix4Util {
         viewWidth: Int,
         viewHeight: Int
     ) {
+        if (matrix == null) return
         if (imgHeight > 0 && imgWidth > 0 && viewWidth > 0 && viewHeight > 0) {
             val projection = FloatArray(16)
             val camera = FloatArray(16)
             if (type == CropScaleType.FIT_XY) {
-                Matrix.orthoM(projection, 0, -1f, 1f, -1f, 1f, 1f, 3f)
-                Matrix.setLookAtM(camera, 0, 0f, 0f, 1f, 0f, 0f, 0f, 0f, 1f, 0f)
-                Matrix.multiplyMM(matrix, 0, projection, 0, camera, 0)
+                ortho(projection, -1f, 1f, -1f, 1f, 1f, 3f)
             }
             val sWhView = viewWidth.toFloat() / viewHeight
             val sWhImg = imgWidth.toFloat() / imgHeight
             if (sWhImg > sWhView) {
                 when (type) {
                     CropScaleType.CENTER_CROP -> {
-                        Matrix.orthoM(
-                            projection,
-                            0,
-                            -sWhView / sWhImg,
-                            sWhView / sWhImg,
-                            -1f,
-                            1f,
-                            1f,
-                            3f
-                        )
-                        Matrix.scaleM(projection, 0, GlUtil.X_SCALE, GlUtil.Y_SCALE, 1f)
+                        ortho(projection, -sWhView / sWhImg, sWhView / sWhImg, -1f, 1f, 1f, 3f)
+                        scale(projection, GlUtil.X_SCALE, GlUtil.Y_SCALE, 1f)
                     }
 
-                    CropScaleType.CENTER_INSIDE -> Matrix.orthoM(
-                        projection,
-                        0,
-                        -1f,
-                        1f,
-                        -sWhImg / sWhView,
-                        sWhImg / sWhView,
-                        1f,
-                        3f
-                    )
-
-                    CropScaleType.FIT_START -> Matrix.orthoM(
-                        projection,
-                        0,
-                        -1f,
-                        1f,
-                        1 - 2 * sWhImg / sWhView,
-                        1f,
-                        1f,
-                        3f
-                    )
-
-                    CropScaleType.FIT_END -> Matrix.orthoM(
-                        projection,
-                        0,
-                        -1f,
-                        1f,
-                        -1f,
-                        2 * sWhImg / sWhView - 1,
-                        1f,
-                        3f
-                    )
+                    CropScaleType.CENTER_INSIDE ->
+                        ortho(projection, -1f, 1f, -sWhImg / sWhView, sWhImg / sWhView, 1f, 3f)
+
+                    CropScaleType.FIT_START ->
+                        ortho(projection, -1f, 1f, 1 - 2 * sWhImg / sWhView, 1f, 1f, 3f)
+
+                    CropScaleType.FIT_END ->
+                        ortho(projection, -1f, 1f, -1f, 2 * sWhImg / sWhView - 1, 1f, 3f)
 
                     else -> {}
                 }
             } else {
                 when (type) {
                     CropScaleType.CENTER_CROP -> {
-                        Matrix.orthoM(
-                            projection,
-                            0,
-                            -1f,
-                            1f,
-                            -sWhImg / sWhView,
-                            sWhImg / sWhView,
-                            1f,
-                            3f
-                        )
-                        Matrix.scaleM(projection, 0, GlUtil.X_SCALE, GlUtil.Y_SCALE, 1f)
+                        ortho(projection, -1f, 1f, -sWhImg / sWhView, sWhImg / sWhView, 1f, 3f)
+                        scale(projection, GlUtil.X_SCALE, GlUtil.Y_SCALE, 1f)
                     }
 
-                    CropScaleType.CENTER_INSIDE -> Matrix.orthoM(
-                        projection,
-                        0,
-                        -sWhView / sWhImg,
-                        sWhView / sWhImg,
-                        -1f,
-                        1f,
-                        1f,
-                        3f
-                    )
-
-                    CropScaleType.FIT_START -> Matrix.orthoM(
-                        projection,
-                        0,
-                        -1f,
-                        2 * sWhView / sWhImg - 1,
-                        -1f,
-                        1f,
-                        1f,
-                        3f
-                    )
-
-                    CropScaleType.FIT_END -> Matrix.orthoM(
-                        projection,
-                        0,
-                        1 - 2 * sWhView / sWhImg,
-                        1f,
-                        -1f,
-                        1f,
-                        1f,
-                        3f
-                    )
+                    CropScaleType.CENTER_INSIDE ->
+                        ortho(projection, -sWhView / sWhImg, sWhView / sWhImg, -1f, 1f, 1f, 3f)
+
+                    CropScaleType.FIT_START ->
+                        ortho(projection, -1f, 2 * sWhView / sWhImg - 1, -1f, 1f, 1f, 3f)
+
+                    CropScaleType.FIT_END ->
+                        ortho(projection, 1 - 2 * sWhView / sWhImg, 1f, -1f, 1f, 1f, 3f)
 
                     else -> {}
                 }
             }
-            Matrix.setLookAtM(camera, 0, 0f, 0f, 1f, 0f, 0f, 0f, 0f, 1f, 0f)
-            Matrix.multiplyMM(matrix, 0, projection, 0, camera, 0)
+            lookAt(camera, 0f, 0f, 1f, 0f, 0f, 0f, 0f, 1f, 0f)
+            multiply(matrix, projection, camera)
         }
     }
 
     fun rotate(matrix: FloatArray?, angle: Float): FloatArray? {
-        Matrix.rotateM(matrix, 0, angle, 0f, 0f, 1f)
+        if (matrix != null) rotateZ(matrix, angle)
         return matrix
     }
 
     fun flip(matrix: FloatArray?, x: Boolean, y: Boolean): FloatArray? {
-        if (x || y) {
-            Matrix.scaleM(matrix, 0, (if (x) -1 else 1).toFloat(), (if (y) -1 else 1).toFloat(), 1f)
+        if (matrix != null && (x || y)) {
+            scale(matrix, (if (x) -1 else 1).toFloat(), (if (y) -1 else 1).toFloat(), 1f)
         }
         return matrix
     }
-}
\ No newline at end of file
+
+    fun setIdentity(matrix: FloatArray) {
+        matrix.fill(0f, 0, 16)
+        matrix[0] = 1f
+        matrix[5] = 1f
+        matrix[10] = 1f
+        matrix[15] = 1f
+    }
+
+    /**
+     * 正交投影，同android.opengl.Matrix.orthoM
+     */
+    fun ortho(
+        matrix: FloatArray,
+        left: Float,
+        right: Float,
+        bottom: Float,
+        top: Float,
+        near: Float,
+        far: Float
+    ) {
+        require(left != right && bottom != top && near != far) { "empty ortho volume" }
+        val rWidth: Float = 1f / (right - left)
+        val rHeight: Float = 1f / (top - bottom)
+        val rDepth: Float = 1f / (far - near)
+        matrix.fill(0f, 0, 16)
+        matrix[0] = 2f * rWidth
+        matrix[5] = 2f * rHeight
+        matrix[10] = -2f * rDepth
+        matrix[12] = -(right + left) * rWidth
+        matrix[13] = -(top + bottom) * rHeight
+        matrix[14] = -(far + near) * rDepth
+        matrix[15] = 1f
+    }
+
+    /**
+     * 觀察矩陣，同android.opengl.Matrix.setLookAtM
+     */
+    fun lookAt(
+        matrix: FloatArray,
+        eyeX: Float, eyeY: Float, eyeZ: Float,
+        centerX: Float, centerY: Float, centerZ: Float,
+        upX: Float, upY: Float, upZ: Float
+    ) {
+        // f = normalize(center - eye)
+        var fx: Float = centerX - eyeX
+        var fy: Float = centerY - eyeY
+        var fz: Float = centerZ - eyeZ
+        val rlf: Float = 1f / sqrt(fx * fx + fy * fy + fz * fz)
+        fx *= rlf
+        fy *= rlf
+        fz *= rlf
+
+        // s = normalize(f x up)
+        var sx: Float = fy * upZ - fz * upY
+        var sy: Float = fz * upX - fx * upZ
+        var sz: Float = fx * upY - fy * upX
+        val rls: Float = 1f / sqrt(sx * sx + sy * sy + sz * sz)
+        sx *= rls
+        sy *= rls
+        sz *= rls
+
+        // u = s x f
+        val ux: Float = sy * fz - sz * fy
+        val uy: Float = sz * fx - sx * fz
+        val uz: Float = sx * fy - sy * fx
+
+        matrix[0] = sx
+        matrix[1] = ux
+        matrix[2] = -fx
+        matrix[3] = 0f
+        matrix[4] = sy
+        matrix[5] = uy
+        matrix[6] = -fy
+        matrix[7] = 0f
+        matrix[8] = sz
+        matrix[9] = uz
+        matrix[10] = -fz
+        matrix[11] = 0f
+        // 平移-eye，等同translateM
+        matrix[12] = -(sx * eyeX + sy * eyeY + sz * eyeZ)
+        matrix[13] = -(ux * eyeX + uy * eyeY + uz * eyeZ)
+        matrix[14] = fx * eyeX + fy * eyeY + fz * eyeZ
+        matrix[15] = 1f
+    }
+
+    /**
+     * result = lhs * rhs，result可以與lhs或rhs相同
+     */
+    fun multiply(result: FloatArray, lhs: FloatArray, rhs: FloatArray) {
+        // result與輸入相同時先寫到暫存陣列，避免計算中途覆蓋輸入
+        val out = if (result === lhs || result === rhs) FloatArray(16) else result
+        for (column in 0 until 4) {
+            val c: Int = column * 4
+            val b0: Float = rhs[c]
+            val b1: Float = rhs[c + 1]
+            val b2: Float = rhs[c + 2]
+            val b3: Float = rhs[c + 3]
+            val r0: Float = lhs[0] * b0 + lhs[4] * b1 + lhs[8] * b2 + lhs[12] * b3
+            val r1: Float = lhs[1] * b0 + lhs[5] * b1 + lhs[9] * b2 + lhs[13] * b3
+            val r2: Float = lhs[2] * b0 + lhs[6] * b1 + lhs[10] * b2 + lhs[14] * b3
+            val r3: Float = lhs[3] * b0 + lhs[7] * b1 + lhs[11] * b2 + lhs[15] * b3
+            out[c] = r0
+            out[c + 1] = r1
+            out[c + 2] = r2
+            out[c + 3] = r3
+        }
+        if (out !== result) out.copyInto(result)
+    }
+
+    /**
+     * matrix = matrix * scale(x, y, z)，同android.opengl.Matrix.scaleM
+     */
+    fun scale(matrix: FloatArray, x: Float, y: Float, z: Float) {
+        for (i in 0 until 4) {
+            matrix[i] *= x
+            matrix[4 + i] *= y
+            matrix[8 + i] *= z
+        }
+    }
+
+    /**
+     * matrix = matrix * 繞z軸旋轉[angle]度，同android.opengl.Matrix.rotateM(m, 0, angle, 0, 0, 1)
+     */
+    fun rotateZ(matrix: FloatArray, angle: Float) {
+        val radians: Double = Math.toRadians(angle.toDouble())
+        val s: Float = sin(radians).toFloat()
+        val c: Float = cos(radians).toFloat()
+        for (i in 0 until 4) {
+            val m0: Float = matrix[i]
+            val m4: Float = matrix[4 + i]
+            matrix[i] = m0 * c + m4 * s
+            matrix[4 + i] = m4 * c - m0 * s
+        }
+    }
+
+    /**
+     * 反矩陣，同android.opengl.Matrix.invertM
+     *
+     * @return false代表矩陣不可逆，[result]不會被修改
+     */
+    fun invert(result: FloatArray, matrix: FloatArray): Boolean {
+        val m = matrix
+        val inv = FloatArray(16)
+        inv[0] = m[5] * m[10] * m[15] - m[5] * m[11] * m[14] - m[9] * m[6] * m[15] +
+            m[9] * m[7] * m[14] + m[13] * m[6] * m[11] - m[13] * m[7] * m[10]
+        inv[4] = -m[4] * m[10] * m[15] + m[4] * m[11] * m[14] + m[8] * m[6] * m[15] -
+            m[8] * m[7] * m[14] - m[12] * m[6] * m[11] + m[12] * m[7] * m[10]
+        inv[8] = m[4] * m[9] * m[15] - m[4] * m[11] * m[13] - m[8] * m[5] * m[15] +
+            m[8] * m[7] * m[13] + m[12] * m[5] * m[11] - m[12] * m[7] * m[9]
+        inv[12] = -m[4] * m[9] * m[14] + m[4] * m[10] * m[13] + m[8] * m[5] * m[14] -
+            m[8] * m[6] * m[13] - m[12] * m[5] * m[10] + m[12] * m[6] * m[9]
+        inv[1] = -m[1] * m[10] * m[15] + m[1] * m[11] * m[14] + m[9] * m[2] * m[15] -
+            m[9] * m[3] * m[14] - m[13] * m[2] * m[11] + m[13] * m[3] * m[10]
+        inv[5] = m[0] * m[10] * m[15] - m[0] * m[11] * m[14] - m[8] * m[2] * m[15] +
+            m[8] * m[3] * m[14] + m[12] * m[2] * m[11] - m[12] * m[3] * m[10]
+        inv[9] = -m[0] * m[9] * m[15] + m[0] * m[11] * m[13] + m[8] * m[1] * m[15] -
+            m[8] * m[3] * m[13] - m[12] * m[1] * m[11] + m[12] * m[3] * m[9]
+        inv[13] = m[0] * m[9] * m[14] - m[0] * m[10] * m[13] - m[8] * m[1] * m[14] +
+            m[8] * m[2] * m[13] + m[12] * m[1] * m[10] - m[12] * m[2] * m[9]
+        inv[2] = m[1] * m[6] * m[15] - m[1] * m[7] * m[14] - m[5] * m[2] * m[15] +
+            m[5] * m[3] * m[14] + m[13] * m[2] * m[7] - m[13] * m[3] * m[6]
+        inv[6] = -m[0] * m[6] * m[15] + m[0] * m[7] * m[14] + m[4] * m[2] * m[15] -
+            m[4] * m[3] * m[14] - m[12] * m[2] * m[7] + m[12] * m[3] * m[6]
+        inv[10] = m[0] * m[5] * m[15] - m[0] * m[7] * m[13] - m[4] * m[1] * m[15] +
+            m[4] * m[3] * m[13] + m[12] * m[1] * m[7] - m[12] * m[3] * m[5]
+        inv[14] = -m[0] * m[5] * m[14] + m[0] * m[6] * m[13] + m[4] * m[1] * m[14] -
+            m[4] * m[2] * m[13] - m[12] * m[1] * m[6] + m[12] * m[2] * m[5]
+        inv[3] = -m[1] * m[6] * m[11] + m[1] * m[7] * m[10] + m[5] * m[2] * m[11] -
+            m[5] * m[3] * m[10] - m[9] * m[2] * m[7] + m[9] * m[3] * m[6]
+        inv[7] = m[0] * m[6] * m[11] - m[0] * m[7] * m[10] - m[4] * m[2] * m[11] +
+            m[4] * m[3] * m[10] + m[8] * m[2] * m[7] - m[8] * m[3] * m[6]
+        inv[11] = -m[0] * m[5] * m[11] + m[0] * m[7] * m[9] + m[4] * m[1] * m[11] -
+            m[4] * m[3] * m[9] - m[8] * m[1] * m[7] + m[8] * m[3] * m[5]
+        inv[15] = m[0] * m[5] * m[10] - m[0] * m[6] * m[9] - m[4] * m[1] * m[10] +
+            m[4] * m[2] * m[9] + m[8] * m[1] * m[6] - m[8] * m[2] * m[5]
+
+        val det: Float = m[0] * inv[0] + m[1] * inv[4] + m[2] * inv[8] + m[3] * inv[12]
+        if (det == 0f) return false
+        val invDet: Float = 1f / det
+        for (i in 0 until 16) {
+            result[i] = inv[i] * invDet
+        }
+        return true
+    }
+}
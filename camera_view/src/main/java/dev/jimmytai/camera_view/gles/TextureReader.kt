@@ -0,0 +1,177 @@
+package dev.jimmytai.camera_view.gles
+
+import android.opengl.GLES20
+import android.opengl.GLES30
+import dev.jimmytai.camera_view.utils.DirectBufferPool
+import java.nio.ByteBuffer
+
+/**
+ * 將2D texture讀回CPU
+ *
+ * GLES3時以兩個Pixel Pack Buffer(PBO)輪流非同步讀取：第N個frame的glReadPixels只排入GPU指令、
+ * 不會等待GPU完成，在第N+1個frame才map回CPU，所以GLThread不會因為讀取而停頓，代價是輸出延遲一個frame。
+ * GLES2沒有PBO，退回同步的glReadPixels
+ *
+ * @param glVersion [EglCore.getGlVersion]
+ */
+class TextureReader(private val stateCache: GlStateCache, glVersion: Int) {
+    companion object {
+        private const val BUFFER_COUNT: Int = 2
+    }
+
+    private val gl: GlApi = stateCache.gl
+
+    /**
+     * 讀取完成的資料，只在回呼中有效
+     */
+    fun interface OnPixelsReady {
+        /**
+         * @param pixels        RGBA，從texture的第0列開始逐列排列(GLRenderer離屏繪製的texture即為由上往下)
+         * @param timestampNs   [read]時傳入的時間
+         */
+        fun onPixelsReady(pixels: ByteBuffer, width: Int, height: Int, timestampNs: Long)
+
+        /**
+         * PBO無法map(glMapBufferRange回傳null)，這個frame的資料已遺失，不會再交付
+         *
+         * 每次讀取只會收到[onPixelsReady]或此回呼其中之一，預設略過這個frame
+         */
+        fun onReadFailed(timestampNs: Long) {}
+    }
+
+    /**
+     * 是否使用PBO非同步讀取
+     */
+    val isAsynchronous: Boolean = glVersion >= 3
+
+    private var mPixelBuffers: IntArray? = null
+
+    /**
+     * GLES2同步讀取使用的buffer
+     */
+    private var mSyncBuffer: ByteBuffer? = null
+
+    private var mFrameBuffer: Int = 0
+
+    private var mWidth: Int = 0
+
+    private var mHeight: Int = 0
+
+    private var mIndex: Int = 0
+
+    /**
+     * 每個PBO中等待map的frame時間，null代表沒有資料
+     */
+    private val mPendingTimestamps: Array<Long?> = arrayOfNulls(BUFFER_COUNT)
+
+    /**
+     * 將texture排入PBO讀取，並將上一次排入的資料交給[onReady]；GLES2時直接讀取並交給[onReady]
+     */
+    fun read(textureId: Int, width: Int, height: Int, timestampNs: Long, onReady: OnPixelsReady) {
+        initIfNeed(width, height)
+
+        stateCache.bindFrameBuffer(mFrameBuffer)
+        gl.glFramebufferTexture2D(
+            GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+            GLES20.GL_TEXTURE_2D, textureId, 0
+        )
+        if (!isAsynchronous) {
+            val pixels: ByteBuffer = mSyncBuffer!!
+            pixels.position(0)
+            gl.glReadPixels(
+                0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, pixels
+            )
+            GlUtil.checkGlError(gl, "glReadPixels")
+            stateCache.bindFrameBuffer(0)
+            onReady.onPixelsReady(pixels, width, height, timestampNs)
+            return
+        }
+
+        val pixelBuffers: IntArray = mPixelBuffers!!
+        gl.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pixelBuffers[mIndex])
+        gl.glReadPixels(0, 0, width, height, GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, 0)
+        GlUtil.checkGlError(gl, "glReadPixels to PBO")
+        mPendingTimestamps[mIndex] = timestampNs
+
+        val previous: Int = (mIndex + 1) % BUFFER_COUNT
+        mapPending(pixelBuffers, previous, onReady)
+
+        gl.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0)
+        stateCache.bindFrameBuffer(0)
+        mIndex = previous
+    }
+
+    /**
+     * 將已排入PBO、尚未交付的資料依序交給[onReady]，不排入新的讀取；GLES2時沒有作用
+     *
+     * 只需要單一frame(例如拍照)時，在下一個frame呼叫即可取得結果，不必再讀取一次
+     */
+    fun flush(onReady: OnPixelsReady) {
+        val pixelBuffers: IntArray = mPixelBuffers ?: return
+        // mIndex為下一次寫入的PBO，也就是較早排入的資料
+        for (offset in 0 until BUFFER_COUNT) {
+            mapPending(pixelBuffers, (mIndex + offset) % BUFFER_COUNT, onReady)
+        }
+        gl.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0)
+    }
+
+    private fun mapPending(pixelBuffers: IntArray, index: Int, onReady: OnPixelsReady) {
+        val timestampNs: Long = mPendingTimestamps[index] ?: return
+        mPendingTimestamps[index] = null
+        gl.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pixelBuffers[index])
+        val pixels: ByteBuffer? = gl.glMapBufferRange(
+            GLES30.GL_PIXEL_PACK_BUFFER, 0, mWidth * mHeight * 4, GLES30.GL_MAP_READ_BIT
+        ) as ByteBuffer?
+        if (pixels != null) {
+            onReady.onPixelsReady(pixels, mWidth, mHeight, timestampNs)
+            gl.glUnmapBuffer(GLES30.GL_PIXEL_PACK_BUFFER)
+        } else {
+            onReady.onReadFailed(timestampNs)
+        }
+        GlUtil.checkGlError(gl, "glMapBufferRange")
+    }
+
+    private fun initIfNeed(width: Int, height: Int) {
+        if (mFrameBuffer != 0 && mWidth == width && mHeight == height) return
+        release()
+
+        if (isAsynchronous) {
+            val pixelBuffers = IntArray(BUFFER_COUNT).also { mPixelBuffers = it }
+            gl.glGenBuffers(BUFFER_COUNT, pixelBuffers, 0)
+            for (pixelBuffer in pixelBuffers) {
+                gl.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, pixelBuffer)
+                gl.glBufferData(
+                    GLES30.GL_PIXEL_PACK_BUFFER, width * height * 4, null, GLES30.GL_STREAM_READ
+                )
+            }
+            gl.glBindBuffer(GLES30.GL_PIXEL_PACK_BUFFER, 0)
+        } else {
+            mSyncBuffer = DirectBufferPool.shared.acquire(width * height * 4)
+        }
+
+        val frameBuffers = IntArray(1)
+        gl.glGenFramebuffers(1, frameBuffers, 0)
+        mFrameBuffer = frameBuffers[0]
+        GlUtil.checkGlError(gl, "init PBO")
+
+        mWidth = width
+        mHeight = height
+        mIndex = 0
+    }
+
+    /**
+     * 釋放PBO與FBO，尚未map的資料會被丟棄
+     */
+    fun release() {
+        mPixelBuffers?.let { gl.glDeleteBuffers(BUFFER_COUNT, it, 0) }
+        mPixelBuffers = null
+        mSyncBuffer?.let { DirectBufferPool.shared.release(it) }
+        mSyncBuffer = null
+        if (mFrameBuffer != 0) {
+            gl.glDeleteFramebuffers(1, intArrayOf(mFrameBuffer), 0)
+            stateCache.onFrameBufferDeleted(mFrameBuffer)
+            mFrameBuffer = 0
+        }
+        mPendingTimestamps.fill(null)
+    }
+}
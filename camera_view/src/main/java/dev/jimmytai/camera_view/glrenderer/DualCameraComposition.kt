@@ -0,0 +1,81 @@
+package dev.jimmytai.camera_view.glrenderer
+
+import android.graphics.Rect
+import android.util.Size
+import dev.jimmytai.camera_view.constant.DualCameraLayout
+
+/**
+ * 兩個相機畫面合成後的尺寸與各自所在的區域，區域的長寬比與旋轉後的相機畫面相同，不會變形
+ *
+ * 區域以輸出texture的像素為單位，top=0為texture的第一列(畫面的上方)
+ */
+internal class DualCameraComposition(
+    val outputSize: Size,
+    val primaryRegion: Rect,
+    val secondaryRegion: Rect
+) {
+    companion object {
+        /**
+         * 子母畫面中小畫面的寬度佔輸出寬度的比例
+         */
+        const val PIP_WIDTH_RATIO: Float = 0.3f
+
+        /**
+         * 小畫面與邊緣的距離佔輸出短邊的比例
+         */
+        const val PIP_MARGIN_RATIO: Float = 0.04f
+
+        /**
+         * @param primarySize   主相機旋轉後的尺寸
+         * @param secondarySize 副相機旋轉後的尺寸
+         */
+        fun compute(
+            layout: DualCameraLayout,
+            primarySize: Size,
+            secondarySize: Size
+        ): DualCameraComposition = when (layout) {
+            DualCameraLayout.PICTURE_IN_PICTURE -> {
+                val width: Int = primarySize.width
+                val height: Int = primarySize.height
+                val insetWidth: Int = even(width * PIP_WIDTH_RATIO)
+                val margin: Int = even(minOf(width, height) * PIP_MARGIN_RATIO)
+                val insetHeight: Int = minOf(
+                    even(insetWidth.toFloat() * secondarySize.height / secondarySize.width),
+                    height - 2 * margin
+                )
+                DualCameraComposition(
+                    outputSize = primarySize,
+                    primaryRegion = Rect(0, 0, width, height),
+                    secondaryRegion = Rect(
+                        width - margin - insetWidth,
+                        margin,
+                        width - margin,
+                        margin + insetHeight
+                    )
+                )
+            }
+
+            DualCameraLayout.SIDE_BY_SIDE -> {
+                val height: Int = primarySize.height
+                // 副相機縮放至相同高度
+                val secondaryWidth: Int =
+                    even(height.toFloat() * secondarySize.width / secondarySize.height)
+                DualCameraComposition(
+                    outputSize = Size(primarySize.width + secondaryWidth, height),
+                    primaryRegion = Rect(0, 0, primarySize.width, height),
+                    secondaryRegion = Rect(
+                        primarySize.width,
+                        0,
+                        primarySize.width + secondaryWidth,
+                        height
+                    )
+                )
+            }
+        }
+
+        /**
+         * encoder需要偶數的尺寸
+         */
+        private fun even(value: Float): Int = maxOf(2, Math.round(value / 2f) * 2)
+    }
+}
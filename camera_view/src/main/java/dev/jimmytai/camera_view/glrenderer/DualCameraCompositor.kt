@@ -0,0 +1,150 @@
+package dev.jimmytai.camera_view.glrenderer
+
+import android.opengl.GLES20
+import android.util.Size
+import dev.jimmytai.camera_view.constant.DualCameraLayout
+import dev.jimmytai.camera_view.gles.GlApi
+import dev.jimmytai.camera_view.gles.GlStateCache
+import dev.jimmytai.camera_view.gles.GlUtil
+import dev.jimmytai.camera_view.utils.Logger
+
+/**
+ * 將兩個相機的OES texture合成至同一張2D texture，取代單一相機時OES轉2D的預處理
+ *
+ * 每個相機以與預處理相同的旋轉鏡像畫進各自的區域，合成結果的尺寸由[DualCameraComposition]決定；
+ * 只在GLThread中使用
+ */
+internal class DualCameraCompositor(private val layout: DualCameraLayout) {
+    companion object {
+        private val TAG: String = DualCameraCompositor::class.java.simpleName
+    }
+
+    private var mComposition: DualCameraComposition? = null
+
+    private var mPrimarySize: Size? = null
+
+    private var mSecondarySize: Size? = null
+
+    private var mStateCache: GlStateCache? = null
+
+    private var mTexture: Int = GlUtil.NO_TEXTURE
+
+    private var mFrameBuffer: Int = 0
+
+    /**
+     * 合成後的尺寸，尚未合成時為null
+     */
+    val outputSize: Size?
+        get() = mComposition?.outputSize
+
+    /**
+     * @param primarySize       主相機旋轉後的尺寸
+     * @param secondarySize     副相機旋轉後的尺寸
+     * @return 合成後的2D texture，尺寸為[outputSize]
+     */
+    fun compose(
+        renderer: GLRenderer,
+        primaryTextureId: Int,
+        primarySize: Size,
+        primaryRotationDegrees: Int,
+        secondaryTextureId: Int,
+        secondarySize: Size,
+        secondaryRotationDegrees: Int
+    ): Int {
+        val composition: DualCameraComposition =
+            prepare(renderer.stateCache, primarySize, secondarySize)
+        val stateCache: GlStateCache = renderer.stateCache
+        val gl: GlApi = stateCache.gl
+
+        // 並排時兩個區域不一定填滿整個texture，PiP時主畫面已覆蓋全部
+        if (layout != DualCameraLayout.PICTURE_IN_PICTURE) {
+            stateCache.bindFrameBuffer(mFrameBuffer)
+            stateCache.viewport(0, 0, composition.outputSize.width, composition.outputSize.height)
+            gl.glClearColor(0.0f, 0.0f, 0.0f, 1.0f)
+            gl.glClear(GLES20.GL_COLOR_BUFFER_BIT)
+        }
+
+        renderer.transferOesTextureToFrameBuffer(
+            primaryTextureId,
+            mFrameBuffer,
+            composition.primaryRegion,
+            renderer.transitionCache.rotateFlip(primaryRotationDegrees, flipX = false, flipY = true)
+        )
+        renderer.transferOesTextureToFrameBuffer(
+            secondaryTextureId,
+            mFrameBuffer,
+            composition.secondaryRegion,
+            renderer.transitionCache.rotateFlip(secondaryRotationDegrees, flipX = false, flipY = true)
+        )
+        return mTexture
+    }
+
+    fun release() {
+        val stateCache: GlStateCache = mStateCache ?: return
+        val gl: GlApi = stateCache.gl
+        if (mTexture != GlUtil.NO_TEXTURE) {
+            gl.glDeleteTextures(1, intArrayOf(mTexture), 0)
+            stateCache.onTextureDeleted(mTexture)
+            mTexture = GlUtil.NO_TEXTURE
+        }
+        if (mFrameBuffer != 0) {
+            gl.glDeleteFramebuffers(1, intArrayOf(mFrameBuffer), 0)
+            stateCache.onFrameBufferDeleted(mFrameBuffer)
+            mFrameBuffer = 0
+        }
+        mComposition = null
+        mPrimarySize = null
+        mSecondarySize = null
+    }
+
+    /**
+     * 相機尺寸改變時重新計算區域並重建texture
+     */
+    private fun prepare(
+        stateCache: GlStateCache,
+        primarySize: Size,
+        secondarySize: Size
+    ): DualCameraComposition {
+        val current: DualCameraComposition? = mComposition
+        if (current != null && primarySize == mPrimarySize && secondarySize == mSecondarySize) {
+            return current
+        }
+        release()
+        val composition: DualCameraComposition =
+            DualCameraComposition.compute(layout, primarySize, secondarySize)
+        Logger.d(TAG, "prepare -> $layout, output: ${composition.outputSize}")
+
+        val gl: GlApi = stateCache.gl
+        val textures = IntArray(1)
+        gl.glGenTextures(1, textures, 0)
+        mTexture = textures[0]
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, mTexture)
+        gl.glTexImage2D(
+            GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA,
+            composition.outputSize.width, composition.outputSize.height, 0,
+            GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null
+        )
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR)
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR)
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE)
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE)
+
+        val frameBuffers = IntArray(1)
+        gl.glGenFramebuffers(1, frameBuffers, 0)
+        mFrameBuffer = frameBuffers[0]
+        stateCache.bindFrameBuffer(mFrameBuffer)
+        gl.glFramebufferTexture2D(
+            GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
+            GLES20.GL_TEXTURE_2D, mTexture, 0
+        )
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, 0)
+        stateCache.bindFrameBuffer(0)
+        GlUtil.checkGlError(gl, "create dual camera composition")
+
+        mStateCache = stateCache
+        mComposition = composition
+        mPrimarySize = primarySize
+        mSecondarySize = secondarySize
+        return composition
+    }
+}
@@ -2,24 +2,31 @@ package dev.jimmytai.camera_view.glrenderer
 
 import android.graphics.Bitmap
 import android.graphics.Point
+import android.graphics.Rect
 import android.opengl.GLES20
-import android.opengl.Matrix
 import android.util.Size
 import dev.jimmytai.camera_view.constant.CropScaleType
 import dev.jimmytai.camera_view.constant.PixelFormat
 import dev.jimmytai.camera_view.constant.TextureFormat
+import dev.jimmytai.camera_view.gles.GlApi
+import dev.jimmytai.camera_view.gles.GlStateCache
 import dev.jimmytai.camera_view.gles.GlUtil
 import dev.jimmytai.camera_view.gles.Matrix4Util
 import dev.jimmytai.camera_view.utils.Logger
 import java.nio.ByteBuffer
 
-class GLRenderer {
+/**
+ * @param stateCache 同一個EGLContext中共用的GL狀態快取，用來略過重複的GL狀態設定
+ */
+class GLRenderer(val stateCache: GlStateCache = GlStateCache()) {
     companion object {
         private val TAG: String = GLRenderer::class.java.simpleName
 
         private const val FRAME_BUFFER_NUM = 1
     }
 
+    private val gl: GlApi = stateCache.gl
+
     protected var mFrameBuffers: IntArray? = null
 
     protected var mFrameBufferTextures: IntArray? = null
@@ -31,7 +38,17 @@ class GLRenderer {
     private var mProgramManager: ShaderProgramManager? = null
 
     private val programManager: ShaderProgramManager
-        get() = mProgramManager ?: ShaderProgramManager().also { mProgramManager = it }
+        get() = mProgramManager ?: ShaderProgramManager(stateCache).also { mProgramManager = it }
+
+    /**
+     * 每個frame重複使用的Transition，只在輸入改變時重新計算矩陣，只在GL執行緒中使用
+     */
+    val transitionCache: TransitionCache = TransitionCache()
+
+    /**
+     * 繪製時從Transition複製出的MVP矩陣，每次繪製重複使用
+     */
+    private val mMVPMatrix: FloatArray = FloatArray(16)
 
     /**
      * 默认的离屏渲染绑定的纹理
@@ -75,8 +92,8 @@ class GLRenderer {
             val frameBuffers = IntArray(ShaderProgram.FRAME_BUFFER_NUM).also { mFrameBuffers = it }
             val frameBufferTextures =
                 IntArray(ShaderProgram.FRAME_BUFFER_NUM).also { mFrameBufferTextures = it }
-            GLES20.glGenFramebuffers(ShaderProgram.FRAME_BUFFER_NUM, frameBuffers, 0)
-            GLES20.glGenTextures(ShaderProgram.FRAME_BUFFER_NUM, frameBufferTextures, 0)
+            gl.glGenFramebuffers(ShaderProgram.FRAME_BUFFER_NUM, frameBuffers, 0)
+            gl.glGenTextures(ShaderProgram.FRAME_BUFFER_NUM, frameBufferTextures, 0)
             for (i in 0 until ShaderProgram.FRAME_BUFFER_NUM) {
                 bindFrameBuffer(
                     textureId = frameBufferTextures[i],
@@ -94,36 +111,36 @@ class GLRenderer {
      * and bind buffer
      */
     private fun bindFrameBuffer(textureId: Int, frameBuffer: Int, size: Size) {
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId)
-        GLES20.glTexImage2D(
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, textureId)
+        gl.glTexImage2D(
             GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, size.width, size.height, 0,
             GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null
         )
-        GLES20.glTexParameterf(
+        gl.glTexParameterf(
             GLES20.GL_TEXTURE_2D,
             GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR.toFloat()
         )
-        GLES20.glTexParameterf(
+        gl.glTexParameterf(
             GLES20.GL_TEXTURE_2D,
             GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR.toFloat()
         )
-        GLES20.glTexParameterf(
+        gl.glTexParameterf(
             GLES20.GL_TEXTURE_2D,
             GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE.toFloat()
         )
-        GLES20.glTexParameterf(
+        gl.glTexParameterf(
             GLES20.GL_TEXTURE_2D,
             GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE.toFloat()
         )
 
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBuffer)
-        GLES20.glFramebufferTexture2D(
+        stateCache.bindFrameBuffer(frameBuffer)
+        gl.glFramebufferTexture2D(
             GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
             GLES20.GL_TEXTURE_2D, textureId, 0
         )
 
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0)
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0)
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, 0)
+        stateCache.bindFrameBuffer(0)
     }
 
     /**
@@ -131,12 +148,14 @@ class GLRenderer {
      */
     private fun destroyFrameBuffers() {
         mFrameBufferTextures?.let {
-            GLES20.glDeleteTextures(ShaderProgram.FRAME_BUFFER_NUM, it, 0)
+            gl.glDeleteTextures(ShaderProgram.FRAME_BUFFER_NUM, it, 0)
+            it.forEach { textureId -> stateCache.onTextureDeleted(textureId) }
         }
         mFrameBufferTextures = null
 
         mFrameBuffers?.let {
-            GLES20.glDeleteFramebuffers(ShaderProgram.FRAME_BUFFER_NUM, it, 0)
+            gl.glDeleteFramebuffers(ShaderProgram.FRAME_BUFFER_NUM, it, 0)
+            it.forEach { frameBuffer -> stateCache.onFrameBufferDeleted(frameBuffer) }
         }
         mFrameBuffers = null
     }
@@ -151,7 +170,8 @@ class GLRenderer {
         mProgramManager = null
 
         mTextureIds?.let {
-            GLES20.glDeleteTextures(1, it, 0)
+            gl.glDeleteTextures(1, it, 0)
+            stateCache.onTextureDeleted(it[0])
         }
         mTextureIds = null
     }
@@ -183,7 +203,7 @@ class GLRenderer {
             inputTextureId,
             if (targetRotated) size.height else size.width,
             if (targetRotated) size.width else size.height,
-            transition.matrix
+            transition.copyInto(mMVPMatrix)
         )
     }
 
@@ -212,7 +232,7 @@ class GLRenderer {
                 inputTextureId,
                 if (targetRotated) size.height else size.width,
                 if (targetRotated) size.width else size.height,
-                transition.matrix,
+                transition.copyInto(mMVPMatrix),
                 mUVMatrix
             )
         }
@@ -220,7 +240,7 @@ class GLRenderer {
             inputTextureId,
             if (targetRotated) size.height else size.width,
             if (targetRotated) size.width else size.height,
-            transition.matrix
+            transition.copyInto(mMVPMatrix)
         )
     }
 
@@ -232,6 +252,10 @@ class GLRenderer {
      * @param height        高
      * @return 输出 buffer
      * @brief 纹理转 buffer
+     * @details YUV格式(I420/NV12/NV21)在GPU上完成转换，只回读 1.5 bytes/pixel，
+     * 输出尺寸会向下对齐为宽8、高4的倍数，仅支持Texture2D输入。
+     * LUMA8只回读亮度(1 byte/pixel，宽对齐为4的倍数)，搭配 ratio=0.5 即为1/4解析度，
+     * 适合测光、动态侦测、QR等只需要亮度的分析；返回的 buffer 会被下一次调用重复使用
      */
     fun transferTextureToBuffer(
         textureId: Int,
@@ -240,10 +264,24 @@ class GLRenderer {
         size: Size,
         ratio: Float
     ): ByteBuffer? {
+        if (YuvPacking.isYuvFormat(outputPixelFormat)) {
+            if (inputTextureFormat != TextureFormat.Texture2D) {
+                Logger.e(TAG, "YUV output supports Texture2D input only")
+                return null
+            }
+            val width: Int = YuvPacking.alignWidth(outputPixelFormat, (size.width * ratio).toInt())
+            val height: Int = YuvPacking.alignHeight(outputPixelFormat, (size.height * ratio).toInt())
+            if (width == 0 || height == 0) {
+                Logger.e(TAG, "The output size is too small for YUV: $size * $ratio")
+                return null
+            }
+            return programManager.getYuvProgram()
+                .readBuffer(textureId, outputPixelFormat, width, height)
+        }
         if (outputPixelFormat != PixelFormat.RGBA8888) {
             Logger.e(
                 TAG,
-                "The outputFormat is not supported,please use RGBA8888 as output texture format"
+                "The outputFormat is not supported,please use RGBA8888 or YUV as output texture format"
             )
             return null
         }
@@ -305,6 +343,8 @@ class GLRenderer {
      * @param consistent            传入的buffer是否在一张纹理上更新
      * @return 输出纹理
      * @brief buffer 转纹理
+     * @details 上传在函数返回前完成，buffer 可由 DirectBufferPool.shared.acquire 取得并在返回后
+     * release；非 direct 的 buffer 由 GLES 的 Java binding 直接读取，不另外复制
      */
     fun transferBufferToTexture(
         buffer: ByteBuffer,
@@ -326,14 +366,14 @@ class GLRenderer {
         val textureId: Int?
         if (!consistent) {
             val textureIds = IntArray(1)
-            GLES20.glGenTextures(1, textureIds, 0)
+            gl.glGenTextures(1, textureIds, 0)
             textureId = textureIds[0]
-            GlUtil.checkGlError("glGenTextures")
+            GlUtil.checkGlError(gl, "glGenTextures")
         } else {
             val textureIds = mTextureIds ?: IntArray(1).also {
                 mTextureIds = it
-                GLES20.glGenTextures(1, it, 0)
-                GlUtil.checkGlError("glGenTextures")
+                gl.glGenTextures(1, it, 0)
+                GlUtil.checkGlError(gl, "glGenTextures")
             }
             textureId = textureIds[0]
         }
@@ -348,33 +388,33 @@ class GLRenderer {
         textureHandle: Int
     ) {
         // Bind the texture handle to the 2D texture target.
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle)
-        GLES20.glTexParameteri(
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, textureHandle)
+        gl.glTexParameteri(
             GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S,
             GLES20.GL_CLAMP_TO_EDGE
         )
-        GLES20.glTexParameteri(
+        gl.glTexParameteri(
             GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T,
             GLES20.GL_CLAMP_TO_EDGE
         )
         // Configure min/mag filtering, i.e. what scaling method do we use if what we're rendering
         // is smaller or larger than the source image.
-        GLES20.glTexParameteri(
+        gl.glTexParameteri(
             GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER,
             GLES20.GL_LINEAR
         )
-        GLES20.glTexParameteri(
+        gl.glTexParameteri(
             GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER,
             GLES20.GL_LINEAR
         )
-        GlUtil.checkGlError("loadImageTexture")
+        GlUtil.checkGlError(gl, "loadImageTexture")
 
         // Load the data from the buffer into the texture handle.
-        GLES20.glTexImage2D(
+        gl.glTexImage2D(
             GLES20.GL_TEXTURE_2D, 0, format,
             size.width, size.height, 0, format, GLES20.GL_UNSIGNED_BYTE, data
         )
-        GlUtil.checkGlError("loadImageTexture")
+        GlUtil.checkGlError(gl, "loadImageTexture")
     }
 
     fun transferTextureToScreen(
@@ -387,25 +427,63 @@ class GLRenderer {
             .drawFrameOnScreen(textureId, surfaceSize.width, surfaceSize.height, mvpMatrix)
     }
 
+    fun transferTextureToScreen(
+        textureId: Int,
+        srcTextureFormat: TextureFormat,
+        surfaceSize: Size,
+        transition: Transition
+    ) {
+        transferTextureToScreen(
+            textureId, srcTextureFormat, surfaceSize, transition.copyInto(mMVPMatrix)
+        )
+    }
+
+    /**
+     * 以與[transferTextureToTexture]相同的方向，將OES texture畫進外部framebuffer中的[region]，
+     * 用於將多個相機畫面合成至同一張texture
+     */
+    fun transferOesTextureToFrameBuffer(
+        textureId: Int,
+        frameBuffer: Int,
+        region: Rect,
+        transition: Transition
+    ) {
+        (programManager.getProgram(TextureFormat.TextureOES) as ShaderProgramOES)
+            .drawFrameToFrameBuffer(
+                textureId, frameBuffer,
+                region.left, region.top, region.width(), region.height(),
+                transition.copyInto(mMVPMatrix)
+            )
+    }
+
     class Transition {
         private var mMVPMatrix: FloatArray = FloatArray(16)
 
         private var mAngle: Int = 0
 
+        /**
+         * 由[TransitionCache]產生的Transition會被凍結，不能再修改
+         */
+        private var mFrozen: Boolean = false
+
         val angle: Int
             get() = mAngle % 360
 
+        /**
+         * 矩陣的複本，每次讀取都會建立新的陣列；每個frame使用時改用[copyInto]
+         */
         val matrix: FloatArray
-            get() = mMVPMatrix
+            get() = mMVPMatrix.copyOf()
 
         init {
-            Matrix.setIdentityM(mMVPMatrix, 0)
+            Matrix4Util.setIdentity(mMVPMatrix)
         }
 
         /**
          * @brief 镜像
          */
         fun flip(x: Boolean = false, y: Boolean = false): Transition {
+            checkNotFrozen()
             Matrix4Util.flip(mMVPMatrix, x, y)
             return this
         }
@@ -415,6 +493,7 @@ class GLRenderer {
          * @brief 旋转
          */
         fun rotate(angle: Float): Transition {
+            checkNotFrozen()
             mAngle += angle.toInt()
             Matrix4Util.rotate(mMVPMatrix, angle)
             return this
@@ -425,16 +504,29 @@ class GLRenderer {
             rotation: Int,
             textureSize: Size,
             surfaceSize: Size
+        ): Transition = crop(
+            scaleType, rotation,
+            textureSize.width, textureSize.height, surfaceSize.width, surfaceSize.height
+        )
+
+        fun crop(
+            scaleType: CropScaleType,
+            rotation: Int,
+            textureWidth: Int,
+            textureHeight: Int,
+            surfaceWidth: Int,
+            surfaceHeight: Int
         ): Transition {
+            checkNotFrozen()
             if (rotation % 180 == 90) {
                 Matrix4Util.crop(
                     mMVPMatrix, scaleType,
-                    textureSize.height, textureSize.width, surfaceSize.width, surfaceSize.height
+                    textureHeight, textureWidth, surfaceWidth, surfaceHeight
                 )
             } else {
                 Matrix4Util.crop(
                     mMVPMatrix, scaleType,
-                    textureSize.width, textureSize.height, surfaceSize.width, surfaceSize.height
+                    textureWidth, textureHeight, surfaceWidth, surfaceHeight
                 )
             }
             return this
@@ -447,13 +539,33 @@ class GLRenderer {
          * 如将先镜像再旋转，逆序为先旋转再镜像
          */
         fun reverse(): Transition {
+            checkNotFrozen()
             val invertedMatrix = FloatArray(16)
-            if (Matrix.invertM(invertedMatrix, 0, mMVPMatrix, 0)) {
+            if (Matrix4Util.invert(invertedMatrix, mMVPMatrix)) {
                 mMVPMatrix = invertedMatrix
             }
             return this
         }
 
+        /**
+         * 將矩陣複製至[destination]，凍結的Transition被多處共用，不對外提供內部的陣列
+         *
+         * @return [destination]
+         */
+        fun copyInto(destination: FloatArray): FloatArray {
+            System.arraycopy(mMVPMatrix, 0, destination, 0, 16)
+            return destination
+        }
+
+        internal fun freeze(): Transition {
+            mFrozen = true
+            return this
+        }
+
+        private fun checkNotFrozen() {
+            check(!mFrozen) { "cached Transition can not be modified" }
+        }
+
         override fun toString(): String {
             val sb = StringBuilder()
             for (value in mMVPMatrix) {
@@ -4,24 +4,34 @@ import android.content.Context
 import android.graphics.Point
 import android.opengl.GLES20
 import dev.jimmytai.camera_view.gles.Drawable2d
+import dev.jimmytai.camera_view.gles.GlApi
+import dev.jimmytai.camera_view.gles.GlStateCache
 import dev.jimmytai.camera_view.gles.GlUtil
+import dev.jimmytai.camera_view.utils.DirectBufferPool
 import java.io.IOException
 import java.io.InputStream
 import java.nio.ByteBuffer
+import java.nio.ByteOrder
 
 /*
  * Porting from BytePlus and make a little improvement.
  */
 
-abstract class ShaderProgram(vertexShader: String, fragmentShader: String) {
+abstract class ShaderProgram(
+    vertexShader: String,
+    fragmentShader: String,
+    protected val mStateCache: GlStateCache
+) {
     companion object {
         private val TAG: String = ShaderProgram::class.java.simpleName
 
         const val FRAME_BUFFER_NUM: Int = 1
     }
 
+    protected val gl: GlApi = mStateCache.gl
+
     // Handles to the GL program and various components of it.
-    protected var mProgramId: Int = GlUtil.createProgram(vertexShader, fragmentShader)
+    protected var mProgramId: Int = GlUtil.createProgram(gl, vertexShader, fragmentShader)
 
     protected val mDrawable2d: Drawable2d by lazy { getDrawable2D() }
 
@@ -34,13 +44,20 @@ abstract class ShaderProgram(vertexShader: String, fragmentShader: String) {
 
     protected var mFrameBufferShape: Point? = null
 
+    /*
+     * readBuffer重複使用的buffer，由DirectBufferPool提供
+     */
+    private var mCaptureBuffer: ByteBuffer? = null
+
     constructor(
         context: Context,
         vertexShaderResId: Int,
-        fragmentShaderResId: Int
+        fragmentShaderResId: Int,
+        stateCache: GlStateCache
     ) : this(
         context.readTextFileFromResource(vertexShaderResId),
-        context.readTextFileFromResource(fragmentShaderResId)
+        context.readTextFileFromResource(fragmentShaderResId),
+        stateCache
     )
 
     init {
@@ -89,8 +106,8 @@ abstract class ShaderProgram(vertexShader: String, fragmentShader: String) {
             destroyFrameBuffers()
             val frameBuffers = IntArray(FRAME_BUFFER_NUM).also { mFrameBuffers = it }
             val frameBufferTextures = IntArray(FRAME_BUFFER_NUM).also { mFrameBufferTextures = it }
-            GLES20.glGenFramebuffers(FRAME_BUFFER_NUM, frameBuffers, 0)
-            GLES20.glGenTextures(FRAME_BUFFER_NUM, frameBufferTextures, 0)
+            gl.glGenFramebuffers(FRAME_BUFFER_NUM, frameBuffers, 0)
+            gl.glGenTextures(FRAME_BUFFER_NUM, frameBufferTextures, 0)
             for (i in 0 until FRAME_BUFFER_NUM) {
                 bindFrameBuffer(
                     textureId = frameBufferTextures[i],
@@ -115,46 +132,66 @@ abstract class ShaderProgram(vertexShader: String, fragmentShader: String) {
      * and binding buffer
      */
     private fun bindFrameBuffer(textureId: Int, frameBuffer: Int, width: Int, height: Int) {
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId)
-        GLES20.glTexImage2D(
+        mStateCache.bindTexture(GLES20.GL_TEXTURE_2D, textureId)
+        gl.glTexImage2D(
             GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
             GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null
         )
-        GLES20.glTexParameterf(
+        gl.glTexParameterf(
             GLES20.GL_TEXTURE_2D,
             GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR.toFloat()
         )
-        GLES20.glTexParameterf(
+        gl.glTexParameterf(
             GLES20.GL_TEXTURE_2D,
             GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR.toFloat()
         )
-        GLES20.glTexParameterf(
+        gl.glTexParameterf(
             GLES20.GL_TEXTURE_2D,
             GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE.toFloat()
         )
-        GLES20.glTexParameterf(
+        gl.glTexParameterf(
             GLES20.GL_TEXTURE_2D,
             GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE.toFloat()
         )
 
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBuffer)
-        GLES20.glFramebufferTexture2D(
+        mStateCache.bindFrameBuffer(frameBuffer)
+        gl.glFramebufferTexture2D(
             GLES20.GL_FRAMEBUFFER, GLES20.GL_COLOR_ATTACHMENT0,
             GLES20.GL_TEXTURE_2D, textureId, 0
         )
 
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, 0)
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0)
+        mStateCache.bindTexture(GLES20.GL_TEXTURE_2D, 0)
+        mStateCache.bindFrameBuffer(0)
+    }
+
+    /**
+     * 取得readBuffer用的direct buffer，size不屬於同一個size class時才會向[DirectBufferPool]換一個
+     *
+     * @return position為0、limit為size的buffer，直到下一次呼叫或[release]之前有效
+     */
+    protected fun obtainCaptureBuffer(size: Int): ByteBuffer {
+        val current: ByteBuffer? = mCaptureBuffer
+        if (current != null && current.capacity() == DirectBufferPool.capacityOf(size)) {
+            current.clear()
+            current.limit(size)
+            return current
+        }
+        current?.let { DirectBufferPool.shared.release(it) }
+        // 維持與allocateDirect相同的預設byte order
+        return DirectBufferPool.shared.acquire(size).order(ByteOrder.BIG_ENDIAN)
+            .also { mCaptureBuffer = it }
     }
 
     private fun destroyFrameBuffers() {
         mFrameBufferTextures?.let {
-            GLES20.glDeleteTextures(FRAME_BUFFER_NUM, it, 0)
+            gl.glDeleteTextures(FRAME_BUFFER_NUM, it, 0)
+            it.forEach { textureId -> mStateCache.onTextureDeleted(textureId) }
         }
         mFrameBufferTextures = null
 
         mFrameBuffers?.let {
-            GLES20.glDeleteFramebuffers(FRAME_BUFFER_NUM, it, 0)
+            gl.glDeleteFramebuffers(FRAME_BUFFER_NUM, it, 0)
+            it.forEach { frameBuffer -> mStateCache.onFrameBufferDeleted(frameBuffer) }
         }
         mFrameBuffers = null
     }
@@ -167,8 +204,12 @@ abstract class ShaderProgram(vertexShader: String, fragmentShader: String) {
      */
     fun release() {
         destroyFrameBuffers()
-        GLES20.glDeleteProgram(mProgramId)
+        gl.glDeleteProgram(mProgramId)
+        mStateCache.onProgramDeleted(mProgramId)
         mProgramId = -1
+
+        mCaptureBuffer?.let { DirectBufferPool.shared.release(it) }
+        mCaptureBuffer = null
     }
 }
 
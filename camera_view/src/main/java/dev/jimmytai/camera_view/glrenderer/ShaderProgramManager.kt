@@ -1,28 +1,37 @@
 package dev.jimmytai.camera_view.glrenderer
 
 import dev.jimmytai.camera_view.constant.TextureFormat
+import dev.jimmytai.camera_view.gles.GlStateCache
 
-class ShaderProgramManager {
+class ShaderProgramManager(private val stateCache: GlStateCache) {
     private var mShaderProgram2D: ShaderProgram2D? = null
 
     private var mShaderProgramOES: ShaderProgramOES? = null
 
+    private var mShaderProgramYUV: ShaderProgramYUV? = null
+
     fun getProgram(srcTextureFormat: TextureFormat): ShaderProgram =
         when (srcTextureFormat) {
             TextureFormat.TextureOES -> {
-                mShaderProgramOES ?: ShaderProgramOES().also { mShaderProgramOES = it }
+                mShaderProgramOES ?: ShaderProgramOES(stateCache).also { mShaderProgramOES = it }
             }
 
             TextureFormat.Texture2D -> {
-                mShaderProgram2D ?: ShaderProgram2D().also { mShaderProgram2D = it }
+                mShaderProgram2D ?: ShaderProgram2D(stateCache).also { mShaderProgram2D = it }
             }
         }
 
+    fun getYuvProgram(): ShaderProgramYUV =
+        mShaderProgramYUV ?: ShaderProgramYUV(stateCache).also { mShaderProgramYUV = it }
+
     fun release() {
         mShaderProgramOES?.release()
         mShaderProgramOES = null
 
         mShaderProgram2D?.release()
         mShaderProgram2D = null
+
+        mShaderProgramYUV?.release()
+        mShaderProgramYUV = null
     }
 }
\ No newline at end of file
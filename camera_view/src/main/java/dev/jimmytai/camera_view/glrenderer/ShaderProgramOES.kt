@@ -2,11 +2,14 @@ package dev.jimmytai.camera_view.glrenderer
 
 import android.opengl.GLES11Ext
 import android.opengl.GLES20
+import dev.jimmytai.camera_view.gles.CachedUniformMatrix4
 import dev.jimmytai.camera_view.gles.Drawable2d
+import dev.jimmytai.camera_view.gles.GlStateCache
 import dev.jimmytai.camera_view.gles.GlUtil
 import java.nio.ByteBuffer
 
-class ShaderProgramOES : ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER_EXT) {
+class ShaderProgramOES(stateCache: GlStateCache = GlStateCache()) :
+    ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER_EXT, stateCache) {
     companion object {
         // Simple vertex shader, used for all programs.
         private const val VERTEX_SHADER =
@@ -46,6 +49,15 @@ class ShaderProgramOES : ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER_EXT) {
 
     private var maTextureCoordLoc: Int? = null
 
+    private val mMVPMatrixUniform: CachedUniformMatrix4 = CachedUniformMatrix4()
+
+    private val mUVMatrixUniform: CachedUniformMatrix4 = CachedUniformMatrix4()
+
+    /**
+     * 上下翻轉後的mvp matrix，傳入的矩陣可能是[TransitionCache]共用的，不能直接修改
+     */
+    private val mFlippedMVPMatrix: FloatArray = FloatArray(16)
+
     private val identityMat: FloatArray = floatArrayOf(
         1.0f, 0.0f,
         0.0f, 0.0f,
@@ -61,71 +73,71 @@ class ShaderProgramOES : ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER_EXT) {
 
     override fun getLocations() {
         val aPositionLoc =
-            GLES20.glGetAttribLocation(mProgramId, "aPosition").also { maPositionLoc = it }
+            gl.glGetAttribLocation(mProgramId, "aPosition").also { maPositionLoc = it }
         GlUtil.checkLocation(aPositionLoc, "aPosition")
 
         val aTextureCoordLoc =
-            GLES20.glGetAttribLocation(mProgramId, "aTextureCoord").also { maTextureCoordLoc = it }
+            gl.glGetAttribLocation(mProgramId, "aTextureCoord").also { maTextureCoordLoc = it }
         GlUtil.checkLocation(aTextureCoordLoc, "aTextureCoord")
 
         val uMVPMatrixLoc =
-            GLES20.glGetUniformLocation(mProgramId, "uMVPMatrix").also { muMVPMatrixLoc = it }
+            gl.glGetUniformLocation(mProgramId, "uMVPMatrix").also { muMVPMatrixLoc = it }
         GlUtil.checkLocation(uMVPMatrixLoc, "uMVPMatrix")
 
         val uUVMatrixLoc =
-            GLES20.glGetUniformLocation(mProgramId, "uUVMatrix").also { muUVMatrixLoc = it }
+            gl.glGetUniformLocation(mProgramId, "uUVMatrix").also { muUVMatrixLoc = it }
         GlUtil.checkLocation(uUVMatrixLoc, "uUVMatrix")
     }
 
     override fun drawFrameOnScreen(textureId: Int, width: Int, height: Int, mvpMatrix: FloatArray) {
-        GlUtil.checkGlError("draw start")
+        GlUtil.checkGlError(gl, "draw start")
 
         // Select the program.
-        GLES20.glUseProgram(mProgramId)
-        GlUtil.checkGlError("glUseProgram")
+        mStateCache.useProgram(mProgramId)
+        GlUtil.checkGlError(gl, "glUseProgram")
 
         // Set the texture.
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0)
-        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId)
+        mStateCache.activeTexture(GLES20.GL_TEXTURE0)
+        mStateCache.bindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId)
 
         // Copy the model / view / projection matrix over.
-        GLES20.glUniformMatrix4fv(muMVPMatrixLoc!!, 1, false, mvpMatrix, 0)
-        GlUtil.checkGlError("glUniformMatrix4fv")
+        mMVPMatrixUniform.upload(mStateCache, muMVPMatrixLoc!!, mvpMatrix)
+        GlUtil.checkGlError(gl, "glUniformMatrix4fv")
 
-        GLES20.glUniformMatrix4fv(muUVMatrixLoc!!, 1, false, identityMat, 0)
-        GlUtil.checkGlError("glUniformMatrix4fv")
+        mUVMatrixUniform.upload(mStateCache, muUVMatrixLoc!!, identityMat)
+        GlUtil.checkGlError(gl, "glUniformMatrix4fv")
 
         // Enable the "aPosition" vertex attribute.
-        GLES20.glEnableVertexAttribArray(maPositionLoc!!)
-        GlUtil.checkGlError("glEnableVertexAttribArray")
+        gl.glEnableVertexAttribArray(maPositionLoc!!)
+        GlUtil.checkGlError(gl, "glEnableVertexAttribArray")
 
         // Connect vertexBuffer to "aPosition".
-        GLES20.glVertexAttribPointer(
+        gl.glVertexAttribPointer(
             maPositionLoc!!, Drawable2d.COORDS_PER_VERTEX,
             GLES20.GL_FLOAT, false, Drawable2d.VERTEX_STRIDE, mDrawable2d.vertexArray
         )
-        GlUtil.checkGlError("glVertexAttribPointer")
+        GlUtil.checkGlError(gl, "glVertexAttribPointer")
 
         // Enable the "aTextureCoord" vertex attribute.
-        GLES20.glEnableVertexAttribArray(maTextureCoordLoc!!)
-        GlUtil.checkGlError("glEnableVertexAttribArray")
+        gl.glEnableVertexAttribArray(maTextureCoordLoc!!)
+        GlUtil.checkGlError(gl, "glEnableVertexAttribArray")
 
         // Connect texBuffer to "aTextureCoord".
-        GLES20.glVertexAttribPointer(
+        gl.glVertexAttribPointer(
             maTextureCoordLoc!!, 2,
             GLES20.GL_FLOAT, false, Drawable2d.TEXTURE_COORD_STRIDE, mDrawable2d.texCoordArray
         )
-        GlUtil.checkGlError("glVertexAttribPointer")
+        GlUtil.checkGlError(gl, "glVertexAttribPointer")
+
+        mStateCache.viewport(0, 0, width, height)
 
         // Draw the rect.
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, mDrawable2d.vertexCount)
-        GlUtil.checkGlError("glDrawArrays")
-
-        // Done -- disable vertex array, texture, and program.
-        GLES20.glDisableVertexAttribArray(maPositionLoc!!)
-        GLES20.glDisableVertexAttribArray(maTextureCoordLoc!!)
-        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 0)
-        GLES20.glUseProgram(0)
+        gl.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, mDrawable2d.vertexCount)
+        GlUtil.checkGlError(gl, "glDrawArrays")
+
+        // Done -- disable vertex array. Texture and program stay bound, they are tracked by GlStateCache.
+        gl.glDisableVertexAttribArray(maPositionLoc!!)
+        gl.glDisableVertexAttribArray(maTextureCoordLoc!!)
     }
 
     override fun drawFrameOffScreen(
@@ -146,51 +158,72 @@ class ShaderProgramOES : ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER_EXT) {
             // invalid uv input
             return 0
         }
-        GlUtil.checkGlError("draw start")
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0)
+        GlUtil.checkGlError(gl, "draw start")
 
         initFrameBufferIfNeed(width, height)
-        GlUtil.checkGlError("initFrameBufferIfNeed")
+        GlUtil.checkGlError(gl, "initFrameBufferIfNeed")
 
+        drawFrameToFrameBuffer(textureId, mFrameBuffers!![0], 0, 0, width, height, mvpMatrix, uvMatrix)
+        return mFrameBufferTextures!![0]
+    }
+
+    /**
+     * 以與[drawFrameOffscreen]相同的方向，畫進外部framebuffer中的一塊區域，例如將多個相機畫面合成至同一張texture
+     *
+     * @param x         區域左側在framebuffer中的位置
+     * @param y         區域在framebuffer中的第一列，y=0為輸出texture的第一列
+     */
+    fun drawFrameToFrameBuffer(
+        textureId: Int,
+        frameBuffer: Int,
+        x: Int,
+        y: Int,
+        width: Int,
+        height: Int,
+        mvpMatrix: FloatArray,
+        uvMatrix: FloatArray = identityMat
+    ) {
         // Select the program.
-        GLES20.glUseProgram(mProgramId)
-        GlUtil.checkGlError("glUseProgram")
+        mStateCache.useProgram(mProgramId)
+        GlUtil.checkGlError(gl, "glUseProgram")
 
         // Set the texture.
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0)
-        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId)
-        GlUtil.checkGlError("glBindTexture")
+        mStateCache.activeTexture(GLES20.GL_TEXTURE0)
+        mStateCache.bindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId)
+        GlUtil.checkGlError(gl, "glBindTexture")
 
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, mFrameBuffers!![0])
-        GlUtil.checkGlError("glBindFramebuffer")
+        mStateCache.bindFrameBuffer(frameBuffer)
+        GlUtil.checkGlError(gl, "glBindFramebuffer")
 
         // Copy the model / view / projection matrix over.
-        mvpMatrix[5] *= -1.0f
-        GLES20.glUniformMatrix4fv(muMVPMatrixLoc!!, 1, false, mvpMatrix, 0)
-        GlUtil.checkGlError("glUniformMatrix4fv")
+        val flippedMVPMatrix: FloatArray = mFlippedMVPMatrix
+        System.arraycopy(mvpMatrix, 0, flippedMVPMatrix, 0, 16)
+        flippedMVPMatrix[5] *= -1.0f
+        mMVPMatrixUniform.upload(mStateCache, muMVPMatrixLoc!!, flippedMVPMatrix)
+        GlUtil.checkGlError(gl, "glUniformMatrix4fv")
 
-        GLES20.glUniformMatrix4fv(muUVMatrixLoc!!, 1, false, uvMatrix, 0)
-        GlUtil.checkGlError("glUniformMatrix4fv")
+        mUVMatrixUniform.upload(mStateCache, muUVMatrixLoc!!, uvMatrix)
+        GlUtil.checkGlError(gl, "glUniformMatrix4fv")
 
-        GLES20.glViewport(0, 0, width, height)
+        mStateCache.viewport(x, y, width, height)
 
         // Enable the "aPosition" vertex attribute.
-        GLES20.glEnableVertexAttribArray(maPositionLoc!!)
-        GlUtil.checkGlError("glEnableVertexAttribArray")
+        gl.glEnableVertexAttribArray(maPositionLoc!!)
+        GlUtil.checkGlError(gl, "glEnableVertexAttribArray")
 
         // Connect vertexBuffer to "aPosition".
-        GLES20.glVertexAttribPointer(
+        gl.glVertexAttribPointer(
             maPositionLoc!!, Drawable2d.COORDS_PER_VERTEX,
             GLES20.GL_FLOAT, false, Drawable2d.VERTEX_STRIDE, mDrawable2d.vertexArray
         )
-        GlUtil.checkGlError("glVertexAttribPointer")
+        GlUtil.checkGlError(gl, "glVertexAttribPointer")
 
         // Enable the "aTextureCoord" vertex attribute.
-        GLES20.glEnableVertexAttribArray(maTextureCoordLoc!!)
-        GlUtil.checkGlError("glEnableVertexAttribArray")
+        gl.glEnableVertexAttribArray(maTextureCoordLoc!!)
+        GlUtil.checkGlError(gl, "glEnableVertexAttribArray")
 
         // Connect texBuffer to "aTextureCoord".
-        GLES20.glVertexAttribPointer(
+        gl.glVertexAttribPointer(
             maTextureCoordLoc!!,
             2,
             GLES20.GL_FLOAT,
@@ -198,20 +231,16 @@ class ShaderProgramOES : ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER_EXT) {
             Drawable2d.TEXTURE_COORD_STRIDE,
             mDrawable2d.texCoordArrayFB
         )
-        GlUtil.checkGlError("glVertexAttribPointer")
+        GlUtil.checkGlError(gl, "glVertexAttribPointer")
 
         // Draw the rect.
-        GLES20.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, mDrawable2d.vertexCount)
-        GlUtil.checkGlError("glDrawArrays")
+        gl.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, mDrawable2d.vertexCount)
+        GlUtil.checkGlError(gl, "glDrawArrays")
 
-        // Done -- disable vertex array, texture, and program.
-        GLES20.glDisableVertexAttribArray(maPositionLoc!!)
-        GLES20.glDisableVertexAttribArray(maTextureCoordLoc!!)
-        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 0)
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0)
-        GLES20.glUseProgram(0)
-
-        return mFrameBufferTextures!![0]
+        // Done -- disable vertex array and go back to the default framebuffer.
+        gl.glDisableVertexAttribArray(maPositionLoc!!)
+        gl.glDisableVertexAttribArray(maTextureCoordLoc!!)
+        mStateCache.bindFrameBuffer(0)
     }
 
     override fun drawFrameOffScreenForCompare(
@@ -223,12 +252,6 @@ class ShaderProgramOES : ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER_EXT) {
         mvpMatrix: FloatArray
     ): Int = 0
 
-    private var mWidth: Int = 0
-
-    private var mHeight: Int = 0
-
-    private var mCaptureBuffer: ByteBuffer? = null
-
     /**
      * {zh}
      * 读取渲染结果的buffer
@@ -246,52 +269,44 @@ class ShaderProgramOES : ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER_EXT) {
         if (textureId == GlUtil.NO_TEXTURE) return null
         if (width * height == 0) return null
 
-        val captureBuffer: ByteBuffer =
-            if (mCaptureBuffer == null || mWidth * mHeight != width * height) {
-                mWidth = width
-                mHeight = height
-                ByteBuffer.allocateDirect(width * height * 4)
-            } else {
-                mCaptureBuffer!!
-            }.also { mCaptureBuffer = it }
-        captureBuffer.position(0)
+        val captureBuffer: ByteBuffer = obtainCaptureBuffer(width * height * 4)
 
         val frameBuffer = IntArray(1)
-        GLES20.glGenFramebuffers(1, frameBuffer, 0)
-        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId)
-        GLES20.glTexParameterf(
+        gl.glGenFramebuffers(1, frameBuffer, 0)
+        mStateCache.bindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, textureId)
+        gl.glTexParameterf(
             GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
             GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR.toFloat()
         )
-        GLES20.glTexParameterf(
+        gl.glTexParameterf(
             GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
             GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR.toFloat()
         )
-        GLES20.glTexParameterf(
+        gl.glTexParameterf(
             GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
             GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE.toFloat()
         )
-        GLES20.glTexParameterf(
+        gl.glTexParameterf(
             GLES11Ext.GL_TEXTURE_EXTERNAL_OES,
             GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE.toFloat()
         )
 
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, frameBuffer[0])
-        GLES20.glFramebufferTexture2D(
+        mStateCache.bindFrameBuffer(frameBuffer[0])
+        gl.glFramebufferTexture2D(
             GLES20.GL_FRAMEBUFFER,
             GLES20.GL_COLOR_ATTACHMENT0,
             GLES20.GL_TEXTURE_2D,
             textureId,
             0
         )
-        GLES20.glReadPixels(
+        gl.glReadPixels(
             0, 0, width, height,
             GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, captureBuffer
         )
 
-        GLES20.glBindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 0)
-        GLES20.glBindFramebuffer(GLES20.GL_FRAMEBUFFER, 0)
-        GLES20.glDeleteFramebuffers(1, frameBuffer, 0)
+        mStateCache.bindFrameBuffer(0)
+        gl.glDeleteFramebuffers(1, frameBuffer, 0)
+        mStateCache.onFrameBufferDeleted(frameBuffer[0])
 
         return captureBuffer
     }
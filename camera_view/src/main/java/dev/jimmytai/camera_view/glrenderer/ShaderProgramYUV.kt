@@ -0,0 +1,235 @@
+package dev.jimmytai.camera_view.glrenderer
+
+import android.opengl.GLES20
+import dev.jimmytai.camera_view.constant.PixelFormat
+import dev.jimmytai.camera_view.gles.Drawable2d
+import dev.jimmytai.camera_view.gles.GlStateCache
+import dev.jimmytai.camera_view.gles.GlUtil
+import dev.jimmytai.camera_view.utils.Logger
+import java.nio.ByteBuffer
+
+/**
+ * 在GPU上將2D texture轉換為I420/NV12/NV21/LUMA8，排列方式請參考[YuvPacking]
+ *
+ * 輸出的FBO每個pixel只佔1.5 bytes(LUMA8為1 byte)，glReadPixels搬移的資料量比RGBA少62.5%(75%)
+ */
+class ShaderProgramYUV(stateCache: GlStateCache = GlStateCache()) :
+    ShaderProgram(VERTEX_SHADER, FRAGMENT_SHADER_YUV, stateCache) {
+    companion object {
+        private val TAG = ShaderProgramYUV::class.java.simpleName
+
+        private const val VERTEX_SHADER =
+            """
+                attribute vec4 aPosition;
+
+                void main() {
+                    gl_Position = aPosition;
+                }
+            """
+
+        // 每個輸出texel的4個byte的來源與YuvPacking.sourceOf一一對應
+        private const val FRAGMENT_SHADER_YUV =
+            """
+                #ifdef GL_FRAGMENT_PRECISION_HIGH
+                precision highp float;
+                #else
+                precision mediump float;
+                #endif
+                uniform sampler2D sTexture;
+                // 輸出影像的尺寸(pixel)
+                uniform vec2 uImageSize;
+                // 0: I420, 1: NV12, 2: NV21, 3: LUMA8(只有Y plane)
+                uniform float uFormat;
+
+                vec3 sampleAt(vec2 doubledPos) {
+                    return texture2D(sTexture, doubledPos / (uImageSize * 2.0)).rgb;
+                }
+
+                float toY(vec3 c) {
+                    return 16.0 + dot(c, vec3(65.481, 128.553, 24.966));
+                }
+
+                float toU(vec3 c) {
+                    return 128.0 + dot(c, vec3(-37.797, -74.203, 112.0));
+                }
+
+                float toV(vec3 c) {
+                    return 128.0 + dot(c, vec3(112.0, -93.786, -18.214));
+                }
+
+                void main() {
+                    float width = uImageSize.x;
+                    float height = uImageSize.y;
+                    float texelX = floor(gl_FragCoord.x);
+                    float texelY = floor(gl_FragCoord.y);
+                    vec4 result;
+                    if (texelY < height) {
+                        vec2 pos = vec2(texelX * 8.0 + 1.0, texelY * 2.0 + 1.0);
+                        result = vec4(
+                            toY(sampleAt(pos)),
+                            toY(sampleAt(pos + vec2(2.0, 0.0))),
+                            toY(sampleAt(pos + vec2(4.0, 0.0))),
+                            toY(sampleAt(pos + vec2(6.0, 0.0)))
+                        );
+                    } else if (uFormat < 0.5) {
+                        float row = texelY - height;
+                        float quarter = height / 4.0;
+                        bool isV = row >= quarter;
+                        float planeRow = isV ? row - quarter : row;
+                        float halfWidth = width / 2.0;
+                        float offset = planeRow * width + texelX * 4.0;
+                        float chromaY = floor((offset + 0.5) / halfWidth);
+                        float chromaX = offset - chromaY * halfWidth;
+                        vec2 pos = vec2(chromaX * 4.0 + 2.0, chromaY * 4.0 + 2.0);
+                        vec3 c0 = sampleAt(pos);
+                        vec3 c1 = sampleAt(pos + vec2(4.0, 0.0));
+                        vec3 c2 = sampleAt(pos + vec2(8.0, 0.0));
+                        vec3 c3 = sampleAt(pos + vec2(12.0, 0.0));
+                        if (isV) {
+                            result = vec4(toV(c0), toV(c1), toV(c2), toV(c3));
+                        } else {
+                            result = vec4(toU(c0), toU(c1), toU(c2), toU(c3));
+                        }
+                    } else {
+                        float row = texelY - height;
+                        vec2 pos = vec2(texelX * 8.0 + 2.0, row * 4.0 + 2.0);
+                        vec3 c0 = sampleAt(pos);
+                        vec3 c1 = sampleAt(pos + vec2(4.0, 0.0));
+                        if (uFormat < 1.5) {
+                            result = vec4(toU(c0), toV(c0), toU(c1), toV(c1));
+                        } else {
+                            result = vec4(toV(c0), toU(c0), toV(c1), toU(c1));
+                        }
+                    }
+                    gl_FragColor = result / 255.0;
+                }
+            """
+    }
+
+    private var maPositionLoc: Int? = null
+
+    private var muTextureLoc: Int? = null
+
+    private var muImageSizeLoc: Int? = null
+
+    private var muFormatLoc: Int? = null
+
+    override fun getDrawable2D(): Drawable2d = Drawable2d(Drawable2d.Prefab.FULL_RECTANGLE)
+
+    override fun getLocations() {
+        val aPositionLoc: Int =
+            gl.glGetAttribLocation(mProgramId, "aPosition").also { maPositionLoc = it }
+        GlUtil.checkLocation(aPositionLoc, "aPosition")
+
+        val uTextureLoc: Int =
+            gl.glGetUniformLocation(mProgramId, "sTexture").also { muTextureLoc = it }
+        GlUtil.checkLocation(uTextureLoc, "sTexture")
+
+        val uImageSizeLoc: Int =
+            gl.glGetUniformLocation(mProgramId, "uImageSize").also { muImageSizeLoc = it }
+        GlUtil.checkLocation(uImageSizeLoc, "uImageSize")
+
+        val uFormatLoc: Int =
+            gl.glGetUniformLocation(mProgramId, "uFormat").also { muFormatLoc = it }
+        GlUtil.checkLocation(uFormatLoc, "uFormat")
+    }
+
+    override fun drawFrameOnScreen(textureId: Int, width: Int, height: Int, mvpMatrix: FloatArray) {
+        Logger.e(TAG, "drawFrameOnScreen is not supported, YUV output is for read back only")
+    }
+
+    /**
+     * 以NV21打包，回傳打包後的texture
+     */
+    override fun drawFrameOffScreen(
+        textureId: Int,
+        width: Int,
+        height: Int,
+        mvpMatrix: FloatArray
+    ): Int = drawFrameOffScreen(textureId, PixelFormat.BEF_AI_PIX_FMT_NV21, width, height)
+
+    /**
+     * 將2D texture打包為YUV至FBO中
+     *
+     * @param width  輸出影像寬度，需為8的倍數(LUMA8為4的倍數)
+     * @param height 輸出影像高度，需為4的倍數(LUMA8不限)
+     * @return 打包後的texture，尺寸為 width/4 x height*3/2(LUMA8為 width/4 x height)
+     */
+    fun drawFrameOffScreen(textureId: Int, format: PixelFormat, width: Int, height: Int): Int {
+        if (!YuvPacking.isAligned(format, width, height)) {
+            Logger.e(TAG, "size ${width}x$height is not aligned for $format")
+            return GlUtil.NO_TEXTURE
+        }
+        GlUtil.checkGlError(gl, "draw start")
+
+        val packedWidth: Int = YuvPacking.packedWidth(width)
+        val packedHeight: Int = YuvPacking.packedHeight(format, height)
+        initFrameBufferIfNeed(packedWidth, packedHeight)
+        GlUtil.checkGlError(gl, "initFrameBufferIfNeed")
+
+        mStateCache.useProgram(mProgramId)
+        mStateCache.activeTexture(GLES20.GL_TEXTURE0)
+        mStateCache.bindTexture(GLES20.GL_TEXTURE_2D, textureId)
+        mStateCache.bindFrameBuffer(mFrameBuffers!![0])
+        GlUtil.checkGlError(gl, "glBindFramebuffer")
+
+        gl.glUniform1i(muTextureLoc!!, 0)
+        gl.glUniform2f(muImageSizeLoc!!, width.toFloat(), height.toFloat())
+        gl.glUniform1f(muFormatLoc!!, YuvPacking.formatCode(format))
+
+        gl.glEnableVertexAttribArray(maPositionLoc!!)
+        gl.glVertexAttribPointer(
+            maPositionLoc!!, Drawable2d.COORDS_PER_VERTEX,
+            GLES20.GL_FLOAT, false, Drawable2d.VERTEX_STRIDE, mDrawable2d.vertexArray
+        )
+
+        mStateCache.viewport(0, 0, packedWidth, packedHeight)
+
+        gl.glDrawArrays(GLES20.GL_TRIANGLE_STRIP, 0, mDrawable2d.vertexCount)
+        GlUtil.checkGlError(gl, "glDrawArrays")
+
+        gl.glDisableVertexAttribArray(maPositionLoc!!)
+
+        return mFrameBufferTextures!![0]
+    }
+
+    override fun drawFrameOffScreenForCompare(
+        textureId: Int,
+        srcTextureId: Int,
+        progress: Float,
+        width: Int,
+        height: Int,
+        mvpMatrix: FloatArray
+    ): Int = 0
+
+    /**
+     * 以NV21讀取
+     */
+    override fun readBuffer(textureId: Int, width: Int, height: Int): ByteBuffer? =
+        readBuffer(textureId, PixelFormat.BEF_AI_PIX_FMT_NV21, width, height)
+
+    /**
+     * 讀取轉換後的YUV buffer
+     * @param width 目標寬度，需為8的倍數(LUMA8為4的倍數)
+     * @param height 目標高度，需為4的倍數(LUMA8不限)
+     * @return YUV buffer，大小為 width * height * 3 / 2(LUMA8為 width * height)，
+     * 之後的呼叫會重複使用同一個direct buffer
+     */
+    fun readBuffer(textureId: Int, format: PixelFormat, width: Int, height: Int): ByteBuffer? {
+        if (textureId == GlUtil.NO_TEXTURE) return null
+        if (drawFrameOffScreen(textureId, format, width, height) == GlUtil.NO_TEXTURE) return null
+
+        val captureBuffer: ByteBuffer =
+            obtainCaptureBuffer(YuvPacking.bufferSize(format, width, height))
+
+        // FBO仍然綁定中
+        gl.glReadPixels(
+            0, 0, YuvPacking.packedWidth(width), YuvPacking.packedHeight(format, height),
+            GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, captureBuffer
+        )
+        GlUtil.checkGlError(gl, "glReadPixels")
+        mStateCache.bindFrameBuffer(0)
+
+        return captureBuffer
+    }
+}
@@ -0,0 +1,131 @@
+package dev.jimmytai.camera_view.glrenderer
+
+import android.util.Size
+import dev.jimmytai.camera_view.constant.CropScaleType
+
+/**
+ * 記住最近使用的[GLRenderer.Transition]
+ *
+ * 每個frame都會用到的轉換(預處理的旋轉鏡像、上屏的crop)只在尺寸或旋轉改變時才重新計算，
+ * 輸入相同時回傳同一個已凍結的Transition。以線性搜尋比對輸入，命中時不會配置任何物件；
+ * 超過[capacity]時淘汰最久未使用的項目
+ *
+ * 非thread-safe，只在單一執行緒(GLThread)中使用
+ */
+class TransitionCache(private val capacity: Int = DEFAULT_CAPACITY) {
+    companion object {
+        const val DEFAULT_CAPACITY: Int = 8
+    }
+
+    init {
+        require(capacity > 0) { "capacity must be positive" }
+    }
+
+    private class Entry(
+        val scaleType: CropScaleType?,
+        val rotation: Int,
+        val textureWidth: Int,
+        val textureHeight: Int,
+        val surfaceWidth: Int,
+        val surfaceHeight: Int,
+        val angle: Int,
+        val flipX: Boolean,
+        val flipY: Boolean,
+        val transition: GLRenderer.Transition
+    ) {
+        var lastUsed: Long = 0L
+    }
+
+    private val mEntries: Array<Entry?> = arrayOfNulls(capacity)
+
+    private var mTick: Long = 0L
+
+    var hitCount: Long = 0L
+        private set
+
+    var missCount: Long = 0L
+        private set
+
+    val size: Int
+        get() = mEntries.count { it != null }
+
+    /**
+     * 等同`Transition().crop(scaleType, rotation, textureSize, surfaceSize)`
+     */
+    fun crop(
+        scaleType: CropScaleType,
+        rotation: Int,
+        textureSize: Size,
+        surfaceSize: Size
+    ): GLRenderer.Transition = get(
+        scaleType, rotation,
+        textureSize.width, textureSize.height, surfaceSize.width, surfaceSize.height
+    )
+
+    /**
+     * 等同`Transition().rotate(angle).flip(flipX, flipY)`
+     */
+    fun rotateFlip(angle: Int, flipX: Boolean, flipY: Boolean): GLRenderer.Transition =
+        get(null, 0, 0, 0, 0, 0, angle, flipX, flipY)
+
+    /**
+     * 等同`Transition().crop(...)`(scaleType非null時)`.rotate(angle).flip(flipX, flipY)`
+     */
+    fun get(
+        scaleType: CropScaleType?,
+        rotation: Int,
+        textureWidth: Int,
+        textureHeight: Int,
+        surfaceWidth: Int,
+        surfaceHeight: Int,
+        angle: Int = 0,
+        flipX: Boolean = false,
+        flipY: Boolean = false
+    ): GLRenderer.Transition {
+        mTick++
+        var victim = 0
+        for (i in mEntries.indices) {
+            val entry: Entry? = mEntries[i]
+            if (entry == null) {
+                victim = i
+                break
+            }
+            if (entry.scaleType == scaleType &&
+                entry.rotation == rotation &&
+                entry.textureWidth == textureWidth &&
+                entry.textureHeight == textureHeight &&
+                entry.surfaceWidth == surfaceWidth &&
+                entry.surfaceHeight == surfaceHeight &&
+                entry.angle == angle &&
+                entry.flipX == flipX &&
+                entry.flipY == flipY
+            ) {
+                entry.lastUsed = mTick
+                hitCount++
+                return entry.transition
+            }
+            if (entry.lastUsed < mEntries[victim]!!.lastUsed) victim = i
+        }
+
+        missCount++
+        val transition = GLRenderer.Transition()
+        if (scaleType != null) {
+            transition.crop(
+                scaleType, rotation, textureWidth, textureHeight, surfaceWidth, surfaceHeight
+            )
+        }
+        if (angle != 0) transition.rotate(angle.toFloat())
+        transition.flip(flipX, flipY)
+        transition.freeze()
+
+        mEntries[victim] = Entry(
+            scaleType, rotation, textureWidth, textureHeight, surfaceWidth, surfaceHeight,
+            angle, flipX, flipY, transition
+        ).also { it.lastUsed = mTick }
+        return transition
+    }
+
+    fun clear() {
+        mEntries.fill(null)
+    }
+}
@@ -0,0 +1,114 @@
+package dev.jimmytai.camera_view.glrenderer
+
+import dev.jimmytai.camera_view.constant.PixelFormat
+
+/**
+ * RGBA → YUV打包的排列方式，[ShaderProgramYUV]的fragment shader與此處的計算一一對應
+ *
+ * 輸出為一張寬 width/4、高 height*3/2 的RGBA texture，每個texel存放4個byte，
+ * 所以glReadPixels讀回的資料就是排列好的I420/NV12/NV21 buffer(每個pixel 1.5 bytes)。
+ * [PixelFormat.LUMA8]只有Y plane，texture高度為 height(每個pixel 1 byte)
+ *
+ * - row 0 ~ height-1：Y plane，texel (x, y) 為第y列第4x ~ 4x+3個pixel的Y
+ * - row height ~ height*3/2-1：
+ *     - I420：先放U plane再放V plane，每個plane高 height/4 列(每列 width 個byte)
+ *     - NV12/NV21：交錯的UV/VU plane，texel (x, y) 為第y列第2x、2x+1個chroma pixel
+ *
+ * 取樣座標以「兩倍pixel座標」表示，方便以整數比對：
+ * Y取樣於pixel中心(2x+1)，chroma取樣於2x2區塊的中心(4cx+2)，線性過濾下等於2x2區塊的平均。
+ * 轉換係數與[dev.jimmytai.camera_view.utils.YuvConverter]相同(BT.601 limited range)
+ */
+internal object YuvPacking {
+    const val CHANNEL_Y: Int = 0
+    const val CHANNEL_U: Int = 1
+    const val CHANNEL_V: Int = 2
+
+    /**
+     * shader中代表輸出格式的數值
+     */
+    fun formatCode(format: PixelFormat): Float =
+        when (format) {
+            PixelFormat.BEF_AI_PIX_FMT_YUV420P -> 0f
+            PixelFormat.BEF_AI_PIX_FMT_NV12 -> 1f
+            PixelFormat.BEF_AI_PIX_FMT_NV21 -> 2f
+            PixelFormat.LUMA8 -> 3f
+            else -> throw IllegalArgumentException("$format is not a YUV format")
+        }
+
+    fun isYuvFormat(format: PixelFormat): Boolean =
+        format == PixelFormat.BEF_AI_PIX_FMT_YUV420P ||
+                format == PixelFormat.BEF_AI_PIX_FMT_NV12 ||
+                format == PixelFormat.BEF_AI_PIX_FMT_NV21 ||
+                format == PixelFormat.LUMA8
+
+    /**
+     * 寬需為8的倍數、高需為4的倍數，chroma plane才能剛好對齊texel；
+     * [PixelFormat.LUMA8]沒有chroma，寬為4的倍數即可
+     */
+    fun alignWidth(format: PixelFormat, width: Int): Int =
+        if (format == PixelFormat.LUMA8) width / 4 * 4 else width / 8 * 8
+
+    fun alignHeight(format: PixelFormat, height: Int): Int =
+        if (format == PixelFormat.LUMA8) height else height / 4 * 4
+
+    fun isAligned(format: PixelFormat, width: Int, height: Int): Boolean =
+        width > 0 && height > 0 &&
+                alignWidth(format, width) == width && alignHeight(format, height) == height
+
+    fun packedWidth(width: Int): Int = width / 4
+
+    fun packedHeight(format: PixelFormat, height: Int): Int =
+        if (format == PixelFormat.LUMA8) height else height * 3 / 2
+
+    fun bufferSize(format: PixelFormat, width: Int, height: Int): Int =
+        packedWidth(width) * packedHeight(format, height) * 4
+
+    /**
+     * 計算輸出texel (texelX, texelY) 的第component(0~3)個byte的來源
+     *
+     * @param out out[0] 為channel，out[1]/out[2] 為兩倍pixel座標的取樣位置x/y
+     */
+    fun sourceOf(
+        format: PixelFormat,
+        width: Int,
+        height: Int,
+        texelX: Int,
+        texelY: Int,
+        component: Int,
+        out: IntArray
+    ) {
+        if (texelY < height) {
+            out[0] = CHANNEL_Y
+            out[1] = (texelX * 4 + component) * 2 + 1
+            out[2] = texelY * 2 + 1
+            return
+        }
+
+        val row: Int = texelY - height
+        when (format) {
+            PixelFormat.BEF_AI_PIX_FMT_YUV420P -> {
+                val quarter: Int = height / 4
+                val isV: Boolean = row >= quarter
+                val planeRow: Int = if (isV) row - quarter else row
+                val halfWidth: Int = width / 2
+                val offset: Int = planeRow * width + texelX * 4
+                val chromaY: Int = offset / halfWidth
+                val chromaX: Int = offset - chromaY * halfWidth + component
+                out[0] = if (isV) CHANNEL_V else CHANNEL_U
+                out[1] = chromaX * 4 + 2
+                out[2] = chromaY * 4 + 2
+            }
+
+            PixelFormat.BEF_AI_PIX_FMT_NV12, PixelFormat.BEF_AI_PIX_FMT_NV21 -> {
+                val chromaX: Int = texelX * 2 + component / 2
+                val firstIsU: Boolean = format == PixelFormat.BEF_AI_PIX_FMT_NV12
+                val isU: Boolean = (component % 2 == 0) == firstIsU
+                out[0] = if (isU) CHANNEL_U else CHANNEL_V
+                out[1] = chromaX * 4 + 2
+                out[2] = row * 4 + 2
+            }
+
+            else -> throw IllegalArgumentException("$format is not a YUV format")
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package dev.jimmytai.camera_view.glthread
+
+import dev.jimmytai.camera_view.model.DisplayLatencyStats
+import dev.jimmytai.camera_view.utils.LatencyHistogram
+
+/**
+ * 記錄每個frame從相機拍攝到交給螢幕的延遲，frame顯示時呼叫一次
+ *
+ * - 相機timestamp可能使用System.nanoTime或elapsedRealtime時基，第一個frame時偵測並轉換
+ * - 不在系統時鐘上的timestamp(例如影片的presentation time)換算後為負值或超過[MAX_LATENCY_NS]，
+ *   只計入[DisplayLatencyStats.unmeasuredFrameCount]
+ *
+ * 可能在GLThread或主執行緒(TextureView)更新，可以在任意執行緒讀取[stats]
+ */
+internal class DisplayLatencyTracker {
+    companion object {
+        const val MAX_LATENCY_NS: Long = 1_000_000_000L
+    }
+
+    private val mHistogram: LatencyHistogram = LatencyHistogram(maxLatencyNs = MAX_LATENCY_NS)
+
+    /**
+     * 相機timestamp轉換至System.nanoTime時基需要加上的值，第一個frame時決定
+     */
+    private var mRebaseNs: Long? = null
+
+    private var mUnmeasuredFrameCount: Long = 0L
+
+    /**
+     * @param frameTimestampNs  SurfaceTexture.getTimestamp()，0代表沒有timestamp
+     * @param nowNs             System.nanoTime()
+     * @param nowRealtimeNs     SystemClock.elapsedRealtimeNanos()
+     */
+    @Synchronized
+    fun onFramePresented(frameTimestampNs: Long, nowNs: Long, nowRealtimeNs: Long) {
+        if (frameTimestampNs <= 0L) {
+            mUnmeasuredFrameCount++
+            return
+        }
+        val rebaseNs: Long = mRebaseNs
+            ?: PresentationTimeTracker.detectRebase(frameTimestampNs, nowNs, nowRealtimeNs)
+                .also { mRebaseNs = it }
+        val latencyNs: Long = nowNs - (frameTimestampNs + rebaseNs)
+        if (latencyNs < 0L || latencyNs > MAX_LATENCY_NS) {
+            mUnmeasuredFrameCount++
+            return
+        }
+        mHistogram.record(latencyNs)
+    }
+
+    val stats: DisplayLatencyStats
+        @Synchronized get() = DisplayLatencyStats(
+            frameCount = mHistogram.count,
+            unmeasuredFrameCount = mUnmeasuredFrameCount,
+            p50Ns = mHistogram.percentile(50.0),
+            p90Ns = mHistogram.percentile(90.0),
+            p99Ns = mHistogram.percentile(99.0),
+            maxNs = mHistogram.max,
+            averageNs = mHistogram.average
+        )
+
+    /**
+     * 重新計算，時基也重新偵測(例如切換frame source後)
+     */
+    @Synchronized
+    fun reset() {
+        mHistogram.reset()
+        mRebaseNs = null
+        mUnmeasuredFrameCount = 0L
+    }
+}
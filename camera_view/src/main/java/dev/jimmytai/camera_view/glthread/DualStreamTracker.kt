@@ -0,0 +1,86 @@
+package dev.jimmytai.camera_view.glthread
+
+import dev.jimmytai.camera_view.model.DualCameraStats
+import kotlin.math.abs
+
+/**
+ * 記錄雙相機串流的對齊情況，每個主相機frame合成時呼叫一次
+ *
+ * SurfaceTexture只保留最新的buffer，主相機frame總是與最新的副相機frame合成：
+ * - 兩次合成之間到達多個副相機frame時，只有最後一個被使用，其餘算是丟棄
+ * - 兩次合成之間沒有副相機frame時，重複使用上一個
+ * - 兩者timestamp的差距記錄為skew，兩個相機的timestamp需要使用相同的時基
+ *
+ * 在GLThread中更新，可以在任意執行緒讀取[stats]
+ */
+internal class DualStreamTracker {
+    private var mPrimaryFrameCount: Long = 0L
+
+    private var mPrimaryDroppedFrameCount: Long = 0L
+
+    private var mSecondaryFrameCount: Long = 0L
+
+    private var mSecondaryDroppedFrameCount: Long = 0L
+
+    private var mSecondaryRepeatedFrameCount: Long = 0L
+
+    private var mMaxSkewNs: Long = 0L
+
+    private var mSkewSumNs: Long = 0L
+
+    private var mSkewSampleCount: Long = 0L
+
+    /**
+     * @param primaryTimestampNs        主相機frame的timestamp
+     * @param primaryDroppedFrames      此frame之前被合併(略過)的主相機frame數量
+     * @param secondaryPendingFrames    上次合成後到達的副相機frame數量
+     * @param secondaryTimestampNs      合成使用的副相機frame的timestamp，還沒有任何副相機frame時為0
+     */
+    @Synchronized
+    fun onFrame(
+        primaryTimestampNs: Long,
+        primaryDroppedFrames: Int,
+        secondaryPendingFrames: Int,
+        secondaryTimestampNs: Long
+    ) {
+        mPrimaryFrameCount++
+        mPrimaryDroppedFrameCount += primaryDroppedFrames
+        if (secondaryPendingFrames > 0) {
+            mSecondaryFrameCount += secondaryPendingFrames
+            mSecondaryDroppedFrameCount += secondaryPendingFrames - 1
+        } else if (secondaryTimestampNs > 0L) {
+            mSecondaryRepeatedFrameCount++
+        }
+
+        if (primaryTimestampNs > 0L && secondaryTimestampNs > 0L) {
+            val skewNs: Long = abs(primaryTimestampNs - secondaryTimestampNs)
+            if (skewNs > mMaxSkewNs) mMaxSkewNs = skewNs
+            mSkewSumNs += skewNs
+            mSkewSampleCount++
+        }
+    }
+
+    @Synchronized
+    fun reset() {
+        mPrimaryFrameCount = 0L
+        mPrimaryDroppedFrameCount = 0L
+        mSecondaryFrameCount = 0L
+        mSecondaryDroppedFrameCount = 0L
+        mSecondaryRepeatedFrameCount = 0L
+        mMaxSkewNs = 0L
+        mSkewSumNs = 0L
+        mSkewSampleCount = 0L
+    }
+
+    val stats: DualCameraStats
+        @Synchronized
+        get() = DualCameraStats(
+            primaryFrameCount = mPrimaryFrameCount,
+            primaryDroppedFrameCount = mPrimaryDroppedFrameCount,
+            secondaryFrameCount = mSecondaryFrameCount,
+            secondaryDroppedFrameCount = mSecondaryDroppedFrameCount,
+            secondaryRepeatedFrameCount = mSecondaryRepeatedFrameCount,
+            maxSkewNs = mMaxSkewNs,
+            averageSkewNs = if (mSkewSampleCount == 0L) 0L else mSkewSumNs / mSkewSampleCount
+        )
+}
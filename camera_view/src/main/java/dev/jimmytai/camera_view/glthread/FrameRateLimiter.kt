@@ -0,0 +1,47 @@
+package dev.jimmytai.camera_view.glthread
+
+/**
+ * 依照相機timestamp限制輸出窗口的frame rate
+ *
+ * 下一個frame的期限以固定間隔遞增，而不是以上一個輸出的frame為準，
+ * 例如30fps的相機限制為20fps時會每3個frame輸出2個，而不是退化成15fps。
+ * 相機的frame間隔會有抖動，允許比期限提早1/4個間隔。
+ * 沒有timestamp的frame(例如部分裝置的第一個frame，或非相機的輸入)改用System.nanoTime
+ *
+ * @param maxFps 0代表不限制
+ */
+internal class FrameRateLimiter(maxFps: Int) {
+    private val mIntervalNs: Long = if (maxFps > 0) 1_000_000_000L / maxFps else 0L
+
+    private var mNextTimestampNs: Long = Long.MIN_VALUE
+
+    /**
+     * 被略過的frame數量
+     */
+    var skippedFrameCount: Long = 0L
+        private set
+
+    /**
+     * @param timestampNs   frame的timestamp，0或負值代表沒有timestamp
+     * @param nowNs         沒有timestamp時使用的時間
+     * @return true代表這個frame需要輸出
+     */
+    fun tryAcquire(timestampNs: Long, nowNs: Long = System.nanoTime()): Boolean {
+        if (mIntervalNs == 0L) return true
+        // 沒有timestamp時固定的0會讓第一個frame之後的frame全部被略過
+        val frameTimeNs: Long = if (timestampNs > 0L) timestampNs else nowNs
+        val next: Long = mNextTimestampNs
+        if (next != Long.MIN_VALUE && frameTimeNs < next - mIntervalNs / 4) {
+            skippedFrameCount++
+            return false
+        }
+        // 第一個frame或落後超過一個間隔(例如相機暫停)時重新對齊
+        mNextTimestampNs =
+            if (next == Long.MIN_VALUE || frameTimeNs - next > mIntervalNs) {
+                frameTimeNs + mIntervalNs
+            } else {
+                next + mIntervalNs
+            }
+        return true
+    }
+}
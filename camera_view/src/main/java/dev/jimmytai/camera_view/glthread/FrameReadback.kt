@@ -0,0 +1,61 @@
+package dev.jimmytai.camera_view.glthread
+
+import android.util.Size
+import dev.jimmytai.camera_view.gles.EglCore
+import dev.jimmytai.camera_view.glrenderer.GLRenderer
+import dev.jimmytai.camera_view.interfaces.CameraTextureProcessor
+
+/**
+ * 在GLThread中讀取每個處理後frame的掛勾，所有方法都在GLThread中呼叫
+ *
+ * 透過[GLThread.addFrameReadback]/[GLThread.removeFrameReadback]註冊，
+ * 只能使用傳入的[GLRenderer](與其GlStateCache)操作GL狀態
+ */
+internal interface FrameReadback {
+    /**
+     * 加入GLThread時呼叫，EGLContext已經current
+     */
+    fun onAttach(eglCore: EglCore)
+
+    /**
+     * 每個frame從SurfaceTexture取出後、任何處理之前呼叫
+     *
+     * @param textureId         相機的OES texture
+     * @param bufferSize        SurfaceTexture buffer的尺寸(未旋轉)
+     * @param rotationDegrees   顯示時需要的旋轉角度
+     * @param transformMatrix   SurfaceTexture的transform matrix，不可修改
+     * @param timestampNs       相機拍攝此frame的時間
+     */
+    fun onInputFrame(
+        renderer: GLRenderer,
+        textureId: Int,
+        bufferSize: Size,
+        rotationDegrees: Int,
+        transformMatrix: FloatArray,
+        timestampNs: Long
+    ) {
+    }
+
+    /**
+     * 每個frame在外部處理([CameraTextureProcessor.onProcessTexture])之後、繪製至窗口之前呼叫
+     *
+     * @param textureId     處理後的2D texture
+     * @param textureSize   texture的尺寸
+     * @param timestampNs   相機拍攝此frame的時間
+     */
+    fun onFrame(renderer: GLRenderer, textureId: Int, textureSize: Size, timestampNs: Long)
+
+    /**
+     * 從GLThread移除或GLThread釋放時呼叫，需在此釋放GL資源
+     */
+    fun onDetach()
+
+    /**
+     * 尚未加入GLThread就被捨棄時呼叫(GLThread已釋放或EGL尚未初始化)，不會再呼叫[onAttach]/[onDetach]，
+     * 在任意執行緒呼叫
+     *
+     * 沒有GL資源需要釋放，但需結束所有等待中的請求，否則呼叫端會一直等待
+     */
+    fun onDiscarded() {
+    }
+}
@@ -1,36 +1,46 @@
 package dev.jimmytai.camera_view.glthread
 
+import android.content.Context
 import android.graphics.SurfaceTexture
 import android.opengl.EGL14
-import android.opengl.EGLContext
-import android.opengl.EGLDisplay
-import android.opengl.EGLSurface
 import android.opengl.GLES20
 import android.os.Build
 import android.os.Bundle
 import android.os.Handler
 import android.os.HandlerThread
 import android.os.Message
-import android.os.Process
+import android.os.SystemClock
 import android.util.Size
 import android.view.Surface
 import dev.jimmytai.camera_view.constant.CropScaleType
+import dev.jimmytai.camera_view.constant.DualCameraLayout
 import dev.jimmytai.camera_view.constant.TextureFormat
 import dev.jimmytai.camera_view.gles.EglCore
+import dev.jimmytai.camera_view.gles.EglSurfaceBase
+import dev.jimmytai.camera_view.gles.GlStateCache
 import dev.jimmytai.camera_view.gles.GlUtil
+import dev.jimmytai.camera_view.gles.OffscreenSurface
 import dev.jimmytai.camera_view.gles.WindowSurface
+import dev.jimmytai.camera_view.glrenderer.DualCameraCompositor
 import dev.jimmytai.camera_view.glrenderer.GLRenderer
 import dev.jimmytai.camera_view.interfaces.CameraTextureProcessor
+import dev.jimmytai.camera_view.model.DisplayLatencyStats
+import dev.jimmytai.camera_view.model.DualCameraStats
+import dev.jimmytai.camera_view.model.FrameStageTimings
+import dev.jimmytai.camera_view.model.GLThreadConfig
 import dev.jimmytai.camera_view.model.OutputSurfaceOption
+import dev.jimmytai.camera_view.model.PresentationTimeReport
 import dev.jimmytai.camera_view.utils.Logger
+import java.util.concurrent.atomic.AtomicInteger
 
 abstract class GLThread(
     name: String,
-    priority: Int = Process.THREAD_PRIORITY_DEFAULT,
+    context: Context,
+    private val config: GLThreadConfig,
     private val callback: GLThreadCallback,
     private val cameraTextureProcessor: CameraTextureProcessor
 ) :
-    HandlerThread(name, priority) {
+    HandlerThread(name, config.threadPriority) {
     companion object {
         val TAG: String = GLThread::class.java.simpleName
 
@@ -54,6 +64,21 @@ abstract class GLThread(
 
         // 移除一個繪製窗口
         const val REMOVE_OUTPUT_SURFACE: Int = 6
+
+        // 新增一個讀取frame的掛勾
+        const val ADD_FRAME_READBACK: Int = 7
+
+        // 移除一個讀取frame的掛勾
+        const val REMOVE_FRAME_READBACK: Int = 8
+
+        // 設定螢幕繪製窗口的swap interval
+        const val SET_DISPLAY_SWAP_INTERVAL: Int = 9
+
+        // 啟用/停用第二個輸入串流(雙相機)
+        const val SET_SECONDARY_INPUT: Int = 10
+
+        // 更新第二個輸入串流的配置
+        const val UPDATE_SECONDARY_CAMERA_CONFIGS: Int = 11
     }
 
     private object CameraConfigs {
@@ -63,6 +88,7 @@ abstract class GLThread(
 
     private object SurfaceConfigs {
         const val SIZE = "size"
+        const val VIEW_SIZE = "view-size"
     }
 
     private object OutputSurfaceConfigs {
@@ -73,6 +99,7 @@ abstract class GLThread(
     /**
      * 負責在此執行序中獲取任務的Handler
      */
+    @Volatile
     private var mHandler: Handler? = null
 
     /**
@@ -83,14 +110,20 @@ abstract class GLThread(
     /**
      * EGL的繪製窗口，透過Surface建立並綁定
      *
-     * SwapBuffer時會將圖像資料輸出至Surface，達到繪製的目的
+     * SwapBuffer時會將圖像資料輸出至Surface，達到繪製的目的；
+     * 沒有畫面的GLThread使用離屏的pbuffer，只讓EGLContext可以current，不繪製也不swap
      */
-    private var mWindowSurface: WindowSurface? = null
+    private var mWindowSurface: EglSurfaceBase? = null
+
+    /**
+     * 此執行緒EGLContext的GL狀態快取，外部處理Texture後需要讓它失效
+     */
+    private val mGlStateCache: GlStateCache = GlStateCache()
 
     /**
      * OpenGL中與Texture相關的操作
      */
-    private var mGLRenderer: GLRenderer = GLRenderer()
+    private var mGLRenderer: GLRenderer = GLRenderer(mGlStateCache)
 
     /**
      * 相機資料輸出的Texture
@@ -102,6 +135,43 @@ abstract class GLThread(
      */
     private var mSurfaceTexture: SurfaceTexture? = null
 
+    /**
+     * 第二個輸入串流(副相機)的Texture，未啟用時為-1
+     */
+    private var mSecondaryOesTextureId: Int = -1
+
+    /**
+     * 提供給副相機的SurfaceTexture，綁定[mSecondaryOesTextureId]
+     */
+    private var mSecondarySurfaceTexture: SurfaceTexture? = null
+
+    /**
+     * 副相機旋轉後的尺寸
+     */
+    private var mSecondaryCameraSize: Size = Size(-1, -1)
+
+    /**
+     * 副相機旋轉角度
+     */
+    private var mSecondaryRotationDegrees: Int = 0
+
+    /**
+     * 目前合成使用的副相機frame的timestamp，還沒有任何frame時為0
+     */
+    private var mSecondaryTimestampNs: Long = 0L
+
+    /**
+     * 尚未取出的副相機frame數量，副相機不發送PROCESS事件，frame的節奏由主相機決定
+     */
+    private val mPendingSecondaryFrames: AtomicInteger = AtomicInteger(0)
+
+    /**
+     * 將兩個相機合成至同一張texture，未啟用第二個輸入串流時為null
+     */
+    private var mCompositor: DualCameraCompositor? = null
+
+    private val mDualStreamTracker: DualStreamTracker = DualStreamTracker()
+
     /**
      * 相機尺寸，也代表原始Texture尺寸
      */
@@ -117,6 +187,12 @@ abstract class GLThread(
      */
     private var mSurfaceViewSize: Size = Size(-1, -1)
 
+    /**
+     * View在螢幕上的尺寸，螢幕的buffer縮小時大於[mSurfaceViewSize]
+     */
+    @Volatile
+    private var mViewSize: Size = Size(-1, -1)
+
     /**
      * SurfaceView中的 transform matrix
      */
@@ -127,25 +203,196 @@ abstract class GLThread(
      */
     private var mOutputWindowSurfaces: MutableMap<Int, OutputWindowSurface> = mutableMapOf()
 
+    /**
+     * 所有繪製窗口(螢幕+額外輸出)，只在窗口新增/移除時重建，避免每個frame都建立新的List
+     */
+    private val mOutputs: MutableList<OutputWindowSurface> = mutableListOf()
+
+    /**
+     * 每個frame處理後讀取texture的掛勾(例如PBO readback)
+     */
+    private val mFrameReadbacks: MutableList<FrameReadback> = mutableListOf()
+
+    /**
+     * 已排入ADD_FRAME_READBACK、GLThread尚未加入的掛勾，釋放時由[release]捨棄，以自身為鎖
+     */
+    private val mQueuedFrameReadbacks: MutableList<FrameReadback> = mutableListOf()
+
+    /**
+     * 在INIT之前加入、等待EGL建立後才加入的掛勾，只在GLThread中存取
+     */
+    private val mFrameReadbacksWaitingForEgl: MutableList<FrameReadback> = mutableListOf()
+
+    /**
+     * 已呼叫[release]，之後加入的掛勾直接捨棄，以[mQueuedFrameReadbacks]為鎖
+     */
+    private var mReleased: Boolean = false
+
+    /**
+     * 每個frame各階段的處理時間，每個frame重複使用
+     */
+    private val mStageTimings: FrameStageTimings = FrameStageTimings()
+
+    /**
+     * 螢幕繪製窗口的swap interval，0代表eglSwapBuffers不等待vsync，窗口重建時重新設定
+     */
+    private var mDisplaySwapInterval: Int = 1
+
+    /**
+     * 尚未被GLThread處理的frame available通知數量
+     *
+     * 只有從0變為1的那一次通知會發送PROCESS事件，其他通知只遞增計數，不需要鎖住MessageQueue
+     */
+    private val mPendingFrames: AtomicInteger = AtomicInteger(0)
+
+    /**
+     * 收到的frame available通知總數，只在GLThread中更新
+     */
+    @Volatile
+    var frameNotificationCount: Long = 0L
+        private set
+
+    /**
+     * 因GLThread來不及處理而被合併(略過)的通知數量，只在GLThread中更新
+     */
+    @Volatile
+    var coalescedFrameCount: Long = 0L
+        private set
+
+    /**
+     * 回報每個frame工作時間給系統，讓系統可以為渲染迴圈提高CPU時脈
+     */
+    private val mPerformanceHint: RenderPerformanceHint? =
+        if (config.usePerformanceHint) {
+            RenderPerformanceHint(context.applicationContext, config.targetWorkDurationNs)
+        } else {
+            null
+        }
+
+    /**
+     * 上一個frame的實際工作時間(nanoseconds)
+     */
+    @Volatile
+    var lastWorkDurationNs: Long = 0L
+        private set
+
+    /**
+     * 實際工作時間超過[GLThreadConfig.targetWorkDurationNs]的frame數量
+     */
+    @Volatile
+    var overBudgetFrameCount: Long = 0L
+        private set
+
+    /**
+     * eglMakeCurrent實際被呼叫的次數
+     */
+    @Volatile
+    var makeCurrentCount: Long = 0L
+        private set
+
+    /**
+     * 目標窗口已經是current而略過的eglMakeCurrent次數
+     */
+    @Volatile
+    var skippedMakeCurrentCount: Long = 0L
+        private set
+
+    /**
+     * frame顯示在螢幕上時觸發，參數為frame的SurfaceTexture timestamp，在任意執行緒呼叫
+     *
+     * 顯示的時間點依繪製窗口而不同，見[onDisplayFrameSwapped]
+     */
+    @Volatile
+    internal var onFramePresented: ((timestampNs: Long) -> Unit)? = null
+
+    /**
+     * frame swap至螢幕的繪製窗口(包含額外顯示的View與外部Surface)時觸發，參數為frame的SurfaceTexture timestamp，
+     * 在GLThread中呼叫
+     *
+     * 所有繪製窗口都在buffer交給consumer(queueBuffer)時觸發，不同窗口的延遲可以直接比較
+     */
+    @Volatile
+    internal var onFrameSwapped: ((timestampNs: Long) -> Unit)? = null
+
+    /**
+     * 每個frame從相機拍攝到交給螢幕的延遲，在[notifyFramePresented]中記錄
+     */
+    private val mDisplayLatencyTracker: DisplayLatencyTracker = DisplayLatencyTracker()
+
+    /**
+     * 從相機拍攝到交給螢幕的延遲，從GLThread啟動或上次[resetDisplayLatencyStats]開始計算
+     */
+    val displayLatencyStats: DisplayLatencyStats
+        get() = mDisplayLatencyTracker.stats
+
     /**
      * 目前GLThread渲染使用的相機尺寸
      */
     val cameraSize: Size
         get() = mCameraSize
 
+    /**
+     * 雙相機串流的統計，從啟用第二個輸入串流開始計算
+     */
+    val dualCameraStats: DualCameraStats
+        get() = mDualStreamTracker.stats
+
     /**
      * 目前GLThread渲染至螢幕的尺寸
      */
     val surfaceViewSize: Size
         get() = mSurfaceViewSize
 
+    /**
+     * View在螢幕上的尺寸，未縮小螢幕的buffer時與[surfaceViewSize]相同
+     */
+    val viewSize: Size
+        get() = mViewSize
+
     /**
      * This function will be triggered after OpenGL engine initialized.
+     *
+     * The returned surface will be made current by GLThread. Frames are drawn to it when it is a
+     * [WindowSurface]; any other surface, e.g. an [OffscreenSurface], only keeps the context
+     * current and frames go to the output surfaces and readbacks alone.
      */
-    abstract fun createWindowSurface(eglCore: EglCore): WindowSurface
+    abstract fun createWindowSurface(eglCore: EglCore): EglSurfaceBase
 
     abstract fun releaseInputData()
 
+    /**
+     * frame已swap至螢幕的繪製窗口(包含額外顯示的View)時觸發，每個frame只觸發一次，在GLThread中執行
+     *
+     * SurfaceView的buffer交給SurfaceFlinger後就會合成上屏，預設視為已顯示；
+     * 由App自行合成的窗口(例如TextureView)覆寫此方法，在實際被取用時才呼叫[notifyFramePresented]
+     */
+    protected open fun onDisplayFrameSwapped(timestampNs: Long) {
+        notifyFramePresented(timestampNs)
+    }
+
+    protected fun notifyFramePresented(timestampNs: Long) {
+        mDisplayLatencyTracker.onFramePresented(
+            timestampNs,
+            System.nanoTime(),
+            SystemClock.elapsedRealtimeNanos()
+        )
+        onFramePresented?.invoke(timestampNs)
+    }
+
+    /**
+     * 螢幕的繪製窗口是否可以使用單一buffer直接掃描輸出(front buffer rendering)，
+     * 只有交給SurfaceFlinger合成的窗口(SurfaceView)支援
+     */
+    protected open val supportsFrontBufferAutoRefresh: Boolean
+        get() = false
+
+    /**
+     * 重新計算[displayLatencyStats]，可以在任意執行緒呼叫
+     */
+    fun resetDisplayLatencyStats() {
+        mDisplayLatencyTracker.reset()
+    }
+
     /**
      * 通知GLThread初始化OpenGL與EGL的事件
      */
@@ -157,16 +404,67 @@ abstract class GLThread(
      * 移除當前隊列的GLThread渲染事件
      */
     fun pause() {
+        // 先移除事件再歸零，避免計數不為0卻沒有PROCESS事件，導致之後的frame都不會被處理
         mHandler?.removeMessages(PROCESS)
+        mPendingFrames.set(0)
     }
 
     /**
-     * 通知GLThread渲染的事件
+     * 通知GLThread渲染的事件，可以在任意執行緒呼叫
      */
     fun process() {
-        // 因有時處理texture時間可能大於下一個frame available的時間，確保不會造成back pressure
-        mHandler?.removeMessages(PROCESS)
-        mHandler?.sendEmptyMessage(PROCESS)
+        // 因有時處理texture時間可能大於下一個frame available的時間，確保不會造成back pressure：
+        // 已經有尚未處理的PROCESS事件時只遞增計數，GLThread處理時一次消化所有通知
+        if (mPendingFrames.getAndIncrement() == 0) {
+            val sent: Boolean = mHandler?.sendEmptyMessage(PROCESS) ?: false
+            if (!sent) {
+                // GLThread尚未啟動或已經釋放
+                mPendingFrames.set(0)
+            }
+        }
+    }
+
+    /**
+     * 第二個輸入串流有新的frame，可以在任意執行緒呼叫
+     *
+     * 只記錄數量，下一個主相機frame處理時才取出最新的副相機frame
+     */
+    fun processSecondary() {
+        mPendingSecondaryFrames.incrementAndGet()
+    }
+
+    /**
+     * 通知GLThread啟用第二個輸入串流，GLThread建立第二個SurfaceTexture後回呼
+     * [GLThreadCallback.onCreateSecondarySurfaceTexture]，兩個串流以[layout]合成後才進入處理流程
+     *
+     * @param layout    null代表停用
+     */
+    fun setSecondaryInput(layout: DualCameraLayout?) {
+        mHandler?.obtainMessage(SET_SECONDARY_INPUT, layout)?.sendToTarget()
+    }
+
+    /**
+     * 通知GLThread更新第二個輸入串流配置的事件
+     */
+    fun updateSecondaryCameraConfigs(size: Size, rotationDegrees: Int) {
+        Logger.d(
+            TAG,
+            "updateSecondaryCameraConfigs -> width: ${size.width}, height: ${size.height}, rotation: $rotationDegrees"
+        )
+        val message = Message().apply {
+            what = UPDATE_SECONDARY_CAMERA_CONFIGS
+            data = Bundle().apply {
+                putSize(
+                    CameraConfigs.SIZE, if (rotationDegrees % 180 == 90) {
+                        Size(size.height, size.width)
+                    } else {
+                        Size(size.width, size.height)
+                    }
+                )
+                putInt(CameraConfigs.ROTATION_DEGREES, rotationDegrees)
+            }
+        }
+        mHandler?.sendMessage(message)
     }
 
     /**
@@ -175,9 +473,18 @@ abstract class GLThread(
     fun release() {
         Logger.d(TAG, "release GLThread")
         mHandler?.removeMessages(UPDATE_CAMERA_CONFIGS)
+        mHandler?.removeMessages(UPDATE_SECONDARY_CAMERA_CONFIGS)
+        mHandler?.removeMessages(SET_SECONDARY_INPUT)
         mHandler?.removeMessages(UPDATE_SURFACE_CONFIGS)
         mHandler?.removeMessages(ADD_OUTPUT_SURFACE)
         mHandler?.removeMessages(PROCESS)
+        // 尚未加入的掛勾不會再被加入或移除，結束它們等待中的請求；已加入的掛勾在onRelease中移除
+        val discarded: List<FrameReadback> = synchronized(mQueuedFrameReadbacks) {
+            mReleased = true
+            mHandler?.removeMessages(ADD_FRAME_READBACK)
+            mQueuedFrameReadbacks.toList().also { mQueuedFrameReadbacks.clear() }
+        }
+        discarded.forEach { it.onDiscarded() }
         mHandler?.sendEmptyMessage(RELEASE)
     }
 
@@ -207,12 +514,16 @@ abstract class GLThread(
 
     /**
      * 通知GLThread更新Surface配置的事件
+     *
+     * @param size      Surface buffer的尺寸，也就是繪製至螢幕的尺寸
+     * @param viewSize  View在螢幕上的尺寸，buffer縮小(SurfaceHolder.setFixedSize)時由螢幕硬體放大至此尺寸
      */
-    fun updateSurfaceConfigs(size: Size) {
+    fun updateSurfaceConfigs(size: Size, viewSize: Size = size) {
         val message = Message().apply {
             what = UPDATE_SURFACE_CONFIGS
             data = Bundle().apply {
                 putSize(SurfaceConfigs.SIZE, size)
+                putSize(SurfaceConfigs.VIEW_SIZE, viewSize)
             }
         }
         mHandler?.sendMessage(message)
@@ -245,6 +556,37 @@ abstract class GLThread(
         mHandler?.sendMessage(message)
     }
 
+    /**
+     * 通知GLThread新增一個讀取frame的掛勾
+     */
+    internal fun addFrameReadback(readback: FrameReadback) {
+        val queued: Boolean = synchronized(mQueuedFrameReadbacks) {
+            val handler: Handler? = mHandler
+            if (mReleased || handler == null) return@synchronized false
+            mQueuedFrameReadbacks.add(readback)
+            handler.obtainMessage(ADD_FRAME_READBACK, readback).sendToTarget()
+            true
+        }
+        if (!queued) {
+            Logger.w(TAG, "addFrameReadback -> GLThread is released")
+            readback.onDiscarded()
+        }
+    }
+
+    /**
+     * 通知GLThread移除一個讀取frame的掛勾
+     */
+    internal fun removeFrameReadback(readback: FrameReadback) {
+        mHandler?.obtainMessage(REMOVE_FRAME_READBACK, readback)?.sendToTarget()
+    }
+
+    /**
+     * 通知GLThread設定螢幕繪製窗口的swap interval，離線處理時設為0，螢幕不會拖慢處理速度
+     */
+    fun setDisplaySwapInterval(interval: Int) {
+        mHandler?.obtainMessage(SET_DISPLAY_SWAP_INTERVAL, interval, 0)?.sendToTarget()
+    }
+
     override fun start() {
         super.start()
         mHandler = Handler(looper) { msg ->
@@ -255,7 +597,21 @@ abstract class GLThread(
                 }
 
                 PROCESS -> {
-                    onProcess()
+                    // 先歸零再處理，處理期間到達的frame會再發送一次PROCESS事件
+                    val pendingFrames: Int = mPendingFrames.getAndSet(0)
+                    if (pendingFrames > 0) {
+                        frameNotificationCount += pendingFrames
+                        coalescedFrameCount += pendingFrames - 1
+
+                        val startTimeNs: Long = System.nanoTime()
+                        onProcess(pendingFrames - 1)
+                        val workDurationNs: Long = System.nanoTime() - startTimeNs
+                        lastWorkDurationNs = workDurationNs
+                        if (workDurationNs > config.targetWorkDurationNs) {
+                            overBudgetFrameCount++
+                        }
+                        mPerformanceHint?.reportActualWorkDuration(workDurationNs)
+                    }
                     true
                 }
 
@@ -278,7 +634,7 @@ abstract class GLThread(
                 UPDATE_SURFACE_CONFIGS -> {
                     val size: Size? = msg.data.getSize(SurfaceConfigs.SIZE)
                     if (size != null) {
-                        onUpdateSurfaceConfigs(size)
+                        onUpdateSurfaceConfigs(size, msg.data.getSize(SurfaceConfigs.VIEW_SIZE) ?: size)
                     }
                     true
                 }
@@ -312,6 +668,36 @@ abstract class GLThread(
                     true
                 }
 
+                ADD_FRAME_READBACK -> {
+                    onAddFrameReadback(msg.obj as FrameReadback)
+                    true
+                }
+
+                REMOVE_FRAME_READBACK -> {
+                    onRemoveFrameReadback(msg.obj as FrameReadback)
+                    true
+                }
+
+                SET_DISPLAY_SWAP_INTERVAL -> {
+                    mDisplaySwapInterval = msg.arg1
+                    applyDisplaySwapInterval()
+                    true
+                }
+
+                SET_SECONDARY_INPUT -> {
+                    onSetSecondaryInput(msg.obj as DualCameraLayout?)
+                    true
+                }
+
+                UPDATE_SECONDARY_CAMERA_CONFIGS -> {
+                    val size: Size? = msg.data.getSize(CameraConfigs.SIZE)
+                    if (size != null) {
+                        mSecondaryCameraSize = size
+                        mSecondaryRotationDegrees = msg.data.getInt(CameraConfigs.ROTATION_DEGREES)
+                    }
+                    true
+                }
+
                 else -> false
             }
         }
@@ -322,15 +708,31 @@ abstract class GLThread(
      */
     private fun onInitGL() {
         Logger.d(TAG, "onInitGL")
+        mPerformanceHint?.start(threadId)
         var eglCore: EglCore? = mEglCore
         if (eglCore == null) {
-            eglCore = EglCore(null, 0)
+            // 優先使用GLES3，PBO等非同步讀取需要GLES3
+            eglCore = EglCore(null, EglCore.FLAG_TRY_GLES3)
             mEglCore = eglCore
         }
 
         mWindowSurface?.release()
         mWindowSurface = null
-        mWindowSurface = createWindowSurface(eglCore)
+        mGlStateCache.clearCurrentSurface()
+        val windowSurface: EglSurfaceBase = createWindowSurface(eglCore).also { mWindowSurface = it }
+        makeCurrentIfNeeded(windowSurface)
+        rebuildOutputs()
+        // INIT之前加入的掛勾需要current的EGLContext才能建立GL資源
+        mFrameReadbacksWaitingForEgl.forEach { attachFrameReadback(eglCore, it) }
+        mFrameReadbacksWaitingForEgl.clear()
+        if (mDisplaySwapInterval != 1) {
+            applyDisplaySwapInterval()
+        }
+        if (config.frontBufferAutoRefresh && supportsFrontBufferAutoRefresh &&
+            windowSurface is WindowSurface
+        ) {
+            enableFrontBufferAutoRefresh(eglCore, windowSurface)
+        }
 
         // 如果沒有SurfaceTexture，創建一個
         if (mSurfaceTexture == null) {
@@ -340,8 +742,52 @@ abstract class GLThread(
             val surfaceTexture = SurfaceTexture(mCameraOesTextureId)
             mSurfaceTexture = surfaceTexture
         }
+        // GlUtil建立texture時直接操作GL狀態，讓快取失效
+        mGlStateCache.invalidate()
         // 通知外部SurfaceView已建立，可以綁定至相機
         callback.onCreateSurfaceTexture(mSurfaceTexture!!)
+        createSecondarySurfaceTextureIfNeeded()
+    }
+
+    /**
+     * 啟用或停用第二個輸入串流，EGL尚未初始化時在[onInitGL]中建立SurfaceTexture
+     */
+    private fun onSetSecondaryInput(layout: DualCameraLayout?) {
+        Logger.d(TAG, "onSetSecondaryInput -> $layout")
+        releaseSecondaryInput()
+        if (layout == null) return
+        mCompositor = DualCameraCompositor(layout)
+        mDualStreamTracker.reset()
+        if (mEglCore != null && mWindowSurface != null) {
+            createSecondarySurfaceTextureIfNeeded()
+        }
+    }
+
+    private fun createSecondarySurfaceTextureIfNeeded() {
+        if (mCompositor == null) return
+        if (mSecondarySurfaceTexture == null) {
+            mSecondaryOesTextureId = GlUtil.createExternalOESTextureId()
+            mSecondarySurfaceTexture = SurfaceTexture(mSecondaryOesTextureId)
+            mGlStateCache.invalidate()
+        }
+        callback.onCreateSecondarySurfaceTexture(mSecondarySurfaceTexture!!)
+    }
+
+    /**
+     * 釋放第二個輸入串流的SurfaceTexture與合成用的texture，需要在EGLContext仍然current時呼叫
+     */
+    private fun releaseSecondaryInput() {
+        mCompositor?.release()
+        mCompositor = null
+        mSecondarySurfaceTexture?.release()
+        mSecondarySurfaceTexture = null
+        if (mSecondaryOesTextureId != -1) {
+            GlUtil.releaseTextureId(mSecondaryOesTextureId)
+            mSecondaryOesTextureId = -1
+            mGlStateCache.invalidate()
+        }
+        mSecondaryTimestampNs = 0L
+        mPendingSecondaryFrames.set(0)
     }
 
     /**
@@ -355,8 +801,9 @@ abstract class GLThread(
     /**
      * 更新Surface相關配置
      */
-    private fun onUpdateSurfaceConfigs(size: Size) {
+    private fun onUpdateSurfaceConfigs(size: Size, viewSize: Size) {
         mSurfaceViewSize = size
+        mViewSize = viewSize
     }
 
     /**
@@ -365,7 +812,22 @@ abstract class GLThread(
     private fun onAddOutputSurface(surface: Surface, option: OutputSurfaceOption?) {
         Logger.d(TAG, "onAddOutputSurface -> surface: ${surface.hashCode()}")
         val windowSurface = WindowSurface(mEglCore, surface, false)
-        mOutputWindowSurfaces[surface.hashCode()] = OutputWindowSurface(windowSurface, option)
+        mOutputWindowSurfaces[surface.hashCode()] = if (option?.isDisplay == true) {
+            DisplayWindowSurface(windowSurface, option)
+        } else {
+            OutputWindowSurface(windowSurface, option)
+        }
+        rebuildOutputs()
+        if (option?.isDisplay == true && mDisplaySwapInterval != 1) {
+            applyDisplaySwapInterval()
+        }
+        // 低延遲模式下encoder等不顯示的窗口不等待vsync，consumer較慢時不拖慢渲染迴圈
+        if (option?.isDisplay != true && config.lowLatency) {
+            makeCurrentIfNeeded(windowSurface)
+            if (mEglCore?.setSwapInterval(0) != true) {
+                Logger.w(TAG, "onAddOutputSurface -> eglSwapInterval(0) failed")
+            }
+        }
     }
 
     /**
@@ -373,147 +835,329 @@ abstract class GLThread(
      */
     private fun onRemoveOutputSurface(surfaceHashCode: Int) {
         Logger.d(TAG, "onRemoveOutputSurface -> surface: $surfaceHashCode")
-        mOutputWindowSurfaces[surfaceHashCode]?.windowSurface?.release()
-        mOutputWindowSurfaces.remove(surfaceHashCode)
+        val outputWindowSurface: OutputWindowSurface =
+            mOutputWindowSurfaces.remove(surfaceHashCode) ?: return
+        // 仍是current的EGLSurface不會真正被銷毀，先切回螢幕的繪製窗口
+        if (mGlStateCache.currentSurface === outputWindowSurface.windowSurface) {
+            mGlStateCache.clearCurrentSurface()
+            mWindowSurface?.let { makeCurrentIfNeeded(it) }
+        }
+        outputWindowSurface.windowSurface.release()
+        rebuildOutputs()
+
+        val report: PresentationTimeReport = outputWindowSurface.presentationTimeTracker.report()
+        Logger.d(TAG, "onRemoveOutputSurface -> surface: $surfaceHashCode, $report")
+        callback.onOutputSurfaceRemoved(surfaceHashCode, report)
+    }
+
+    private fun onAddFrameReadback(readback: FrameReadback) {
+        // release()已捨棄的掛勾不再加入
+        if (!synchronized(mQueuedFrameReadbacks) { mQueuedFrameReadbacks.remove(readback) }) return
+        val eglCore: EglCore = mEglCore ?: run {
+            // 尚未INIT，建立EGL後再加入，只有RELEASE才捨棄
+            Logger.d(TAG, "onAddFrameReadback -> EGL is not initialized yet, attach after INIT")
+            if (!mFrameReadbacksWaitingForEgl.contains(readback)) mFrameReadbacksWaitingForEgl.add(readback)
+            return
+        }
+        attachFrameReadback(eglCore, readback)
+    }
+
+    private fun attachFrameReadback(eglCore: EglCore, readback: FrameReadback) {
+        if (mFrameReadbacks.contains(readback)) return
+        readback.onAttach(eglCore)
+        mFrameReadbacks.add(readback)
+    }
+
+    private fun onRemoveFrameReadback(readback: FrameReadback) {
+        if (mFrameReadbacksWaitingForEgl.remove(readback)) {
+            readback.onDiscarded()
+            return
+        }
+        if (!mFrameReadbacks.remove(readback)) return
+        readback.onDetach()
+    }
+
+    /**
+     * eglSwapInterval作用於目前current的窗口，逐一切換至每個螢幕的繪製窗口(包含額外顯示的View)
+     */
+    private fun applyDisplaySwapInterval() {
+        val eglCore: EglCore = mEglCore ?: return
+        // 離屏的pbuffer沒有vsync，不在mOutputs中
+        for (output in mOutputs) {
+            if (output !is DisplayWindowSurface) continue
+            makeCurrentIfNeeded(output.windowSurface)
+            if (!eglCore.setSwapInterval(mDisplaySwapInterval)) {
+                Logger.w(TAG, "applyDisplaySwapInterval -> eglSwapInterval($mDisplaySwapInterval) failed")
+            }
+        }
+    }
+
+    /**
+     * 螢幕直接掃描輸出繪製窗口唯一的buffer，eglSwapBuffers只需要flush，不必等待下一次合成
+     *
+     * 需要同時切換為單一buffer(EGL_SINGLE_BUFFER)，下一次eglSwapBuffers後生效，
+     * 不支援時維持原本的double buffering
+     */
+    private fun enableFrontBufferAutoRefresh(eglCore: EglCore, windowSurface: WindowSurface) {
+        if (!eglCore.isExtensionSupported("EGL_ANDROID_front_buffer_auto_refresh")) {
+            Logger.w(TAG, "enableFrontBufferAutoRefresh -> not supported by this device")
+            return
+        }
+        if (!windowSurface.setSurfaceAttrib(EGL14.EGL_RENDER_BUFFER, EGL14.EGL_SINGLE_BUFFER) ||
+            !windowSurface.setSurfaceAttrib(
+                EglCore.EGL_FRONT_BUFFER_AUTO_REFRESH_ANDROID,
+                EGL14.EGL_TRUE
+            )
+        ) {
+            Logger.w(TAG, "enableFrontBufferAutoRefresh -> eglSurfaceAttrib failed")
+            windowSurface.setSurfaceAttrib(EGL14.EGL_RENDER_BUFFER, EGL14.EGL_BACK_BUFFER)
+            return
+        }
+        Logger.d(TAG, "enableFrontBufferAutoRefresh -> enabled")
+    }
+
+    /**
+     * 重建繪製窗口的List，螢幕的繪製窗口固定在第一個
+     */
+    private fun rebuildOutputs() {
+        mOutputs.clear()
+        // 離屏的pbuffer不顯示，不需要繪製
+        (mWindowSurface as? WindowSurface)?.let { mOutputs.add(DisplayWindowSurface(it)) }
+        mOutputs.addAll(mOutputWindowSurfaces.values)
+    }
+
+    /**
+     * 只有在目標窗口不是目前的current surface時才呼叫eglMakeCurrent
+     *
+     * EGLDisplay與EGLContext由EglCore持有，不需每次透過eglGetCurrent*重新查詢
+     */
+    private fun makeCurrentIfNeeded(windowSurface: EglSurfaceBase) {
+        mGlStateCache.makeCurrent(windowSurface)
+        makeCurrentCount = mGlStateCache.makeCurrentCount
+        skippedMakeCurrentCount = mGlStateCache.skippedMakeCurrentCount
     }
 
     /**
      * 渲染流程
+     *
+     * @param coalescedFrames   此frame之前被合併(略過)的frame數量
      */
-    private fun onProcess() {
+    private fun onProcess(coalescedFrames: Int) {
+        // 已從SurfaceTexture取出frame時，處理結束後通知外部(例如離線播放的來源送出下一個frame)
+        var frameTimestampNs: Long = -1L
+        mStageTimings.reset()
         try {
-            val windowSurface: WindowSurface = mWindowSurface ?: return
+            if (mWindowSurface == null) return
             val surfaceTexture: SurfaceTexture = mSurfaceTexture ?: return
+            var stageStartNs: Long = System.nanoTime()
 
             // 從SurfaceTexture中更新當前Texture回來
             surfaceTexture.updateTexImage()
             // 獲取SurfaceTexture目前的transform matrix
             surfaceTexture.getTransformMatrix(mTransformMatrix)
+            // 相機拍攝此frame的時間，提供給encoder作為presentation time
+            frameTimestampNs = surfaceTexture.timestamp
+            // 重播錄製的frame時，以錄製時的transform matrix取代
+            callback.onTransformMatrix(frameTimestampNs, mTransformMatrix)
+
+            // 雙相機時取出副相機最新的frame，SurfaceTexture只保留最新的buffer，
+            // 主相機frame與最新的副相機frame合成，兩者的時間差記錄為skew
+            val compositor: DualCameraCompositor? = mCompositor
+            val secondarySurfaceTexture: SurfaceTexture? = mSecondarySurfaceTexture
+            if (compositor != null && secondarySurfaceTexture != null) {
+                val secondaryPendingFrames: Int = mPendingSecondaryFrames.getAndSet(0)
+                if (secondaryPendingFrames > 0) {
+                    secondarySurfaceTexture.updateTexImage()
+                    mSecondaryTimestampNs = secondarySurfaceTexture.timestamp
+                }
+                mDualStreamTracker.onFrame(
+                    frameTimestampNs, coalescedFrames, secondaryPendingFrames, mSecondaryTimestampNs
+                )
+            }
+            // 還沒有副相機frame或尺寸時，先只處理主相機
+            val composite: Boolean = compositor != null && mSecondaryTimestampNs != 0L &&
+                    mSecondaryCameraSize.width > 0
+
+            // 讀取未處理的相機frame(例如錄製原始串流)
+            if (mFrameReadbacks.isNotEmpty()) {
+                val bufferSize: Size = if (mCameraRotationDegrees % 180 == 90) {
+                    Size(mCameraSize.height, mCameraSize.width)
+                } else {
+                    mCameraSize
+                }
+                for (readback in mFrameReadbacks) {
+                    readback.onInputFrame(
+                        mGLRenderer, mCameraOesTextureId, bufferSize, mCameraRotationDegrees,
+                        mTransformMatrix, frameTimestampNs
+                    )
+                }
+            }
+            var nowNs: Long = System.nanoTime()
+            mStageTimings.updateTexImageNs = nowNs - stageStartNs
+            stageStartNs = nowNs
+
+            // 處理後texture的尺寸，雙相機時為合成後的尺寸
+            var frameSize: Size = mCameraSize
 
             // 預渲染流程 -
+            //      雙相機時將兩個OES Texture合成至同一張2D Texture，取代外部的預處理
             //      return null 代表外部不處理，使用GLRenderer做旋轉與將畫面處理為鏡射畫面
             //                  並將OES Texture轉為2D Texture
-            val preProcessTextureId: Int = cameraTextureProcessor.onPreProcessTexture(
-                textureId = mCameraOesTextureId,
-                cameraSize = mCameraSize,
-                textureSize = mSurfaceViewSize,
-                transformMatrix = mTransformMatrix
-            ).let {
-                if (it != null) {
-                    return@let it
-                }
+            val preProcessTextureId: Int = if (composite) {
+                compositor!!.compose(
+                    mGLRenderer,
+                    mCameraOesTextureId, mCameraSize, mCameraRotationDegrees,
+                    mSecondaryOesTextureId, mSecondaryCameraSize, mSecondaryRotationDegrees
+                ).also { frameSize = compositor.outputSize!! }
+            } else {
+                cameraTextureProcessor.onPreProcessTexture(
+                    textureId = mCameraOesTextureId,
+                    cameraSize = mCameraSize,
+                    textureSize = mSurfaceViewSize,
+                    transformMatrix = mTransformMatrix
+                ).let {
+                    if (it != null) {
+                        // 外部已自行操作GL狀態
+                        mGlStateCache.invalidate()
+                        return@let it
+                    }
 
-                // 清空缓冲区颜色
-                GLES20.glClearColor(0.0f, 0.0f, 0.0f, 0.0f)
-                GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT or GLES20.GL_DEPTH_BUFFER_BIT)
-
-                val transition: GLRenderer.Transition =
-                    GLRenderer.Transition().rotate(mCameraRotationDegrees.toFloat())
-                        .flip(x = false, y = true)
-                return@let mGLRenderer.transferTextureToTexture(
-                    inputTextureId = mCameraOesTextureId,
-                    inputTextureFormat = TextureFormat.TextureOES,
-                    outputTextureFormat = TextureFormat.Texture2D,
-                    size = mCameraSize,
-                    transition = transition
-                )
+                    // 清空缓冲区颜色
+                    mGlStateCache.gl.glClearColor(0.0f, 0.0f, 0.0f, 0.0f)
+                    mGlStateCache.gl.glClear(GLES20.GL_COLOR_BUFFER_BIT or GLES20.GL_DEPTH_BUFFER_BIT)
+
+                    val transition: GLRenderer.Transition = mGLRenderer.transitionCache
+                        .rotateFlip(angle = mCameraRotationDegrees, flipX = false, flipY = true)
+                    return@let mGLRenderer.transferTextureToTexture(
+                        inputTextureId = mCameraOesTextureId,
+                        inputTextureFormat = TextureFormat.TextureOES,
+                        outputTextureFormat = TextureFormat.Texture2D,
+                        size = mCameraSize,
+                        transition = transition
+                    )
+                }
             }
 
+            nowNs = System.nanoTime()
+            mStageTimings.preProcessNs = nowNs - stageStartNs
+            stageStartNs = nowNs
+
             // 提供給外部的渲染步驟
             //      return null 代表外部不處理，直接使用原本的texture id
             val processedTextureId: Int = cameraTextureProcessor.onProcessTexture(
                 textureId = preProcessTextureId,
-                cameraSize = mCameraSize,
+                cameraSize = frameSize,
                 textureSize = mSurfaceViewSize,
                 transformMatrix = mTransformMatrix
-            ) ?: preProcessTextureId
-
-            // 將螢幕的繪製窗口與額外的繪製窗口 整合至同一個List，提供後續繪製至窗口
-            val outputs: List<OutputWindowSurface> = mutableListOf<OutputWindowSurface>().apply {
-                this.addAll(mOutputWindowSurfaces.values)
-                this.add(DisplayWindowSurface(windowSurface))
+            )?.also {
+                // 外部已自行操作GL狀態
+                mGlStateCache.invalidate()
+            } ?: preProcessTextureId
+
+            nowNs = System.nanoTime()
+            mStageTimings.processNs = nowNs - stageStartNs
+            stageStartNs = nowNs
+
+            // 讀取處理後的frame，使用GLRenderer操作，GL狀態快取仍然有效
+            for (readback in mFrameReadbacks) {
+                readback.onFrame(mGLRenderer, processedTextureId, frameSize, frameTimestampNs)
+            }
+            nowNs = System.nanoTime()
+            mStageTimings.readbackNs = nowNs - stageStartNs
+            stageStartNs = nowNs
+
+            // 處理後的Texture只產生一次，之後依序繪製至每個窗口
+            // 從目前current的窗口開始繪製，N+1個窗口只需要N次eglMakeCurrent，
+            // 沒有額外輸出窗口時完全不需要切換
+            val outputs: List<OutputWindowSurface> = mOutputs
+            val outputCount: Int = outputs.size
+            var startIndex = 0
+            for (i in 0 until outputCount) {
+                if (outputs[i].windowSurface === mGlStateCache.currentSurface) {
+                    startIndex = i
+                    break
+                }
             }
 
-            // 儲存當前螢幕繪製窗口的資訊
-            saveRenderState()
+            var displaySwapped = false
+            for (n in 0 until outputCount) {
+                val output: OutputWindowSurface = outputs[(startIndex + n) % outputCount]
 
-            for (output in outputs) {
+                // 有限制frame rate的輸出窗口(例如分析用的ImageReader)略過這個frame
+                if (!output.frameRateLimiter.tryAcquire(frameTimestampNs)) continue
 
-                if (output is DisplayWindowSurface) {
-                    // 回復當前螢幕繪製窗口的資訊
-                    restoreRenderState()
-                } else {
-                    // 切換至額外的EGL繪製窗口
-                    output.windowSurface.makeCurrent()
-                }
+                // 切換至目標的EGL繪製窗口
+                makeCurrentIfNeeded(output.windowSurface)
 
                 // 渲染至窗口的處理
                 //      return false 代表外部不處理，使用預設的繪製操作
                 //             true  代表外部已處理，不需額外操作
                 val handled: Boolean = cameraTextureProcessor.onRenderTexture(
                     textureId = processedTextureId,
-                    cameraSize = mCameraSize,
+                    cameraSize = frameSize,
                     textureSize = mSurfaceViewSize,
                     surfaceSize = output.option?.outputSize ?: mSurfaceViewSize,
                     transformMatrix = mTransformMatrix,
                     isDisplayWindow = output is DisplayWindowSurface
                 )
 
-                if (!handled) {
+                if (handled) {
+                    // 外部已自行操作GL狀態
+                    mGlStateCache.invalidate()
+                } else {
                     // 預設的繪製上屏操作
-                    if (!GLES20.glIsTexture(processedTextureId)) {
+                    if (!mGlStateCache.gl.glIsTexture(processedTextureId)) {
                         Logger.e(TAG, "output texture not a valid texture")
                         return
                     }
 
                     val onScreenTransition: GLRenderer.Transition =
-                        GLRenderer.Transition()
-                            .crop(
-                                scaleType = CropScaleType.CENTER_CROP,
-                                rotation = 0,
-                                textureSize = mCameraSize,
-                                surfaceSize = output.option?.outputSize ?: mSurfaceViewSize,
-                            )
+                        mGLRenderer.transitionCache.crop(
+                            scaleType = CropScaleType.CENTER_CROP,
+                            rotation = 0,
+                            textureSize = frameSize,
+                            surfaceSize = output.option?.outputSize ?: mSurfaceViewSize
+                        )
                     mGLRenderer.transferTextureToScreen(
                         textureId = processedTextureId,
                         srcTextureFormat = TextureFormat.Texture2D,
                         surfaceSize = output.option?.outputSize ?: mSurfaceViewSize,
-                        mvpMatrix = onScreenTransition.matrix
+                        transition = onScreenTransition
+                    )
+                }
+
+                // 額外的輸出窗口(例如encoder)使用相機拍攝的時間，而不是frame到達的時間
+                if (output !is DisplayWindowSurface) {
+                    output.windowSurface.setPresentationTime(
+                        output.presentationTimeTracker.next(
+                            frameTimestampNs,
+                            System.nanoTime(),
+                            SystemClock.elapsedRealtimeNanos()
+                        )
                     )
                 }
 
                 // 將Texture資料輸出至EGL繪製窗口
                 output.windowSurface.swapBuffers()
+                if (output is DisplayWindowSurface) displaySwapped = true
+            }
+            if (displaySwapped) {
+                onFrameSwapped?.invoke(frameTimestampNs)
+                onDisplayFrameSwapped(frameTimestampNs)
             }
 
+            mStageTimings.renderNs = System.nanoTime() - stageStartNs
+
             cameraTextureProcessor.onProcessEnd(
-                cameraSize = mCameraSize,
+                cameraSize = frameSize,
                 surfaceSize = mSurfaceViewSize
             )
         } catch (e: Exception) {
             e.printStackTrace()
-        }
-    }
-
-    private var mSavedEglDisplay: EGLDisplay? = null
-    private var mSavedEglDrawSurface: EGLSurface? = null
-    private var mSavedEglReadSurface: EGLSurface? = null
-    private var mSavedEglContext: EGLContext? = null
-
-    private fun saveRenderState() {
-        mSavedEglDisplay = EGL14.eglGetCurrentDisplay()
-        mSavedEglDrawSurface = EGL14.eglGetCurrentSurface(EGL14.EGL_DRAW)
-        mSavedEglReadSurface = EGL14.eglGetCurrentSurface(EGL14.EGL_READ)
-        mSavedEglContext = EGL14.eglGetCurrentContext()
-    }
-
-    private fun restoreRenderState() {
-        val eglDisplay: EGLDisplay = mSavedEglDisplay ?: return
-        val eglDrawSurface: EGLSurface = mSavedEglDrawSurface ?: return
-        val eglReadSurface: EGLSurface = mSavedEglReadSurface ?: return
-        val eglContext: EGLContext = mSavedEglContext ?: return
-        if (!EGL14.eglMakeCurrent(eglDisplay, eglDrawSurface, eglReadSurface, eglContext)) {
-            throw RuntimeException("eglMakeCurrent failed")
+        } finally {
+            if (frameTimestampNs != -1L) {
+                callback.onFrameProcessed(frameTimestampNs, mStageTimings)
+            }
         }
     }
 
@@ -527,6 +1171,19 @@ abstract class GLThread(
             outputWindowSurface.windowSurface.release()
         }
         mOutputWindowSurfaces.clear()
+        mOutputs.clear()
+
+        // 釋放讀取frame的掛勾，需要在EGLContext仍然current時釋放GL資源
+        for (readback in mFrameReadbacks) {
+            readback.onDetach()
+        }
+        mFrameReadbacks.clear()
+        mFrameReadbacksWaitingForEgl.forEach { it.onDiscarded() }
+        mFrameReadbacksWaitingForEgl.clear()
+        mGlStateCache.clearCurrentSurface()
+
+        // 釋放第二個輸入串流與合成的資源
+        releaseSecondaryInput()
 
         // 釋放Texture操作的資源
         mGLRenderer.release()
@@ -546,6 +1203,8 @@ abstract class GLThread(
         mEglCore?.release()
         mEglCore = null
 
+        mPerformanceHint?.release()
+
         // 關閉GLThread的Handler，GLThread將停止
         mHandler?.looper?.quit()
         mHandler = null
@@ -555,7 +1214,12 @@ abstract class GLThread(
 private open class OutputWindowSurface(
     val windowSurface: WindowSurface,
     val option: OutputSurfaceOption? = null
-)
+) {
+    val presentationTimeTracker: PresentationTimeTracker =
+        PresentationTimeTracker(option?.presentationTimeOffsetNs ?: 0L)
+
+    val frameRateLimiter: FrameRateLimiter = FrameRateLimiter(option?.maxFps ?: 0)
+}
 
 private class DisplayWindowSurface(
     windowSurface: WindowSurface,
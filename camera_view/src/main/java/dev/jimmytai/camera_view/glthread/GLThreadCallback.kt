@@ -1,8 +1,31 @@
 package dev.jimmytai.camera_view.glthread
 
 import android.graphics.SurfaceTexture
-import android.util.Size
+import dev.jimmytai.camera_view.model.FrameStageTimings
+import dev.jimmytai.camera_view.model.PresentationTimeReport
 
 interface GLThreadCallback {
     fun onCreateSurfaceTexture(surfaceTexture: SurfaceTexture)
+
+    /**
+     * 啟用第二個輸入串流後，建立第二個SurfaceTexture時觸發，在GLThread中執行
+     */
+    fun onCreateSecondarySurfaceTexture(surfaceTexture: SurfaceTexture) {}
+
+    /**
+     * 額外的輸出窗口被移除時觸發，回報該窗口整段期間的presentation time統計，在GLThread中執行
+     */
+    fun onOutputSurfaceRemoved(surfaceHashCode: Int, report: PresentationTimeReport) {}
+
+    /**
+     * 取得SurfaceTexture的transform matrix後觸發，可以修改[transformMatrix]，在GLThread中執行
+     */
+    fun onTransformMatrix(timestampNs: Long, transformMatrix: FloatArray) {}
+
+    /**
+     * SurfaceTexture的frame已繪製至所有窗口時觸發，在GLThread中執行
+     *
+     * @param timings   各階段的處理時間，只在這次呼叫中有效
+     */
+    fun onFrameProcessed(timestampNs: Long, timings: FrameStageTimings) {}
 }
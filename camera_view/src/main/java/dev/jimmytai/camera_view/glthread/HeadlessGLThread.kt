@@ -0,0 +1,51 @@
+package dev.jimmytai.camera_view.glthread
+
+import android.content.Context
+import android.util.Size
+import dev.jimmytai.camera_view.gles.EglCore
+import dev.jimmytai.camera_view.gles.EglSurfaceBase
+import dev.jimmytai.camera_view.gles.OffscreenSurface
+import dev.jimmytai.camera_view.interfaces.CameraTextureProcessor
+import dev.jimmytai.camera_view.model.GLThreadConfig
+import dev.jimmytai.camera_view.utils.Logger
+
+/**
+ * HeadlessGLThread不需要任何View，以1x1的pbuffer讓EGLContext保持current，
+ * frame只繪製至額外的輸出窗口(encoder、ImageReader)與讀取frame的掛勾，沒有螢幕合成的成本
+ *
+ * 啟動後立即初始化EGL，不像SurfaceView需要等待Surface建立
+ *
+ * @param surfaceSize   取代SurfaceView尺寸的處理尺寸，例如錄影未指定尺寸時的輸出尺寸
+ */
+class HeadlessGLThread(
+    name: String,
+    context: Context,
+    private val surfaceSize: Size,
+    config: GLThreadConfig,
+    callback: GLThreadCallback,
+    cameraTextureProcessor: CameraTextureProcessor
+) :
+    GLThread(
+        name,
+        context,
+        config,
+        callback = callback,
+        cameraTextureProcessor = cameraTextureProcessor
+    ) {
+
+    override fun start() {
+        super.start()
+        initGL()
+        updateSurfaceConfigs(surfaceSize)
+    }
+
+    override fun createWindowSurface(eglCore: EglCore): EglSurfaceBase {
+        Logger.d(TAG, "createWindowSurface -> offscreen, size: $surfaceSize")
+        // 不會繪製至pbuffer，只需要最小的尺寸
+        return OffscreenSurface(eglCore, 1, 1)
+    }
+
+    override fun releaseInputData() {
+        Logger.d(TAG, "releaseInputData")
+    }
+}
@@ -0,0 +1,99 @@
+package dev.jimmytai.camera_view.glthread
+
+import dev.jimmytai.camera_view.model.PresentationTimeReport
+import kotlin.math.abs
+
+/**
+ * 計算每個輸出窗口的presentation time，並記錄該窗口的drift統計
+ *
+ * - 使用SurfaceTexture的timestamp(相機拍攝時間)，而不是GLThread繪製的時間
+ * - 部分裝置的相機timestamp使用elapsedRealtime時基，第一個frame時偵測並轉換為System.nanoTime的時基，
+ *   與MediaRecorder的音訊時基一致
+ * - 保證timestamp遞增，encoder遇到倒退的timestamp會丟棄frame或出錯
+ */
+internal class PresentationTimeTracker(private val offsetNs: Long = 0L) {
+    companion object {
+        // 修正倒退的timestamp時，至少往後推進的時間
+        private const val MIN_FRAME_INTERVAL_NS: Long = 1_000L
+
+        /**
+         * 判斷相機timestamp較接近哪一個時鐘，回傳轉換至System.nanoTime時基需要加上的值
+         */
+        fun detectRebase(frameTimestampNs: Long, nowNs: Long, nowRealtimeNs: Long): Long =
+            if (abs(nowNs - frameTimestampNs) <= abs(nowRealtimeNs - frameTimestampNs)) {
+                0L
+            } else {
+                nowNs - nowRealtimeNs
+            }
+    }
+
+    /**
+     * 相機timestamp轉換至System.nanoTime時基需要加上的值，第一個frame時決定
+     */
+    private var mRebaseNs: Long? = null
+
+    private var mLastPresentationTimeNs: Long = Long.MIN_VALUE
+
+    private var mFrameCount: Long = 0L
+
+    private var mCorrectedFrameCount: Long = 0L
+
+    private var mDriftSumNs: Long = 0L
+
+    private var mMinDriftNs: Long = Long.MAX_VALUE
+
+    private var mMaxDriftNs: Long = Long.MIN_VALUE
+
+    private var mFirstDriftNs: Long = 0L
+
+    private var mLastDriftNs: Long = 0L
+
+    /**
+     * @param frameTimestampNs  SurfaceTexture.getTimestamp()，0代表沒有timestamp
+     * @param nowNs             System.nanoTime()
+     * @param nowRealtimeNs     SystemClock.elapsedRealtimeNanos()
+     * @return 提供給eglPresentationTimeANDROID的時間
+     */
+    fun next(frameTimestampNs: Long, nowNs: Long, nowRealtimeNs: Long): Long {
+        val captureTimeNs: Long = if (frameTimestampNs > 0L) {
+            val rebaseNs: Long = mRebaseNs ?: detectRebase(frameTimestampNs, nowNs, nowRealtimeNs)
+                .also { mRebaseNs = it }
+            frameTimestampNs + rebaseNs
+        } else {
+            nowNs
+        }
+
+        var presentationTimeNs: Long = captureTimeNs + offsetNs
+        if (mLastPresentationTimeNs != Long.MIN_VALUE && presentationTimeNs <= mLastPresentationTimeNs) {
+            presentationTimeNs = mLastPresentationTimeNs + MIN_FRAME_INTERVAL_NS
+            mCorrectedFrameCount++
+        }
+        mLastPresentationTimeNs = presentationTimeNs
+
+        val driftNs: Long = nowNs - captureTimeNs
+        if (mFrameCount == 0L) {
+            mFirstDriftNs = driftNs
+        }
+        mLastDriftNs = driftNs
+        mDriftSumNs += driftNs
+        if (driftNs < mMinDriftNs) mMinDriftNs = driftNs
+        if (driftNs > mMaxDriftNs) mMaxDriftNs = driftNs
+        mFrameCount++
+
+        return presentationTimeNs
+    }
+
+    fun report(): PresentationTimeReport =
+        if (mFrameCount == 0L) {
+            PresentationTimeReport(0L, 0L, 0L, 0L, 0L, 0L)
+        } else {
+            PresentationTimeReport(
+                frameCount = mFrameCount,
+                correctedFrameCount = mCorrectedFrameCount,
+                minDriftNs = mMinDriftNs,
+                maxDriftNs = mMaxDriftNs,
+                averageDriftNs = mDriftSumNs / mFrameCount,
+                driftGrowthNs = mLastDriftNs - mFirstDriftNs
+            )
+        }
+}
@@ -0,0 +1,71 @@
+package dev.jimmytai.camera_view.glthread
+
+import android.content.Context
+import android.os.Build
+import android.os.PerformanceHintManager
+import androidx.annotation.RequiresApi
+import dev.jimmytai.camera_view.utils.Logger
+
+/**
+ * 將GLThread每個frame的實際工作時間回報給PerformanceHintManager(Android 12+)，
+ * 讓系統的DVFS governor可以依照目標時間提高CPU時脈
+ *
+ * Android 12以下不做任何事
+ */
+internal class RenderPerformanceHint(
+    private val context: Context,
+    private val targetWorkDurationNs: Long
+) {
+    companion object {
+        private val TAG: String = RenderPerformanceHint::class.java.simpleName
+    }
+
+    /**
+     * PerformanceHintManager.Session，為了相容Android 12以下的裝置使用Any保存
+     */
+    private var mSession: Any? = null
+
+    /**
+     * 必須在GLThread中呼叫，session會綁定呼叫端的thread id
+     */
+    fun start(threadId: Int) {
+        if (mSession != null) return
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            mSession = Api31Impl.createSession(context, threadId, targetWorkDurationNs)
+            Logger.d(TAG, "start -> session created: ${mSession != null}")
+        }
+    }
+
+    fun reportActualWorkDuration(durationNs: Long) {
+        val session: Any = mSession ?: return
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S && durationNs > 0L) {
+            Api31Impl.reportActualWorkDuration(session, durationNs)
+        }
+    }
+
+    fun release() {
+        val session: Any = mSession ?: return
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.S) {
+            Api31Impl.close(session)
+        }
+        mSession = null
+    }
+
+    @RequiresApi(Build.VERSION_CODES.S)
+    private object Api31Impl {
+        fun createSession(context: Context, threadId: Int, targetWorkDurationNs: Long): Any? {
+            val manager: PerformanceHintManager =
+                context.getSystemService(PerformanceHintManager::class.java) ?: return null
+            // 裝置不支援時會回傳null
+            return manager.createHintSession(intArrayOf(threadId), targetWorkDurationNs)
+        }
+
+        fun reportActualWorkDuration(session: Any, durationNs: Long) {
+            (session as PerformanceHintManager.Session).reportActualWorkDuration(durationNs)
+        }
+
+        fun close(session: Any) {
+            (session as PerformanceHintManager.Session).close()
+        }
+    }
+}
@@ -7,6 +7,7 @@ import android.view.SurfaceView
 import dev.jimmytai.camera_view.gles.EglCore
 import dev.jimmytai.camera_view.gles.WindowSurface
 import dev.jimmytai.camera_view.interfaces.CameraTextureProcessor
+import dev.jimmytai.camera_view.model.GLThreadConfig
 import dev.jimmytai.camera_view.utils.Logger
 
 /**
@@ -17,10 +18,17 @@ import dev.jimmytai.camera_view.utils.Logger
 class SurfaceViewGLThread(
     name: String,
     private val surfaceView: SurfaceView,
+    config: GLThreadConfig,
     callback: GLThreadCallback,
     cameraTextureProcessor: CameraTextureProcessor
 ) :
-    GLThread(name, callback = callback, cameraTextureProcessor = cameraTextureProcessor),
+    GLThread(
+        name,
+        surfaceView.context,
+        config,
+        callback = callback,
+        cameraTextureProcessor = cameraTextureProcessor
+    ),
     SurfaceHolder.Callback {
 
     private var mSurface: Surface? = null
@@ -29,25 +37,43 @@ class SurfaceViewGLThread(
         surfaceView.holder.addCallback(this)
     }
 
+    override fun start() {
+        super.start()
+        // 替換CameraView的controller時Surface早已建立，不會再收到surfaceCreated
+        val holder: SurfaceHolder = surfaceView.holder
+        if (holder.surface?.isValid == true) {
+            Logger.d(TAG, "start -> surface already created")
+            mSurface = holder.surface
+            initGL()
+            val frame = holder.surfaceFrame
+            val size = Size(frame.width(), frame.height())
+            updateSurfaceConfigs(size, viewSize(size))
+        }
+    }
+
     override fun surfaceCreated(holder: SurfaceHolder) {
         Logger.d(TAG, "surfaceCreated")
         mSurface = holder.surface
         initGL()
     }
 
+    // SurfaceView的buffer直接交給SurfaceFlinger合成，可以由螢幕直接掃描輸出
+    override val supportsFrontBufferAutoRefresh: Boolean
+        get() = true
+
     /*
      * It will be triggered after `surfaceCreated`
      */
     override fun createWindowSurface(eglCore: EglCore): WindowSurface {
         Logger.d(TAG, "createWindowSurface")
-        val windowSurface = WindowSurface(eglCore, mSurface, false)
-        windowSurface.makeCurrent()
-        return windowSurface
+        return WindowSurface(eglCore, mSurface, false)
     }
 
     override fun surfaceChanged(holder: SurfaceHolder, format: Int, width: Int, height: Int) {
         Logger.d(TAG, "surfaceChanged -> format: $format, width: $width, height: $height")
-        updateSurfaceConfigs(Size(width, height))
+        // buffer以SurfaceHolder.setFixedSize縮小時，width/height為buffer的尺寸
+        val size = Size(width, height)
+        updateSurfaceConfigs(size, viewSize(size))
     }
 
     override fun surfaceDestroyed(holder: SurfaceHolder) {
@@ -55,9 +81,20 @@ class SurfaceViewGLThread(
         pause()
     }
 
+    /**
+     * SurfaceView在螢幕上的尺寸，尚未layout時以buffer尺寸代替
+     */
+    private fun viewSize(bufferSize: Size): Size =
+        if (surfaceView.width > 0 && surfaceView.height > 0) {
+            Size(surfaceView.width, surfaceView.height)
+        } else {
+            bufferSize
+        }
+
     override fun releaseInputData() {
         Logger.d(TAG, "releaseInputData")
-        mSurface?.release()
+        // Surface屬於SurfaceView，釋放後下一個controller無法再使用，只移除callback
+        mSurface = null
         surfaceView.holder.removeCallback(this)
     }
 }
\ No newline at end of file
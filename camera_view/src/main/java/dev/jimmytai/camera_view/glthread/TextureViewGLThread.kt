@@ -0,0 +1,137 @@
+package dev.jimmytai.camera_view.glthread
+
+import android.graphics.SurfaceTexture
+import android.util.Size
+import android.view.Surface
+import android.view.TextureView
+import dev.jimmytai.camera_view.gles.EglCore
+import dev.jimmytai.camera_view.gles.WindowSurface
+import dev.jimmytai.camera_view.interfaces.CameraTextureProcessor
+import dev.jimmytai.camera_view.model.GLThreadConfig
+import dev.jimmytai.camera_view.utils.Logger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * TextureViewGLThread繪製至TextureView的SurfaceTexture，畫面由App的UI render thread與其他View一起合成，
+ * 可以做動畫、變形與半透明，但比SurfaceView多一次合成
+ *
+ * TextureView銷毀時SurfaceTexture與包裝它的Surface交由GLThread釋放，GLThread可能仍在繪製中，
+ * 在EGL繪製窗口重建或GLThread釋放後才釋放
+ */
+class TextureViewGLThread(
+    name: String,
+    private val textureView: TextureView,
+    config: GLThreadConfig,
+    callback: GLThreadCallback,
+    cameraTextureProcessor: CameraTextureProcessor
+) :
+    GLThread(
+        name,
+        textureView.context,
+        config,
+        callback = callback,
+        cameraTextureProcessor = cameraTextureProcessor
+    ),
+    TextureView.SurfaceTextureListener {
+
+    @Volatile
+    private var mSurface: Surface? = null
+
+    /**
+     * TextureView已銷毀、等待GLThread不再使用後釋放的SurfaceTexture，以自身為鎖
+     */
+    private val mDetachedSurfaceTextures: MutableList<SurfaceTexture> = mutableListOf()
+
+    /**
+     * 包裝已銷毀SurfaceTexture的Surface，與[mDetachedSurfaceTextures]一起釋放
+     */
+    private val mDetachedSurfaces: MutableList<Surface> = mutableListOf()
+
+    /**
+     * 最後swap至TextureView、尚未被UI取用的frame timestamp，-1代表沒有
+     */
+    private val mPendingPresentTimestampNs: AtomicLong = AtomicLong(-1L)
+
+    init {
+        textureView.surfaceTextureListener = this
+    }
+
+    override fun start() {
+        super.start()
+        // 替換CameraView的controller時SurfaceTexture早已建立，不會再收到onSurfaceTextureAvailable
+        val surfaceTexture: SurfaceTexture? = textureView.surfaceTexture
+        if (textureView.isAvailable && surfaceTexture != null) {
+            Logger.d(TAG, "start -> surface texture already available")
+            onSurfaceTextureAvailable(surfaceTexture, textureView.width, textureView.height)
+        }
+    }
+
+    override fun onSurfaceTextureAvailable(surface: SurfaceTexture, width: Int, height: Int) {
+        Logger.d(TAG, "onSurfaceTextureAvailable -> width: $width, height: $height")
+        synchronized(mDetachedSurfaceTextures) {
+            // 舊的Surface包裝已銷毀的SurfaceTexture，EGL繪製窗口重建後才釋放
+            mSurface?.let { mDetachedSurfaces.add(it) }
+            mSurface = Surface(surface)
+        }
+        initGL()
+        updateSurfaceConfigs(Size(width, height))
+    }
+
+    /*
+     * It will be triggered after `onSurfaceTextureAvailable`
+     */
+    override fun createWindowSurface(eglCore: EglCore): WindowSurface {
+        Logger.d(TAG, "createWindowSurface")
+        // 舊的EGL繪製窗口已經釋放，可以釋放TextureView交還的Surface與SurfaceTexture
+        releaseDetachedSurfaces()
+        return WindowSurface(eglCore, mSurface, false)
+    }
+
+    override fun onSurfaceTextureSizeChanged(surface: SurfaceTexture, width: Int, height: Int) {
+        Logger.d(TAG, "onSurfaceTextureSizeChanged -> width: $width, height: $height")
+        updateSurfaceConfigs(Size(width, height))
+    }
+
+    override fun onSurfaceTextureDestroyed(surface: SurfaceTexture): Boolean {
+        Logger.d(TAG, "onSurfaceTextureDestroyed")
+        pause()
+        // 包裝它的Surface保留至下一個SurfaceTexture可用時才換掉，尚未處理的initGL仍可建立繪製窗口
+        synchronized(mDetachedSurfaceTextures) { mDetachedSurfaceTextures.add(surface) }
+        // GLThread可能仍在繪製，由GLThread釋放
+        return false
+    }
+
+    override fun onSurfaceTextureUpdated(surface: SurfaceTexture) {
+        // UI取用了最新的frame，之前swap但未被取用的frame已被取代
+        val timestampNs: Long = mPendingPresentTimestampNs.getAndSet(-1L)
+        if (timestampNs != -1L) {
+            notifyFramePresented(timestampNs)
+        }
+    }
+
+    /**
+     * TextureView的frame在UI下一次繪製時才被取用，swap時只記錄
+     */
+    override fun onDisplayFrameSwapped(timestampNs: Long) {
+        mPendingPresentTimestampNs.set(timestampNs)
+    }
+
+    override fun releaseInputData() {
+        Logger.d(TAG, "releaseInputData")
+        textureView.surfaceTextureListener = null
+        synchronized(mDetachedSurfaceTextures) {
+            mSurface?.release()
+            mSurface = null
+        }
+        releaseDetachedSurfaces()
+    }
+
+    private fun releaseDetachedSurfaces() {
+        synchronized(mDetachedSurfaceTextures) {
+            mDetachedSurfaces.forEach { it.release() }
+            mDetachedSurfaces.clear()
+            mDetachedSurfaceTextures.forEach { it.release() }
+            mDetachedSurfaceTextures.clear()
+        }
+    }
+}
@@ -2,6 +2,10 @@ package dev.jimmytai.camera_view.interfaces
 
 import android.util.Size
 
+/**
+ * 注意：GLThread會快取GL狀態(program、texture、framebuffer、viewport)以略過重複的GL呼叫。
+ * 回傳null/false代表外部不處理，此時不應修改GL狀態；若有修改，請回傳處理結果，讓GLThread重新設定狀態
+ */
 interface CameraTextureProcessor {
     /**
      * Texture預處理的接口
@@ -0,0 +1,94 @@
+package dev.jimmytai.camera_view.interfaces
+
+import android.graphics.SurfaceTexture
+import android.util.Size
+import dev.jimmytai.camera_view.constant.DualCameraLayout
+import dev.jimmytai.camera_view.model.FrameStageTimings
+
+/**
+ * Producer of the frames the GL thread processes, e.g. the camera or a video file.
+ *
+ * A source renders its frames into the SurfaceTexture created by the GL thread; every frame then
+ * goes through the [CameraTextureProcessor] and all outputs, the same way camera frames do.
+ *
+ * [setSurfaceTexture] and [start] may be called in either order, the source starts producing
+ * frames once it has both.
+ */
+interface FrameSource {
+    fun interface Listener {
+        /**
+         * Size of the frames written into the SurfaceTexture, before rotation, and the clockwise
+         * rotation needed to display them upright. Called before the first frame and whenever
+         * either changes, on any thread.
+         */
+        fun onFrameSizeChanged(size: Size, rotationDegrees: Int)
+
+        /**
+         * Same as [onFrameSizeChanged] for the secondary stream of a source with a
+         * [secondaryLayout].
+         */
+        fun onSecondaryFrameSizeChanged(size: Size, rotationDegrees: Int) {}
+    }
+
+    /**
+     * false if the source renders frames as fast as the GL thread processes them instead of at
+     * their capture rate. The display then stops waiting for vsync so it does not slow the source
+     * down, and the source waits for [onFrameProcessed] before rendering the next frame.
+     */
+    val isRealTime: Boolean
+        get() = true
+
+    /**
+     * Called on the GL thread when it creates the SurfaceTexture, again if it is recreated.
+     */
+    fun setSurfaceTexture(surfaceTexture: SurfaceTexture)
+
+    /**
+     * Non-null if the source produces a second stream, e.g. a second camera. The GL thread then
+     * creates a second SurfaceTexture and composites both streams with this layout into the frame
+     * the processor and all outputs see.
+     */
+    val secondaryLayout: DualCameraLayout?
+        get() = null
+
+    /**
+     * Called on the GL thread with the SurfaceTexture of the second stream, only if
+     * [secondaryLayout] is not null.
+     */
+    fun setSecondarySurfaceTexture(surfaceTexture: SurfaceTexture) {}
+
+    /**
+     * Start producing frames.
+     */
+    fun start(listener: Listener)
+
+    /**
+     * Stop producing frames, [start] may be called again afterwards.
+     */
+    fun stop()
+
+    /**
+     * Called when the view comes back to the foreground, a source interrupted in the background
+     * (e.g. a camera taken by another app) restarts here.
+     */
+    fun onResume() {}
+
+    /**
+     * Called on the GL thread with the SurfaceTexture transform of every frame before it is
+     * processed. A replayed source writes the recorded transform into [transformMatrix].
+     *
+     * @param timestampNs   SurfaceTexture timestamp of the frame.
+     */
+    fun overrideTransformMatrix(timestampNs: Long, transformMatrix: FloatArray) {}
+
+    /**
+     * Called on the GL thread after a frame from the SurfaceTexture has been rendered to every
+     * output.
+     *
+     * @param timestampNs   SurfaceTexture timestamp of the frame.
+     * @param timings       Time spent on each stage of the frame, only valid during this call.
+     */
+    fun onFrameProcessed(timestampNs: Long, timings: FrameStageTimings) {}
+
+    fun release()
+}
@@ -0,0 +1,24 @@
+package dev.jimmytai.camera_view.model
+
+/**
+ * Snapshot of an [dev.jimmytai.camera_view.export.AnalysisOutput].
+ *
+ * Latency is measured from the camera capturing a frame until the analyzer returns.
+ *
+ * @param analyzedFrameCount    Frames passed to the analyzer.
+ * @param droppedFrameCount     Frames closed without being analyzed because the queue was full.
+ * @param queueDepth            Frames waiting for the analyzer right now.
+ * @param maxQueueDepth         Largest queue depth seen.
+ * @param lastLatencyNs         Latency of the last analyzed frame, in nanoseconds.
+ * @param averageLatencyNs      Average latency, in nanoseconds.
+ * @param maxLatencyNs          Largest latency, in nanoseconds.
+ */
+data class AnalysisOutputStats(
+    val analyzedFrameCount: Long,
+    val droppedFrameCount: Long,
+    val queueDepth: Int,
+    val maxQueueDepth: Int,
+    val lastLatencyNs: Long,
+    val averageLatencyNs: Long,
+    val maxLatencyNs: Long
+)
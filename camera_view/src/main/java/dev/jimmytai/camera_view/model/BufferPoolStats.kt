@@ -0,0 +1,28 @@
+package dev.jimmytai.camera_view.model
+
+/**
+ * Snapshot of [dev.jimmytai.camera_view.utils.DirectBufferPool] usage since it was created or
+ * last cleared.
+ *
+ * @param acquireCount      Buffers handed out.
+ * @param hitCount          Acquires served by a pooled buffer.
+ * @param releaseCount      Buffers given back.
+ * @param bytesPooled       Capacity of the idle buffers the pool currently holds.
+ * @param bytesInUse        Capacity of the buffers acquired and not yet released.
+ * @param leakCount         Buffers garbage collected without being released. Only tracked when
+ *                          leak detection is enabled (debug builds).
+ */
+data class BufferPoolStats(
+    val acquireCount: Long,
+    val hitCount: Long,
+    val releaseCount: Long,
+    val bytesPooled: Long,
+    val bytesInUse: Long,
+    val leakCount: Long
+) {
+    val missCount: Long
+        get() = acquireCount - hitCount
+
+    val hitRate: Float
+        get() = if (acquireCount == 0L) 0f else hitCount.toFloat() / acquireCount
+}
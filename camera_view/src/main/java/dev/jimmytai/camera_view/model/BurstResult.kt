@@ -0,0 +1,15 @@
+package dev.jimmytai.camera_view.model
+
+/**
+ * Frames captured by [dev.jimmytai.camera_view.CameraController.takeBurst].
+ *
+ * @param snapshots         Encoded frames in capture order.
+ * @param skippedFrameCount Frames skipped during the burst because every GPU slot was still
+ *                          waiting for the encoder. 0 means the frames are consecutive.
+ * @param maxSlotsInUse     Largest number of GPU slots held at the same time.
+ */
+class BurstResult(
+    val snapshots: List<Snapshot>,
+    val skippedFrameCount: Int,
+    val maxSlotsInUse: Int
+)
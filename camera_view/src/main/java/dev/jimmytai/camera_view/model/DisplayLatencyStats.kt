@@ -0,0 +1,24 @@
+package dev.jimmytai.camera_view.model
+
+/**
+ * Latency from the capture timestamp of a frame to the moment it was handed to the display,
+ * which is the swap for a SurfaceView and the next view draw for a TextureView.
+ *
+ * @param frameCount            Frames measured.
+ * @param unmeasuredFrameCount  Frames presented whose timestamp is not on the system clock, e.g.
+ *                              from a video file, and are not part of the percentiles.
+ * @param p50Ns                 Median latency, in nanoseconds.
+ * @param p90Ns                 90th percentile latency, in nanoseconds.
+ * @param p99Ns                 99th percentile latency, in nanoseconds.
+ * @param maxNs                 Largest latency, in nanoseconds.
+ * @param averageNs             Average latency, in nanoseconds.
+ */
+data class DisplayLatencyStats(
+    val frameCount: Long,
+    val unmeasuredFrameCount: Long,
+    val p50Ns: Long,
+    val p90Ns: Long,
+    val p99Ns: Long,
+    val maxNs: Long,
+    val averageNs: Long
+)
@@ -0,0 +1,28 @@
+package dev.jimmytai.camera_view.model
+
+/**
+ * Statistics of a dual camera stream since the second stream was enabled.
+ *
+ * Every primary frame is composited with the newest secondary frame. Skew is the difference
+ * between the timestamps of the two frames composited together.
+ *
+ * @param primaryFrameCount             Primary frames composited.
+ * @param primaryDroppedFrameCount      Primary frames replaced by a newer one before the GL thread
+ *                                      processed them.
+ * @param secondaryFrameCount           Secondary frames received.
+ * @param secondaryDroppedFrameCount    Secondary frames replaced by a newer one before a primary
+ *                                      frame was composited with them.
+ * @param secondaryRepeatedFrameCount   Primary frames composited with the same secondary frame as
+ *                                      the previous one, because no new secondary frame arrived.
+ * @param maxSkewNs                     Largest skew, in nanoseconds.
+ * @param averageSkewNs                 Average skew, in nanoseconds.
+ */
+data class DualCameraStats(
+    val primaryFrameCount: Long,
+    val primaryDroppedFrameCount: Long,
+    val secondaryFrameCount: Long,
+    val secondaryDroppedFrameCount: Long,
+    val secondaryRepeatedFrameCount: Long,
+    val maxSkewNs: Long,
+    val averageSkewNs: Long
+)
@@ -0,0 +1,57 @@
+package dev.jimmytai.camera_view.model
+
+import android.hardware.HardwareBuffer
+import android.util.Size
+
+/**
+ * Configuration of a [dev.jimmytai.camera_view.export.FrameExporter].
+ *
+ * @param outputSize        Size of the exported frames. The processed frame is center cropped to it.
+ * @param maxImages         Frames a consumer may hold at the same time. Newer frames are dropped
+ *                          while all of them are held, the GL thread never waits for a consumer.
+ * @param usage             [HardwareBuffer] usage flags of the exported buffers, on top of
+ *                          GPU_COLOR_OUTPUT which the GL thread needs to render into them.
+ * @param forceReadback     Always use the PBO read back path, even when HardwareBuffer export
+ *                          is available.
+ */
+class FrameExportConfig(
+    val outputSize: Size,
+    val maxImages: Int,
+    val usage: Long,
+    val forceReadback: Boolean
+) {
+    class Builder(private val outputSize: Size) {
+        private var mMaxImages: Int? = null
+
+        private var mUsage: Long? = null
+
+        private var mForceReadback: Boolean? = null
+
+        fun setMaxImages(maxImages: Int): Builder {
+            require(maxImages > 0) { "maxImages must be positive" }
+            mMaxImages = maxImages
+            return this
+        }
+
+        /**
+         * For example [HardwareBuffer.USAGE_GPU_SAMPLED_IMAGE] for another GPU API, or
+         * [HardwareBuffer.USAGE_CPU_READ_OFTEN] for CPU consumers.
+         */
+        fun setUsage(usage: Long): Builder {
+            mUsage = usage
+            return this
+        }
+
+        fun setForceReadback(force: Boolean): Builder {
+            mForceReadback = force
+            return this
+        }
+
+        fun build(): FrameExportConfig = FrameExportConfig(
+            outputSize = outputSize,
+            maxImages = mMaxImages ?: 2,
+            usage = mUsage ?: HardwareBuffer.USAGE_GPU_SAMPLED_IMAGE,
+            forceReadback = mForceReadback ?: false
+        )
+    }
+}
@@ -0,0 +1,54 @@
+package dev.jimmytai.camera_view.model
+
+/**
+ * Time the GL thread spent on each stage of one frame, in nanoseconds of CPU wall time.
+ *
+ * Reused for every frame, only valid during
+ * [dev.jimmytai.camera_view.interfaces.FrameSource.onFrameProcessed].
+ */
+class FrameStageTimings {
+    /**
+     * updateTexImage and input hooks such as a stream capture.
+     */
+    var updateTexImageNs: Long = 0L
+        internal set
+
+    /**
+     * onPreProcessTexture, or the default rotation into a 2D texture.
+     */
+    var preProcessNs: Long = 0L
+        internal set
+
+    /**
+     * onProcessTexture.
+     */
+    var processNs: Long = 0L
+        internal set
+
+    /**
+     * Readbacks of the processed frame (snapshots, bursts, exporters).
+     */
+    var readbackNs: Long = 0L
+        internal set
+
+    /**
+     * Rendering and swapping every output window.
+     */
+    var renderNs: Long = 0L
+        internal set
+
+    val totalNs: Long
+        get() = updateTexImageNs + preProcessNs + processNs + readbackNs + renderNs
+
+    internal fun reset() {
+        updateTexImageNs = 0L
+        preProcessNs = 0L
+        processNs = 0L
+        readbackNs = 0L
+        renderNs = 0L
+    }
+
+    override fun toString(): String =
+        "FrameStageTimings(updateTexImageNs=$updateTexImageNs, preProcessNs=$preProcessNs, " +
+            "processNs=$processNs, readbackNs=$readbackNs, renderNs=$renderNs)"
+}
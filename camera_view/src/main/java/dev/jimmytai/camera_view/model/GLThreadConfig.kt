@@ -0,0 +1,92 @@
+package dev.jimmytai.camera_view.model
+
+import android.os.Process
+import androidx.annotation.IntDef
+
+/**
+ * Scheduling configuration of the GL thread.
+ *
+ * @param threadPriority            Linux priority of the GL thread, see [Process.setThreadPriority].
+ * @param usePerformanceHint        Report every frame's work duration to PerformanceHintManager
+ *                                  (Android 12+), so the OS can boost CPU clocks for the render loop.
+ * @param targetWorkDurationNs      Expected work duration of one frame, in nanoseconds.
+ * @param lowLatency                Output surfaces that are not shown on screen, e.g. a video
+ *                                  encoder, use a swap interval of 0, so a slow consumer never
+ *                                  holds the render loop back to the display's vsync.
+ * @param frontBufferAutoRefresh    Render the SurfaceView preview into a single buffer that the
+ *                                  display scans out directly, when the device supports
+ *                                  EGL_ANDROID_front_buffer_auto_refresh. Saves up to a frame of
+ *                                  latency at the cost of possible tearing.
+ */
+class GLThreadConfig(
+    val threadPriority: Int,
+    val usePerformanceHint: Boolean,
+    val targetWorkDurationNs: Long,
+    val lowLatency: Boolean = false,
+    val frontBufferAutoRefresh: Boolean = false,
+) {
+    @MustBeDocumented
+    @IntDef(
+        Process.THREAD_PRIORITY_DEFAULT,
+        Process.THREAD_PRIORITY_DISPLAY,
+        Process.THREAD_PRIORITY_URGENT_DISPLAY
+    )
+    @Target(AnnotationTarget.VALUE_PARAMETER)
+    @Retention(AnnotationRetention.SOURCE)
+    annotation class ThreadPriority
+
+    class Builder {
+        private var mThreadPriority: Int? = null
+
+        private var mUsePerformanceHint: Boolean? = null
+
+        private var mTargetWorkDurationNs: Long? = null
+
+        private var mLowLatency: Boolean? = null
+
+        private var mFrontBufferAutoRefresh: Boolean? = null
+
+        fun setThreadPriority(@ThreadPriority priority: Int): Builder {
+            mThreadPriority = priority
+            return this
+        }
+
+        fun setUsePerformanceHint(use: Boolean): Builder {
+            mUsePerformanceHint = use
+            return this
+        }
+
+        /**
+         * Usually 1 second divided by the camera frame rate.
+         *
+         * @throws IllegalArgumentException if [durationNs] is not positive.
+         */
+        fun setTargetWorkDurationNs(durationNs: Long): Builder {
+            require(durationNs > 0L) { "targetWorkDurationNs must be positive" }
+            mTargetWorkDurationNs = durationNs
+            return this
+        }
+
+        fun setLowLatency(lowLatency: Boolean): Builder {
+            mLowLatency = lowLatency
+            return this
+        }
+
+        /**
+         * Ignored on devices without EGL_ANDROID_front_buffer_auto_refresh and by the TextureView
+         * backend.
+         */
+        fun setFrontBufferAutoRefresh(enabled: Boolean): Builder {
+            mFrontBufferAutoRefresh = enabled
+            return this
+        }
+
+        fun build(): GLThreadConfig = GLThreadConfig(
+            threadPriority = mThreadPriority ?: Process.THREAD_PRIORITY_DISPLAY,
+            usePerformanceHint = mUsePerformanceHint ?: true,
+            targetWorkDurationNs = mTargetWorkDurationNs ?: 33_333_333L,
+            lowLatency = mLowLatency ?: false,
+            frontBufferAutoRefresh = mFrontBufferAutoRefresh ?: false
+        )
+    }
+}
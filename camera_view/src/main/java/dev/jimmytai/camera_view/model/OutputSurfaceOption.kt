@@ -4,5 +4,18 @@ import android.os.Parcelable
 import android.util.Size
 import kotlinx.parcelize.Parcelize
 
+/**
+ * @param outputSize                Width/Height of the output surface.
+ * @param presentationTimeOffsetNs  Offset added to every frame timestamp sent to this surface.
+ * @param maxFps                    Frames per second rendered to this surface at most, 0 for every frame.
+ * @param isDisplay                 The surface is shown on screen, e.g. a second CameraView. It is
+ *                                  drawn like the main view: no presentation time is set and it
+ *                                  follows the display swap interval.
+ */
 @Parcelize
-data class OutputSurfaceOption(val outputSize: Size): Parcelable
\ No newline at end of file
+data class OutputSurfaceOption(
+    val outputSize: Size,
+    val presentationTimeOffsetNs: Long = 0L,
+    val maxFps: Int = 0,
+    val isDisplay: Boolean = false
+) : Parcelable
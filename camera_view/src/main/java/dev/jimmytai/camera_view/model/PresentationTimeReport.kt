@@ -0,0 +1,23 @@
+package dev.jimmytai.camera_view.model
+
+/**
+ * Presentation time statistics of one output surface, from it being added until it is removed.
+ *
+ * Drift is the time between the camera capturing a frame and the GL thread sending it to the
+ * output surface. A growing drift means the GL thread falls behind the camera.
+ *
+ * @param frameCount            Frames sent to the output surface.
+ * @param correctedFrameCount   Frames whose timestamp was not increasing and had to be corrected.
+ * @param minDriftNs            Smallest drift, in nanoseconds.
+ * @param maxDriftNs            Largest drift, in nanoseconds.
+ * @param averageDriftNs        Average drift, in nanoseconds.
+ * @param driftGrowthNs         Drift of the last frame minus drift of the first frame, in nanoseconds.
+ */
+data class PresentationTimeReport(
+    val frameCount: Long,
+    val correctedFrameCount: Long,
+    val minDriftNs: Long,
+    val maxDriftNs: Long,
+    val averageDriftNs: Long,
+    val driftGrowthNs: Long
+)
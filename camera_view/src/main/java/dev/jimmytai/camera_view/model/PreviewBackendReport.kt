@@ -0,0 +1,43 @@
+package dev.jimmytai.camera_view.model
+
+import dev.jimmytai.camera_view.constant.PreviewBackend
+
+/**
+ * Result of one backend in a [dev.jimmytai.camera_view.soak.PreviewBackendBenchmark].
+ *
+ * Latency is the time from a frame being queued by the source until the GL thread swapped it to
+ * the preview surface, the same point for every backend. Composition after the swap is not
+ * included; a [PreviewBackend.TEXTURE_VIEW] frame still waits for the UI rendering to pick it up.
+ *
+ * @param backend               Backend measured.
+ * @param externalSurface       The preview was rendered into a surface attached with
+ *                              [dev.jimmytai.camera_view.CameraController.attachSurface], like a
+ *                              Compose `AndroidExternalSurface`, instead of a CameraView.
+ * @param durationMs            Time measured, after warm-up.
+ * @param producedFrameCount    Frames queued by the source.
+ * @param swappedFrameCount     Frames swapped to the preview surface.
+ * @param presentedFrameCount   Frames presented: swapped for a SurfaceView, picked up by the UI
+ *                              rendering for a TextureView.
+ * @param latencyP50Ns          Median latency, in nanoseconds.
+ * @param latencyP90Ns          90th percentile latency, in nanoseconds.
+ * @param latencyP99Ns          99th percentile latency, in nanoseconds.
+ * @param latencyMaxNs          Largest latency, in nanoseconds.
+ */
+data class PreviewBackendReport(
+    val backend: PreviewBackend,
+    val externalSurface: Boolean,
+    val durationMs: Long,
+    val producedFrameCount: Long,
+    val swappedFrameCount: Long,
+    val presentedFrameCount: Long,
+    val latencyP50Ns: Long,
+    val latencyP90Ns: Long,
+    val latencyP99Ns: Long,
+    val latencyMaxNs: Long
+) {
+    /**
+     * Frames produced but replaced before they were presented, by the GL thread or the backend.
+     */
+    val droppedFrameCount: Long
+        get() = maxOf(0L, producedFrameCount - presentedFrameCount)
+}
@@ -0,0 +1,111 @@
+package dev.jimmytai.camera_view.model
+
+import dev.jimmytai.camera_view.constant.FrameStage
+
+/**
+ * Result of replaying a stream capture with [dev.jimmytai.camera_view.replay.ReplayFrameSource].
+ *
+ * Holds one entry per captured frame in capture order, so two replays of the same capture line up
+ * frame by frame. [toTsv] writes it as text to diff a run before and after a change.
+ *
+ * @param frames    Every captured frame, [ReplayFrameResult.dropped] if the GL thread never
+ *                  processed it.
+ */
+class ReplayReport(val frames: List<ReplayFrameResult>) {
+    companion object {
+        // 摘要表的p50、p90、p99與最大值
+        private val SUMMARY_PERCENTILES: DoubleArray = doubleArrayOf(50.0, 90.0, 99.0, 100.0)
+    }
+
+    private val mProcessed: List<ReplayFrameResult> = frames.filter { !it.dropped }
+
+    val processedFrameCount: Int
+        get() = mProcessed.size
+
+    /**
+     * Captured frames replaced in the SurfaceTexture before the GL thread processed them, always 0
+     * for an offline replay.
+     */
+    val droppedFrameCount: Int
+        get() = frames.size - mProcessed.size
+
+    /**
+     * Exact percentile of a stage over the processed frames, 0 if no frame was processed.
+     *
+     * @param percentile    From 0 to 100.
+     */
+    fun percentileNs(stage: FrameStage, percentile: Double): Long {
+        require(percentile in 0.0..100.0) { "percentile must be between 0 and 100" }
+        if (mProcessed.isEmpty()) return 0L
+        val sorted: LongArray = LongArray(mProcessed.size) { mProcessed[it][stage] }.apply { sort() }
+        // 第rank個(從1開始)最小的值
+        val rank: Int = maxOf(1, Math.ceil(sorted.size * percentile / 100.0).toInt())
+        return sorted[rank - 1]
+    }
+
+    /**
+     * Tab separated summary per stage followed by every frame, times in microseconds.
+     */
+    fun toTsv(): String {
+        val builder = StringBuilder()
+        builder.append("# frames\t").append(frames.size)
+            .append("\tprocessed\t").append(processedFrameCount)
+            .append("\tdropped\t").append(droppedFrameCount).append('\n')
+        builder.append("stage\tp50\tp90\tp99\tmax\n")
+        for (stage in FrameStage.values()) {
+            builder.append(stage.label)
+            for (percentile in SUMMARY_PERCENTILES) {
+                builder.append('\t').append(percentileNs(stage, percentile) / 1_000L)
+            }
+            builder.append('\n')
+        }
+        builder.append('\n')
+        builder.append("frame\toffsetUs")
+        for (stage in FrameStage.values()) {
+            builder.append('\t').append(stage.label)
+        }
+        builder.append('\n')
+        for (frame in frames) {
+            builder.append(frame.index).append('\t').append(frame.captureOffsetUs)
+            if (frame.dropped) {
+                builder.append("\tdropped\n")
+                continue
+            }
+            for (stage in FrameStage.values()) {
+                builder.append('\t').append(frame[stage] / 1_000L)
+            }
+            builder.append('\n')
+        }
+        return builder.toString()
+    }
+}
+
+/**
+ * One captured frame of a replay, stage times in nanoseconds.
+ *
+ * @param index             Position of the frame in the capture.
+ * @param captureOffsetUs   Time since the first captured frame.
+ * @param dropped           The GL thread never processed the frame, the stage times are 0.
+ */
+data class ReplayFrameResult(
+    val index: Int,
+    val captureOffsetUs: Long,
+    val dropped: Boolean,
+    val updateTexImageNs: Long = 0L,
+    val preProcessNs: Long = 0L,
+    val processNs: Long = 0L,
+    val readbackNs: Long = 0L,
+    val renderNs: Long = 0L
+) {
+    val totalNs: Long
+        get() = updateTexImageNs + preProcessNs + processNs + readbackNs + renderNs
+
+    operator fun get(stage: FrameStage): Long = when (stage) {
+        FrameStage.UPDATE_TEX_IMAGE -> updateTexImageNs
+        FrameStage.PRE_PROCESS -> preProcessNs
+        FrameStage.PROCESS -> processNs
+        FrameStage.READBACK -> readbackNs
+        FrameStage.RENDER -> renderNs
+        FrameStage.TOTAL -> totalNs
+    }
+}
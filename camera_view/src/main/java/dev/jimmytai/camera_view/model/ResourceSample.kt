@@ -0,0 +1,23 @@
+package dev.jimmytai.camera_view.model
+
+/**
+ * Memory and threads of the process at one point of a soak test.
+ *
+ * @param elapsedMs             Time since the test started.
+ * @param javaHeapBytes         Java heap in use after a GC.
+ * @param nativeHeapBytes       Native heap allocated.
+ * @param graphicsBytes         Graphics memory (EGL/GL buffers and textures) accounted to the
+ *                              process, 0 if the device does not report it.
+ * @param threadCount           Threads of the process, Java and native.
+ * @param producedFrameCount    Frames produced by the source so far.
+ * @param processedFrameCount   Frames processed by the GL thread so far.
+ */
+data class ResourceSample(
+    val elapsedMs: Long,
+    val javaHeapBytes: Long,
+    val nativeHeapBytes: Long,
+    val graphicsBytes: Long,
+    val threadCount: Int,
+    val producedFrameCount: Long,
+    val processedFrameCount: Long
+)
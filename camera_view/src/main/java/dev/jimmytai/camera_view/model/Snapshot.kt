@@ -0,0 +1,20 @@
+package dev.jimmytai.camera_view.model
+
+import dev.jimmytai.camera_view.constant.SnapshotFormat
+
+/**
+ * An encoded still of one processed frame.
+ *
+ * @param data          The encoded image file.
+ * @param width         Width of the image in pixels.
+ * @param height        Height of the image in pixels.
+ * @param format        Format [data] is encoded in.
+ * @param timestampNs   Time the camera captured the frame, in nanoseconds.
+ */
+class Snapshot(
+    val data: ByteArray,
+    val width: Int,
+    val height: Int,
+    val format: SnapshotFormat,
+    val timestampNs: Long
+)
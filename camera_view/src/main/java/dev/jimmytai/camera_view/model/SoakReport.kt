@@ -0,0 +1,58 @@
+package dev.jimmytai.camera_view.model
+
+/**
+ * Result of a [dev.jimmytai.camera_view.soak.SoakTestRunner].
+ *
+ * Growth compares the first periodic sample, taken with the pipeline warmed up, with
+ * [afterRelease], taken once the last controller is released. Memory or threads the released
+ * pipeline still holds show up as positive growth, e.g. a leak in release or output churn.
+ *
+ * @param durationMs                Time the test ran.
+ * @param producedFrameCount        Frames produced by the synthetic sources.
+ * @param processedFrameCount       Frames the GL thread rendered to every output.
+ * @param skippedFrameCount         Frames the source could not produce in time.
+ * @param latencyP50Ns              Median latency from a frame being produced until it is
+ *                                  rendered to every output, in nanoseconds.
+ * @param latencyP90Ns              90th percentile latency, in nanoseconds.
+ * @param latencyP99Ns              99th percentile latency, in nanoseconds.
+ * @param latencyMaxNs              Largest latency, in nanoseconds.
+ * @param controllerRecreateCount   Controllers released and replaced during the test.
+ * @param outputChurnCount          Analysis outputs added and removed during the test.
+ * @param samples                   Periodic samples while the pipeline was running.
+ * @param afterRelease              Sample after the last controller was released.
+ */
+data class SoakReport(
+    val durationMs: Long,
+    val producedFrameCount: Long,
+    val processedFrameCount: Long,
+    val skippedFrameCount: Long,
+    val latencyP50Ns: Long,
+    val latencyP90Ns: Long,
+    val latencyP99Ns: Long,
+    val latencyMaxNs: Long,
+    val controllerRecreateCount: Int,
+    val outputChurnCount: Int,
+    val samples: List<ResourceSample>,
+    val afterRelease: ResourceSample
+) {
+    /**
+     * Frames produced but replaced before the GL thread processed them.
+     */
+    val droppedFrameCount: Long
+        get() = maxOf(0L, producedFrameCount - processedFrameCount)
+
+    val javaHeapGrowthBytes: Long
+        get() = afterRelease.javaHeapBytes - baseline.javaHeapBytes
+
+    val nativeHeapGrowthBytes: Long
+        get() = afterRelease.nativeHeapBytes - baseline.nativeHeapBytes
+
+    val graphicsGrowthBytes: Long
+        get() = afterRelease.graphicsBytes - baseline.graphicsBytes
+
+    val threadCountGrowth: Int
+        get() = afterRelease.threadCount - baseline.threadCount
+
+    private val baseline: ResourceSample
+        get() = samples.firstOrNull() ?: afterRelease
+}
@@ -0,0 +1,86 @@
+package dev.jimmytai.camera_view.model
+
+import android.util.Size
+
+/**
+ * Configuration of a [dev.jimmytai.camera_view.soak.SoakTestRunner].
+ *
+ * @param source                        Frames driving the pipeline.
+ * @param durationMs                    How long the test runs.
+ * @param sampleIntervalMs              Interval between memory and thread samples.
+ * @param outputChurnIntervalMs         An analysis output is added and removed alternately at
+ *                                      this interval, 0 to keep the outputs unchanged.
+ * @param controllerRecreateIntervalMs  The controller is released and a new one attached at this
+ *                                      interval, 0 to keep one controller for the whole test.
+ * @param churnOutputSize               Size of the churned analysis output.
+ */
+class SoakTestConfig(
+    val source: SyntheticSourceConfig,
+    val durationMs: Long,
+    val sampleIntervalMs: Long,
+    val outputChurnIntervalMs: Long,
+    val controllerRecreateIntervalMs: Long,
+    val churnOutputSize: Size
+) {
+    init {
+        require(durationMs > 0L) { "durationMs must be positive" }
+        require(sampleIntervalMs > 0L) { "sampleIntervalMs must be positive" }
+        require(outputChurnIntervalMs >= 0L) { "outputChurnIntervalMs must not be negative" }
+        require(controllerRecreateIntervalMs >= 0L) {
+            "controllerRecreateIntervalMs must not be negative"
+        }
+    }
+
+    class Builder {
+        private var mSource: SyntheticSourceConfig? = null
+
+        private var mDurationMs: Long? = null
+
+        private var mSampleIntervalMs: Long? = null
+
+        private var mOutputChurnIntervalMs: Long? = null
+
+        private var mControllerRecreateIntervalMs: Long? = null
+
+        private var mChurnOutputSize: Size? = null
+
+        fun setSource(source: SyntheticSourceConfig): Builder {
+            mSource = source
+            return this
+        }
+
+        fun setDurationMs(durationMs: Long): Builder {
+            mDurationMs = durationMs
+            return this
+        }
+
+        fun setSampleIntervalMs(intervalMs: Long): Builder {
+            mSampleIntervalMs = intervalMs
+            return this
+        }
+
+        fun setOutputChurnIntervalMs(intervalMs: Long): Builder {
+            mOutputChurnIntervalMs = intervalMs
+            return this
+        }
+
+        fun setControllerRecreateIntervalMs(intervalMs: Long): Builder {
+            mControllerRecreateIntervalMs = intervalMs
+            return this
+        }
+
+        fun setChurnOutputSize(size: Size): Builder {
+            mChurnOutputSize = size
+            return this
+        }
+
+        fun build(): SoakTestConfig = SoakTestConfig(
+            source = mSource ?: SyntheticSourceConfig.Builder().build(),
+            durationMs = mDurationMs ?: 60 * 60 * 1000L,
+            sampleIntervalMs = mSampleIntervalMs ?: 10_000L,
+            outputChurnIntervalMs = mOutputChurnIntervalMs ?: 0L,
+            controllerRecreateIntervalMs = mControllerRecreateIntervalMs ?: 0L,
+            churnOutputSize = mChurnOutputSize ?: Size(640, 360)
+        )
+    }
+}
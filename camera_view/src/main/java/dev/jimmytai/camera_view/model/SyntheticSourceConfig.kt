@@ -0,0 +1,76 @@
+package dev.jimmytai.camera_view.model
+
+import android.util.Size
+
+/**
+ * Frames produced by a [dev.jimmytai.camera_view.source.SyntheticFrameSource].
+ *
+ * @param size          Width/Height of the frames.
+ * @param fps           Frames per second, from 1 to [MAX_FPS].
+ * @param jitterNs      Every frame is produced up to this much earlier or later than its nominal
+ *                      time, uniformly distributed, like a camera with uneven frame intervals.
+ * @param rotationDegrees   Rotation reported with the frames, like a camera sensor orientation.
+ * @param seed          Seed of the jitter, the same seed gives the same frame intervals.
+ */
+class SyntheticSourceConfig(
+    val size: Size,
+    val fps: Int,
+    val jitterNs: Long,
+    val rotationDegrees: Int,
+    val seed: Long
+) {
+    companion object {
+        const val MAX_FPS: Int = 240
+    }
+
+    init {
+        require(fps in 1..MAX_FPS) { "fps must be between 1 and $MAX_FPS" }
+        require(jitterNs >= 0L) { "jitterNs must not be negative" }
+        require(rotationDegrees % 90 == 0) { "rotationDegrees must be a multiple of 90" }
+    }
+
+    class Builder {
+        private var mSize: Size? = null
+
+        private var mFps: Int? = null
+
+        private var mJitterNs: Long? = null
+
+        private var mRotationDegrees: Int? = null
+
+        private var mSeed: Long? = null
+
+        fun setSize(size: Size): Builder {
+            mSize = size
+            return this
+        }
+
+        fun setFps(fps: Int): Builder {
+            mFps = fps
+            return this
+        }
+
+        fun setJitterNs(jitterNs: Long): Builder {
+            mJitterNs = jitterNs
+            return this
+        }
+
+        fun setRotationDegrees(rotationDegrees: Int): Builder {
+            mRotationDegrees = rotationDegrees
+            return this
+        }
+
+        fun setSeed(seed: Long): Builder {
+            mSeed = seed
+            return this
+        }
+
+        fun build(): SyntheticSourceConfig = SyntheticSourceConfig(
+            size = mSize ?: Size(1280, 720),
+            fps = mFps ?: 30,
+            jitterNs = mJitterNs ?: 0L,
+            rotationDegrees = mRotationDegrees ?: 0,
+            seed = mSeed ?: 0L
+        )
+    }
+}
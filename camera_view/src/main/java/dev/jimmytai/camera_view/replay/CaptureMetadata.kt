@@ -0,0 +1,100 @@
+package dev.jimmytai.camera_view.replay
+
+import android.util.Size
+import java.io.BufferedReader
+import java.io.Writer
+
+/**
+ * 錄製串流的每個frame資訊，與影片檔一起存放，重播時以SurfaceTexture的timestamp對應
+ *
+ * 檔案為tab分隔的文字檔，方便直接檢視與diff：
+ * ```
+ * # camera_view stream capture 1
+ * size    <width>    <height>
+ * frame   <timestampNs>    <rotationDegrees>    <transform matrix 16個數值>
+ * ```
+ */
+internal class CaptureMetadata(
+    val bufferSize: Size,
+    val frames: List<CapturedFrame>
+) {
+    companion object {
+        const val STREAM_FILE: String = "stream.mp4"
+
+        const val METADATA_FILE: String = "frames.tsv"
+
+        private const val HEADER: String = "# camera_view stream capture 1"
+
+        fun writeHeader(writer: Writer, bufferSize: Size) {
+            writer.write(HEADER)
+            writer.write("\n")
+            writer.write("size\t${bufferSize.width}\t${bufferSize.height}\n")
+        }
+
+        fun formatFrame(frame: CapturedFrame): String {
+            val builder = StringBuilder("frame\t")
+                .append(frame.timestampNs).append('\t')
+                .append(frame.rotationDegrees)
+            for (value in frame.transformMatrix) {
+                builder.append('\t').append(value)
+            }
+            return builder.append('\n').toString()
+        }
+
+        fun read(reader: BufferedReader): CaptureMetadata {
+            var bufferSize: Size? = null
+            val frames: MutableList<CapturedFrame> = mutableListOf()
+            reader.lineSequence().forEachIndexed { lineIndex, line ->
+                if (line.isEmpty() || line.startsWith("#")) return@forEachIndexed
+                val fields: List<String> = line.split('\t')
+                when (fields[0]) {
+                    "size" -> bufferSize = Size(fields[1].toInt(), fields[2].toInt())
+                    "frame" -> {
+                        require(fields.size == 19) { "line ${lineIndex + 1}: expected 19 fields" }
+                        frames.add(
+                            CapturedFrame(
+                                timestampNs = fields[1].toLong(),
+                                rotationDegrees = fields[2].toInt(),
+                                transformMatrix = FloatArray(16) { fields[3 + it].toFloat() }
+                            )
+                        )
+                    }
+                }
+            }
+            return CaptureMetadata(
+                requireNotNull(bufferSize) { "missing size line" },
+                frames
+            )
+        }
+    }
+
+    /**
+     * 影片的presentation time對應的frame，找不到時回傳-1
+     *
+     * @param ptsUs 與影片第一個frame的時間差(microseconds)，encoder以microseconds為單位，容許1us的誤差
+     */
+    fun indexOf(ptsUs: Long): Int {
+        if (frames.isEmpty()) return -1
+        val firstNs: Long = frames[0].timestampNs
+        // 第一個不小於ptsUs - 1的frame
+        var low = 0
+        var high: Int = frames.size
+        while (low < high) {
+            val mid: Int = (low + high) ushr 1
+            if ((frames[mid].timestampNs - firstNs) / 1_000L < ptsUs - 1L) {
+                low = mid + 1
+            } else {
+                high = mid
+            }
+        }
+        if (low == frames.size) return -1
+        val diffUs: Long = (frames[low].timestampNs - firstNs) / 1_000L - ptsUs
+        return if (diffUs in -1L..1L) low else -1
+    }
+}
+
+internal class CapturedFrame(
+    val timestampNs: Long,
+    val rotationDegrees: Int,
+    val transformMatrix: FloatArray
+)
@@ -0,0 +1,194 @@
+package dev.jimmytai.camera_view.replay
+
+import android.graphics.SurfaceTexture
+import dev.jimmytai.camera_view.constant.PlaybackMode
+import dev.jimmytai.camera_view.interfaces.FrameSource
+import dev.jimmytai.camera_view.model.FrameStageTimings
+import dev.jimmytai.camera_view.model.ReplayFrameResult
+import dev.jimmytai.camera_view.model.ReplayReport
+import dev.jimmytai.camera_view.source.VideoFrameSource
+import dev.jimmytai.camera_view.utils.Logger
+import java.io.File
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.atomic.AtomicReferenceArray
+
+/**
+ * Plays back a [StreamCapture] as if it came from the camera: every frame is given the rotation and
+ * transform matrix it was captured with, and the time each stage of the pipeline took is recorded
+ * per captured frame.
+ *
+ * With [PlaybackMode.REAL_TIME] frames arrive at their original timing, so frames the pipeline is
+ * too slow for are dropped like they would be live. [PlaybackMode.OFFLINE] processes every frame
+ * as fast as possible, which makes the stage timings comparable between runs.
+ *
+ * @param captureDir    Directory a [StreamCapture] wrote to.
+ * @param mode          Pacing of the frames.
+ * @param listener      Notified on the decoder thread when the replay ends or fails.
+ * @throws java.io.IOException if the frame metadata of the capture can not be read.
+ */
+class ReplayFrameSource(
+    captureDir: File,
+    private val mode: PlaybackMode = PlaybackMode.REAL_TIME,
+    private val listener: ReplayListener? = null
+) : FrameSource {
+    companion object {
+        private val TAG: String = ReplayFrameSource::class.java.simpleName
+
+        // 渲染超過此時間仍未處理的frame已被SurfaceTexture取代，不再保留對應
+        private const val MAX_PENDING_NS: Long = 1_000_000_000L
+    }
+
+    interface ReplayListener {
+        /**
+         * Every frame of the capture has been rendered and the last one processed.
+         */
+        fun onEnd(report: ReplayReport)
+
+        fun onError(e: Exception)
+    }
+
+    override val isRealTime: Boolean
+        get() = mode == PlaybackMode.REAL_TIME
+
+    private val mMetadata: CaptureMetadata =
+        File(captureDir, CaptureMetadata.METADATA_FILE).bufferedReader().use {
+            CaptureMetadata.read(it)
+        }
+
+    private val mVideoSource = VideoFrameSource(
+        path = File(captureDir, CaptureMetadata.STREAM_FILE).path,
+        mode = mode,
+        loop = false,
+        listener = object : VideoFrameSource.PlaybackListener {
+            override fun onEnd(frameCount: Long) {
+                listener?.onEnd(report)
+            }
+
+            override fun onError(e: Exception) {
+                listener?.onError(e)
+            }
+        }
+    )
+
+    /**
+     * SurfaceTexture的timestamp對應的錄製frame，GLThread處理完後移除
+     */
+    private val mFrameIndices: ConcurrentHashMap<Long, Int> = ConcurrentHashMap()
+
+    /**
+     * 每個錄製frame的結果，未處理的frame為null
+     */
+    private val mResults: AtomicReferenceArray<ReplayFrameResult?> =
+        AtomicReferenceArray(mMetadata.frames.size)
+
+    @Volatile
+    private var mListener: FrameSource.Listener? = null
+
+    /**
+     * 影片第一個frame的presentation time，muxer不一定從0開始
+     */
+    private var mFirstPtsUs: Long = Long.MIN_VALUE
+
+    /**
+     * 目前回報給GLThread的旋轉角度，錄製中途旋轉時跟著改變
+     */
+    @Volatile
+    private var mRotationDegrees: Int = mMetadata.frames.firstOrNull()?.rotationDegrees ?: 0
+
+    /**
+     * Results of the frames processed so far, frames not processed yet count as dropped.
+     */
+    val report: ReplayReport
+        get() {
+            val firstNs: Long = mMetadata.frames.firstOrNull()?.timestampNs ?: 0L
+            return ReplayReport(
+                List(mMetadata.frames.size) { index ->
+                    mResults.get(index) ?: ReplayFrameResult(
+                        index = index,
+                        captureOffsetUs = (mMetadata.frames[index].timestampNs - firstNs) / 1_000L,
+                        dropped = true
+                    )
+                }
+            )
+        }
+
+    init {
+        mVideoSource.onFrameRendered = { ptsUs, timestampNs -> onFrameRendered(ptsUs, timestampNs) }
+    }
+
+    override fun setSurfaceTexture(surfaceTexture: SurfaceTexture) {
+        mVideoSource.setSurfaceTexture(surfaceTexture)
+    }
+
+    override fun start(listener: FrameSource.Listener) {
+        mVideoSource.stop()
+        mFrameIndices.clear()
+        for (i in 0 until mResults.length()) {
+            mResults.set(i, null)
+        }
+        mFirstPtsUs = Long.MIN_VALUE
+        mRotationDegrees = mMetadata.frames.firstOrNull()?.rotationDegrees ?: 0
+        mListener = listener
+        // 影片沒有旋轉資訊，以錄製時的角度取代
+        mVideoSource.start { size, _ -> listener.onFrameSizeChanged(size, mRotationDegrees) }
+    }
+
+    override fun stop() {
+        mVideoSource.stop()
+        mListener = null
+    }
+
+    override fun overrideTransformMatrix(timestampNs: Long, transformMatrix: FloatArray) {
+        val index: Int = mFrameIndices[timestampNs] ?: return
+        mMetadata.frames[index].transformMatrix.copyInto(transformMatrix)
+    }
+
+    override fun onFrameProcessed(timestampNs: Long, timings: FrameStageTimings) {
+        mFrameIndices.remove(timestampNs)?.let { index ->
+            val firstNs: Long = mMetadata.frames[0].timestampNs
+            mResults.set(
+                index,
+                ReplayFrameResult(
+                    index = index,
+                    captureOffsetUs = (mMetadata.frames[index].timestampNs - firstNs) / 1_000L,
+                    dropped = false,
+                    updateTexImageNs = timings.updateTexImageNs,
+                    preProcessNs = timings.preProcessNs,
+                    processNs = timings.processNs,
+                    readbackNs = timings.readbackNs,
+                    renderNs = timings.renderNs
+                )
+            )
+        }
+        mVideoSource.onFrameProcessed(timestampNs, timings)
+    }
+
+    override fun release() {
+        mVideoSource.release()
+        mListener = null
+    }
+
+    /**
+     * 在解碼執行緒中，frame渲染至SurfaceTexture之前呼叫
+     */
+    private fun onFrameRendered(ptsUs: Long, timestampNs: Long) {
+        if (mFirstPtsUs == Long.MIN_VALUE) mFirstPtsUs = ptsUs
+        val index: Int = mMetadata.indexOf(ptsUs - mFirstPtsUs)
+        if (index < 0) {
+            Logger.w(TAG, "onFrameRendered -> no captured frame at ${ptsUs - mFirstPtsUs}us")
+            return
+        }
+        // 移除早已被取代的frame，Collection.removeIf需要API 24
+        val iterator: MutableIterator<Long> = mFrameIndices.keys.iterator()
+        while (iterator.hasNext()) {
+            if (iterator.next() < timestampNs - MAX_PENDING_NS) iterator.remove()
+        }
+        mFrameIndices[timestampNs] = index
+
+        val rotationDegrees: Int = mMetadata.frames[index].rotationDegrees
+        if (rotationDegrees != mRotationDegrees) {
+            mRotationDegrees = rotationDegrees
+            mListener?.onFrameSizeChanged(mMetadata.bufferSize, rotationDegrees)
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package dev.jimmytai.camera_view.replay
+
+import android.media.MediaCodec
+import android.media.MediaCodecInfo
+import android.media.MediaFormat
+import android.media.MediaMuxer
+import android.opengl.EGL14
+import android.opengl.EGLSurface
+import android.os.Build
+import android.os.Handler
+import android.os.HandlerThread
+import android.util.Size
+import androidx.concurrent.futures.CallbackToFutureAdapter
+import com.google.common.util.concurrent.ListenableFuture
+import dev.jimmytai.camera_view.constant.TextureFormat
+import dev.jimmytai.camera_view.gles.EglCore
+import dev.jimmytai.camera_view.gles.WindowSurface
+import dev.jimmytai.camera_view.glrenderer.GLRenderer
+import dev.jimmytai.camera_view.glthread.FrameReadback
+import dev.jimmytai.camera_view.utils.Logger
+import java.io.BufferedWriter
+import java.io.File
+import java.io.FileWriter
+
+/**
+ * Records the camera stream as it enters the GL thread, before any processing, together with the
+ * timestamp, rotation and transform matrix of every frame. [ReplayFrameSource] plays it back
+ * through the pipeline, so the same input can be measured again after a change.
+ *
+ * The frames are encoded to AVC at a high bit rate, with constant quality where the encoder
+ * supports it; MediaCodec has no lossless mode available on every device.
+ *
+ * Create it through [dev.jimmytai.camera_view.CameraController.startStreamCapture].
+ */
+class StreamCapture internal constructor(
+    private val outputDir: File,
+    private val bitRate: Int
+) : FrameReadback {
+    companion object {
+        private val TAG: String = StreamCapture::class.java.simpleName
+
+        private const val MIME_TYPE: String = MediaFormat.MIMETYPE_VIDEO_AVC
+
+        // 只用於計算預設bit rate與encoder的參數，實際frame的時間以timestamp為準
+        private const val FRAME_RATE: Int = 30
+
+        // 預設每個pixel每個frame的bit數，約為一般錄影的5倍
+        private const val DEFAULT_BITS_PER_PIXEL: Float = 0.8f
+
+        private const val I_FRAME_INTERVAL_SECONDS: Int = 1
+    }
+
+    private var mCompleter: CallbackToFutureAdapter.Completer<File>? = null
+
+    /**
+     * Completes with the capture directory once the stream and the frame metadata are written.
+     */
+    val future: ListenableFuture<File> = CallbackToFutureAdapter.getFuture { completer ->
+        mCompleter = completer
+        "streamCapture"
+    }
+
+    /**
+     * Frames handed to the encoder so far.
+     */
+    @Volatile
+    var capturedFrameCount: Long = 0L
+        private set
+
+    private var mEglCore: EglCore? = null
+
+    /**
+     * encoder的callback與metadata寫檔都在此執行緒
+     */
+    private var mHandlerThread: HandlerThread? = null
+
+    private var mHandler: Handler? = null
+
+    private var mEncoder: MediaCodec? = null
+
+    private var mWindowSurface: WindowSurface? = null
+
+    /**
+     * 第一個frame的buffer尺寸，中途改變(例如切換鏡頭)的frame不錄製
+     */
+    private var mBufferSize: Size? = null
+
+    private var mSizeChangeLogged: Boolean = false
+
+    /**
+     * encoder啟動失敗(GLThread)或執行中出錯(mHandler的執行緒)，之後不再錄製
+     */
+    @Volatile
+    private var mError: Exception? = null
+
+    // 以下在encoder啟動後只在mHandler的執行緒中存取
+    private var mMuxer: MediaMuxer? = null
+
+    private var mTrackIndex: Int = -1
+
+    private var mWriter: BufferedWriter? = null
+
+    override fun onAttach(eglCore: EglCore) {
+        mEglCore = eglCore
+        mHandlerThread = HandlerThread("STREAM_CAPTURE").also {
+            it.start()
+            mHandler = Handler(it.looper)
+        }
+    }
+
+    override fun onInputFrame(
+        renderer: GLRenderer,
+        textureId: Int,
+        bufferSize: Size,
+        rotationDegrees: Int,
+        transformMatrix: FloatArray,
+        timestampNs: Long
+    ) {
+        val eglCore: EglCore = mEglCore ?: return
+        if (mError != null) {
+            // encoder已在callback中出錯並釋放，不再繪製到它的Surface
+            releaseWindowSurface()
+            return
+        }
+        val windowSurface: WindowSurface = mWindowSurface ?: try {
+            startEncoder(eglCore, bufferSize)
+        } catch (e: Exception) {
+            Logger.e(TAG, "onInputFrame -> failed to start encoder", e)
+            mError = e
+            mCompleter?.setException(e)
+            return
+        }
+        if (bufferSize != mBufferSize) {
+            if (!mSizeChangeLogged) {
+                Logger.w(TAG, "onInputFrame -> buffer size changed to $bufferSize, frames are skipped")
+                mSizeChangeLogged = true
+            }
+            return
+        }
+
+        // GLThread記錄目前current的窗口，繪製完需切換回原本的surface
+        val drawSurface: EGLSurface = EGL14.eglGetCurrentSurface(EGL14.EGL_DRAW)
+        val readSurface: EGLSurface = EGL14.eglGetCurrentSurface(EGL14.EGL_READ)
+        windowSurface.makeCurrent()
+        // OES texture直接畫上encoder，encoder的每一列與SurfaceTexture buffer相同，不套用transform matrix
+        renderer.transferTextureToScreen(
+            textureId = textureId,
+            srcTextureFormat = TextureFormat.TextureOES,
+            surfaceSize = bufferSize,
+            transition = renderer.transitionCache
+                .rotateFlip(angle = 0, flipX = false, flipY = true)
+        )
+        windowSurface.setPresentationTime(timestampNs)
+        windowSurface.swapBuffers()
+        eglCore.makeCurrent(drawSurface, readSurface)
+        capturedFrameCount++
+
+        val line: String = CaptureMetadata.formatFrame(
+            CapturedFrame(timestampNs, rotationDegrees, transformMatrix.copyOf())
+        )
+        mHandler?.post { mWriter?.write(line) }
+    }
+
+    override fun onFrame(renderer: GLRenderer, textureId: Int, textureSize: Size, timestampNs: Long) {
+    }
+
+    override fun onDetach() {
+        val encoder: MediaCodec? = mEncoder
+        releaseWindowSurface()
+        mEglCore = null
+        val error: Exception? = mError
+        if (encoder == null || error != null) {
+            // 沒有錄到任何frame、encoder啟動失敗，或encoder已出錯並在callback中結束
+            mCompleter?.setException(error ?: IllegalStateException("no frame was captured"))
+            mHandlerThread?.quitSafely()
+            return
+        }
+        // 剩下的輸出在encoder的callback中寫完後結束
+        try {
+            encoder.signalEndOfInputStream()
+        } catch (e: IllegalStateException) {
+            // encoder已出錯時不會再收到END_OF_STREAM，直接結束
+            Logger.e(TAG, "onDetach -> failed to end the stream", e)
+            encoder.release()
+            mHandler?.post { finish(e) }
+        }
+    }
+
+    override fun onDiscarded() {
+        mCompleter?.setException(IllegalStateException("GLThread is released before capture started"))
+    }
+
+    /**
+     * 釋放encoder的繪製窗口，encoder本身由callback或[onDetach]結束
+     */
+    private fun releaseWindowSurface() {
+        mWindowSurface?.release()
+        mWindowSurface = null
+        mEncoder = null
+    }
+
+    private fun startEncoder(eglCore: EglCore, bufferSize: Size): WindowSurface {
+        val handler: Handler = mHandler!!
+        var encoder: MediaCodec? = null
+        var windowSurface: WindowSurface? = null
+        try {
+            outputDir.mkdirs()
+            val writer = BufferedWriter(FileWriter(File(outputDir, CaptureMetadata.METADATA_FILE)))
+            mWriter = writer
+            CaptureMetadata.writeHeader(writer, bufferSize)
+            mMuxer = MediaMuxer(
+                File(outputDir, CaptureMetadata.STREAM_FILE).path,
+                MediaMuxer.OutputFormat.MUXER_OUTPUT_MPEG_4
+            )
+
+            encoder = MediaCodec.createEncoderByType(MIME_TYPE)
+            val format: MediaFormat = createFormat(encoder, bufferSize)
+            Logger.d(TAG, "startEncoder -> $format")
+            encoder.setCallback(EncoderCallback(), handler)
+            encoder.configure(format, null, null, MediaCodec.CONFIGURE_FLAG_ENCODE)
+            windowSurface = WindowSurface(eglCore, encoder.createInputSurface(), true)
+            encoder.start()
+        } catch (e: Exception) {
+            // encoder還沒有開始輸出，在GLThread中直接關閉已開啟的檔案
+            windowSurface?.release()
+            encoder?.release()
+            closeOutputs()
+            throw e
+        }
+        mEncoder = encoder
+        mWindowSurface = windowSurface
+        mBufferSize = bufferSize
+        return windowSurface
+    }
+
+    private fun createFormat(encoder: MediaCodec, bufferSize: Size): MediaFormat {
+        val format: MediaFormat =
+            MediaFormat.createVideoFormat(MIME_TYPE, bufferSize.width, bufferSize.height)
+        format.setInteger(
+            MediaFormat.KEY_COLOR_FORMAT,
+            MediaCodecInfo.CodecCapabilities.COLOR_FormatSurface
+        )
+        format.setInteger(MediaFormat.KEY_FRAME_RATE, FRAME_RATE)
+        format.setInteger(MediaFormat.KEY_I_FRAME_INTERVAL, I_FRAME_INTERVAL_SECONDS)
+        format.setInteger(
+            MediaFormat.KEY_BIT_RATE,
+            if (bitRate > 0) {
+                bitRate
+            } else {
+                (bufferSize.width * bufferSize.height * FRAME_RATE * DEFAULT_BITS_PER_PIXEL).toInt()
+            }
+        )
+
+        // 支援時改用最高品質的constant quality，不受bit rate限制
+        val capabilities: MediaCodecInfo.CodecCapabilities =
+            encoder.codecInfo.getCapabilitiesForType(MIME_TYPE)
+        if (bitRate <= 0 && Build.VERSION.SDK_INT >= Build.VERSION_CODES.P &&
+            capabilities.encoderCapabilities.isBitrateModeSupported(
+                MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CQ
+            )
+        ) {
+            format.setInteger(
+                MediaFormat.KEY_BITRATE_MODE,
+                MediaCodecInfo.EncoderCapabilities.BITRATE_MODE_CQ
+            )
+            format.setInteger(
+                MediaFormat.KEY_QUALITY,
+                capabilities.encoderCapabilities.qualityRange.upper
+            )
+        }
+        return format
+    }
+
+    private fun closeOutputs() {
+        try {
+            mMuxer?.stop()
+        } catch (e: IllegalStateException) {
+            // 沒有寫入任何sample時無法stop
+        }
+        mMuxer?.release()
+        mMuxer = null
+        mWriter?.close()
+        mWriter = null
+    }
+
+    private fun finish(error: Exception?) {
+        closeOutputs()
+        mHandlerThread?.quitSafely()
+        if (error != null) {
+            mCompleter?.setException(error)
+        } else {
+            Logger.d(TAG, "finish -> captured $capturedFrameCount frames to $outputDir")
+            mCompleter?.set(outputDir)
+        }
+    }
+
+    private inner class EncoderCallback : MediaCodec.Callback() {
+        override fun onInputBufferAvailable(codec: MediaCodec, index: Int) {
+            // 輸入來自Surface
+        }
+
+        override fun onOutputBufferAvailable(
+            codec: MediaCodec,
+            index: Int,
+            info: MediaCodec.BufferInfo
+        ) {
+            val muxer: MediaMuxer = mMuxer ?: return
+            if (info.flags and MediaCodec.BUFFER_FLAG_CODEC_CONFIG == 0 &&
+                info.size > 0 && mTrackIndex >= 0
+            ) {
+                muxer.writeSampleData(mTrackIndex, codec.getOutputBuffer(index)!!, info)
+            }
+            codec.releaseOutputBuffer(index, false)
+            if (info.flags and MediaCodec.BUFFER_FLAG_END_OF_STREAM != 0) {
+                codec.stop()
+                codec.release()
+                finish(null)
+            }
+        }
+
+        override fun onOutputFormatChanged(codec: MediaCodec, format: MediaFormat) {
+            val muxer: MediaMuxer = mMuxer ?: return
+            mTrackIndex = muxer.addTrack(format)
+            muxer.start()
+        }
+
+        override fun onError(codec: MediaCodec, e: MediaCodec.CodecException) {
+            Logger.e(TAG, "onError -> encoder failed", e)
+            // GLThread看到錯誤後停止繪製並釋放繪製窗口，onDetach不再呼叫這個encoder
+            mError = e
+            codec.release()
+            finish(e)
+        }
+    }
+}
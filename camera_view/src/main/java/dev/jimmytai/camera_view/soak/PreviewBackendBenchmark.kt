@@ -0,0 +1,244 @@
+package dev.jimmytai.camera_view.soak
+
+import android.content.Context
+import android.os.Handler
+import android.os.Looper
+import android.os.SystemClock
+import android.util.Size
+import android.view.Surface
+import android.view.SurfaceView
+import androidx.concurrent.futures.CallbackToFutureAdapter
+import com.google.common.util.concurrent.ListenableFuture
+import dev.jimmytai.camera_view.CameraController
+import dev.jimmytai.camera_view.CameraView
+import dev.jimmytai.camera_view.constant.PreviewBackend
+import dev.jimmytai.camera_view.interfaces.CameraTextureProcessor
+import dev.jimmytai.camera_view.model.GLThreadConfig
+import dev.jimmytai.camera_view.model.PreviewBackendReport
+import dev.jimmytai.camera_view.model.SyntheticSourceConfig
+import dev.jimmytai.camera_view.source.SyntheticFrameSource
+import dev.jimmytai.camera_view.utils.LatencyHistogram
+import dev.jimmytai.camera_view.utils.Logger
+import java.util.concurrent.atomic.AtomicLong
+
+/**
+ * Runs the same synthetic frames through each [PreviewBackend] of a [CameraView] one after the
+ * other, and optionally through a surface attached with [CameraController.attachSurface]. Reports
+ * the latency to the swap and the dropped frames of each, to pick the fastest backend for a device.
+ *
+ * Compose `AndroidExternalSurface` is backed by a SurfaceView and `AndroidEmbeddedExternalSurface`
+ * by a TextureView. Pass the SurfaceView of an external surface as [externalSurfaceView] to
+ * measure that path as well.
+ *
+ * Must be used on the main thread with a CameraView that is attached to a window, the controller
+ * and backend of the view are replaced.
+ *
+ * @param source                Frames driving every run, keep the rate at or below the display
+ *                              refresh rate to measure latency rather than throughput.
+ * @param durationPerBackendMs  Time measured per backend, after a warm-up.
+ * @param externalSurfaceView   Measured last, through [CameraController.attachSurface], when
+ *                              given. Its surface must stay valid during the run.
+ */
+class PreviewBackendBenchmark(
+    private val context: Context,
+    private val cameraView: CameraView,
+    private val cameraTextureProcessor: CameraTextureProcessor,
+    private val source: SyntheticSourceConfig,
+    private val durationPerBackendMs: Long,
+    private val backends: List<PreviewBackend> = PreviewBackend.values().toList(),
+    private val glThreadConfig: GLThreadConfig = GLThreadConfig.Builder().build(),
+    private val externalSurfaceView: SurfaceView? = null
+) {
+    companion object {
+        private val TAG: String = PreviewBackendBenchmark::class.java.simpleName
+
+        // 每個backend開始計算前的暖機時間，排除EGL初始化與第一次合成
+        private const val WARM_UP_MS: Long = 2_000L
+    }
+
+    init {
+        require(durationPerBackendMs > 0L) { "durationPerBackendMs must be positive" }
+        require(backends.isNotEmpty()) { "backends must not be empty" }
+    }
+
+    private val mMainHandler: Handler = Handler(Looper.getMainLooper())
+
+    private var mCompleter: CallbackToFutureAdapter.Completer<List<PreviewBackendReport>>? = null
+
+    private val mReports: MutableList<PreviewBackendReport> = mutableListOf()
+
+    /**
+     * CameraView的backend依序執行後，最後一次為外部Surface
+     */
+    private val mRunCount: Int = backends.size + if (externalSurfaceView != null) 1 else 0
+
+    private var mBackendIndex: Int = 0
+
+    /**
+     * 外部Surface執行時加入controller的Surface
+     */
+    private var mExternalSurface: Surface? = null
+
+    private var mController: CameraController? = null
+
+    private var mSource: SyntheticFrameSource? = null
+
+    private val mLatency: LatencyHistogram = LatencyHistogram()
+
+    private val mSwappedCount: AtomicLong = AtomicLong(0L)
+
+    private val mPresentedCount: AtomicLong = AtomicLong(0L)
+
+    @Volatile
+    private var mMeasuring: Boolean = false
+
+    /**
+     * 開始計算時來源已產生的frame數量
+     */
+    private var mBaselineProducedCount: Long = 0L
+
+    private var mMeasureStartMs: Long = 0L
+
+    private val mStartMeasuringRunnable: Runnable = Runnable {
+        mLatency.reset()
+        mSwappedCount.set(0L)
+        mPresentedCount.set(0L)
+        mBaselineProducedCount = mSource?.producedFrameCount ?: 0L
+        mMeasureStartMs = SystemClock.elapsedRealtime()
+        mMeasuring = true
+    }
+
+    private val mFinishBackendRunnable: Runnable = Runnable { finishBackend() }
+
+    /**
+     * Start the benchmark.
+     *
+     * @return future of one report per backend, in the order of [backends].
+     */
+    fun start(): ListenableFuture<List<PreviewBackendReport>> =
+        CallbackToFutureAdapter.getFuture { completer ->
+            check(mCompleter == null && mReports.isEmpty()) { "benchmark already started" }
+            mCompleter = completer
+            Logger.d(TAG, "start -> $backends, ${durationPerBackendMs}ms each")
+            startBackend()
+            "previewBackendBenchmark"
+        }
+
+    /**
+     * Stop early and release the controller, the future is cancelled.
+     */
+    fun cancel() {
+        val completer: CallbackToFutureAdapter.Completer<List<PreviewBackendReport>> =
+            mCompleter ?: return
+        mCompleter = null
+        mMainHandler.removeCallbacks(mStartMeasuringRunnable)
+        mMainHandler.removeCallbacks(mFinishBackendRunnable)
+        mMeasuring = false
+        releaseController()
+        completer.setCancelled()
+    }
+
+    private val isExternalRun: Boolean
+        get() = mBackendIndex >= backends.size
+
+    private fun startBackend() {
+        val frameSource = SyntheticFrameSource(source)
+        val controller =
+            CameraController(context, frameSource, cameraTextureProcessor, glThreadConfig)
+        controller.setFrameSwappedListener { timestampNs -> onFrameSwapped(timestampNs) }
+        controller.setFramePresentedListener { onFramePresented() }
+        if (isExternalRun) {
+            Logger.d(TAG, "startBackend -> external surface")
+            val surfaceView: SurfaceView = externalSurfaceView!!
+            val surface: Surface = surfaceView.holder.surface
+            if (!surface.isValid) {
+                controller.release()
+                fail(IllegalStateException("external surface is not available"))
+                return
+            }
+            controller.attachSurface(surface, Size(surfaceView.width, surfaceView.height))
+            mExternalSurface = surface
+        } else {
+            val backend: PreviewBackend = backends[mBackendIndex]
+            Logger.d(TAG, "startBackend -> $backend")
+            cameraView.previewBackend = backend
+            cameraView.setController(controller)
+        }
+        controller.startPreview()
+        mSource = frameSource
+        mController = controller
+
+        mMainHandler.postDelayed(mStartMeasuringRunnable, WARM_UP_MS)
+        mMainHandler.postDelayed(mFinishBackendRunnable, WARM_UP_MS + durationPerBackendMs)
+    }
+
+    /**
+     * 在GLThread中呼叫，所有backend都在buffer交給consumer時計算延遲
+     */
+    private fun onFrameSwapped(timestampNs: Long) {
+        if (!mMeasuring) return
+        // SyntheticFrameSource的timestamp為放入SurfaceTexture的System.nanoTime
+        mLatency.record(System.nanoTime() - timestampNs)
+        mSwappedCount.incrementAndGet()
+    }
+
+    /**
+     * 在GLThread或UI執行緒中呼叫，只計算數量，TextureView被取代而未取用的frame算是丟棄
+     */
+    private fun onFramePresented() {
+        if (!mMeasuring) return
+        mPresentedCount.incrementAndGet()
+    }
+
+    private fun finishBackend() {
+        mMeasuring = false
+        val report = PreviewBackendReport(
+            // 外部Surface(AndroidExternalSurface)同樣由SurfaceView顯示
+            backend = if (isExternalRun) PreviewBackend.SURFACE_VIEW else backends[mBackendIndex],
+            externalSurface = isExternalRun,
+            durationMs = SystemClock.elapsedRealtime() - mMeasureStartMs,
+            producedFrameCount = (mSource?.producedFrameCount ?: 0L) - mBaselineProducedCount,
+            swappedFrameCount = mSwappedCount.get(),
+            presentedFrameCount = mPresentedCount.get(),
+            latencyP50Ns = mLatency.percentile(50.0),
+            latencyP90Ns = mLatency.percentile(90.0),
+            latencyP99Ns = mLatency.percentile(99.0),
+            latencyMaxNs = mLatency.max
+        )
+        Logger.d(TAG, "finishBackend -> $report")
+        mReports.add(report)
+        releaseController()
+
+        mBackendIndex++
+        if (mBackendIndex < mRunCount) {
+            startBackend()
+        } else {
+            val completer: CallbackToFutureAdapter.Completer<List<PreviewBackendReport>>? =
+                mCompleter
+            mCompleter = null
+            completer?.set(mReports.toList())
+        }
+    }
+
+    private fun fail(error: Exception) {
+        Logger.e(TAG, "fail -> run ${mBackendIndex + 1} of $mRunCount", error)
+        mMainHandler.removeCallbacks(mStartMeasuringRunnable)
+        mMainHandler.removeCallbacks(mFinishBackendRunnable)
+        mMeasuring = false
+        releaseController()
+        val completer: CallbackToFutureAdapter.Completer<List<PreviewBackendReport>>? = mCompleter
+        mCompleter = null
+        completer?.setException(error)
+    }
+
+    private fun releaseController() {
+        val controller: CameraController = mController ?: return
+        controller.setFrameSwappedListener(null)
+        controller.setFramePresentedListener(null)
+        mExternalSurface?.let { controller.detachSurface(it) }
+        mExternalSurface = null
+        controller.release()
+        mController = null
+        mSource = null
+    }
+}
@@ -0,0 +1,41 @@
+package dev.jimmytai.camera_view.soak
+
+import android.os.Debug
+import dev.jimmytai.camera_view.model.ResourceSample
+import java.io.File
+
+/**
+ * 取樣process的記憶體與執行緒數量，Debug.getMemoryInfo需要數十ms，不要在主執行緒或GLThread呼叫
+ */
+internal object ResourceSampler {
+    // Debug.MemoryInfo中EGL/GL mtrack的合計(KB)
+    private const val GRAPHICS_STAT: String = "summary.graphics"
+
+    fun sample(elapsedMs: Long, producedFrameCount: Long, processedFrameCount: Long): ResourceSample {
+        // 先GC，Java heap只計算仍被參考的物件，才看得出洩漏
+        val runtime: Runtime = Runtime.getRuntime()
+        runtime.gc()
+        val javaHeapBytes: Long = runtime.totalMemory() - runtime.freeMemory()
+
+        val memoryInfo = Debug.MemoryInfo()
+        Debug.getMemoryInfo(memoryInfo)
+        val graphicsBytes: Long =
+            (memoryInfo.getMemoryStat(GRAPHICS_STAT)?.toLongOrNull() ?: 0L) * 1024L
+
+        return ResourceSample(
+            elapsedMs = elapsedMs,
+            javaHeapBytes = javaHeapBytes,
+            nativeHeapBytes = Debug.getNativeHeapAllocatedSize(),
+            graphicsBytes = graphicsBytes,
+            threadCount = threadCount(),
+            producedFrameCount = producedFrameCount,
+            processedFrameCount = processedFrameCount
+        )
+    }
+
+    /**
+     * /proc/self/task包含native執行緒，Thread.activeCount只計算Java執行緒
+     */
+    private fun threadCount(): Int =
+        File("/proc/self/task").list()?.size ?: Thread.activeCount()
+}
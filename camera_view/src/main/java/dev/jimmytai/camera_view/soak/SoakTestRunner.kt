@@ -0,0 +1,232 @@
+package dev.jimmytai.camera_view.soak
+
+import android.content.Context
+import android.os.Handler
+import android.os.HandlerThread
+import android.os.Looper
+import android.os.SystemClock
+import androidx.concurrent.futures.CallbackToFutureAdapter
+import com.google.common.util.concurrent.ListenableFuture
+import dev.jimmytai.camera_view.CameraController
+import dev.jimmytai.camera_view.CameraView
+import dev.jimmytai.camera_view.export.AnalysisOutput
+import dev.jimmytai.camera_view.interfaces.CameraTextureProcessor
+import dev.jimmytai.camera_view.model.GLThreadConfig
+import dev.jimmytai.camera_view.model.ResourceSample
+import dev.jimmytai.camera_view.model.SoakReport
+import dev.jimmytai.camera_view.model.SoakTestConfig
+import dev.jimmytai.camera_view.source.SyntheticFrameSource
+import dev.jimmytai.camera_view.utils.LatencyHistogram
+import dev.jimmytai.camera_view.utils.Logger
+
+/**
+ * Drives a [CameraView] with synthetic frames for a long time and reports frame drops, latency
+ * percentiles and the growth of memory and threads. Optionally churns analysis outputs and
+ * controllers, so leaks in [CameraController.release] or output add/remove show up as growth
+ * in [SoakReport].
+ *
+ * Must be used on the main thread with a CameraView that is attached to a window, the controller
+ * of the view is replaced.
+ *
+ * @param onSample  Called on a background thread with every periodic sample.
+ */
+class SoakTestRunner(
+    private val context: Context,
+    private val cameraView: CameraView,
+    private val cameraTextureProcessor: CameraTextureProcessor,
+    private val config: SoakTestConfig,
+    private val glThreadConfig: GLThreadConfig = GLThreadConfig.Builder().build(),
+    private val onSample: ((ResourceSample) -> Unit)? = null
+) {
+    companion object {
+        private val TAG: String = SoakTestRunner::class.java.simpleName
+
+        // 最後一個controller釋放後，等待GLThread結束再取樣
+        private const val RELEASE_SETTLE_MS: Long = 1_000L
+    }
+
+    private val mMainHandler: Handler = Handler(Looper.getMainLooper())
+
+    /**
+     * 取樣在背景執行緒進行，Debug.getMemoryInfo較慢
+     */
+    private var mSamplerThread: HandlerThread? = null
+
+    @Volatile
+    private var mSamplerHandler: Handler? = null
+
+    private var mCompleter: CallbackToFutureAdapter.Completer<SoakReport>? = null
+
+    private var mStartMs: Long = 0L
+
+    /**
+     * 所有來源共用，跨controller累積
+     */
+    private val mLatency: LatencyHistogram = LatencyHistogram()
+
+    private var mController: CameraController? = null
+
+    @Volatile
+    private var mSource: SyntheticFrameSource? = null
+
+    private var mAnalysisOutput: AnalysisOutput? = null
+
+    /**
+     * 已釋放的來源累積的frame數量
+     */
+    @Volatile
+    private var mReleasedProducedCount: Long = 0L
+
+    @Volatile
+    private var mReleasedProcessedCount: Long = 0L
+
+    @Volatile
+    private var mReleasedSkippedCount: Long = 0L
+
+    private var mControllerRecreateCount: Int = 0
+
+    private var mOutputChurnCount: Int = 0
+
+    private val mSamples: MutableList<ResourceSample> = mutableListOf()
+
+    private val mSampleRunnable: Runnable = object : Runnable {
+        override fun run() {
+            val sample: ResourceSample = takeSample()
+            synchronized(mSamples) { mSamples.add(sample) }
+            Logger.d(TAG, "sample -> $sample")
+            onSample?.invoke(sample)
+            mSamplerHandler?.postDelayed(this, config.sampleIntervalMs)
+        }
+    }
+
+    private val mChurnRunnable: Runnable = object : Runnable {
+        override fun run() {
+            churnOutput()
+            mMainHandler.postDelayed(this, config.outputChurnIntervalMs)
+        }
+    }
+
+    private val mRecreateRunnable: Runnable = object : Runnable {
+        override fun run() {
+            releaseController()
+            createController()
+            mControllerRecreateCount++
+            mMainHandler.postDelayed(this, config.controllerRecreateIntervalMs)
+        }
+    }
+
+    private val mFinishRunnable: Runnable = Runnable { stop() }
+
+    /**
+     * Start the test.
+     *
+     * @return future of the report, completed after [SoakTestConfig.durationMs] or [stop].
+     */
+    fun start(): ListenableFuture<SoakReport> = CallbackToFutureAdapter.getFuture { completer ->
+        check(mStartMs == 0L) { "soak test already started" }
+        mCompleter = completer
+        mStartMs = SystemClock.elapsedRealtime()
+        Logger.d(TAG, "start -> ${config.durationMs}ms, ${config.source.size} @ ${config.source.fps}fps")
+
+        createController()
+
+        val samplerThread = HandlerThread("SOAK_SAMPLER").also { mSamplerThread = it }
+        samplerThread.start()
+        // 第一個取樣在pipeline暖機後進行，作為成長量的基準
+        mSamplerHandler = Handler(samplerThread.looper).also {
+            it.postDelayed(mSampleRunnable, config.sampleIntervalMs)
+        }
+        if (config.outputChurnIntervalMs > 0L) {
+            mMainHandler.postDelayed(mChurnRunnable, config.outputChurnIntervalMs)
+        }
+        if (config.controllerRecreateIntervalMs > 0L) {
+            mMainHandler.postDelayed(mRecreateRunnable, config.controllerRecreateIntervalMs)
+        }
+        mMainHandler.postDelayed(mFinishRunnable, config.durationMs)
+        "SoakTestRunner"
+    }
+
+    /**
+     * Finish the test early, the report covers the time run so far.
+     */
+    fun stop() {
+        val completer: CallbackToFutureAdapter.Completer<SoakReport> = mCompleter ?: return
+        mCompleter = null
+        mMainHandler.removeCallbacks(mChurnRunnable)
+        mMainHandler.removeCallbacks(mRecreateRunnable)
+        mMainHandler.removeCallbacks(mFinishRunnable)
+        val samplerHandler: Handler? = mSamplerHandler
+        mSamplerHandler = null
+        samplerHandler?.removeCallbacks(mSampleRunnable)
+
+        val durationMs: Long = SystemClock.elapsedRealtime() - mStartMs
+        releaseController()
+
+        samplerHandler?.postDelayed({
+            val report = SoakReport(
+                durationMs = durationMs,
+                producedFrameCount = mReleasedProducedCount,
+                processedFrameCount = mReleasedProcessedCount,
+                skippedFrameCount = mReleasedSkippedCount,
+                latencyP50Ns = mLatency.percentile(50.0),
+                latencyP90Ns = mLatency.percentile(90.0),
+                latencyP99Ns = mLatency.percentile(99.0),
+                latencyMaxNs = mLatency.max,
+                controllerRecreateCount = mControllerRecreateCount,
+                outputChurnCount = mOutputChurnCount,
+                samples = synchronized(mSamples) { mSamples.toList() },
+                afterRelease = takeSample()
+            )
+            Logger.d(TAG, "stop -> $report")
+            completer.set(report)
+            mSamplerThread?.quitSafely()
+            mSamplerThread = null
+        }, RELEASE_SETTLE_MS)
+    }
+
+    private fun createController() {
+        val source = SyntheticFrameSource(config.source, mLatency)
+        val controller = CameraController(context, source, cameraTextureProcessor, glThreadConfig)
+        cameraView.setController(controller)
+        controller.startPreview()
+        mSource = source
+        mController = controller
+    }
+
+    private fun releaseController() {
+        val controller: CameraController = mController ?: return
+        mAnalysisOutput = null
+        // 釋放controller時一併移除輸出與停止來源
+        controller.release()
+        mController = null
+        mSource?.let {
+            mReleasedProducedCount += it.producedFrameCount
+            mReleasedProcessedCount += it.processedFrameCount
+            mReleasedSkippedCount += it.skippedFrameCount
+        }
+        mSource = null
+    }
+
+    private fun churnOutput() {
+        val controller: CameraController = mController ?: return
+        val output: AnalysisOutput? = mAnalysisOutput
+        if (output == null) {
+            mAnalysisOutput = controller.addAnalysisOutput(config.churnOutputSize) {
+                // 只需要消耗frame，image在回傳後自動關閉
+            }
+        } else {
+            controller.removeAnalysisOutput(output)
+            mAnalysisOutput = null
+            mOutputChurnCount++
+        }
+    }
+
+    private fun takeSample(): ResourceSample {
+        val source: SyntheticFrameSource? = mSource
+        return ResourceSampler.sample(
+            elapsedMs = SystemClock.elapsedRealtime() - mStartMs,
+            producedFrameCount = mReleasedProducedCount + (source?.producedFrameCount ?: 0L),
+            processedFrameCount = mReleasedProcessedCount + (source?.processedFrameCount ?: 0L)
+        )
+    }
+}
@@ -0,0 +1,86 @@
+package dev.jimmytai.camera_view.source
+
+import android.content.Context
+import android.graphics.SurfaceTexture
+import android.util.Size
+import androidx.camera.core.CameraInfo
+import androidx.camera.core.CameraState
+import dev.jimmytai.camera_view.CameraSource
+import dev.jimmytai.camera_view.GLSurfaceProvider
+import dev.jimmytai.camera_view.interfaces.FrameSource
+import dev.jimmytai.camera_view.utils.Logger
+
+/**
+ * Frames of the front camera through CameraX.
+ *
+ * @param preferredCameraSize   Resolution requested from CameraX, the closest higher one is used.
+ */
+class CameraFrameSource(
+    context: Context,
+    preferredCameraSize: Size
+) : FrameSource {
+    companion object {
+        private val TAG: String = CameraFrameSource::class.java.simpleName
+    }
+
+    /**
+     * 相機主要操作
+     */
+    private val mCameraSource: CameraSource = CameraSource(context, preferredCameraSize)
+
+    @Volatile
+    private var mListener: FrameSource.Listener? = null
+
+    /**
+     * CameraX的API，主要負責連接Camera與SurfaceTexture，讓相機畫面綁定texture
+     */
+    private val mSurfaceProvider: GLSurfaceProvider =
+        GLSurfaceProvider { resolution, rotationDegrees ->
+            mListener?.onFrameSizeChanged(resolution, rotationDegrees)
+        }
+
+    /**
+     * Information of the opened camera, null while not previewing.
+     */
+    val cameraInfo: CameraInfo?
+        get() = mCameraSource.cameraInfo
+
+    override fun setSurfaceTexture(surfaceTexture: SurfaceTexture) {
+        mSurfaceProvider.provideSurfaceTexture(surfaceTexture)
+    }
+
+    override fun start(listener: FrameSource.Listener) {
+        mListener = listener
+        mCameraSource.startPreview(mSurfaceProvider)
+    }
+
+    override fun stop() {
+        mCameraSource.stopPreview()
+    }
+
+    /**
+     * 檢查相機是否需要被重新開啟
+     */
+    override fun onResume() {
+        // 可以透過cameraInfo判斷目前是不是在Preview中
+        val cameraInfo: CameraInfo = mCameraSource.cameraInfo ?: return
+        val cameraState: CameraState? = cameraInfo.cameraState.value
+        when (cameraState?.type) {
+            // 如果相機不是開啟的狀態，重新打開相機
+            null, CameraState.Type.PENDING_OPEN, CameraState.Type.CLOSING, CameraState.Type.CLOSED -> {
+                Logger.d(TAG, "onResume -> resume camera due to reason \"$cameraState\"")
+                mCameraSource.startPreview(mSurfaceProvider)
+            }
+
+            else -> {
+                Logger.d(TAG, "onResume -> no need to re-open camera")
+            }
+        }
+    }
+
+    override fun release() {
+        mCameraSource.release()
+        mSurfaceProvider.release()
+        mListener = null
+    }
+}
@@ -0,0 +1,123 @@
+package dev.jimmytai.camera_view.source
+
+import android.content.Context
+import android.graphics.SurfaceTexture
+import android.util.Size
+import androidx.camera.core.CameraInfo
+import androidx.camera.core.CameraSelector
+import androidx.camera.core.CameraState
+import dev.jimmytai.camera_view.CameraSource
+import dev.jimmytai.camera_view.GLSurfaceProvider
+import dev.jimmytai.camera_view.constant.DualCameraLayout
+import dev.jimmytai.camera_view.interfaces.FrameSource
+import dev.jimmytai.camera_view.utils.Logger
+
+/**
+ * Frames of two cameras at once, e.g. front and back, through CameraX concurrent camera. Both
+ * streams are composited on the GL thread with [secondaryLayout] before the processor, so
+ * processing, display and recording all see one frame.
+ *
+ * Each primary frame is composited with the newest secondary frame, see
+ * [dev.jimmytai.camera_view.CameraController.dualCameraStats] for the drops and timestamp skew of
+ * both streams. Devices that can not open both cameras at once only show the primary camera.
+ *
+ * Concurrent camera limits both streams to 720p on most devices, a higher [preferredCameraSize]
+ * makes CameraX fall back to a supported one.
+ *
+ * @param preferredCameraSize   Resolution requested from CameraX for both cameras.
+ * @param secondaryLayout       How the secondary camera is placed in the frame.
+ * @param primaryLensFacing     [CameraSelector.LENS_FACING_BACK] or
+ *                              [CameraSelector.LENS_FACING_FRONT], the other camera of a supported
+ *                              pair is the secondary one.
+ */
+class DualCameraFrameSource(
+    context: Context,
+    preferredCameraSize: Size,
+    override val secondaryLayout: DualCameraLayout = DualCameraLayout.PICTURE_IN_PICTURE,
+    private val primaryLensFacing: Int = CameraSelector.LENS_FACING_BACK
+) : FrameSource {
+    companion object {
+        private val TAG: String = DualCameraFrameSource::class.java.simpleName
+    }
+
+    private val mCameraSource: CameraSource = CameraSource(context, preferredCameraSize)
+
+    @Volatile
+    private var mListener: FrameSource.Listener? = null
+
+    private val mSurfaceProvider: GLSurfaceProvider =
+        GLSurfaceProvider { resolution, rotationDegrees ->
+            mListener?.onFrameSizeChanged(resolution, rotationDegrees)
+        }
+
+    private val mSecondarySurfaceProvider: GLSurfaceProvider =
+        GLSurfaceProvider { resolution, rotationDegrees ->
+            mListener?.onSecondaryFrameSizeChanged(resolution, rotationDegrees)
+        }
+
+    /**
+     * Information of the primary camera, null while not previewing.
+     */
+    val cameraInfo: CameraInfo?
+        get() = mCameraSource.cameraInfo
+
+    /**
+     * Information of the secondary camera, null while not previewing or if the device can not
+     * open both cameras at once.
+     */
+    val secondaryCameraInfo: CameraInfo?
+        get() = mCameraSource.secondaryCameraInfo
+
+    override fun setSurfaceTexture(surfaceTexture: SurfaceTexture) {
+        mSurfaceProvider.provideSurfaceTexture(surfaceTexture)
+    }
+
+    override fun setSecondarySurfaceTexture(surfaceTexture: SurfaceTexture) {
+        mSecondarySurfaceProvider.provideSurfaceTexture(surfaceTexture)
+    }
+
+    override fun start(listener: FrameSource.Listener) {
+        mListener = listener
+        startPreview()
+    }
+
+    override fun stop() {
+        mCameraSource.stopPreview()
+    }
+
+    /**
+     * 任一相機被中斷時重新開啟兩個相機
+     */
+    override fun onResume() {
+        val cameraInfo: CameraInfo = mCameraSource.cameraInfo ?: return
+        val closed: Boolean = isClosed(cameraInfo) ||
+                mCameraSource.secondaryCameraInfo?.let { isClosed(it) } == true
+        if (closed) {
+            Logger.d(TAG, "onResume -> resume cameras")
+            startPreview()
+        } else {
+            Logger.d(TAG, "onResume -> no need to re-open cameras")
+        }
+    }
+
+    override fun release() {
+        mCameraSource.release()
+        mSurfaceProvider.release()
+        mSecondarySurfaceProvider.release()
+        mListener = null
+    }
+
+    private fun startPreview() {
+        mCameraSource.startConcurrentPreview(
+            mSurfaceProvider,
+            mSecondarySurfaceProvider,
+            primaryLensFacing
+        )
+    }
+
+    private fun isClosed(cameraInfo: CameraInfo): Boolean =
+        when (cameraInfo.cameraState.value?.type) {
+            null, CameraState.Type.PENDING_OPEN, CameraState.Type.CLOSING, CameraState.Type.CLOSED -> true
+            else -> false
+        }
+}
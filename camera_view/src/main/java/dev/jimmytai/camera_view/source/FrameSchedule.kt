@@ -0,0 +1,35 @@
+package dev.jimmytai.camera_view.source
+
+import java.util.Random
+
+/**
+ * 合成來源每個frame的產生時間：固定間隔加上均勻分布的jitter
+ *
+ * 每個frame的jitter只偏移該frame，不會累積，長時間執行時平均frame rate不變
+ */
+internal class FrameSchedule(fps: Int, private val jitterNs: Long, seed: Long) {
+    val intervalNs: Long = 1_000_000_000L / fps
+
+    private val mRandom: Random = Random(seed)
+
+    private var mStartNs: Long = 0L
+
+    private var mFrameIndex: Long = 0L
+
+    fun start(nowNs: Long) {
+        mStartNs = nowNs
+        mFrameIndex = 0L
+    }
+
+    /**
+     * 下一個frame應該產生的時間(System.nanoTime時基)
+     */
+    fun nextDeadlineNs(): Long {
+        val nominalNs: Long = mStartNs + mFrameIndex * intervalNs
+        mFrameIndex++
+        if (jitterNs == 0L) return nominalNs
+        // [-jitter, +jitter]
+        val offsetNs: Long = ((mRandom.nextDouble() * 2.0 - 1.0) * jitterNs).toLong()
+        return nominalNs + offsetNs
+    }
+}
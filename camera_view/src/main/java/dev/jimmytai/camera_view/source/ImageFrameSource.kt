@@ -0,0 +1,123 @@
+package dev.jimmytai.camera_view.source
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.SurfaceTexture
+import android.os.Handler
+import android.os.HandlerThread
+import android.util.Size
+import android.view.Surface
+import dev.jimmytai.camera_view.interfaces.FrameSource
+import dev.jimmytai.camera_view.utils.Logger
+
+/**
+ * A still image as frame source, e.g. to apply effects to a photo with the camera pipeline.
+ *
+ * @param bitmap    Image drawn into every frame, must not be recycled while the source is used.
+ * @param fps       Frames per second the image is drawn again, so animated effects keep running
+ *                  and the display follows size changes. 0 draws the image only once per start.
+ */
+class ImageFrameSource(
+    private val bitmap: Bitmap,
+    private val fps: Int = 30
+) : FrameSource {
+    companion object {
+        private val TAG: String = ImageFrameSource::class.java.simpleName
+    }
+
+    private var mSurfaceTexture: SurfaceTexture? = null
+
+    private var mListener: FrameSource.Listener? = null
+
+    /**
+     * 繪製圖片的執行緒，避免在主執行緒等待GPU
+     */
+    private var mDrawThread: HandlerThread? = null
+
+    @Volatile
+    private var mHandler: Handler? = null
+
+    /**
+     * 透過SurfaceTexture建立，只在繪製執行緒中使用
+     */
+    private var mSurface: Surface? = null
+
+    private val mDrawRunnable: Runnable = object : Runnable {
+        override fun run() {
+            draw()
+            if (fps > 0) {
+                mHandler?.postDelayed(this, 1000L / fps)
+            }
+        }
+    }
+
+    @Synchronized
+    override fun setSurfaceTexture(surfaceTexture: SurfaceTexture) {
+        if (mSurfaceTexture === surfaceTexture) return
+        stopDrawing()
+        mSurfaceTexture = surfaceTexture
+        startDrawingIfReady()
+    }
+
+    @Synchronized
+    override fun start(listener: FrameSource.Listener) {
+        stopDrawing()
+        mListener = listener
+        startDrawingIfReady()
+    }
+
+    @Synchronized
+    override fun stop() {
+        mListener = null
+        stopDrawing()
+    }
+
+    @Synchronized
+    override fun release() {
+        stop()
+        mSurfaceTexture = null
+    }
+
+    private fun startDrawingIfReady() {
+        val surfaceTexture: SurfaceTexture = mSurfaceTexture ?: return
+        val listener: FrameSource.Listener = mListener ?: return
+        listener.onFrameSizeChanged(Size(bitmap.width, bitmap.height), 0)
+
+        surfaceTexture.setDefaultBufferSize(bitmap.width, bitmap.height)
+        val surface = Surface(surfaceTexture)
+        val thread = HandlerThread("IMAGE_SOURCE").also { mDrawThread = it }
+        thread.start()
+        val handler = Handler(thread.looper).also { mHandler = it }
+        handler.post {
+            mSurface = surface
+            mDrawRunnable.run()
+        }
+    }
+
+    private fun stopDrawing() {
+        val thread: HandlerThread = mDrawThread ?: return
+        val handler: Handler? = mHandler
+        mHandler = null
+        handler?.removeCallbacks(mDrawRunnable)
+        // 在繪製執行緒中釋放Surface，不會與繪製同時發生
+        handler?.post {
+            mSurface?.release()
+            mSurface = null
+        }
+        thread.quitSafely()
+        thread.join()
+        mDrawThread = null
+    }
+
+    private fun draw() {
+        val surface: Surface = mSurface ?: return
+        try {
+            val canvas: Canvas = surface.lockHardwareCanvas()
+            canvas.drawBitmap(bitmap, 0f, 0f, null)
+            surface.unlockCanvasAndPost(canvas)
+        } catch (e: Exception) {
+            // SurfaceTexture已被GLThread釋放
+            Logger.e(TAG, "draw -> failed to draw image", e)
+        }
+    }
+}
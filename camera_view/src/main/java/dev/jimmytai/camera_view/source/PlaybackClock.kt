@@ -0,0 +1,63 @@
+package dev.jimmytai.camera_view.source
+
+/**
+ * 將影片的presentation time轉換為SurfaceTexture的timestamp，並計算即時播放需要等待的時間
+ *
+ * - timestamp使用System.nanoTime時基，第一個frame渲染的時間為起點，與相機frame相同，
+ *   encoder的PresentationTimeTracker不需要特別處理
+ * - 循環播放時接續上一輪最後一個frame，timestamp保持遞增
+ */
+internal class PlaybackClock(private val realTime: Boolean) {
+    companion object {
+        // 只有一個frame、無法得知frame間隔時使用
+        private const val DEFAULT_FRAME_INTERVAL_NS: Long = 33_333_333L
+    }
+
+    /**
+     * timestamp = origin + 循環偏移 + presentation time，第一個frame時決定
+     */
+    private var mOriginNs: Long = Long.MIN_VALUE
+
+    private var mLoopOffsetNs: Long = 0L
+
+    private var mFirstPtsNs: Long = Long.MIN_VALUE
+
+    private var mLastPtsNs: Long = Long.MIN_VALUE
+
+    private var mFrameIntervalNs: Long = DEFAULT_FRAME_INTERVAL_NS
+
+    /**
+     * @param ptsUs MediaCodec.BufferInfo.presentationTimeUs
+     * @param nowNs System.nanoTime()
+     */
+    fun timestampNs(ptsUs: Long, nowNs: Long): Long {
+        val ptsNs: Long = ptsUs * 1_000L
+        if (mOriginNs == Long.MIN_VALUE) {
+            mOriginNs = nowNs - ptsNs
+        }
+        if (mFirstPtsNs == Long.MIN_VALUE) {
+            mFirstPtsNs = ptsNs
+        }
+        if (mLastPtsNs != Long.MIN_VALUE && ptsNs > mLastPtsNs) {
+            mFrameIntervalNs = ptsNs - mLastPtsNs
+        }
+        mLastPtsNs = ptsNs
+        return mOriginNs + mLoopOffsetNs + ptsNs
+    }
+
+    /**
+     * 渲染[timestampNs]的frame之前需要等待的時間，離線模式不等待
+     */
+    fun delayNs(timestampNs: Long, nowNs: Long): Long =
+        if (realTime) maxOf(0L, timestampNs - nowNs) else 0L
+
+    /**
+     * 影片回到開頭，下一輪的第一個frame接在這一輪最後一個frame之後
+     */
+    fun onLoop() {
+        if (mLastPtsNs == Long.MIN_VALUE) return
+        mLoopOffsetNs += mLastPtsNs - mFirstPtsNs + mFrameIntervalNs
+        mFirstPtsNs = Long.MIN_VALUE
+        mLastPtsNs = Long.MIN_VALUE
+    }
+}
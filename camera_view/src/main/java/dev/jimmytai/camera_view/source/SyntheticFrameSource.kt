@@ -0,0 +1,193 @@
+package dev.jimmytai.camera_view.source
+
+import android.graphics.Bitmap
+import android.graphics.Canvas
+import android.graphics.Color
+import android.graphics.Paint
+import android.graphics.SurfaceTexture
+import android.view.Surface
+import dev.jimmytai.camera_view.interfaces.FrameSource
+import dev.jimmytai.camera_view.model.FrameStageTimings
+import dev.jimmytai.camera_view.model.SyntheticSourceConfig
+import dev.jimmytai.camera_view.utils.LatencyHistogram
+import dev.jimmytai.camera_view.utils.Logger
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Test pattern frames at a controlled rate, size and jitter, to load the pipeline without a
+ * camera, e.g. for stress and soak tests. For a looping real clip use [VideoFrameSource].
+ *
+ * Frames are drawn with a hardware canvas. Their SurfaceTexture timestamp is the time they are
+ * queued, so [latency] measures from a frame being produced until the GL thread rendered it to
+ * every output.
+ *
+ * @param latency   Where latencies are recorded, share one histogram to aggregate several sources.
+ */
+class SyntheticFrameSource(
+    private val config: SyntheticSourceConfig,
+    val latency: LatencyHistogram = LatencyHistogram()
+) : FrameSource {
+    companion object {
+        private val TAG: String = SyntheticFrameSource::class.java.simpleName
+
+        // 等待下一個frame時檢查是否已停止的間隔
+        private const val POLL_INTERVAL_NS: Long = 10_000_000L
+
+        private val BAR_COLORS: IntArray = intArrayOf(
+            Color.WHITE, Color.YELLOW, Color.CYAN, Color.GREEN,
+            Color.MAGENTA, Color.RED, Color.BLUE, Color.BLACK
+        )
+    }
+
+    private var mSurfaceTexture: SurfaceTexture? = null
+
+    private var mListener: FrameSource.Listener? = null
+
+    /**
+     * 產生frame的執行緒
+     */
+    private var mProduceThread: Thread? = null
+
+    @Volatile
+    private var mRunning: Boolean = false
+
+    /**
+     * 彩條背景，每個frame只需要貼上並畫一個移動的方塊
+     */
+    private val mBackground: Bitmap by lazy { createBackground() }
+
+    private val mBoxPaint: Paint = Paint().apply { color = Color.GRAY }
+
+    /**
+     * Frames queued into the SurfaceTexture.
+     */
+    @Volatile
+    var producedFrameCount: Long = 0L
+        private set
+
+    /**
+     * Frames the GL thread rendered to every output. The difference to [producedFrameCount] are
+     * frames replaced in the SurfaceTexture before the GL thread got to them.
+     */
+    @Volatile
+    var processedFrameCount: Long = 0L
+        private set
+
+    /**
+     * Frames not produced at all because drawing fell more than one frame interval behind.
+     */
+    @Volatile
+    var skippedFrameCount: Long = 0L
+        private set
+
+    @Synchronized
+    override fun setSurfaceTexture(surfaceTexture: SurfaceTexture) {
+        if (mSurfaceTexture === surfaceTexture) return
+        stopProducing()
+        mSurfaceTexture = surfaceTexture
+        startProducingIfReady()
+    }
+
+    @Synchronized
+    override fun start(listener: FrameSource.Listener) {
+        stopProducing()
+        mListener = listener
+        startProducingIfReady()
+    }
+
+    @Synchronized
+    override fun stop() {
+        mListener = null
+        stopProducing()
+    }
+
+    override fun onFrameProcessed(timestampNs: Long, timings: FrameStageTimings) {
+        latency.record(System.nanoTime() - timestampNs)
+        processedFrameCount++
+    }
+
+    @Synchronized
+    override fun release() {
+        stop()
+        mSurfaceTexture = null
+    }
+
+    private fun startProducingIfReady() {
+        val surfaceTexture: SurfaceTexture = mSurfaceTexture ?: return
+        val listener: FrameSource.Listener = mListener ?: return
+        listener.onFrameSizeChanged(config.size, config.rotationDegrees)
+        surfaceTexture.setDefaultBufferSize(config.size.width, config.size.height)
+        mRunning = true
+        mProduceThread = Thread({ produce(surfaceTexture) }, "SYNTHETIC_SOURCE").also {
+            it.start()
+        }
+    }
+
+    private fun stopProducing() {
+        val thread: Thread = mProduceThread ?: return
+        mRunning = false
+        thread.join()
+        mProduceThread = null
+    }
+
+    private fun produce(surfaceTexture: SurfaceTexture) {
+        Logger.d(TAG, "produce -> ${config.size}, fps: ${config.fps}, jitter: ${config.jitterNs}ns")
+        val surface = Surface(surfaceTexture)
+        val schedule = FrameSchedule(config.fps, config.jitterNs, config.seed)
+        schedule.start(System.nanoTime())
+        var frameIndex = 0L
+        try {
+            while (mRunning) {
+                var deadlineNs: Long = schedule.nextDeadlineNs()
+                // 落後超過一個frame間隔時略過，不一次補畫多個frame
+                while (deadlineNs < System.nanoTime() - schedule.intervalNs) {
+                    skippedFrameCount++
+                    frameIndex++
+                    deadlineNs = schedule.nextDeadlineNs()
+                }
+                var waitNs: Long = deadlineNs - System.nanoTime()
+                while (waitNs > 0L && mRunning) {
+                    LockSupport.parkNanos(minOf(waitNs, POLL_INTERVAL_NS))
+                    waitNs = deadlineNs - System.nanoTime()
+                }
+                if (!mRunning) break
+
+                draw(surface, frameIndex++)
+                producedFrameCount++
+            }
+        } catch (e: Exception) {
+            // SurfaceTexture已被GLThread釋放
+            Logger.e(TAG, "produce -> failed to draw frame", e)
+        } finally {
+            surface.release()
+        }
+    }
+
+    private fun draw(surface: Surface, frameIndex: Long) {
+        val width: Int = config.size.width
+        val height: Int = config.size.height
+        val boxSize: Int = maxOf(1, height / 8)
+        // 每個frame移動一個方塊寬度的1/4，畫面有變化才能看出掉frame或重複的frame
+        val x: Float = ((frameIndex * boxSize / 4) % maxOf(1, width - boxSize)).toFloat()
+        val y: Float = ((height - boxSize) / 2).toFloat()
+
+        val canvas: Canvas = surface.lockHardwareCanvas()
+        canvas.drawBitmap(mBackground, 0f, 0f, null)
+        canvas.drawRect(x, y, x + boxSize, y + boxSize, mBoxPaint)
+        surface.unlockCanvasAndPost(canvas)
+    }
+
+    private fun createBackground(): Bitmap {
+        val width: Int = config.size.width
+        val height: Int = config.size.height
+        val bitmap: Bitmap = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888)
+        val canvas = Canvas(bitmap)
+        val paint = Paint()
+        val barWidth: Float = width.toFloat() / BAR_COLORS.size
+        for (i in BAR_COLORS.indices) {
+            paint.color = BAR_COLORS[i]
+            canvas.drawRect(i * barWidth, 0f, (i + 1) * barWidth, height.toFloat(), paint)
+        }
+        return bitmap
+    }
+}
@@ -0,0 +1,311 @@
+package dev.jimmytai.camera_view.source
+
+import android.graphics.SurfaceTexture
+import android.media.MediaCodec
+import android.media.MediaExtractor
+import android.media.MediaFormat
+import android.util.Size
+import android.view.Surface
+import dev.jimmytai.camera_view.constant.PlaybackMode
+import dev.jimmytai.camera_view.interfaces.FrameSource
+import dev.jimmytai.camera_view.model.FrameStageTimings
+import dev.jimmytai.camera_view.utils.Logger
+import java.util.concurrent.Semaphore
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.locks.LockSupport
+
+/**
+ * Frames of a video file, decoded by MediaCodec straight into the GL thread's SurfaceTexture.
+ *
+ * Only the video track is decoded. Frames go through the same processing and outputs as camera
+ * frames; with [PlaybackMode.OFFLINE] and a recording output this re-renders a clip with effects
+ * as fast as the GPU allows.
+ *
+ * @param path      Path of the video file.
+ * @param mode      Pacing of the frames.
+ * @param loop      Start over at the end of the file instead of stopping.
+ * @param listener  Notified on the decoder thread when the file ends or decoding fails.
+ */
+class VideoFrameSource(
+    private val path: String,
+    private val mode: PlaybackMode = PlaybackMode.REAL_TIME,
+    private val loop: Boolean = false,
+    private val listener: PlaybackListener? = null
+) : FrameSource {
+    companion object {
+        private val TAG: String = VideoFrameSource::class.java.simpleName
+
+        // dequeue input/output buffer的等待時間
+        private const val DEQUEUE_TIMEOUT_US: Long = 10_000L
+
+        // 等待時檢查是否已停止的間隔
+        private const val POLL_INTERVAL_NS: Long = 10_000_000L
+
+        // 離線模式等待GLThread處理一個frame的上限，GLThread暫停(例如SurfaceView不可見)時不會一直卡住
+        private const val FRAME_PROCESS_TIMEOUT_NS: Long = 2_000_000_000L
+    }
+
+    interface PlaybackListener {
+        /**
+         * The last frame of the file has been rendered and processed by the GL thread. Not called
+         * when the source is stopped before the end.
+         *
+         * @param frameCount    Frames rendered since [FrameSource.start].
+         */
+        fun onEnd(frameCount: Long)
+
+        fun onError(e: Exception)
+    }
+
+    override val isRealTime: Boolean
+        get() = mode == PlaybackMode.REAL_TIME
+
+    private var mSurfaceTexture: SurfaceTexture? = null
+
+    private var mListener: FrameSource.Listener? = null
+
+    /**
+     * 解碼執行緒，從開始播放到結束或停止
+     */
+    private var mDecodeThread: Thread? = null
+
+    @Volatile
+    private var mRunning: Boolean = false
+
+    /**
+     * 離線模式中可以渲染下一個frame的許可，GLThread處理完frame後歸還
+     *
+     * SurfaceTexture只保留最新的frame，GLThread尚未updateTexImage前渲染下一個frame會覆蓋它
+     */
+    private val mFrameSlot: Semaphore = Semaphore(1)
+
+    /**
+     * GLThread最後處理完的frame的timestamp
+     */
+    @Volatile
+    private var mLastProcessedTimestampNs: Long = Long.MIN_VALUE
+
+    /**
+     * 每個frame渲染至SurfaceTexture之前在解碼執行緒中呼叫，傳入影片中的presentation time與
+     * SurfaceTexture的timestamp，重播時以此對應錄製的frame
+     */
+    internal var onFrameRendered: ((ptsUs: Long, timestampNs: Long) -> Unit)? = null
+
+    @Synchronized
+    override fun setSurfaceTexture(surfaceTexture: SurfaceTexture) {
+        if (mSurfaceTexture === surfaceTexture) return
+        // 新的SurfaceTexture需要新的decoder輸出Surface，從頭開始播放
+        stopDecoding()
+        mSurfaceTexture = surfaceTexture
+        startDecodingIfReady()
+    }
+
+    @Synchronized
+    override fun start(listener: FrameSource.Listener) {
+        stopDecoding()
+        mListener = listener
+        startDecodingIfReady()
+    }
+
+    @Synchronized
+    override fun stop() {
+        mListener = null
+        stopDecoding()
+    }
+
+    override fun onFrameProcessed(timestampNs: Long, timings: FrameStageTimings) {
+        mLastProcessedTimestampNs = timestampNs
+        // 只有解碼執行緒取走許可，檢查後歸還不會超過1個
+        if (mFrameSlot.availablePermits() == 0) {
+            mFrameSlot.release()
+        }
+    }
+
+    @Synchronized
+    override fun release() {
+        stop()
+        mSurfaceTexture = null
+    }
+
+    private fun startDecodingIfReady() {
+        val surfaceTexture: SurfaceTexture = mSurfaceTexture ?: return
+        val listener: FrameSource.Listener = mListener ?: return
+        mFrameSlot.drainPermits()
+        mFrameSlot.release()
+        mLastProcessedTimestampNs = Long.MIN_VALUE
+        mRunning = true
+        mDecodeThread = Thread({ decode(surfaceTexture, listener) }, "VIDEO_DECODER").also {
+            it.start()
+        }
+    }
+
+    private fun stopDecoding() {
+        val thread: Thread = mDecodeThread ?: return
+        mRunning = false
+        // 解碼迴圈的每次等待都有上限，很快就會結束
+        thread.join()
+        mDecodeThread = null
+    }
+
+    private fun decode(surfaceTexture: SurfaceTexture, frameSourceListener: FrameSource.Listener) {
+        Logger.d(TAG, "decode -> path: $path, mode: $mode")
+        val extractor = MediaExtractor()
+        var codec: MediaCodec? = null
+        val surface = Surface(surfaceTexture)
+        val clock = PlaybackClock(isRealTime)
+        var frameCount = 0L
+        var lastTimestampNs: Long = Long.MIN_VALUE
+        try {
+            extractor.setDataSource(path)
+            val trackIndex: Int = selectVideoTrack(extractor)
+            require(trackIndex >= 0) { "no video track in $path" }
+            val format: MediaFormat = extractor.getTrackFormat(trackIndex)
+            val rotationDegrees: Int = if (format.containsKey(MediaFormat.KEY_ROTATION)) {
+                format.getInteger(MediaFormat.KEY_ROTATION)
+            } else {
+                0
+            }
+            frameSourceListener.onFrameSizeChanged(
+                Size(
+                    format.getInteger(MediaFormat.KEY_WIDTH),
+                    format.getInteger(MediaFormat.KEY_HEIGHT)
+                ),
+                rotationDegrees
+            )
+
+            val decoder: MediaCodec =
+                MediaCodec.createDecoderByType(format.getString(MediaFormat.KEY_MIME)!!)
+                    .also { codec = it }
+            decoder.configure(format, surface, null, 0)
+            decoder.start()
+
+            val info = MediaCodec.BufferInfo()
+            var inputDone = false
+            var ended = false
+            while (mRunning) {
+                if (!inputDone) {
+                    inputDone = queueInput(extractor, decoder)
+                }
+
+                val outputIndex: Int = decoder.dequeueOutputBuffer(info, DEQUEUE_TIMEOUT_US)
+                // INFO_TRY_AGAIN_LATER、INFO_OUTPUT_FORMAT_CHANGED等，輸出尺寸以track format為準
+                if (outputIndex < 0) continue
+
+                if (info.size > 0) {
+                    val timestampNs: Long =
+                        clock.timestampNs(info.presentationTimeUs, System.nanoTime())
+                    if (!awaitRender(clock, timestampNs)) {
+                        decoder.releaseOutputBuffer(outputIndex, false)
+                        break
+                    }
+                    onFrameRendered?.invoke(info.presentationTimeUs, timestampNs)
+                    // 指定SurfaceTexture的timestamp，encoder輸出保留影片的時間軸
+                    decoder.releaseOutputBuffer(outputIndex, timestampNs)
+                    lastTimestampNs = timestampNs
+                    frameCount++
+                } else {
+                    decoder.releaseOutputBuffer(outputIndex, false)
+                }
+
+                if (info.flags and MediaCodec.BUFFER_FLAG_END_OF_STREAM != 0) {
+                    if (!loop) {
+                        ended = true
+                        break
+                    }
+                    clock.onLoop()
+                    extractor.seekTo(0L, MediaExtractor.SEEK_TO_CLOSEST_SYNC)
+                    decoder.flush()
+                    inputDone = false
+                }
+            }
+
+            if (ended) {
+                // 等待最後一個frame處理完，回報結束後外部可以直接停止錄影
+                if (lastTimestampNs != Long.MIN_VALUE) awaitProcessed(lastTimestampNs)
+                Logger.d(TAG, "decode -> end of $path, frames: $frameCount")
+                listener?.onEnd(frameCount)
+            }
+        } catch (e: Exception) {
+            Logger.e(TAG, "decode -> failed to decode $path", e)
+            listener?.onError(e)
+        } finally {
+            try {
+                codec?.stop()
+            } catch (e: IllegalStateException) {
+                // configure/start失敗時decoder不在執行狀態
+            }
+            codec?.release()
+            extractor.release()
+            surface.release()
+        }
+    }
+
+    private fun selectVideoTrack(extractor: MediaExtractor): Int {
+        for (i in 0 until extractor.trackCount) {
+            val mime: String? = extractor.getTrackFormat(i).getString(MediaFormat.KEY_MIME)
+            if (mime?.startsWith("video/") == true) {
+                extractor.selectTrack(i)
+                return i
+            }
+        }
+        return -1
+    }
+
+    /**
+     * 送出一個sample給decoder
+     *
+     * @return true 代表已送出end of stream
+     */
+    private fun queueInput(extractor: MediaExtractor, decoder: MediaCodec): Boolean {
+        val inputIndex: Int = decoder.dequeueInputBuffer(DEQUEUE_TIMEOUT_US)
+        if (inputIndex < 0) return false
+        val sampleSize: Int = extractor.readSampleData(decoder.getInputBuffer(inputIndex)!!, 0)
+        if (sampleSize < 0) {
+            decoder.queueInputBuffer(inputIndex, 0, 0, 0L, MediaCodec.BUFFER_FLAG_END_OF_STREAM)
+            return true
+        }
+        decoder.queueInputBuffer(inputIndex, 0, sampleSize, extractor.sampleTime, 0)
+        extractor.advance()
+        return false
+    }
+
+    /**
+     * 即時模式等待到frame的presentation time，離線模式等待GLThread處理完上一個frame
+     *
+     * @return false 代表已停止播放
+     */
+    private fun awaitRender(clock: PlaybackClock, timestampNs: Long): Boolean {
+        if (!isRealTime) {
+            awaitFrameSlot()
+            return mRunning
+        }
+        var delayNs: Long = clock.delayNs(timestampNs, System.nanoTime())
+        while (delayNs > 0L && mRunning) {
+            LockSupport.parkNanos(minOf(delayNs, POLL_INTERVAL_NS))
+            delayNs = clock.delayNs(timestampNs, System.nanoTime())
+        }
+        return mRunning
+    }
+
+    private fun awaitProcessed(timestampNs: Long) {
+        val deadlineNs: Long = System.nanoTime() + FRAME_PROCESS_TIMEOUT_NS
+        while (mLastProcessedTimestampNs < timestampNs && mRunning) {
+            if (System.nanoTime() > deadlineNs) {
+                Logger.w(TAG, "awaitProcessed -> GLThread did not process the last frame in time")
+                return
+            }
+            LockSupport.parkNanos(POLL_INTERVAL_NS / 10)
+        }
+    }
+
+    private fun awaitFrameSlot() {
+        val deadlineNs: Long = System.nanoTime() + FRAME_PROCESS_TIMEOUT_NS
+        while (!mFrameSlot.tryAcquire(POLL_INTERVAL_NS, TimeUnit.NANOSECONDS)) {
+            if (!mRunning) return
+            if (System.nanoTime() > deadlineNs) {
+                Logger.w(TAG, "awaitFrameSlot -> GLThread did not process the last frame in time")
+                return
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package dev.jimmytai.camera_view.utils
+
+import dev.jimmytai.camera_view.BuildConfig
+import dev.jimmytai.camera_view.model.BufferPoolStats
+import java.lang.ref.ReferenceQueue
+import java.lang.ref.WeakReference
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+/**
+ * Pool of direct [ByteBuffer]s for pixel read back and upload.
+ *
+ * Every [ByteBuffer.allocateDirect] costs a native malloc plus a Cleaner the GC has to process,
+ * so the buffers are recycled by size class instead. A size class is a power of two split into
+ * quarters, which keeps the unused tail of a buffer under 25% of its capacity.
+ *
+ * Buffers returned by [acquire] must be given back with [release] and must not be used after
+ * that. When leak detection is enabled (debug builds by default), a buffer that is garbage
+ * collected without being released is logged with the stack trace of its [acquire].
+ *
+ * This class is thread-safe.
+ *
+ * @param maxPooledBytes    Idle buffers beyond this total capacity are dropped on [release].
+ * @param detectLeaks       Track acquired buffers to report leaks.
+ */
+class DirectBufferPool(
+    private val maxPooledBytes: Long = DEFAULT_MAX_POOLED_BYTES,
+    private val detectLeaks: Boolean = BuildConfig.DEBUG
+) {
+    companion object {
+        private val TAG: String = DirectBufferPool::class.java.simpleName
+
+        const val DEFAULT_MAX_POOLED_BYTES: Long = 32L * 1024 * 1024
+
+        private const val MIN_CAPACITY: Int = 4 * 1024
+
+        /**
+         * 整個library共用的pool
+         */
+        @JvmStatic
+        val shared: DirectBufferPool = DirectBufferPool()
+
+        /**
+         * 將size向上取整到所屬的size class
+         */
+        @JvmStatic
+        fun capacityOf(size: Int): Int {
+            require(size >= 0) { "size must not be negative: $size" }
+            if (size <= MIN_CAPACITY) return MIN_CAPACITY
+            val step: Int = Integer.highestOneBit(size) / 4
+            return (size + step - 1) / step * step
+        }
+    }
+
+    private class Lease(
+        buffer: ByteBuffer,
+        queue: ReferenceQueue<ByteBuffer>,
+        val capacity: Int,
+        val acquiredAt: Throwable
+    ) : WeakReference<ByteBuffer>(buffer, queue)
+
+    private val mLock = Any()
+
+    private val mPool: HashMap<Int, ArrayDeque<ByteBuffer>> = HashMap()
+
+    private val mLeases: MutableList<Lease> = ArrayList()
+
+    private val mLeaseQueue: ReferenceQueue<ByteBuffer> = ReferenceQueue()
+
+    private var mAcquireCount: Long = 0L
+
+    private var mHitCount: Long = 0L
+
+    private var mReleaseCount: Long = 0L
+
+    private var mBytesPooled: Long = 0L
+
+    private var mBytesInUse: Long = 0L
+
+    private var mLeakCount: Long = 0L
+
+    /**
+     * @param size  需要的byte數
+     * @return position為0、limit為size、native byte order的direct buffer，capacity可能大於size
+     */
+    fun acquire(size: Int): ByteBuffer {
+        val capacity: Int = capacityOf(size)
+        val buffer: ByteBuffer = synchronized(mLock) {
+            drainLeaks()
+            mAcquireCount++
+            val pooled: ByteBuffer? = mPool[capacity]?.removeLastOrNull()
+            if (pooled != null) {
+                mHitCount++
+                mBytesPooled -= capacity
+            }
+            mBytesInUse += capacity
+            pooled
+        } ?: ByteBuffer.allocateDirect(capacity)
+
+        if (detectLeaks) {
+            synchronized(mLock) {
+                mLeases.add(Lease(buffer, mLeaseQueue, capacity, Throwable("acquired here")))
+            }
+        }
+        buffer.clear()
+        buffer.limit(size)
+        buffer.order(ByteOrder.nativeOrder())
+        return buffer
+    }
+
+    /**
+     * 歸還由[acquire]取得的buffer，之後不可再使用
+     */
+    fun release(buffer: ByteBuffer) {
+        val capacity: Int = buffer.capacity()
+        if (!buffer.isDirect || capacityOf(capacity) != capacity) {
+            Logger.w(TAG, "release: buffer was not acquired from this pool, capacity=$capacity")
+            return
+        }
+        synchronized(mLock) {
+            drainLeaks()
+            if (detectLeaks && !removeLease(buffer)) {
+                Logger.w(TAG, "release: buffer is not in use, released twice?")
+                return
+            }
+            val deque: ArrayDeque<ByteBuffer> = mPool.getOrPut(capacity) { ArrayDeque() }
+            if (!detectLeaks && deque.any { it === buffer }) {
+                Logger.w(TAG, "release: buffer is already pooled, released twice?")
+                return
+            }
+            mReleaseCount++
+            mBytesInUse -= capacity
+            if (mBytesPooled + capacity > maxPooledBytes) return
+            deque.addLast(buffer)
+            mBytesPooled += capacity
+        }
+    }
+
+    /**
+     * 釋放所有閒置的buffer，使用中的buffer不受影響
+     */
+    fun trim() {
+        synchronized(mLock) {
+            mPool.clear()
+            mBytesPooled = 0L
+        }
+    }
+
+    fun stats(): BufferPoolStats =
+        synchronized(mLock) {
+            drainLeaks()
+            BufferPoolStats(
+                acquireCount = mAcquireCount,
+                hitCount = mHitCount,
+                releaseCount = mReleaseCount,
+                bytesPooled = mBytesPooled,
+                bytesInUse = mBytesInUse,
+                leakCount = mLeakCount
+            )
+        }
+
+    private fun removeLease(buffer: ByteBuffer): Boolean {
+        val iterator: MutableIterator<Lease> = mLeases.iterator()
+        while (iterator.hasNext()) {
+            val lease: Lease = iterator.next()
+            if (lease.get() === buffer) {
+                lease.clear()
+                iterator.remove()
+                return true
+            }
+        }
+        return false
+    }
+
+    /**
+     * 被GC回收但沒有release的buffer視為洩漏
+     */
+    private fun drainLeaks() {
+        while (true) {
+            val lease: Lease = mLeaseQueue.poll() as Lease? ?: return
+            if (!mLeases.remove(lease)) continue
+            mLeakCount++
+            mBytesInUse -= lease.capacity
+            Logger.e(TAG, "leaked a ${lease.capacity} bytes buffer", lease.acquiredAt)
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package dev.jimmytai.camera_view.utils
+
+/**
+ * Fixed-bucket histogram of latencies, for percentiles over runs of millions of frames in
+ * constant memory. Thread safe.
+ *
+ * @param bucketWidthNs Resolution of the percentiles.
+ * @param maxLatencyNs  Latencies above this are counted in the last bucket, [max] stays exact.
+ */
+class LatencyHistogram(
+    private val bucketWidthNs: Long = 100_000L,
+    maxLatencyNs: Long = 1_000_000_000L
+) {
+    init {
+        require(bucketWidthNs > 0L) { "bucketWidthNs must be positive" }
+        require(maxLatencyNs >= bucketWidthNs) { "maxLatencyNs must be at least bucketWidthNs" }
+    }
+
+    private val mBuckets: LongArray = LongArray((maxLatencyNs / bucketWidthNs).toInt() + 1)
+
+    private var mCount: Long = 0L
+
+    private var mSumNs: Long = 0L
+
+    private var mMaxNs: Long = 0L
+
+    val count: Long
+        @Synchronized get() = mCount
+
+    val max: Long
+        @Synchronized get() = mMaxNs
+
+    val average: Long
+        @Synchronized get() = if (mCount == 0L) 0L else mSumNs / mCount
+
+    @Synchronized
+    fun record(latencyNs: Long) {
+        val value: Long = maxOf(0L, latencyNs)
+        val index: Int = minOf(value / bucketWidthNs, (mBuckets.size - 1).toLong()).toInt()
+        mBuckets[index]++
+        mCount++
+        mSumNs += value
+        if (value > mMaxNs) mMaxNs = value
+    }
+
+    /**
+     * Upper bound of the bucket holding the given percentile, 0 if nothing was recorded.
+     *
+     * @param percentile    From 0 to 100.
+     */
+    @Synchronized
+    fun percentile(percentile: Double): Long {
+        require(percentile in 0.0..100.0) { "percentile must be between 0 and 100" }
+        if (mCount == 0L) return 0L
+        // 第rank個(從1開始)最小的值所在的bucket
+        val rank: Long = maxOf(1L, Math.ceil(mCount * percentile / 100.0).toLong())
+        var seen = 0L
+        for (i in mBuckets.indices) {
+            seen += mBuckets[i]
+            if (seen >= rank) {
+                // 最後一個bucket沒有上限
+                if (i == mBuckets.size - 1) return mMaxNs
+                return minOf((i + 1) * bucketWidthNs, mMaxNs)
+            }
+        }
+        return mMaxNs
+    }
+
+    @Synchronized
+    fun reset() {
+        mBuckets.fill(0L)
+        mCount = 0L
+        mSumNs = 0L
+        mMaxNs = 0L
+    }
+}
@@ -0,0 +1,116 @@
+package dev.jimmytai.camera_view.utils
+
+import dev.jimmytai.camera_view.constant.PixelFormat
+import java.nio.ByteBuffer
+
+/**
+ * CPU-side RGBA → YUV420 converters (BT.601 limited range).
+ *
+ * They produce the same bytes as the GPU packing pass used by
+ * GLRenderer.transferTextureToBuffer for YUV formats and serve as its reference, or as a
+ * fallback when the frame is already on the CPU.
+ *
+ * Chroma is the average of each 2x2 pixel block. Width and height must be even, except for
+ * [PixelFormat.LUMA8] which only writes the Y plane.
+ */
+object YuvConverter {
+    /**
+     * @param rgba      RGBA8888 pixels, row by row, starting at the buffer's position 0.
+     * @param format    [PixelFormat.BEF_AI_PIX_FMT_YUV420P], [PixelFormat.BEF_AI_PIX_FMT_NV12]
+     *                  [PixelFormat.BEF_AI_PIX_FMT_NV21] or [PixelFormat.LUMA8].
+     * @param output    Reused when it is large enough, otherwise a new array is allocated.
+     * @return YUV bytes, width * height * 3 / 2 of them (width * height for LUMA8).
+     */
+    @JvmStatic
+    fun convert(
+        rgba: ByteBuffer,
+        width: Int,
+        height: Int,
+        format: PixelFormat,
+        output: ByteArray? = null
+    ): ByteArray {
+        val lumaOnly: Boolean = format == PixelFormat.LUMA8
+        require(width > 0 && height > 0 && (lumaOnly || (width % 2 == 0 && height % 2 == 0))) {
+            "width and height must be positive even numbers"
+        }
+        val frameSize: Int = width * height
+        val outputSize: Int = if (lumaOnly) frameSize else frameSize * 3 / 2
+        val yuv: ByteArray =
+            if (output != null && output.size >= outputSize) output else ByteArray(outputSize)
+
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                val i: Int = (y * width + x) * 4
+                yuv[y * width + x] = toY(
+                    channel(rgba, i),
+                    channel(rgba, i + 1),
+                    channel(rgba, i + 2)
+                ).toByte()
+            }
+        }
+        if (lumaOnly) return yuv
+
+        val chromaWidth: Int = width / 2
+        val chromaHeight: Int = height / 2
+        for (cy in 0 until chromaHeight) {
+            for (cx in 0 until chromaWidth) {
+                var r = 0f
+                var g = 0f
+                var b = 0f
+                for (dy in 0..1) {
+                    for (dx in 0..1) {
+                        val i: Int = ((cy * 2 + dy) * width + cx * 2 + dx) * 4
+                        r += channel(rgba, i)
+                        g += channel(rgba, i + 1)
+                        b += channel(rgba, i + 2)
+                    }
+                }
+                r /= 4f
+                g /= 4f
+                b /= 4f
+                val u: Byte = toU(r, g, b).toByte()
+                val v: Byte = toV(r, g, b).toByte()
+
+                when (format) {
+                    PixelFormat.BEF_AI_PIX_FMT_YUV420P -> {
+                        val i: Int = cy * chromaWidth + cx
+                        yuv[frameSize + i] = u
+                        yuv[frameSize + frameSize / 4 + i] = v
+                    }
+
+                    PixelFormat.BEF_AI_PIX_FMT_NV12 -> {
+                        val i: Int = frameSize + cy * width + cx * 2
+                        yuv[i] = u
+                        yuv[i + 1] = v
+                    }
+
+                    PixelFormat.BEF_AI_PIX_FMT_NV21 -> {
+                        val i: Int = frameSize + cy * width + cx * 2
+                        yuv[i] = v
+                        yuv[i + 1] = u
+                    }
+
+                    else -> throw IllegalArgumentException("$format is not a YUV format")
+                }
+            }
+        }
+        return yuv
+    }
+
+    private fun channel(rgba: ByteBuffer, index: Int): Float =
+        (rgba.get(index).toInt() and 0xFF) / 255f
+
+    @JvmStatic
+    fun toY(r: Float, g: Float, b: Float): Int =
+        toByte(16f + 65.481f * r + 128.553f * g + 24.966f * b)
+
+    @JvmStatic
+    fun toU(r: Float, g: Float, b: Float): Int =
+        toByte(128f - 37.797f * r - 74.203f * g + 112.0f * b)
+
+    @JvmStatic
+    fun toV(r: Float, g: Float, b: Float): Int =
+        toByte(128f + 112.0f * r - 93.786f * g - 18.214f * b)
+
+    private fun toByte(value: Float): Int = Math.round(value).coerceIn(0, 255)
+}
@@ -0,0 +1,28 @@
+package dev.jimmytai.camera_view
+
+import android.util.Size
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class PreviewBufferSizerTest {
+    @Test
+    fun compute_scalesShortSideKeepingAspectRatio() {
+        assertEquals(Size(720, 1600), PreviewBufferSizer.compute(Size(1440, 3200), 720))
+    }
+
+    @Test
+    fun compute_keepsSmallerView() {
+        assertEquals(Size(600, 800), PreviewBufferSizer.compute(Size(600, 800), 720))
+    }
+
+    @Test
+    fun compute_withoutLimit_keepsView() {
+        assertEquals(Size(1440, 3200), PreviewBufferSizer.compute(Size(1440, 3200), 0))
+    }
+
+    @Test
+    fun compute_roundsToEvenSize() {
+        // 1080 / 1081 * 2339 = 2336.8
+        assertEquals(Size(2336, 1080), PreviewBufferSizer.compute(Size(2339, 1081), 1080))
+    }
+}
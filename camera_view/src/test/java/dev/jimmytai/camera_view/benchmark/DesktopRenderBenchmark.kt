@@ -0,0 +1,94 @@
+package dev.jimmytai.camera_view.benchmark
+
+import android.opengl.GLES20
+import android.util.Size
+import dev.jimmytai.camera_view.constant.CropScaleType
+import dev.jimmytai.camera_view.constant.PixelFormat
+import dev.jimmytai.camera_view.constant.TextureFormat
+import dev.jimmytai.camera_view.gles.DesktopEglContext
+import dev.jimmytai.camera_view.gles.DesktopGlApi
+import dev.jimmytai.camera_view.gles.GlStateCache
+import dev.jimmytai.camera_view.glrenderer.GLRenderer
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import org.openjdk.jmh.annotations.TearDown
+import java.nio.ByteBuffer
+import java.util.concurrent.TimeUnit
+
+/**
+ * 以桌面GLES(Mesa llvmpipe)執行GLRenderer的離屏繪製與讀回
+ *
+ * 軟體繪製的絕對時間與手機GPU無關，用來比較不同版本、不同讀回格式的相對成本；
+ * 每個benchmark都以glReadPixels結束，確保繪製已完成
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+open class DesktopRenderBenchmark {
+    @Param("640x480", "1280x720")
+    var size: String = "1280x720"
+
+    private lateinit var mContext: DesktopEglContext
+
+    private lateinit var mRenderer: GLRenderer
+
+    private lateinit var mSize: Size
+
+    private lateinit var mTransition: GLRenderer.Transition
+
+    private var mInputTexture: Int = 0
+
+    @Setup
+    fun setup() {
+        check(DesktopEglContext.isAvailable) { "no desktop EGL/GLES, install Mesa (libegl1 libgles2)" }
+        mSize = Size.parseSize(size)
+        mContext = DesktopEglContext.create()
+        val stateCache = GlStateCache(DesktopGlApi())
+        mRenderer = GLRenderer(stateCache)
+        mTransition = mRenderer.transitionCache.crop(CropScaleType.CENTER_CROP, 0, mSize, mSize)
+
+        val textures = IntArray(1)
+        stateCache.gl.glGenTextures(1, textures, 0)
+        mInputTexture = textures[0]
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, mInputTexture)
+        stateCache.gl.glTexImage2D(
+            GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, mSize.width, mSize.height, 0,
+            GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, null
+        )
+        stateCache.gl.glTexParameteri(
+            GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR
+        )
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, 0)
+    }
+
+    @TearDown
+    fun tearDown() {
+        mRenderer.release()
+        mContext.close()
+    }
+
+    private fun draw(): Int = mRenderer.transferTextureToTexture(
+        mInputTexture, TextureFormat.Texture2D, TextureFormat.Texture2D, mSize, mTransition
+    )
+
+    @Benchmark
+    fun drawAndReadRgba(): ByteBuffer? = mRenderer.transferTextureToBuffer(
+        draw(), TextureFormat.Texture2D, PixelFormat.RGBA8888, mSize, 1.0f
+    )
+
+    @Benchmark
+    fun drawAndReadNv21(): ByteBuffer? = mRenderer.transferTextureToBuffer(
+        draw(), TextureFormat.Texture2D, PixelFormat.BEF_AI_PIX_FMT_NV21, mSize, 1.0f
+    )
+
+    @Benchmark
+    fun drawAndReadLuma8Quarter(): ByteBuffer? = mRenderer.transferTextureToBuffer(
+        draw(), TextureFormat.Texture2D, PixelFormat.LUMA8, mSize, 0.5f
+    )
+}
@@ -0,0 +1,68 @@
+package dev.jimmytai.camera_view.benchmark
+
+import dev.jimmytai.camera_view.export.BurstScheduler
+import dev.jimmytai.camera_view.glthread.FrameRateLimiter
+import dev.jimmytai.camera_view.glthread.PresentationTimeTracker
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * GLThread每個frame執行的排程邏輯：輸出窗口的frame rate限制、presentation time與連拍slot
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class FrameSchedulingBenchmark {
+    companion object {
+        private const val FRAME_INTERVAL_NS: Long = 33_333_333L
+    }
+
+    private lateinit var mLimiter: FrameRateLimiter
+
+    private lateinit var mTracker: PresentationTimeTracker
+
+    private var mTimestampNs: Long = 0L
+
+    @Setup
+    fun setup() {
+        mLimiter = FrameRateLimiter(20)
+        mTracker = PresentationTimeTracker()
+        mTimestampNs = System.nanoTime()
+    }
+
+    @Benchmark
+    fun frameRateLimiter(): Boolean {
+        mTimestampNs += FRAME_INTERVAL_NS
+        return mLimiter.tryAcquire(mTimestampNs)
+    }
+
+    @Benchmark
+    fun presentationTime(): Long {
+        mTimestampNs += FRAME_INTERVAL_NS
+        return mTracker.next(mTimestampNs, mTimestampNs + 5_000_000L, mTimestampNs)
+    }
+
+    /**
+     * 20張連拍的完整排程，編碼與讀回速度相同
+     */
+    @Benchmark
+    fun burst20(): Int {
+        val scheduler = BurstScheduler(frameCount = 20, slotCount = 4, maxEncoding = 4)
+        var draining: Int = BurstScheduler.NO_SLOT
+        while (!scheduler.isDrainComplete) {
+            if (draining != BurstScheduler.NO_SLOT) {
+                scheduler.onDrained(draining)
+                scheduler.onEncoded()
+            }
+            scheduler.acquireSlot()
+            draining = scheduler.nextToDrain()
+        }
+        return scheduler.skippedFrameCount
+    }
+}
@@ -0,0 +1,61 @@
+package dev.jimmytai.camera_view.benchmark
+
+import dev.jimmytai.camera_view.constant.CropScaleType
+import dev.jimmytai.camera_view.gles.Matrix4Util
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * Matrix4Util的單一運算，crop在快取未命中時才會執行
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class Matrix4UtilBenchmark {
+    @Param("CENTER_CROP", "CENTER_INSIDE", "FIT_START")
+    lateinit var scaleType: String
+
+    private lateinit var mScaleType: CropScaleType
+
+    private val mMatrix = FloatArray(16)
+
+    private val mOther = FloatArray(16)
+
+    private val mResult = FloatArray(16)
+
+    @Setup
+    fun setup() {
+        mScaleType = CropScaleType.valueOf(scaleType)
+        Matrix4Util.setIdentity(mMatrix)
+        Matrix4Util.setIdentity(mOther)
+        Matrix4Util.rotateZ(mOther, 90f)
+    }
+
+    @Benchmark
+    fun crop(): FloatArray {
+        Matrix4Util.crop(mMatrix, mScaleType, 1920, 1080, 1080, 1920)
+        return mMatrix
+    }
+
+    @Benchmark
+    fun rotate(): FloatArray? = Matrix4Util.rotate(mMatrix, 90f)
+
+    @Benchmark
+    fun flip(): FloatArray? = Matrix4Util.flip(mMatrix, x = false, y = true)
+
+    @Benchmark
+    fun multiply(): FloatArray {
+        Matrix4Util.multiply(mResult, mMatrix, mOther)
+        return mResult
+    }
+
+    @Benchmark
+    fun invert(): Boolean = Matrix4Util.invert(mResult, mOther)
+}
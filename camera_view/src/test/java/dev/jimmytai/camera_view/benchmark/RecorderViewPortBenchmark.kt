@@ -0,0 +1,37 @@
+package dev.jimmytai.camera_view.benchmark
+
+import android.util.Size
+import dev.jimmytai.camera_view.model.RecorderViewPort
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Param
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * 錄影時每次調整輸出尺寸都會計算的viewport
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class RecorderViewPortBenchmark {
+    @Param("true", "false")
+    var fit: Boolean = false
+
+    private lateinit var mCameraSize: Size
+
+    private lateinit var mTargetSize: Size
+
+    @Setup
+    fun setup() {
+        mCameraSize = Size(1920, 1080)
+        mTargetSize = Size(1080, 1080)
+    }
+
+    @Benchmark
+    fun create(): RecorderViewPort = RecorderViewPort.create(mCameraSize, mTargetSize, fit)
+}
@@ -0,0 +1,61 @@
+package dev.jimmytai.camera_view.benchmark
+
+import dev.jimmytai.camera_view.constant.CropScaleType
+import dev.jimmytai.camera_view.glrenderer.GLRenderer
+import dev.jimmytai.camera_view.glrenderer.TransitionCache
+import org.openjdk.jmh.annotations.Benchmark
+import org.openjdk.jmh.annotations.BenchmarkMode
+import org.openjdk.jmh.annotations.Mode
+import org.openjdk.jmh.annotations.OutputTimeUnit
+import org.openjdk.jmh.annotations.Scope
+import org.openjdk.jmh.annotations.Setup
+import org.openjdk.jmh.annotations.State
+import java.util.concurrent.TimeUnit
+
+/**
+ * GLThread每個frame、每個輸出窗口取得Transition的成本：每次重新計算與透過TransitionCache取得
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+open class TransitionBenchmark {
+    private lateinit var mCache: TransitionCache
+
+    // GLRenderer繪製時同樣將矩陣複製至重複使用的陣列
+    private val mMatrix: FloatArray = FloatArray(16)
+
+    @Setup
+    fun setup() {
+        mCache = TransitionCache()
+        // 預覽、encoder與分析輸出各一個窗口
+        mCache.get(CropScaleType.CENTER_CROP, 0, 1920, 1080, 1080, 2340)
+        mCache.get(CropScaleType.CENTER_CROP, 0, 1920, 1080, 1280, 720)
+        mCache.get(CropScaleType.CENTER_CROP, 0, 1920, 1080, 640, 480)
+    }
+
+    @Benchmark
+    fun previewChain(): FloatArray =
+        GLRenderer.Transition().rotate(90f).flip(x = false, y = true).copyInto(mMatrix)
+
+    @Benchmark
+    fun onScreenCrop(): FloatArray =
+        GLRenderer.Transition().crop(CropScaleType.CENTER_CROP, 0, 1920, 1080, 1080, 2340)
+            .copyInto(mMatrix)
+
+    @Benchmark
+    fun cropRotateFlipReverse(): FloatArray =
+        GLRenderer.Transition()
+            .crop(CropScaleType.FIT_START, 90, 1920, 1080, 1080, 2340)
+            .rotate(270f)
+            .flip(x = true)
+            .reverse()
+            .copyInto(mMatrix)
+
+    @Benchmark
+    fun cachedPreviewChain(): FloatArray =
+        mCache.rotateFlip(90, flipX = false, flipY = true).copyInto(mMatrix)
+
+    @Benchmark
+    fun cachedOnScreenCrop(): FloatArray =
+        mCache.get(CropScaleType.CENTER_CROP, 0, 1920, 1080, 640, 480).copyInto(mMatrix)
+}
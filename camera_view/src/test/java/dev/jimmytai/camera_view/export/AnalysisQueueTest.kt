@@ -0,0 +1,176 @@
+package dev.jimmytai.camera_view.export
+
+import dev.jimmytai.camera_view.constant.BackpressureStrategy
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNull
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class AnalysisQueueTest {
+    /**
+     * 模擬ImageReader送出新frame：可取出時加入佇列，回傳被丟棄的frame
+     */
+    private fun AnalysisQueue<Int>.frameAvailable(frame: Int): Int? =
+        if (shouldAcquire()) offer(frame) else null
+
+    /**
+     * 模擬analyzer分析完一個frame
+     */
+    private fun AnalysisQueue<Int>.analyzeNext(): Int? =
+        poll()?.also { release() }
+
+    @Test
+    fun everyStrategy_maxImages1_analyzesEachFrameWhenIdle() {
+        for (strategy in BackpressureStrategy.values()) {
+            val queue = AnalysisQueue<Int>(1, strategy)
+
+            for (frame in 0 until 5) {
+                assertNull(strategy.name, queue.frameAvailable(frame))
+                assertEquals(strategy.name, frame, queue.analyzeNext())
+            }
+            assertEquals(strategy.name, 0L, queue.droppedFrameCount)
+            assertEquals(strategy.name, 0, queue.inFlight)
+        }
+    }
+
+    @Test
+    fun everyStrategy_maxImages2_queuesTwoFrames() {
+        for (strategy in BackpressureStrategy.values()) {
+            val queue = AnalysisQueue<Int>(2, strategy)
+
+            assertNull(strategy.name, queue.frameAvailable(0))
+            assertNull(strategy.name, queue.frameAvailable(1))
+
+            assertEquals(strategy.name, 2, queue.queueDepth)
+            assertEquals(strategy.name, 0L, queue.droppedFrameCount)
+        }
+    }
+
+    @Test
+    fun dropOldest_maxImages1_replacesQueuedFrame() {
+        val queue = AnalysisQueue<Int>(1, BackpressureStrategy.DROP_OLDEST)
+
+        assertNull(queue.frameAvailable(0))
+        assertEquals(0, queue.frameAvailable(1))
+        assertEquals(1, queue.frameAvailable(2))
+
+        assertEquals(2, queue.analyzeNext())
+        assertEquals(2L, queue.droppedFrameCount)
+    }
+
+    @Test
+    fun dropOldest_maxImages1_whileAnalyzing_dropsNewFrame() {
+        val queue = AnalysisQueue<Int>(1, BackpressureStrategy.DROP_OLDEST)
+
+        queue.frameAvailable(0)
+        val analyzing: Int? = queue.poll()
+
+        // 唯一的frame正在分析中，沒有可以取代的排隊frame
+        assertEquals(1, queue.frameAvailable(1))
+        queue.release()
+
+        assertEquals(0, analyzing)
+        assertNull(queue.frameAvailable(2))
+        assertEquals(2, queue.analyzeNext())
+        assertEquals(1L, queue.droppedFrameCount)
+    }
+
+    @Test
+    fun dropOldest_maxImages2_keepsNewestTwo() {
+        val queue = AnalysisQueue<Int>(2, BackpressureStrategy.DROP_OLDEST)
+
+        for (frame in 0 until 5) {
+            queue.frameAvailable(frame)
+        }
+
+        assertEquals(3, queue.analyzeNext())
+        assertEquals(4, queue.analyzeNext())
+        assertEquals(3L, queue.droppedFrameCount)
+        assertEquals(2, queue.maxQueueDepth)
+    }
+
+    @Test
+    fun dropNewest_maxImages1_keepsFirstFrame() {
+        val queue = AnalysisQueue<Int>(1, BackpressureStrategy.DROP_NEWEST)
+
+        assertNull(queue.frameAvailable(0))
+        assertEquals(1, queue.frameAvailable(1))
+        assertEquals(2, queue.frameAvailable(2))
+
+        assertEquals(0, queue.analyzeNext())
+        assertEquals(2L, queue.droppedFrameCount)
+    }
+
+    @Test
+    fun dropNewest_maxImages2_keepsFirstTwo() {
+        val queue = AnalysisQueue<Int>(2, BackpressureStrategy.DROP_NEWEST)
+
+        for (frame in 0 until 5) {
+            queue.frameAvailable(frame)
+        }
+
+        assertEquals(0, queue.analyzeNext())
+        assertEquals(1, queue.analyzeNext())
+        assertNull(queue.analyzeNext())
+        assertEquals(3L, queue.droppedFrameCount)
+    }
+
+    @Test
+    fun block_maxImages1_neverDrops() {
+        val queue = AnalysisQueue<Int>(1, BackpressureStrategy.BLOCK)
+
+        assertNull(queue.frameAvailable(0))
+        assertFalse(queue.shouldAcquire())
+        assertFalse(queue.shouldAcquire())
+        assertEquals(2, queue.pendingInReader)
+        assertFalse(queue.takePending())
+
+        assertEquals(0, queue.analyzeNext())
+        assertTrue(queue.takePending())
+        assertNull(queue.offer(1))
+        assertFalse(queue.takePending())
+
+        assertEquals(1, queue.analyzeNext())
+        assertTrue(queue.takePending())
+        assertNull(queue.offer(2))
+        assertEquals(2, queue.analyzeNext())
+
+        assertEquals(0L, queue.droppedFrameCount)
+        assertEquals(0, queue.pendingInReader)
+    }
+
+    @Test
+    fun block_maxImages2_neverDrops() {
+        val queue = AnalysisQueue<Int>(2, BackpressureStrategy.BLOCK)
+
+        assertNull(queue.frameAvailable(0))
+        assertNull(queue.frameAvailable(1))
+        assertFalse(queue.shouldAcquire())
+        assertEquals(1, queue.pendingInReader)
+
+        assertEquals(0, queue.analyzeNext())
+        assertTrue(queue.takePending())
+        assertNull(queue.offer(2))
+
+        assertEquals(1, queue.analyzeNext())
+        assertEquals(2, queue.analyzeNext())
+        assertEquals(0L, queue.droppedFrameCount)
+    }
+
+    @Test
+    fun clear_returnsQueuedFramesOnly() {
+        val queue = AnalysisQueue<Int>(2, BackpressureStrategy.BLOCK)
+        queue.frameAvailable(0)
+        queue.frameAvailable(1)
+        queue.shouldAcquire()
+        queue.poll()
+
+        assertEquals(listOf(1), queue.clear())
+        // 分析中的frame尚未釋放
+        assertEquals(1, queue.inFlight)
+        assertEquals(0, queue.pendingInReader)
+        queue.release()
+        assertEquals(0, queue.inFlight)
+    }
+}
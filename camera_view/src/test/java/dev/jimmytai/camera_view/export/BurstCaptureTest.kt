@@ -0,0 +1,50 @@
+package dev.jimmytai.camera_view.export
+
+import dev.jimmytai.camera_view.constant.SnapshotFormat
+import dev.jimmytai.camera_view.model.BurstResult
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.Future
+
+/**
+ * GLThread釋放時連拍的future必須結束，不論BurstCapture是否已加入GLThread
+ */
+class BurstCaptureTest {
+    private val capture = BurstCapture(
+        frameCount = 5,
+        size = null,
+        format = SnapshotFormat.JPEG,
+        quality = 90,
+        slotCount = 2,
+        cacheDir = File(System.getProperty("java.io.tmpdir")!!),
+        onDrained = {}
+    )
+
+    @Test
+    fun onDiscarded_failsFuture() {
+        capture.onDiscarded()
+
+        assertFailed(capture.future)
+    }
+
+    @Test
+    fun onDetach_beforeBurstDrained_failsFuture() {
+        // 加入GLThread後還沒有任何frame，沒有GL資源需要釋放
+        capture.onDetach()
+
+        assertFailed(capture.future)
+    }
+
+    private fun assertFailed(future: Future<BurstResult>) {
+        assertTrue(future.isDone)
+        try {
+            future.get()
+            fail("future should fail")
+        } catch (e: ExecutionException) {
+            assertTrue(e.cause is IllegalStateException)
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package dev.jimmytai.camera_view.export
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertNotEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * 以BurstCapture在GLThread中的呼叫順序(先交付上一個frame讀回的slot、擷取、排入讀回)模擬連拍
+ */
+class BurstSchedulerTest {
+    @Test
+    fun fastEncoder_capturesConsecutiveFrames() {
+        val scheduler = BurstScheduler(frameCount = 20, slotCount = 4, maxEncoding = 4)
+        var draining: Int = BurstScheduler.NO_SLOT
+        var frames = 0
+        while (!scheduler.isDrainComplete) {
+            frames++
+            if (draining != BurstScheduler.NO_SLOT) {
+                scheduler.onDrained(draining)
+                // 編碼在下一個frame前完成
+                scheduler.onEncoded()
+            }
+            scheduler.acquireSlot()
+            draining = scheduler.nextToDrain()
+        }
+
+        assertEquals(20, scheduler.capturedFrameCount)
+        assertEquals(0, scheduler.skippedFrameCount)
+        assertTrue(scheduler.isFinished)
+        // 上一個frame的slot在擷取前就已交付，編碼跟得上時只需要一個slot
+        assertEquals(1, scheduler.maxSlotsInUse)
+        assertEquals(21, frames)
+    }
+
+    @Test
+    fun slowEncoder_skipsFramesInsteadOfWaiting() {
+        val scheduler = BurstScheduler(frameCount = 10, slotCount = 3, maxEncoding = 3)
+        var draining: Int = BurstScheduler.NO_SLOT
+        var encoding = 0
+        var frame = 0
+        while (!scheduler.isDrainComplete) {
+            frame++
+            if (draining != BurstScheduler.NO_SLOT) {
+                scheduler.onDrained(draining)
+                encoding++
+            }
+            // 每4個frame才完成一張編碼
+            if (frame % 4 == 0 && encoding > 0) {
+                encoding--
+                scheduler.onEncoded()
+            }
+            scheduler.acquireSlot()
+            draining = scheduler.nextToDrain()
+            assertTrue(scheduler.encodingCount <= 3)
+        }
+
+        assertEquals(10, scheduler.capturedFrameCount)
+        assertTrue(scheduler.skippedFrameCount > 0)
+        assertEquals(3, scheduler.maxSlotsInUse)
+    }
+
+    @Test
+    fun fullSlots_skipAndCountFrames() {
+        val scheduler = BurstScheduler(frameCount = 5, slotCount = 2, maxEncoding = 1)
+        assertNotEquals(BurstScheduler.NO_SLOT, scheduler.acquireSlot())
+        assertNotEquals(BurstScheduler.NO_SLOT, scheduler.acquireSlot())
+        assertEquals(BurstScheduler.NO_SLOT, scheduler.acquireSlot())
+        assertEquals(BurstScheduler.NO_SLOT, scheduler.acquireSlot())
+        assertEquals(2, scheduler.skippedFrameCount)
+        assertEquals(2, scheduler.capturedFrameCount)
+    }
+
+    @Test
+    fun drain_followsCaptureOrderAndEncoderLimit() {
+        val scheduler = BurstScheduler(frameCount = 3, slotCount = 3, maxEncoding = 1)
+        val first: Int = scheduler.acquireSlot()
+        val second: Int = scheduler.acquireSlot()
+
+        assertEquals(first, scheduler.nextToDrain())
+        assertEquals(0, scheduler.frameIndexOf(first))
+        // 編碼中的數量已達上限
+        assertEquals(BurstScheduler.NO_SLOT, scheduler.nextToDrain())
+
+        scheduler.onDrained(first)
+        assertEquals(BurstScheduler.NO_SLOT, scheduler.nextToDrain())
+        scheduler.onEncoded()
+        assertEquals(second, scheduler.nextToDrain())
+        assertEquals(1, scheduler.frameIndexOf(second))
+    }
+
+    @Test
+    fun freedSlot_isReused() {
+        val scheduler = BurstScheduler(frameCount = 3, slotCount = 1, maxEncoding = 1)
+        val slot: Int = scheduler.acquireSlot()
+        scheduler.nextToDrain()
+        scheduler.onDrained(slot)
+        scheduler.onEncoded()
+
+        assertEquals(slot, scheduler.acquireSlot())
+        assertEquals(1, scheduler.frameIndexOf(slot))
+        assertFalse(scheduler.isCaptureComplete)
+    }
+
+    @Test
+    fun completedCapture_stopsAcquiring() {
+        val scheduler = BurstScheduler(frameCount = 1, slotCount = 2, maxEncoding = 2)
+        scheduler.acquireSlot()
+        assertTrue(scheduler.isCaptureComplete)
+        assertEquals(BurstScheduler.NO_SLOT, scheduler.acquireSlot())
+        assertEquals(0, scheduler.skippedFrameCount)
+        assertFalse(scheduler.isDrainComplete)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun drainedTwice_throws() {
+        val scheduler = BurstScheduler(frameCount = 2, slotCount = 1, maxEncoding = 1)
+        val slot: Int = scheduler.acquireSlot()
+        scheduler.nextToDrain()
+        scheduler.onDrained(slot)
+        scheduler.onDrained(slot)
+    }
+}
@@ -0,0 +1,59 @@
+package dev.jimmytai.camera_view.export
+
+import com.google.common.util.concurrent.ListenableFuture
+import dev.jimmytai.camera_view.constant.SnapshotFormat
+import dev.jimmytai.camera_view.model.Snapshot
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.ExecutionException
+
+/**
+ * GLThread釋放時，尚未加入的SnapshotCapture只會收到onDiscarded
+ */
+class SnapshotCaptureTest {
+    private val capture = SnapshotCapture(File(System.getProperty("java.io.tmpdir")!!))
+
+    @Test
+    fun onDiscarded_failsQueuedRequests() {
+        val future: ListenableFuture<Snapshot> = capture.request(null, SnapshotFormat.JPEG, 90)
+
+        capture.onDiscarded()
+
+        assertFailed(future)
+    }
+
+    @Test
+    fun onDiscarded_failsLaterRequests() {
+        capture.onDiscarded()
+
+        assertFailed(capture.request(null, SnapshotFormat.WEBP, 100))
+    }
+
+    @Test
+    fun discardedThenSnapshotAgain_replacementAcceptsRequests() {
+        capture.onDiscarded()
+        assertTrue(capture.isDetached)
+
+        // CameraController.takeSnapshot以新的SnapshotCapture取代已被捨棄的
+        val replacement = SnapshotCapture(File(System.getProperty("java.io.tmpdir")!!))
+        val future: ListenableFuture<Snapshot> = replacement.request(null, SnapshotFormat.JPEG, 90)
+
+        assertFalse(replacement.isDetached)
+        assertFalse(future.isDone)
+        replacement.onDiscarded()
+        assertFailed(future)
+    }
+
+    private fun assertFailed(future: ListenableFuture<Snapshot>) {
+        assertTrue(future.isDone)
+        try {
+            future.get()
+            fail("future should fail")
+        } catch (e: ExecutionException) {
+            assertTrue(e.cause is IllegalStateException)
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package dev.jimmytai.camera_view.gles
+
+import org.lwjgl.PointerBuffer
+import org.lwjgl.egl.EGL
+import org.lwjgl.egl.EGL10
+import org.lwjgl.egl.EGL12
+import org.lwjgl.egl.EGL13
+import org.lwjgl.egl.EGL15
+import org.lwjgl.egl.EGLCapabilities
+import org.lwjgl.egl.EXTPlatformBase
+import org.lwjgl.opengles.GLES
+
+/**
+ * 在桌面Linux上以EGL建立不需要視窗的GLES context，供JVM測試執行真正的shader
+ *
+ * 優先使用Mesa的surfaceless platform(EGL_PLATFORM_SURFACELESS_MESA)，沒有GPU時由llvmpipe軟體繪製；
+ * 不支援時退回預設display。所有繪製都在FBO中進行，surface只是1x1的pbuffer。
+ * 與Android相同，context只在呼叫[makeCurrent]的執行緒中有效
+ *
+ * 需要系統的libEGL.so.1與libGLESv2.so.2(Debian/Ubuntu: libegl1 libgles2 libegl-mesa0)，
+ * 用[isAvailable]判斷，無法建立時略過測試而不是失敗
+ */
+class DesktopEglContext private constructor() : AutoCloseable {
+    companion object {
+        private const val EGL_DEFAULT_DISPLAY: Long = 0L
+
+        private const val EGL_PLATFORM_SURFACELESS_MESA: Int = 0x31DD
+
+        /**
+         * 這台機器能否建立GLES context，只檢查一次
+         */
+        val isAvailable: Boolean by lazy {
+            try {
+                DesktopEglContext().close()
+                true
+            } catch (e: Throwable) {
+                false
+            }
+        }
+
+        /**
+         * 建立context並設為目前執行緒的current context
+         */
+        fun create(): DesktopEglContext = DesktopEglContext().also { it.makeCurrent() }
+    }
+
+    private val mDisplay: Long
+
+    private val mSurface: Long
+
+    private val mContext: Long
+
+    /**
+     * 2或3，與[EglCore.getGlVersion]相同，決定[TextureReader]是否使用PBO
+     */
+    val glVersion: Int
+
+    /**
+     * [makeCurrent]的呼叫次數，用來確認每個frame的context切換
+     */
+    var makeCurrentCount: Int = 0
+        private set
+
+    init {
+        val display: Long = openDisplay()
+        check(display != EGL10.EGL_NO_DISPLAY) { "no EGL display" }
+        mDisplay = display
+
+        var surface: Long = EGL10.EGL_NO_SURFACE
+        var context: Long = EGL10.EGL_NO_CONTEXT
+        var version = 0
+        try {
+            val major: IntArray = IntArray(1)
+            val minor: IntArray = IntArray(1)
+            check(EGL10.eglInitialize(display, major, minor)) {
+                "eglInitialize failed: 0x${Integer.toHexString(EGL10.eglGetError())}"
+            }
+            EGL.createDisplayCapabilities(display, major[0], minor[0])
+            check(EGL12.eglBindAPI(EGL12.EGL_OPENGL_ES_API)) { "eglBindAPI failed" }
+
+            // 與EglCore.FLAG_TRY_GLES3相同：先嘗試GLES3，失敗時退回GLES2
+            for (clientVersion in intArrayOf(3, 2)) {
+                val renderableType: Int =
+                    if (clientVersion == 3) EGL15.EGL_OPENGL_ES3_BIT else EGL13.EGL_OPENGL_ES2_BIT
+                val configs: PointerBuffer = PointerBuffer.allocateDirect(1)
+                val numConfigs: IntArray = IntArray(1)
+                val attributes: IntArray = intArrayOf(
+                    EGL10.EGL_RED_SIZE, 8,
+                    EGL10.EGL_GREEN_SIZE, 8,
+                    EGL10.EGL_BLUE_SIZE, 8,
+                    EGL10.EGL_ALPHA_SIZE, 8,
+                    EGL12.EGL_RENDERABLE_TYPE, renderableType,
+                    EGL10.EGL_SURFACE_TYPE, EGL10.EGL_PBUFFER_BIT,
+                    EGL10.EGL_NONE
+                )
+                if (!EGL10.eglChooseConfig(display, attributes, configs, numConfigs) ||
+                    numConfigs[0] == 0
+                ) {
+                    continue
+                }
+                val config: Long = configs.get(0)
+                context = EGL10.eglCreateContext(
+                    display, config, EGL10.EGL_NO_CONTEXT,
+                    intArrayOf(EGL13.EGL_CONTEXT_CLIENT_VERSION, clientVersion, EGL10.EGL_NONE)
+                )
+                if (context == EGL10.EGL_NO_CONTEXT) continue
+                surface = EGL10.eglCreatePbufferSurface(
+                    display, config,
+                    intArrayOf(EGL10.EGL_WIDTH, 1, EGL10.EGL_HEIGHT, 1, EGL10.EGL_NONE)
+                )
+                check(surface != EGL10.EGL_NO_SURFACE) {
+                    "eglCreatePbufferSurface failed: 0x${Integer.toHexString(EGL10.eglGetError())}"
+                }
+                version = clientVersion
+                break
+            }
+            check(context != EGL10.EGL_NO_CONTEXT) { "no GLES2/GLES3 config" }
+        } catch (e: Throwable) {
+            if (context != EGL10.EGL_NO_CONTEXT) EGL10.eglDestroyContext(display, context)
+            EGL10.eglTerminate(display)
+            throw e
+        }
+        mSurface = surface
+        mContext = context
+        glVersion = version
+    }
+
+    private fun openDisplay(): Long {
+        val capabilities: EGLCapabilities = EGL.getCapabilities()
+        val display: Long = when {
+            capabilities.eglGetPlatformDisplay != 0L -> EGL15.eglGetPlatformDisplay(
+                EGL_PLATFORM_SURFACELESS_MESA, EGL_DEFAULT_DISPLAY, null as PointerBuffer?
+            )
+
+            capabilities.eglGetPlatformDisplayEXT != 0L -> EXTPlatformBase.eglGetPlatformDisplayEXT(
+                EGL_PLATFORM_SURFACELESS_MESA, EGL_DEFAULT_DISPLAY, null as IntArray?
+            )
+
+            else -> EGL10.EGL_NO_DISPLAY
+        }
+        return if (display != EGL10.EGL_NO_DISPLAY) display else EGL10.eglGetDisplay(EGL_DEFAULT_DISPLAY)
+    }
+
+    fun makeCurrent() {
+        check(EGL10.eglMakeCurrent(mDisplay, mSurface, mSurface, mContext)) {
+            "eglMakeCurrent failed: 0x${Integer.toHexString(EGL10.eglGetError())}"
+        }
+        makeCurrentCount++
+        // LWJGL的GLES capabilities是thread-local，切換後重新載入
+        GLES.createCapabilities()
+    }
+
+    override fun close() {
+        EGL10.eglMakeCurrent(mDisplay, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_SURFACE, EGL10.EGL_NO_CONTEXT)
+        EGL10.eglDestroySurface(mDisplay, mSurface)
+        EGL10.eglDestroyContext(mDisplay, mContext)
+        EGL10.eglTerminate(mDisplay)
+    }
+}
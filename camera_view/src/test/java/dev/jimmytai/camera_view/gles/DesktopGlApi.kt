@@ -0,0 +1,312 @@
+package dev.jimmytai.camera_view.gles
+
+import android.opengl.GLES11Ext
+import org.lwjgl.opengles.GLES20
+import org.lwjgl.opengles.GLES30
+import java.nio.Buffer
+import java.nio.ByteBuffer
+import java.nio.FloatBuffer
+import java.nio.IntBuffer
+
+/**
+ * 透過LWJGL呼叫桌面GLES驅動(例如Mesa llvmpipe)的[GlApi]，搭配[DesktopEglContext]在JVM上執行真正的shader
+ *
+ * 桌面驅動沒有SurfaceTexture，GL_TEXTURE_EXTERNAL_OES以一般的2D texture模擬：
+ * - 含samplerExternalOES的shader改寫為sampler2D
+ * - 綁定到GL_TEXTURE_EXTERNAL_OES的texture只記錄下來，在使用這類program繪製時才暫時綁定到GL_TEXTURE_2D，
+ *   繪製後還原，讓[GlStateCache]記錄的2D綁定與實際狀態一致
+ *
+ * LWJGL只接受direct buffer，與Android的GLES相同，buffer從position開始讀寫
+ */
+class DesktopGlApi : GlApi {
+    companion object {
+        private const val MAX_TEXTURE_UNITS: Int = 8
+
+        private const val EXTERNAL_EXTENSION: String = "#extension GL_OES_EGL_image_external : require"
+    }
+
+    private var mActiveUnit: Int = 0
+
+    /**
+     * 每個texture unit實際綁定的2D texture
+     */
+    private val mTexture2DBindings: IntArray = IntArray(MAX_TEXTURE_UNITS)
+
+    /**
+     * 每個texture unit「綁定」到GL_TEXTURE_EXTERNAL_OES的texture
+     */
+    private val mExternalBindings: IntArray = IntArray(MAX_TEXTURE_UNITS)
+
+    private val mExternalShaders: MutableSet<Int> = HashSet()
+
+    private val mExternalPrograms: MutableSet<Int> = HashSet()
+
+    private var mCurrentProgram: Int = 0
+
+    /**
+     * 暫時將unit上模擬的external texture綁定到GL_TEXTURE_2D執行[block]，之後還原
+     */
+    private inline fun <T> withExternalAs2D(units: IntRange, block: () -> T): T {
+        for (unit in units) {
+            if (mExternalBindings[unit] == 0) continue
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + unit)
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mExternalBindings[unit])
+        }
+        try {
+            return block()
+        } finally {
+            for (unit in units) {
+                if (mExternalBindings[unit] == 0) continue
+                GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + unit)
+                GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, mTexture2DBindings[unit])
+            }
+            GLES20.glActiveTexture(GLES20.GL_TEXTURE0 + mActiveUnit)
+        }
+    }
+
+    private val activeUnitRange: IntRange
+        get() = mActiveUnit..mActiveUnit
+
+    // region GLES20
+
+    override fun glActiveTexture(texture: Int) {
+        mActiveUnit = texture - GLES20.GL_TEXTURE0
+        GLES20.glActiveTexture(texture)
+    }
+
+    override fun glAttachShader(program: Int, shader: Int) {
+        if (shader in mExternalShaders) mExternalPrograms.add(program)
+        GLES20.glAttachShader(program, shader)
+    }
+
+    override fun glBindFramebuffer(target: Int, framebuffer: Int) =
+        GLES20.glBindFramebuffer(target, framebuffer)
+
+    override fun glBindTexture(target: Int, texture: Int) {
+        if (target == GLES11Ext.GL_TEXTURE_EXTERNAL_OES) {
+            mExternalBindings[mActiveUnit] = texture
+            return
+        }
+        if (target == GLES20.GL_TEXTURE_2D) mTexture2DBindings[mActiveUnit] = texture
+        GLES20.glBindTexture(target, texture)
+    }
+
+    override fun glCheckFramebufferStatus(target: Int): Int = GLES20.glCheckFramebufferStatus(target)
+
+    override fun glClear(mask: Int) = GLES20.glClear(mask)
+
+    override fun glClearColor(red: Float, green: Float, blue: Float, alpha: Float) =
+        GLES20.glClearColor(red, green, blue, alpha)
+
+    override fun glCompileShader(shader: Int) = GLES20.glCompileShader(shader)
+
+    override fun glCopyTexSubImage2D(
+        target: Int, level: Int, xoffset: Int, yoffset: Int, x: Int, y: Int, width: Int, height: Int
+    ) = GLES20.glCopyTexSubImage2D(target, level, xoffset, yoffset, x, y, width, height)
+
+    override fun glCreateProgram(): Int = GLES20.glCreateProgram()
+
+    override fun glCreateShader(type: Int): Int = GLES20.glCreateShader(type)
+
+    override fun glDeleteFramebuffers(n: Int, framebuffers: IntArray, offset: Int) {
+        for (i in 0 until n) GLES20.glDeleteFramebuffers(framebuffers[offset + i])
+    }
+
+    override fun glDeleteProgram(program: Int) {
+        mExternalPrograms.remove(program)
+        GLES20.glDeleteProgram(program)
+    }
+
+    override fun glDeleteShader(shader: Int) {
+        mExternalShaders.remove(shader)
+        GLES20.glDeleteShader(shader)
+    }
+
+    override fun glDeleteTextures(n: Int, textures: IntArray, offset: Int) {
+        for (i in 0 until n) {
+            val texture: Int = textures[offset + i]
+            // 與GL相同，刪除的texture自動解除綁定
+            for (unit in 0 until MAX_TEXTURE_UNITS) {
+                if (mTexture2DBindings[unit] == texture) mTexture2DBindings[unit] = 0
+                if (mExternalBindings[unit] == texture) mExternalBindings[unit] = 0
+            }
+            GLES20.glDeleteTextures(texture)
+        }
+    }
+
+    override fun glDisableVertexAttribArray(index: Int) = GLES20.glDisableVertexAttribArray(index)
+
+    override fun glDrawArrays(mode: Int, first: Int, count: Int) {
+        if (mCurrentProgram !in mExternalPrograms) {
+            GLES20.glDrawArrays(mode, first, count)
+            return
+        }
+        withExternalAs2D(0 until MAX_TEXTURE_UNITS) { GLES20.glDrawArrays(mode, first, count) }
+    }
+
+    override fun glEnableVertexAttribArray(index: Int) = GLES20.glEnableVertexAttribArray(index)
+
+    override fun glFramebufferTexture2D(
+        target: Int, attachment: Int, textarget: Int, texture: Int, level: Int
+    ) = GLES20.glFramebufferTexture2D(target, attachment, textarget, texture, level)
+
+    override fun glGenFramebuffers(n: Int, framebuffers: IntArray, offset: Int) {
+        for (i in 0 until n) framebuffers[offset + i] = GLES20.glGenFramebuffers()
+    }
+
+    override fun glGenTextures(n: Int, textures: IntArray, offset: Int) {
+        for (i in 0 until n) textures[offset + i] = GLES20.glGenTextures()
+    }
+
+    override fun glGetAttribLocation(program: Int, name: String): Int =
+        GLES20.glGetAttribLocation(program, name)
+
+    override fun glGetError(): Int = GLES20.glGetError()
+
+    override fun glGetIntegerv(pname: Int, params: IntArray, offset: Int) {
+        params[offset] = GLES20.glGetInteger(pname)
+    }
+
+    override fun glGetProgramInfoLog(program: Int): String = GLES20.glGetProgramInfoLog(program)
+
+    override fun glGetProgramiv(program: Int, pname: Int, params: IntArray, offset: Int) {
+        params[offset] = GLES20.glGetProgrami(program, pname)
+    }
+
+    override fun glGetShaderInfoLog(shader: Int): String = GLES20.glGetShaderInfoLog(shader)
+
+    override fun glGetShaderiv(shader: Int, pname: Int, params: IntArray, offset: Int) {
+        params[offset] = GLES20.glGetShaderi(shader, pname)
+    }
+
+    override fun glGetString(name: Int): String? = GLES20.glGetString(name)
+
+    override fun glGetUniformLocation(program: Int, name: String): Int =
+        GLES20.glGetUniformLocation(program, name)
+
+    override fun glIsTexture(texture: Int): Boolean = GLES20.glIsTexture(texture)
+
+    override fun glLinkProgram(program: Int) = GLES20.glLinkProgram(program)
+
+    override fun glReadPixels(
+        x: Int, y: Int, width: Int, height: Int, format: Int, type: Int, pixels: Buffer
+    ) = when (pixels) {
+        is ByteBuffer -> GLES20.glReadPixels(x, y, width, height, format, type, pixels)
+        is IntBuffer -> GLES20.glReadPixels(x, y, width, height, format, type, pixels)
+        is FloatBuffer -> GLES20.glReadPixels(x, y, width, height, format, type, pixels)
+        else -> throw IllegalArgumentException("unsupported buffer ${pixels.javaClass}")
+    }
+
+    override fun glShaderSource(shader: Int, string: String) {
+        if (!string.contains("samplerExternalOES")) {
+            GLES20.glShaderSource(shader, string)
+            return
+        }
+        mExternalShaders.add(shader)
+        GLES20.glShaderSource(
+            shader,
+            string.replace(EXTERNAL_EXTENSION, "").replace("samplerExternalOES", "sampler2D")
+        )
+    }
+
+    override fun glTexImage2D(
+        target: Int, level: Int, internalformat: Int, width: Int, height: Int, border: Int,
+        format: Int, type: Int, pixels: Buffer?
+    ) = when (pixels) {
+        null -> GLES20.glTexImage2D(
+            target, level, internalformat, width, height, border, format, type, null as ByteBuffer?
+        )
+
+        is ByteBuffer -> GLES20.glTexImage2D(
+            target, level, internalformat, width, height, border, format, type, pixels
+        )
+
+        is IntBuffer -> GLES20.glTexImage2D(
+            target, level, internalformat, width, height, border, format, type, pixels
+        )
+
+        else -> throw IllegalArgumentException("unsupported buffer ${pixels.javaClass}")
+    }
+
+    override fun glTexParameterf(target: Int, pname: Int, param: Float) {
+        if (target == GLES11Ext.GL_TEXTURE_EXTERNAL_OES) {
+            withExternalAs2D(activeUnitRange) {
+                GLES20.glTexParameterf(GLES20.GL_TEXTURE_2D, pname, param)
+            }
+            return
+        }
+        GLES20.glTexParameterf(target, pname, param)
+    }
+
+    override fun glTexParameteri(target: Int, pname: Int, param: Int) {
+        if (target == GLES11Ext.GL_TEXTURE_EXTERNAL_OES) {
+            withExternalAs2D(activeUnitRange) {
+                GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, pname, param)
+            }
+            return
+        }
+        GLES20.glTexParameteri(target, pname, param)
+    }
+
+    override fun glUniform1f(location: Int, x: Float) = GLES20.glUniform1f(location, x)
+
+    override fun glUniform1i(location: Int, x: Int) = GLES20.glUniform1i(location, x)
+
+    override fun glUniform2f(location: Int, x: Float, y: Float) = GLES20.glUniform2f(location, x, y)
+
+    override fun glUniformMatrix4fv(
+        location: Int, count: Int, transpose: Boolean, value: FloatArray, offset: Int
+    ) {
+        val matrices: FloatArray =
+            if (offset == 0 && value.size == count * 16) value
+            else value.copyOfRange(offset, offset + count * 16)
+        GLES20.glUniformMatrix4fv(location, transpose, matrices)
+    }
+
+    override fun glUseProgram(program: Int) {
+        mCurrentProgram = program
+        GLES20.glUseProgram(program)
+    }
+
+    override fun glVertexAttribPointer(
+        indx: Int, size: Int, type: Int, normalized: Boolean, stride: Int, ptr: Buffer
+    ) = when (ptr) {
+        is FloatBuffer -> GLES20.glVertexAttribPointer(indx, size, type, normalized, stride, ptr)
+        is ByteBuffer -> GLES20.glVertexAttribPointer(indx, size, type, normalized, stride, ptr)
+        else -> throw IllegalArgumentException("unsupported buffer ${ptr.javaClass}")
+    }
+
+    override fun glViewport(x: Int, y: Int, width: Int, height: Int) =
+        GLES20.glViewport(x, y, width, height)
+
+    // endregion
+
+    // region GLES30
+
+    override fun glBindBuffer(target: Int, buffer: Int) = GLES20.glBindBuffer(target, buffer)
+
+    override fun glBufferData(target: Int, size: Int, data: Buffer?, usage: Int) = when (data) {
+        null -> GLES20.glBufferData(target, size.toLong(), usage)
+        is ByteBuffer -> GLES20.glBufferData(target, data, usage)
+        else -> throw IllegalArgumentException("unsupported buffer ${data.javaClass}")
+    }
+
+    override fun glDeleteBuffers(n: Int, buffers: IntArray, offset: Int) {
+        for (i in 0 until n) GLES20.glDeleteBuffers(buffers[offset + i])
+    }
+
+    override fun glGenBuffers(n: Int, buffers: IntArray, offset: Int) {
+        for (i in 0 until n) buffers[offset + i] = GLES20.glGenBuffers()
+    }
+
+    override fun glMapBufferRange(target: Int, offset: Int, length: Int, access: Int): Buffer? =
+        GLES30.glMapBufferRange(target, offset.toLong(), length.toLong(), access)
+
+    override fun glReadPixels(
+        x: Int, y: Int, width: Int, height: Int, format: Int, type: Int, offset: Int
+    ) = GLES20.glReadPixels(x, y, width, height, format, type, offset.toLong())
+
+    override fun glUnmapBuffer(target: Int): Boolean = GLES30.glUnmapBuffer(target)
+
+    // endregion
+}
@@ -0,0 +1,115 @@
+package dev.jimmytai.camera_view.gles
+
+import android.opengl.GLES11Ext
+import android.opengl.GLES20
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class GlStateCacheTest {
+    private val gl = RecordingGlApi()
+
+    private val stateCache = GlStateCache(gl)
+
+    @Test
+    fun repeatedProgram_isSkipped() {
+        repeat(5) { stateCache.useProgram(3) }
+        stateCache.useProgram(4)
+        stateCache.useProgram(4)
+
+        assertEquals(2, gl.callCount("glUseProgram"))
+        assertEquals(4, gl.currentProgram)
+        assertEquals(5L, stateCache.skippedCalls)
+    }
+
+    @Test
+    fun repeatedTextureBinding_isSkippedPerUnitAndTarget() {
+        stateCache.activeTexture(GLES20.GL_TEXTURE0)
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, 7)
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, 7)
+        // 不同target的綁定各自記錄
+        stateCache.bindTexture(GLES11Ext.GL_TEXTURE_EXTERNAL_OES, 7)
+        stateCache.activeTexture(GLES20.GL_TEXTURE0)
+        // 不同的texture unit各自記錄
+        stateCache.activeTexture(GLES20.GL_TEXTURE1)
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, 7)
+        stateCache.activeTexture(GLES20.GL_TEXTURE0)
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, 7)
+
+        assertEquals(3, gl.callCount("glBindTexture"))
+        assertEquals(3, gl.callCount("glActiveTexture"))
+        assertEquals(3L, stateCache.skippedCalls)
+    }
+
+    @Test
+    fun repeatedViewport_isSkipped() {
+        repeat(3) { stateCache.viewport(0, 0, 1280, 720) }
+        stateCache.viewport(0, 0, 640, 360)
+
+        assertEquals(2, gl.callCount("glViewport"))
+        assertEquals(2L, stateCache.skippedCalls)
+    }
+
+    @Test
+    fun repeatedFrameBuffer_isSkipped() {
+        repeat(3) { stateCache.bindFrameBuffer(5) }
+        stateCache.bindFrameBuffer(0)
+
+        assertEquals(2, gl.callCount("glBindFramebuffer"))
+        assertEquals(0, gl.boundFrameBuffer)
+    }
+
+    @Test
+    fun invalidate_forcesEveryStateAgain() {
+        setAllState()
+        val generation: Int = stateCache.generation
+        gl.resetCounters()
+
+        stateCache.invalidate()
+        setAllState()
+
+        assertEquals(generation + 1, stateCache.generation)
+        assertEquals(1, gl.callCount("glUseProgram"))
+        assertEquals(1, gl.callCount("glActiveTexture"))
+        assertEquals(1, gl.callCount("glBindTexture"))
+        assertEquals(1, gl.callCount("glBindFramebuffer"))
+        assertEquals(1, gl.callCount("glViewport"))
+    }
+
+    @Test
+    fun deletedObjects_areBoundAgain() {
+        setAllState()
+        gl.resetCounters()
+
+        stateCache.onProgramDeleted(3)
+        stateCache.onTextureDeleted(7)
+        stateCache.onFrameBufferDeleted(5)
+        setAllState()
+
+        assertEquals(1, gl.callCount("glUseProgram"))
+        assertEquals(1, gl.callCount("glBindTexture"))
+        assertEquals(1, gl.callCount("glBindFramebuffer"))
+        // 與刪除無關的狀態仍然略過
+        assertEquals(0, gl.callCount("glActiveTexture"))
+        assertEquals(0, gl.callCount("glViewport"))
+    }
+
+    @Test
+    fun cachedUniform_uploadsAgainAfterInvalidate() {
+        val uniform = CachedUniformMatrix4()
+        val matrix = FloatArray(16).also { Matrix4Util.setIdentity(it) }
+
+        repeat(3) { uniform.upload(stateCache, 1, matrix) }
+        stateCache.invalidate()
+        uniform.upload(stateCache, 1, matrix)
+
+        assertEquals(2, gl.callCount("glUniformMatrix4fv"))
+    }
+
+    private fun setAllState() {
+        stateCache.useProgram(3)
+        stateCache.activeTexture(GLES20.GL_TEXTURE0)
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, 7)
+        stateCache.bindFrameBuffer(5)
+        stateCache.viewport(0, 0, 1280, 720)
+    }
+}
@@ -0,0 +1,163 @@
+package dev.jimmytai.camera_view.gles
+
+import dev.jimmytai.camera_view.constant.CropScaleType
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+/**
+ * 期望值依android.opengl.Matrix的定義手算(column-major)
+ */
+class Matrix4UtilTest {
+    private val epsilon = 1e-5f
+
+    private fun identity(): FloatArray = FloatArray(16).also { Matrix4Util.setIdentity(it) }
+
+    @Test
+    fun ortho_matchesDefinition() {
+        val m = FloatArray(16)
+        Matrix4Util.ortho(m, -0.5f, 0.5f, -2f, 2f, 1f, 3f)
+        assertArrayEquals(
+            floatArrayOf(
+                2f, 0f, 0f, 0f,
+                0f, 0.5f, 0f, 0f,
+                0f, 0f, -1f, 0f,
+                0f, 0f, -2f, 1f
+            ),
+            m, epsilon
+        )
+    }
+
+    @Test
+    fun lookAt_fromPositiveZ_isTranslation() {
+        val m = FloatArray(16)
+        Matrix4Util.lookAt(m, 0f, 0f, 1f, 0f, 0f, 0f, 0f, 1f, 0f)
+        val expected = identity().also { it[14] = -1f }
+        assertArrayEquals(expected, m, epsilon)
+    }
+
+    @Test
+    fun multiply_isColumnMajor() {
+        // 平移(1, 2, 3)後縮放2倍：scale * translate
+        val translate = identity().also {
+            it[12] = 1f
+            it[13] = 2f
+            it[14] = 3f
+        }
+        val scale = identity().also { Matrix4Util.scale(it, 2f, 2f, 2f) }
+        val result = FloatArray(16)
+        Matrix4Util.multiply(result, scale, translate)
+        assertArrayEquals(
+            floatArrayOf(
+                2f, 0f, 0f, 0f,
+                0f, 2f, 0f, 0f,
+                0f, 0f, 2f, 0f,
+                2f, 4f, 6f, 1f
+            ),
+            result, epsilon
+        )
+    }
+
+    @Test
+    fun multiply_allowsAliasing() {
+        val lhs = identity().also { Matrix4Util.rotateZ(it, 30f) }
+        val rhs = identity().also { it[12] = 5f }
+        val expected = FloatArray(16)
+        Matrix4Util.multiply(expected, lhs, rhs)
+
+        Matrix4Util.multiply(lhs, lhs, rhs)
+        assertArrayEquals(expected, lhs, epsilon)
+    }
+
+    @Test
+    fun rotateZ_90_mapsXToY() {
+        val m = identity()
+        Matrix4Util.rotateZ(m, 90f)
+        assertArrayEquals(
+            floatArrayOf(
+                0f, 1f, 0f, 0f,
+                -1f, 0f, 0f, 0f,
+                0f, 0f, 1f, 0f,
+                0f, 0f, 0f, 1f
+            ),
+            m, epsilon
+        )
+    }
+
+    @Test
+    fun flip_negatesAxes() {
+        val m = identity()
+        Matrix4Util.flip(m, x = false, y = true)
+        assertArrayEquals(
+            floatArrayOf(
+                1f, 0f, 0f, 0f,
+                0f, -1f, 0f, 0f,
+                0f, 0f, 1f, 0f,
+                0f, 0f, 0f, 1f
+            ),
+            m, epsilon
+        )
+    }
+
+    @Test
+    fun crop_centerCrop_landscapeIntoPortrait() {
+        val m = identity()
+        Matrix4Util.crop(m, CropScaleType.CENTER_CROP, 1920, 1080, 1080, 1920)
+        // 只顯示中間 (9/16) / (16/9) 寬度的畫面，x放大為其倒數
+        val visible: Float = (1080f / 1920f) / (1920f / 1080f)
+        assertArrayEquals(
+            floatArrayOf(
+                1f / visible, 0f, 0f, 0f,
+                0f, 1f, 0f, 0f,
+                0f, 0f, -1f, 0f,
+                0f, 0f, -1f, 1f
+            ),
+            m, epsilon
+        )
+    }
+
+    @Test
+    fun crop_centerInside_portraitIntoLandscape() {
+        val m = identity()
+        Matrix4Util.crop(m, CropScaleType.CENTER_INSIDE, 1080, 1920, 1920, 1080)
+        val visible: Float = (1920f / 1080f) / (1080f / 1920f)
+        assertArrayEquals(
+            floatArrayOf(
+                1f / visible, 0f, 0f, 0f,
+                0f, 1f, 0f, 0f,
+                0f, 0f, -1f, 0f,
+                0f, 0f, -1f, 1f
+            ),
+            m, epsilon
+        )
+    }
+
+    @Test
+    fun crop_invalidSize_leavesMatrix() {
+        val m = identity()
+        Matrix4Util.crop(m, CropScaleType.CENTER_CROP, 0, 1080, 1080, 1920)
+        assertArrayEquals(identity(), m, epsilon)
+    }
+
+    @Test
+    fun invert_roundTripsToIdentity() {
+        val m = identity()
+        Matrix4Util.crop(m, CropScaleType.FIT_START, 1280, 720, 720, 1280)
+        Matrix4Util.rotateZ(m, 270f)
+        Matrix4Util.flip(m, x = true, y = false)
+
+        val inverse = FloatArray(16)
+        assertTrue(Matrix4Util.invert(inverse, m))
+        val product = FloatArray(16)
+        Matrix4Util.multiply(product, m, inverse)
+        assertArrayEquals(identity(), product, epsilon)
+    }
+
+    @Test
+    fun invert_singular_returnsFalse() {
+        val inverse = identity()
+        assertFalse(Matrix4Util.invert(inverse, FloatArray(16)))
+        assertArrayEquals(identity(), inverse, epsilon)
+    }
+}
@@ -0,0 +1,292 @@
+package dev.jimmytai.camera_view.gles
+
+import android.opengl.GLES20
+import android.opengl.GLES30
+import java.nio.Buffer
+import java.nio.ByteBuffer
+
+/**
+ * 在JVM上代替GLES的[GlApi]：配置GL物件名稱、記錄綁定狀態，並統計每個frame關心的效能數字
+ *
+ * 不做實際的繪製，shader一律編譯、連結成功，讀取的像素內容為0；
+ * 計數器可以用[resetCounters]歸零，用來只量測穩定狀態下的frame
+ */
+class RecordingGlApi : GlApi {
+    private var mNextName: Int = 1
+
+    private val mTextures: MutableSet<Int> = HashSet()
+
+    private val mFrameBuffers: MutableSet<Int> = HashSet()
+
+    private val mBuffers: MutableMap<Int, Int> = HashMap()
+
+    private val mCalls: MutableMap<String, Int> = HashMap()
+
+    var boundFrameBuffer: Int = 0
+        private set
+
+    var boundPixelPackBuffer: Int = 0
+        private set
+
+    var currentProgram: Int = 0
+        private set
+
+    var drawCount: Int = 0
+        private set
+
+    var textureAllocationCount: Int = 0
+        private set
+
+    var frameBufferAllocationCount: Int = 0
+        private set
+
+    var programCreationCount: Int = 0
+        private set
+
+    /**
+     * glReadPixels寫入client memory或PBO的byte數
+     */
+    var readPixelsBytes: Long = 0L
+        private set
+
+    /**
+     * 模擬driver無法map PBO，glMapBufferRange回傳null
+     */
+    var failMapBuffer: Boolean = false
+
+    val liveTextureCount: Int
+        get() = mTextures.size
+
+    val liveFrameBufferCount: Int
+        get() = mFrameBuffers.size
+
+    fun callCount(name: String): Int = mCalls[name] ?: 0
+
+    fun resetCounters() {
+        mCalls.clear()
+        drawCount = 0
+        textureAllocationCount = 0
+        frameBufferAllocationCount = 0
+        programCreationCount = 0
+        readPixelsBytes = 0L
+    }
+
+    private fun record(name: String) {
+        mCalls[name] = (mCalls[name] ?: 0) + 1
+    }
+
+    private fun generate(n: Int, names: IntArray, offset: Int, into: MutableSet<Int>) {
+        for (i in 0 until n) {
+            names[offset + i] = mNextName++
+            into.add(names[offset + i])
+        }
+    }
+
+    private fun delete(n: Int, names: IntArray, offset: Int, from: MutableSet<Int>) {
+        for (i in 0 until n) from.remove(names[offset + i])
+    }
+
+    // region GLES20
+
+    override fun glActiveTexture(texture: Int) = record("glActiveTexture")
+
+    override fun glAttachShader(program: Int, shader: Int) = record("glAttachShader")
+
+    override fun glBindFramebuffer(target: Int, framebuffer: Int) {
+        record("glBindFramebuffer")
+        boundFrameBuffer = framebuffer
+    }
+
+    override fun glBindTexture(target: Int, texture: Int) = record("glBindTexture")
+
+    override fun glCheckFramebufferStatus(target: Int): Int {
+        record("glCheckFramebufferStatus")
+        return GLES20.GL_FRAMEBUFFER_COMPLETE
+    }
+
+    override fun glClear(mask: Int) = record("glClear")
+
+    override fun glClearColor(red: Float, green: Float, blue: Float, alpha: Float) =
+        record("glClearColor")
+
+    override fun glCompileShader(shader: Int) = record("glCompileShader")
+
+    override fun glCopyTexSubImage2D(
+        target: Int, level: Int, xoffset: Int, yoffset: Int, x: Int, y: Int, width: Int, height: Int
+    ) = record("glCopyTexSubImage2D")
+
+    override fun glCreateProgram(): Int {
+        record("glCreateProgram")
+        programCreationCount++
+        return mNextName++
+    }
+
+    override fun glCreateShader(type: Int): Int {
+        record("glCreateShader")
+        return mNextName++
+    }
+
+    override fun glDeleteFramebuffers(n: Int, framebuffers: IntArray, offset: Int) {
+        record("glDeleteFramebuffers")
+        delete(n, framebuffers, offset, mFrameBuffers)
+    }
+
+    override fun glDeleteProgram(program: Int) = record("glDeleteProgram")
+
+    override fun glDeleteShader(shader: Int) = record("glDeleteShader")
+
+    override fun glDeleteTextures(n: Int, textures: IntArray, offset: Int) {
+        record("glDeleteTextures")
+        delete(n, textures, offset, mTextures)
+    }
+
+    override fun glDisableVertexAttribArray(index: Int) = record("glDisableVertexAttribArray")
+
+    override fun glDrawArrays(mode: Int, first: Int, count: Int) {
+        record("glDrawArrays")
+        drawCount++
+    }
+
+    override fun glEnableVertexAttribArray(index: Int) = record("glEnableVertexAttribArray")
+
+    override fun glFramebufferTexture2D(
+        target: Int, attachment: Int, textarget: Int, texture: Int, level: Int
+    ) = record("glFramebufferTexture2D")
+
+    override fun glGenFramebuffers(n: Int, framebuffers: IntArray, offset: Int) {
+        record("glGenFramebuffers")
+        frameBufferAllocationCount += n
+        generate(n, framebuffers, offset, mFrameBuffers)
+    }
+
+    override fun glGenTextures(n: Int, textures: IntArray, offset: Int) {
+        record("glGenTextures")
+        textureAllocationCount += n
+        generate(n, textures, offset, mTextures)
+    }
+
+    override fun glGetAttribLocation(program: Int, name: String): Int {
+        record("glGetAttribLocation")
+        return 0
+    }
+
+    override fun glGetError(): Int = GLES20.GL_NO_ERROR
+
+    override fun glGetIntegerv(pname: Int, params: IntArray, offset: Int) {
+        record("glGetIntegerv")
+        params[offset] = 0
+    }
+
+    override fun glGetProgramInfoLog(program: Int): String = ""
+
+    override fun glGetProgramiv(program: Int, pname: Int, params: IntArray, offset: Int) {
+        params[offset] = GLES20.GL_TRUE
+    }
+
+    override fun glGetShaderInfoLog(shader: Int): String = ""
+
+    override fun glGetShaderiv(shader: Int, pname: Int, params: IntArray, offset: Int) {
+        params[offset] = GLES20.GL_TRUE
+    }
+
+    override fun glGetString(name: Int): String = "RecordingGlApi"
+
+    override fun glGetUniformLocation(program: Int, name: String): Int {
+        record("glGetUniformLocation")
+        return 0
+    }
+
+    override fun glIsTexture(texture: Int): Boolean = texture in mTextures
+
+    override fun glLinkProgram(program: Int) = record("glLinkProgram")
+
+    override fun glReadPixels(
+        x: Int, y: Int, width: Int, height: Int, format: Int, type: Int, pixels: Buffer
+    ) {
+        record("glReadPixels")
+        check(pixels.remaining() >= width * height * 4) { "glReadPixels overflows the buffer" }
+        readPixelsBytes += width.toLong() * height * 4
+    }
+
+    override fun glShaderSource(shader: Int, string: String) = record("glShaderSource")
+
+    override fun glTexImage2D(
+        target: Int, level: Int, internalformat: Int, width: Int, height: Int, border: Int,
+        format: Int, type: Int, pixels: Buffer?
+    ) = record("glTexImage2D")
+
+    override fun glTexParameterf(target: Int, pname: Int, param: Float) = record("glTexParameterf")
+
+    override fun glTexParameteri(target: Int, pname: Int, param: Int) = record("glTexParameteri")
+
+    override fun glUniform1f(location: Int, x: Float) = record("glUniform1f")
+
+    override fun glUniform1i(location: Int, x: Int) = record("glUniform1i")
+
+    override fun glUniform2f(location: Int, x: Float, y: Float) = record("glUniform2f")
+
+    override fun glUniformMatrix4fv(
+        location: Int, count: Int, transpose: Boolean, value: FloatArray, offset: Int
+    ) = record("glUniformMatrix4fv")
+
+    override fun glUseProgram(program: Int) {
+        record("glUseProgram")
+        currentProgram = program
+    }
+
+    override fun glVertexAttribPointer(
+        indx: Int, size: Int, type: Int, normalized: Boolean, stride: Int, ptr: Buffer
+    ) = record("glVertexAttribPointer")
+
+    override fun glViewport(x: Int, y: Int, width: Int, height: Int) = record("glViewport")
+
+    // endregion
+
+    // region GLES30
+
+    override fun glBindBuffer(target: Int, buffer: Int) {
+        record("glBindBuffer")
+        if (target == GLES30.GL_PIXEL_PACK_BUFFER) boundPixelPackBuffer = buffer
+    }
+
+    override fun glBufferData(target: Int, size: Int, data: Buffer?, usage: Int) {
+        record("glBufferData")
+        mBuffers[boundPixelPackBuffer] = size
+    }
+
+    override fun glDeleteBuffers(n: Int, buffers: IntArray, offset: Int) {
+        record("glDeleteBuffers")
+        for (i in 0 until n) mBuffers.remove(buffers[offset + i])
+    }
+
+    override fun glGenBuffers(n: Int, buffers: IntArray, offset: Int) {
+        record("glGenBuffers")
+        for (i in 0 until n) {
+            buffers[offset + i] = mNextName++
+            mBuffers[buffers[offset + i]] = 0
+        }
+    }
+
+    override fun glMapBufferRange(target: Int, offset: Int, length: Int, access: Int): Buffer? {
+        record("glMapBufferRange")
+        val size: Int = checkNotNull(mBuffers[boundPixelPackBuffer]) { "no buffer bound" }
+        check(offset + length <= size) { "map range exceeds the buffer size" }
+        if (failMapBuffer) return null
+        return ByteBuffer.allocateDirect(length)
+    }
+
+    override fun glReadPixels(
+        x: Int, y: Int, width: Int, height: Int, format: Int, type: Int, offset: Int
+    ) {
+        record("glReadPixels")
+        check(boundPixelPackBuffer != 0) { "no GL_PIXEL_PACK_BUFFER bound" }
+        readPixelsBytes += width.toLong() * height * 4
+    }
+
+    override fun glUnmapBuffer(target: Int): Boolean {
+        record("glUnmapBuffer")
+        return true
+    }
+
+    // endregion
+}
@@ -0,0 +1,265 @@
+package dev.jimmytai.camera_view.glrenderer
+
+import android.opengl.GLES20
+import android.util.Size
+import dev.jimmytai.camera_view.constant.CropScaleType
+import dev.jimmytai.camera_view.constant.PixelFormat
+import dev.jimmytai.camera_view.constant.TextureFormat
+import dev.jimmytai.camera_view.gles.DesktopEglContext
+import dev.jimmytai.camera_view.gles.DesktopGlApi
+import dev.jimmytai.camera_view.gles.GlStateCache
+import dev.jimmytai.camera_view.gles.Matrix4Util
+import dev.jimmytai.camera_view.gles.TextureReader
+import dev.jimmytai.camera_view.utils.FailOnErrorLogger
+import dev.jimmytai.camera_view.utils.Logger
+import dev.jimmytai.camera_view.utils.YuvConverter
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Assume.assumeTrue
+import org.junit.Before
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+import java.util.Random
+
+/**
+ * 以[DesktopEglContext]在桌面GLES(Mesa llvmpipe)上執行真正的shader，逐pixel驗證GLRenderer的輸出
+ *
+ * 所有轉換都讓輸出pixel的中心落在輸入texel的中心，線性取樣不會混色，結果必須完全相同；
+ * 沒有可用的EGL時略過；設定[REQUIRE_EGL_ENV](CI已安裝Mesa)時無法建立context視為失敗
+ */
+class DesktopRenderTest {
+    companion object {
+        /**
+         * 設定此環境變數時必須能建立EGL context，避免CI上的測試被悄悄略過
+         */
+        private const val REQUIRE_EGL_ENV: String = "CAMERA_VIEW_REQUIRE_EGL"
+    }
+
+    private var mContext: DesktopEglContext? = null
+
+    private lateinit var stateCache: GlStateCache
+
+    private lateinit var renderer: GLRenderer
+
+    @Before
+    fun setUp() {
+        // 只有沒有EGL的機器才略過，要求EGL時由create()丟出實際的錯誤
+        if (System.getenv(REQUIRE_EGL_ENV) == null) {
+            assumeTrue("no desktop EGL/GLES available", DesktopEglContext.isAvailable)
+        }
+        Logger.setCustomLogger(FailOnErrorLogger)
+        mContext = DesktopEglContext.create()
+        stateCache = GlStateCache(DesktopGlApi())
+        renderer = GLRenderer(stateCache)
+    }
+
+    @After
+    fun tearDown() {
+        val context: DesktopEglContext = mContext ?: return
+        renderer.release()
+        context.close()
+        Logger.setCustomLogger(null)
+    }
+
+    /**
+     * 隨機的RGBA pattern，依texture的row順序(第0列在最下方)排列
+     */
+    private fun pattern(width: Int, height: Int, seed: Long = 42L): ByteArray {
+        val random = Random(seed)
+        return ByteArray(width * height * 4) { i ->
+            if (i % 4 == 3) 0xFF.toByte() else random.nextInt(256).toByte()
+        }
+    }
+
+    private fun upload(width: Int, height: Int, pixels: ByteArray): Int {
+        val gl = stateCache.gl
+        val textures = IntArray(1)
+        gl.glGenTextures(1, textures, 0)
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, textures[0])
+        gl.glTexImage2D(
+            GLES20.GL_TEXTURE_2D, 0, GLES20.GL_RGBA, width, height, 0,
+            GLES20.GL_RGBA, GLES20.GL_UNSIGNED_BYTE, direct(pixels)
+        )
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR)
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR)
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE)
+        gl.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE)
+        stateCache.bindTexture(GLES20.GL_TEXTURE_2D, 0)
+        return textures[0]
+    }
+
+    private fun direct(bytes: ByteArray): ByteBuffer =
+        ByteBuffer.allocateDirect(bytes.size).order(ByteOrder.nativeOrder()).put(bytes)
+            .also { it.position(0) }
+
+    private fun toArray(buffer: ByteBuffer): ByteArray =
+        ByteArray(buffer.remaining()).also { buffer.duplicate().get(it) }
+
+    private fun readRgba(textureId: Int, width: Int, height: Int): ByteArray = toArray(
+        renderer.transferTextureToBuffer(
+            textureId, TextureFormat.Texture2D, PixelFormat.RGBA8888, Size(width, height), 1.0f
+        )!!
+    )
+
+    private fun render(
+        input: Int,
+        size: Size,
+        transition: GLRenderer.Transition,
+        format: TextureFormat = TextureFormat.Texture2D
+    ): Int = renderer.transferTextureToTexture(
+        inputTextureId = input,
+        inputTextureFormat = format,
+        outputTextureFormat = TextureFormat.Texture2D,
+        size = size,
+        transition = transition
+    )
+
+    /**
+     * @param source 輸出pixel(x, y)對應的輸入pixel
+     */
+    private fun assertMapped(
+        input: ByteArray,
+        inputWidth: Int,
+        actual: ByteArray,
+        width: Int,
+        height: Int,
+        source: (x: Int, y: Int) -> Pair<Int, Int>
+    ) {
+        assertEquals(width * height * 4, actual.size)
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                val (sx: Int, sy: Int) = source(x, y)
+                for (c in 0 until 4) {
+                    val expected: Byte = input[(sy * inputWidth + sx) * 4 + c]
+                    val value: Byte = actual[(y * width + x) * 4 + c]
+                    if (expected != value) {
+                        throw AssertionError(
+                            "pixel ($x, $y) channel $c: expected ${expected.toInt() and 0xFF} " +
+                                "from ($sx, $sy) but was ${value.toInt() and 0xFF}"
+                        )
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    fun identity_copiesPixelsExactly() {
+        val input: ByteArray = pattern(16, 8)
+        val output: Int = render(upload(16, 8, input), Size(16, 8), GLRenderer.Transition())
+
+        assertArrayEquals(input, readRgba(output, 16, 8))
+    }
+
+    @Test
+    fun flipX_mirrorsColumns() {
+        val input: ByteArray = pattern(16, 8)
+        val output: Int =
+            render(upload(16, 8, input), Size(16, 8), GLRenderer.Transition().flip(x = true))
+
+        assertMapped(input, 16, readRgba(output, 16, 8), 16, 8) { x, y -> (15 - x) to y }
+    }
+
+    @Test
+    fun rotate180_reversesBothAxes() {
+        val input: ByteArray = pattern(16, 8)
+        val output: Int =
+            render(upload(16, 8, input), Size(16, 8), GLRenderer.Transition().rotate(180f))
+
+        assertMapped(input, 16, readRgba(output, 16, 8), 16, 8) { x, y -> (15 - x) to (7 - y) }
+    }
+
+    @Test
+    fun rotate90_turnsCounterClockwise() {
+        val input: ByteArray = pattern(8, 8)
+        val output: Int =
+            render(upload(8, 8, input), Size(8, 8), GLRenderer.Transition().rotate(90f))
+
+        // gl_Position = R(90°) * aPosition，輸出(x, y)來自輸入(y, 7 - x)
+        assertMapped(input, 8, readRgba(output, 8, 8), 8, 8) { x, y -> y to (7 - x) }
+    }
+
+    @Test
+    fun centerCrop_keepsMiddleColumns() {
+        val input: ByteArray = pattern(32, 16)
+        val transition: GLRenderer.Transition = renderer.transitionCache.crop(
+            CropScaleType.CENTER_CROP, 0, Size(32, 16), Size(16, 16)
+        )
+        val output: Int = render(upload(32, 16, input), Size(16, 16), transition)
+
+        assertMapped(input, 32, readRgba(output, 16, 16), 16, 16) { x, y -> (x + 8) to y }
+    }
+
+    @Test
+    fun externalTexture_isEmulatedAndCachedTransitionIsNotModified() {
+        val input: ByteArray = pattern(16, 8)
+        val texture: Int = upload(16, 8, input)
+        // GLThread預處理OES的轉換：上下翻轉抵銷ShaderProgramOES的翻轉
+        val transition: GLRenderer.Transition =
+            renderer.transitionCache.rotateFlip(angle = 0, flipX = false, flipY = true)
+        val matrix: FloatArray = transition.matrix.copyOf()
+        val uvMatrix = FloatArray(16).also { Matrix4Util.setIdentity(it) }
+
+        repeat(3) {
+            val output: Int = renderer.transferTextureToTexture(
+                texture, TextureFormat.TextureOES, TextureFormat.Texture2D,
+                Size(16, 8), transition, uvMatrix
+            )
+            assertArrayEquals(input, readRgba(output, 16, 8))
+        }
+        assertArrayEquals(matrix, transition.matrix, 0f)
+    }
+
+    @Test
+    fun nv21Readback_matchesReferenceConverter() {
+        val width = 64
+        val height = 32
+        val input: ByteArray = pattern(width, height)
+        val texture: Int = upload(width, height, input)
+
+        val actual: ByteArray = toArray(
+            renderer.transferTextureToBuffer(
+                texture, TextureFormat.Texture2D, PixelFormat.BEF_AI_PIX_FMT_NV21,
+                Size(width, height), 1.0f
+            )!!
+        )
+        val expected: ByteArray =
+            YuvConverter.convert(direct(input), width, height, PixelFormat.BEF_AI_PIX_FMT_NV21)
+
+        assertEquals(expected.size, actual.size)
+        for (i in expected.indices) {
+            val e: Int = expected[i].toInt() and 0xFF
+            val a: Int = actual[i].toInt() and 0xFF
+            // mediump與驅動的rounding可能差1~2
+            assertTrue("byte $i: expected $e but was $a", Math.abs(e - a) <= 2)
+        }
+    }
+
+    @Test
+    fun textureReader_pboAndSyncReadbackAgree() {
+        val input: ByteArray = pattern(16, 8)
+        val texture: Int = upload(16, 8, input)
+        val glVersion: Int = mContext!!.glVersion
+        val results: MutableList<ByteArray> = ArrayList()
+        val onReady = TextureReader.OnPixelsReady { pixels, width, height, _ ->
+            // pool中的buffer可能比一個frame大
+            results.add(ByteArray(width * height * 4).also { pixels.duplicate().get(it) })
+        }
+
+        val syncReader = TextureReader(stateCache, 2)
+        syncReader.read(texture, 16, 8, 0L, onReady)
+        syncReader.release()
+
+        val reader = TextureReader(stateCache, glVersion)
+        reader.read(texture, 16, 8, 1L, onReady)
+        reader.flush(onReady)
+        reader.release()
+
+        assertEquals(2, results.size)
+        assertArrayEquals(input, results[0])
+        assertArrayEquals(input, results[1])
+    }
+}
@@ -0,0 +1,52 @@
+package dev.jimmytai.camera_view.glrenderer
+
+import android.graphics.Rect
+import android.util.Size
+import dev.jimmytai.camera_view.constant.DualCameraLayout
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class DualCameraCompositionTest {
+    @Test
+    fun pictureInPicture_insetsSecondaryInTopRightCorner() {
+        val composition: DualCameraComposition = DualCameraComposition.compute(
+            DualCameraLayout.PICTURE_IN_PICTURE, Size(720, 1280), Size(720, 1280)
+        )
+
+        assertEquals(Size(720, 1280), composition.outputSize)
+        assertEquals(Rect(0, 0, 720, 1280), composition.primaryRegion)
+        assertEquals(Rect(476, 28, 692, 412), composition.secondaryRegion)
+    }
+
+    @Test
+    fun pictureInPicture_keepsInsetInsideFrame() {
+        // 副相機比主相機高很多時，小畫面的高度受輸出高度限制
+        val composition: DualCameraComposition = DualCameraComposition.compute(
+            DualCameraLayout.PICTURE_IN_PICTURE, Size(1280, 720), Size(100, 1000)
+        )
+
+        assertEquals(28, composition.secondaryRegion.top)
+        assertEquals(720 - 28, composition.secondaryRegion.bottom)
+    }
+
+    @Test
+    fun sideBySide_scalesSecondaryToSameHeight() {
+        val composition: DualCameraComposition = DualCameraComposition.compute(
+            DualCameraLayout.SIDE_BY_SIDE, Size(720, 1280), Size(1280, 720)
+        )
+
+        assertEquals(Size(2996, 1280), composition.outputSize)
+        assertEquals(Rect(0, 0, 720, 1280), composition.primaryRegion)
+        assertEquals(Rect(720, 0, 2996, 1280), composition.secondaryRegion)
+    }
+
+    @Test
+    fun compute_producesEvenSizes() {
+        val composition: DualCameraComposition = DualCameraComposition.compute(
+            DualCameraLayout.SIDE_BY_SIDE, Size(480, 640), Size(333, 777)
+        )
+
+        assertEquals(0, composition.outputSize.width % 2)
+        assertEquals(0, composition.secondaryRegion.width() % 2)
+    }
+}
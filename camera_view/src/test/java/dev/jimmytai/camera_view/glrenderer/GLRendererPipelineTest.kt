@@ -0,0 +1,306 @@
+package dev.jimmytai.camera_view.glrenderer
+
+import android.util.Size
+import dev.jimmytai.camera_view.constant.CropScaleType
+import dev.jimmytai.camera_view.constant.PixelFormat
+import dev.jimmytai.camera_view.constant.TextureFormat
+import dev.jimmytai.camera_view.gles.EglRenderTarget
+import dev.jimmytai.camera_view.gles.GlStateCache
+import dev.jimmytai.camera_view.gles.Matrix4Util
+import dev.jimmytai.camera_view.gles.RecordingGlApi
+import dev.jimmytai.camera_view.gles.TextureReader
+import dev.jimmytai.camera_view.utils.FailOnErrorLogger
+import dev.jimmytai.camera_view.utils.Logger
+import dev.jimmytai.camera_view.utils.DirectBufferPool
+import org.junit.After
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.nio.ByteBuffer
+
+/**
+ * 在JVM上以[RecordingGlApi]執行GLRenderer的每個frame流程，驗證穩定狀態下的GL呼叫數量
+ */
+class GLRendererPipelineTest {
+    /**
+     * 只記錄被切換為current次數的繪製窗口
+     */
+    private class CountingSurface : EglRenderTarget {
+        var makeCurrentCount: Int = 0
+
+        override fun makeCurrent() {
+            makeCurrentCount++
+        }
+    }
+
+    private val gl = RecordingGlApi()
+
+    private val stateCache = GlStateCache(gl)
+
+    private val renderer = GLRenderer(stateCache)
+
+    private val inputTexture: Int = IntArray(1).also { gl.glGenTextures(1, it, 0) }[0]
+
+    private val size = Size(1280, 720)
+
+    @Before
+    fun setUp() {
+        Logger.setCustomLogger(FailOnErrorLogger)
+    }
+
+    @After
+    fun tearDown() {
+        renderer.release()
+        Logger.setCustomLogger(null)
+    }
+
+    private fun renderFrame(frameSize: Size = size): Int {
+        val transition: GLRenderer.Transition = renderer.transitionCache.crop(
+            scaleType = CropScaleType.CENTER_CROP,
+            rotation = 0,
+            textureSize = frameSize,
+            surfaceSize = frameSize
+        )
+        return renderer.transferTextureToTexture(
+            inputTextureId = inputTexture,
+            inputTextureFormat = TextureFormat.Texture2D,
+            outputTextureFormat = TextureFormat.Texture2D,
+            size = frameSize,
+            transition = transition
+        )
+    }
+
+    @Test
+    fun steadyState_allocatesNothingPerFrame() {
+        val output: Int = renderFrame()
+        gl.resetCounters()
+
+        repeat(30) { assertEquals(output, renderFrame()) }
+
+        assertEquals(30, gl.drawCount)
+        assertEquals(0, gl.frameBufferAllocationCount)
+        assertEquals(0, gl.textureAllocationCount)
+        assertEquals(0, gl.programCreationCount)
+        assertEquals(0, gl.callCount("glTexImage2D"))
+        assertEquals(0L, gl.readPixelsBytes)
+    }
+
+    @Test
+    fun steadyState_skipsRedundantState() {
+        renderFrame()
+        gl.resetCounters()
+
+        repeat(30) { renderFrame() }
+
+        // program、texture、viewport與不變的矩陣都已在第一個frame設定
+        assertEquals(0, gl.callCount("glUseProgram"))
+        assertEquals(0, gl.callCount("glBindTexture"))
+        assertEquals(0, gl.callCount("glViewport"))
+        assertEquals(0, gl.callCount("glUniformMatrix4fv"))
+        // 每個frame綁定離屏FBO後切回預設framebuffer
+        assertEquals(60, gl.callCount("glBindFramebuffer"))
+        assertEquals(0, gl.boundFrameBuffer)
+    }
+
+    @Test
+    fun sizeChange_reallocatesFrameBufferOnce() {
+        renderFrame()
+        gl.resetCounters()
+
+        val smaller = Size(640, 360)
+        repeat(10) { renderFrame(smaller) }
+
+        assertEquals(1, gl.frameBufferAllocationCount)
+        assertEquals(1, gl.textureAllocationCount)
+        assertEquals(1, gl.callCount("glDeleteFramebuffers"))
+        assertEquals(10, gl.drawCount)
+    }
+
+    @Test
+    fun nv21Readback_readsOnePointFiveBytesPerPixel() {
+        val output: Int = renderFrame()
+        renderer.transferTextureToBuffer(
+            output, TextureFormat.Texture2D, PixelFormat.BEF_AI_PIX_FMT_NV21, size, 1.0f
+        )
+        gl.resetCounters()
+
+        repeat(10) {
+            val buffer = renderer.transferTextureToBuffer(
+                output, TextureFormat.Texture2D, PixelFormat.BEF_AI_PIX_FMT_NV21, size, 1.0f
+            )
+            assertEquals(size.width * size.height * 3 / 2, buffer!!.limit())
+        }
+
+        assertEquals(10L * size.width * size.height * 3 / 2, gl.readPixelsBytes)
+        assertEquals(10, gl.drawCount)
+        assertEquals(0, gl.frameBufferAllocationCount)
+    }
+
+    @Test
+    fun rgbaReadback_readsFourBytesPerPixel() {
+        val output: Int = renderFrame()
+        renderer.transferTextureToBuffer(
+            output, TextureFormat.Texture2D, PixelFormat.RGBA8888, size, 0.5f
+        )
+
+        assertEquals(640L * 360 * 4, gl.readPixelsBytes)
+    }
+
+    @Test
+    fun pboReader_deliversPreviousFrame() {
+        val reader = TextureReader(stateCache, 3)
+        val delivered: MutableList<Long> = ArrayList()
+        val onReady = TextureReader.OnPixelsReady { pixels, width, height, timestampNs ->
+            assertEquals(width * height * 4, pixels.capacity())
+            delivered.add(timestampNs)
+        }
+
+        for (frame in 1L..5L) {
+            reader.read(renderFrame(), size.width, size.height, frame, onReady)
+            // 每個frame只讀取一次，並map上一個frame的PBO
+            assertEquals(frame - 1, delivered.size.toLong())
+        }
+        reader.flush(onReady)
+
+        assertEquals(listOf(1L, 2L, 3L, 4L, 5L), delivered)
+        assertEquals(5L * size.width * size.height * 4, gl.readPixelsBytes)
+        assertEquals(5, gl.callCount("glMapBufferRange"))
+        assertEquals(0, gl.boundPixelPackBuffer)
+        reader.release()
+    }
+
+    @Test
+    fun pboReader_mapFailure_reportsLostFrame() {
+        val reader = TextureReader(stateCache, 3)
+        val delivered: MutableList<Long> = ArrayList()
+        val failed: MutableList<Long> = ArrayList()
+        val onReady = object : TextureReader.OnPixelsReady {
+            override fun onPixelsReady(pixels: ByteBuffer, width: Int, height: Int, timestampNs: Long) {
+                delivered.add(timestampNs)
+            }
+
+            override fun onReadFailed(timestampNs: Long) {
+                failed.add(timestampNs)
+            }
+        }
+
+        reader.read(renderFrame(), size.width, size.height, 1L, onReady)
+        gl.failMapBuffer = true
+        reader.flush(onReady)
+        gl.failMapBuffer = false
+        reader.read(renderFrame(), size.width, size.height, 2L, onReady)
+        reader.flush(onReady)
+
+        // 失敗的frame只回報一次，之後的frame不受影響
+        assertEquals(listOf(1L), failed)
+        assertEquals(listOf(2L), delivered)
+        // 沒有map成功的PBO不需要unmap
+        assertEquals(1, gl.callCount("glUnmapBuffer"))
+        reader.release()
+    }
+
+    @Test
+    fun syncReader_deliversImmediately() {
+        val reader = TextureReader(stateCache, 2)
+        val delivered: MutableList<Long> = ArrayList()
+
+        reader.read(renderFrame(), size.width, size.height, 7L) { _, _, _, timestampNs ->
+            delivered.add(timestampNs)
+        }
+
+        assertEquals(listOf(7L), delivered)
+        assertEquals(0, gl.callCount("glMapBufferRange"))
+        reader.release()
+    }
+
+    @Test
+    fun heapBuffer_isUploadedWithoutStaging() {
+        // 比width * height * 4短的heap buffer，例如只更新部分內容
+        val buffer: ByteBuffer = ByteBuffer.allocate(16)
+        val acquireCount: Long = DirectBufferPool.shared.stats().acquireCount
+
+        val textureId: Int = renderer.transferBufferToTexture(
+            buffer, PixelFormat.RGBA8888, TextureFormat.Texture2D, Size(4, 4), consistent = true
+        )
+
+        assertTrue(textureId != 0)
+        assertEquals(1, gl.callCount("glTexImage2D"))
+        // 不經過pool複製一份direct buffer
+        assertEquals(acquireCount, DirectBufferPool.shared.stats().acquireCount)
+    }
+
+    @Test
+    fun oesInput_doesNotModifyCachedTransition() {
+        val transition: GLRenderer.Transition =
+            renderer.transitionCache.rotateFlip(angle = 90, flipX = false, flipY = true)
+        val matrix: FloatArray = transition.matrix.copyOf()
+        val uvMatrix = FloatArray(16).also { Matrix4Util.setIdentity(it) }
+
+        repeat(3) {
+            renderer.transferTextureToTexture(
+                inputTexture, TextureFormat.TextureOES, TextureFormat.Texture2D,
+                size, transition, uvMatrix
+            )
+        }
+
+        assertArrayEquals(matrix, transition.matrix, 0f)
+        // 矩陣不變，只在第一個frame上傳
+        assertEquals(2, gl.callCount("glUniformMatrix4fv"))
+    }
+
+    @Test
+    fun release_deletesEverythingAllocated() {
+        renderFrame()
+        renderer.release()
+
+        // 只剩測試自己建立的輸入texture
+        assertEquals(1, gl.liveTextureCount)
+        assertEquals(0, gl.liveFrameBufferCount)
+        assertTrue(gl.glIsTexture(inputTexture))
+    }
+
+    @Test
+    fun multipleOutputs_skipRedundantMakeCurrent() {
+        val display = CountingSurface()
+        val encoder = CountingSurface()
+        val outputs: List<CountingSurface> = listOf(display, encoder)
+        val transition: GLRenderer.Transition = renderer.transitionCache.crop(
+            scaleType = CropScaleType.CENTER_CROP,
+            rotation = 0,
+            textureSize = size,
+            surfaceSize = size
+        )
+        stateCache.makeCurrent(display)
+
+        repeat(30) {
+            val output: Int = renderFrame()
+            // 與GLThread相同，從目前current的窗口開始依序繪製至每個窗口
+            val startIndex: Int = outputs.indexOf(stateCache.currentSurface)
+            for (n in outputs.indices) {
+                stateCache.makeCurrent(outputs[(startIndex + n) % outputs.size])
+                renderer.transferTextureToScreen(output, TextureFormat.Texture2D, size, transition)
+            }
+        }
+
+        // 兩個窗口每個frame只需要切換一次，另一次是多餘的切換而被略過
+        assertEquals(31L, stateCache.makeCurrentCount)
+        assertEquals(30L, stateCache.skippedMakeCurrentCount)
+        assertEquals(16, display.makeCurrentCount)
+        assertEquals(15, encoder.makeCurrentCount)
+    }
+
+    @Test
+    fun clearCurrentSurface_forcesNextMakeCurrent() {
+        val display = CountingSurface()
+        stateCache.makeCurrent(display)
+        stateCache.makeCurrent(display)
+
+        stateCache.clearCurrentSurface()
+        stateCache.makeCurrent(display)
+
+        assertEquals(2, display.makeCurrentCount)
+        assertEquals(1L, stateCache.skippedMakeCurrentCount)
+    }
+}
@@ -0,0 +1,77 @@
+package dev.jimmytai.camera_view.glrenderer
+
+import dev.jimmytai.camera_view.constant.CropScaleType
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertNotSame
+import org.junit.Assert.assertSame
+import org.junit.Test
+
+class TransitionCacheTest {
+    @Test
+    fun sameInputs_returnCachedTransition() {
+        val cache = TransitionCache()
+        val first = cache.get(CropScaleType.CENTER_CROP, 0, 1920, 1080, 1080, 1920)
+        val second = cache.get(CropScaleType.CENTER_CROP, 0, 1920, 1080, 1080, 1920)
+
+        assertSame(first, second)
+        assertEquals(1L, cache.hitCount)
+        assertEquals(1L, cache.missCount)
+    }
+
+    @Test
+    fun differentInputs_returnDifferentTransition() {
+        val cache = TransitionCache()
+        val crop = cache.get(CropScaleType.CENTER_CROP, 0, 1920, 1080, 1080, 1920)
+
+        assertNotSame(crop, cache.get(CropScaleType.CENTER_CROP, 90, 1920, 1080, 1080, 1920))
+        assertNotSame(crop, cache.get(CropScaleType.CENTER_INSIDE, 0, 1920, 1080, 1080, 1920))
+        assertNotSame(crop, cache.get(CropScaleType.CENTER_CROP, 0, 1920, 1080, 1920, 1080))
+        assertNotSame(crop, cache.get(null, 0, 0, 0, 0, 0, angle = 90, flipY = true))
+        assertEquals(5L, cache.missCount)
+    }
+
+    @Test
+    fun cachedMatrix_matchesFreshTransition() {
+        val cache = TransitionCache()
+        val cached = cache.get(CropScaleType.FIT_END, 90, 1280, 720, 720, 1280, angle = 270, flipX = true)
+        val fresh = GLRenderer.Transition()
+            .crop(CropScaleType.FIT_END, 90, 1280, 720, 720, 1280)
+            .rotate(270f)
+            .flip(x = true)
+
+        assertArrayEquals(fresh.matrix, cached.matrix, 0f)
+        assertEquals(fresh.angle, cached.angle)
+    }
+
+    @Test
+    fun full_evictsLeastRecentlyUsed() {
+        val cache = TransitionCache(capacity = 2)
+        val a = cache.rotateFlip(0, flipX = false, flipY = true)
+        val b = cache.rotateFlip(90, flipX = false, flipY = true)
+        // 使用a，b成為最久未使用
+        cache.rotateFlip(0, flipX = false, flipY = true)
+        cache.rotateFlip(180, flipX = false, flipY = true)
+
+        assertEquals(2, cache.size)
+        assertSame(a, cache.rotateFlip(0, flipX = false, flipY = true))
+        assertNotSame(b, cache.rotateFlip(90, flipX = false, flipY = true))
+    }
+
+    @Test
+    fun cachedTransition_matrixCanNotBeModified() {
+        val cached = TransitionCache().rotateFlip(90, flipX = false, flipY = true)
+        val expected: FloatArray = cached.matrix
+
+        cached.matrix[5] *= -1.0f
+        cached.copyInto(FloatArray(16))[5] *= -1.0f
+
+        assertArrayEquals(expected, cached.matrix, 0f)
+        assertArrayEquals(expected, cached.copyInto(FloatArray(16)), 0f)
+    }
+
+    @Test(expected = IllegalStateException::class)
+    fun cachedTransition_isFrozen() {
+        TransitionCache().rotateFlip(90, flipX = false, flipY = false).rotate(90f)
+    }
+}
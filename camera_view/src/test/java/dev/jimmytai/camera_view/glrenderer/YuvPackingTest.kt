@@ -0,0 +1,134 @@
+package dev.jimmytai.camera_view.glrenderer
+
+import dev.jimmytai.camera_view.constant.PixelFormat
+import dev.jimmytai.camera_view.utils.YuvConverter
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.util.Random
+
+/**
+ * 以CPU模擬ShaderProgramYUV的打包結果(雙線性取樣 + YuvPacking.sourceOf)，
+ * 並與YuvConverter的參考輸出逐byte比對
+ */
+class YuvPackingTest {
+    private val width = 64
+    private val height = 36
+
+    private val rgba: ByteBuffer = ByteBuffer.allocate(width * height * 4).also {
+        val random = Random(42)
+        for (y in 0 until height) {
+            for (x in 0 until width) {
+                it.put((x * 255 / (width - 1)).toByte())
+                it.put((y * 255 / (height - 1)).toByte())
+                it.put(random.nextInt(256).toByte())
+                it.put(0xFF.toByte())
+            }
+        }
+        it.position(0)
+    }
+
+    @Test
+    fun i420_matchesReference() = assertPackingMatches(PixelFormat.BEF_AI_PIX_FMT_YUV420P)
+
+    @Test
+    fun nv12_matchesReference() = assertPackingMatches(PixelFormat.BEF_AI_PIX_FMT_NV12)
+
+    @Test
+    fun nv21_matchesReference() = assertPackingMatches(PixelFormat.BEF_AI_PIX_FMT_NV21)
+
+    @Test
+    fun luma8_matchesReference() = assertPackingMatches(PixelFormat.LUMA8)
+
+    @Test
+    fun packedSize_isOneAndAHalfBytesPerPixel() {
+        val format: PixelFormat = PixelFormat.BEF_AI_PIX_FMT_NV21
+        val packedBytes: Int =
+            YuvPacking.packedWidth(width) * YuvPacking.packedHeight(format, height) * 4
+        assertEquals(YuvPacking.bufferSize(format, width, height), packedBytes)
+        assertEquals(width * height * 3 / 2, packedBytes)
+        assertEquals(0.625, 1.0 - packedBytes.toDouble() / (width * height * 4), 1e-9)
+    }
+
+    @Test
+    fun luma8_isOneBytePerPixel() {
+        assertEquals(width * height, YuvPacking.bufferSize(PixelFormat.LUMA8, width, height))
+        assertEquals(height, YuvPacking.packedHeight(PixelFormat.LUMA8, height))
+    }
+
+    @Test
+    fun align_roundsDownToPackingUnit() {
+        val nv21: PixelFormat = PixelFormat.BEF_AI_PIX_FMT_NV21
+        assertEquals(632, YuvPacking.alignWidth(nv21, 639))
+        assertEquals(476, YuvPacking.alignHeight(nv21, 479))
+        assertTrue(YuvPacking.isAligned(nv21, 640, 480))
+        assertFalse(YuvPacking.isAligned(nv21, 636, 480))
+        assertFalse(YuvPacking.isAligned(nv21, 640, 478))
+
+        assertEquals(636, YuvPacking.alignWidth(PixelFormat.LUMA8, 639))
+        assertEquals(479, YuvPacking.alignHeight(PixelFormat.LUMA8, 479))
+        assertTrue(YuvPacking.isAligned(PixelFormat.LUMA8, 636, 479))
+    }
+
+    private fun assertPackingMatches(format: PixelFormat) {
+        val expected: ByteArray = YuvConverter.convert(rgba, width, height, format)
+        val actual: ByteArray = simulateGpu(format)
+        assertEquals(expected.size, actual.size)
+        for (i in expected.indices) {
+            val e: Int = expected[i].toInt() and 0xFF
+            val a: Int = actual[i].toInt() and 0xFF
+            assertTrue("$format byte $i: expected $e but was $a", Math.abs(e - a) <= 1)
+        }
+    }
+
+    /**
+     * 依照glReadPixels的順序(由下往上的row、每個texel 4個byte)產生打包結果
+     */
+    private fun simulateGpu(format: PixelFormat): ByteArray {
+        val packedWidth: Int = YuvPacking.packedWidth(width)
+        val packedHeight: Int = YuvPacking.packedHeight(format, height)
+        val out = ByteArray(packedWidth * packedHeight * 4)
+        val source = IntArray(3)
+        val color = FloatArray(3)
+        for (texelY in 0 until packedHeight) {
+            for (texelX in 0 until packedWidth) {
+                for (component in 0 until 4) {
+                    YuvPacking.sourceOf(format, width, height, texelX, texelY, component, source)
+                    sampleBilinear(source[1] / 2f, source[2] / 2f, color)
+                    val value: Int = when (source[0]) {
+                        YuvPacking.CHANNEL_Y -> YuvConverter.toY(color[0], color[1], color[2])
+                        YuvPacking.CHANNEL_U -> YuvConverter.toU(color[0], color[1], color[2])
+                        else -> YuvConverter.toV(color[0], color[1], color[2])
+                    }
+                    out[(texelY * packedWidth + texelX) * 4 + component] = value.toByte()
+                }
+            }
+        }
+        return out
+    }
+
+    /**
+     * GL_LINEAR + GL_CLAMP_TO_EDGE，座標以pixel為單位(texel中心在 i + 0.5)
+     */
+    private fun sampleBilinear(x: Float, y: Float, out: FloatArray) {
+        val u: Float = x - 0.5f
+        val v: Float = y - 0.5f
+        val x0: Int = Math.floor(u.toDouble()).toInt()
+        val y0: Int = Math.floor(v.toDouble()).toInt()
+        val fx: Float = u - x0
+        val fy: Float = v - y0
+        for (c in 0 until 3) {
+            val top: Float = texel(x0, y0, c) * (1 - fx) + texel(x0 + 1, y0, c) * fx
+            val bottom: Float = texel(x0, y0 + 1, c) * (1 - fx) + texel(x0 + 1, y0 + 1, c) * fx
+            out[c] = top * (1 - fy) + bottom * fy
+        }
+    }
+
+    private fun texel(x: Int, y: Int, channel: Int): Float {
+        val cx: Int = x.coerceIn(0, width - 1)
+        val cy: Int = y.coerceIn(0, height - 1)
+        return (rgba.get((cy * width + cx) * 4 + channel).toInt() and 0xFF) / 255f
+    }
+}
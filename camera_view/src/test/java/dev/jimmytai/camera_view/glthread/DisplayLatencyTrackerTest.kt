@@ -0,0 +1,76 @@
+package dev.jimmytai.camera_view.glthread
+
+import dev.jimmytai.camera_view.model.DisplayLatencyStats
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class DisplayLatencyTrackerTest {
+    private val nowNs: Long = 5_000_000_000L
+
+    // elapsedRealtime包含裝置休眠的時間，比System.nanoTime大
+    private val nowRealtimeNs: Long = 9_000_000_000L
+
+    @Test
+    fun onFramePresented_measuresMonotonicTimestamps() {
+        val tracker = DisplayLatencyTracker()
+
+        for (i in 1..100) {
+            tracker.onFramePresented(nowNs - i * 1_000_000L, nowNs, nowRealtimeNs)
+        }
+
+        val stats: DisplayLatencyStats = tracker.stats
+        assertEquals(100L, stats.frameCount)
+        assertEquals(0L, stats.unmeasuredFrameCount)
+        // percentile為bucket的上限，bucket寬度100us
+        assertEquals(50_100_000L, stats.p50Ns)
+        assertEquals(100_000_000L, stats.maxNs)
+    }
+
+    @Test
+    fun onFramePresented_rebasesRealtimeTimestamps() {
+        val tracker = DisplayLatencyTracker()
+
+        tracker.onFramePresented(nowRealtimeNs - 20_000_000L, nowNs, nowRealtimeNs)
+        // 時基在第一個frame決定，之後的frame以相同時基換算
+        tracker.onFramePresented(
+            nowRealtimeNs + 10_000_000L,
+            nowNs + 40_000_000L,
+            nowRealtimeNs + 40_000_000L
+        )
+
+        val stats: DisplayLatencyStats = tracker.stats
+        assertEquals(2L, stats.frameCount)
+        assertEquals(30_000_000L, stats.maxNs)
+        assertEquals(25_000_000L, stats.averageNs)
+    }
+
+    @Test
+    fun onFramePresented_skipsTimestampsOffTheSystemClock() {
+        val tracker = DisplayLatencyTracker()
+
+        tracker.onFramePresented(nowNs - 10_000_000L, nowNs, nowRealtimeNs)
+        // 沒有timestamp、晚於顯示時間、超過上限
+        tracker.onFramePresented(0L, nowNs, nowRealtimeNs)
+        tracker.onFramePresented(nowNs + 10_000_000L, nowNs, nowRealtimeNs)
+        tracker.onFramePresented(
+            nowNs - DisplayLatencyTracker.MAX_LATENCY_NS - 1L,
+            nowNs,
+            nowRealtimeNs
+        )
+
+        val stats: DisplayLatencyStats = tracker.stats
+        assertEquals(1L, stats.frameCount)
+        assertEquals(3L, stats.unmeasuredFrameCount)
+    }
+
+    @Test
+    fun reset_clearsStats() {
+        val tracker = DisplayLatencyTracker()
+        tracker.onFramePresented(nowNs - 10_000_000L, nowNs, nowRealtimeNs)
+        tracker.onFramePresented(0L, nowNs, nowRealtimeNs)
+
+        tracker.reset()
+
+        assertEquals(DisplayLatencyStats(0L, 0L, 0L, 0L, 0L, 0L, 0L), tracker.stats)
+    }
+}
@@ -0,0 +1,51 @@
+package dev.jimmytai.camera_view.glthread
+
+import dev.jimmytai.camera_view.model.DualCameraStats
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class DualStreamTrackerTest {
+    private val frameNs: Long = 33_333_333L
+
+    @Test
+    fun onFrame_countsDroppedAndRepeatedSecondaryFrames() {
+        val tracker = DualStreamTracker()
+
+        // 尚未有副相機frame
+        tracker.onFrame(frameNs, 0, 0, 0L)
+        // 兩次合成之間到達3個副相機frame，只有最後一個被使用
+        tracker.onFrame(2 * frameNs, 1, 3, 2 * frameNs - 1_000_000L)
+        // 沒有新的副相機frame，重複使用上一個
+        tracker.onFrame(3 * frameNs, 0, 0, 2 * frameNs - 1_000_000L)
+
+        val stats: DualCameraStats = tracker.stats
+        assertEquals(3L, stats.primaryFrameCount)
+        assertEquals(1L, stats.primaryDroppedFrameCount)
+        assertEquals(3L, stats.secondaryFrameCount)
+        assertEquals(2L, stats.secondaryDroppedFrameCount)
+        assertEquals(1L, stats.secondaryRepeatedFrameCount)
+    }
+
+    @Test
+    fun onFrame_measuresSkewOnlyWithBothTimestamps() {
+        val tracker = DualStreamTracker()
+
+        tracker.onFrame(frameNs, 0, 0, 0L)
+        tracker.onFrame(2 * frameNs, 0, 1, 2 * frameNs + 2_000_000L)
+        tracker.onFrame(3 * frameNs, 0, 1, 3 * frameNs - 4_000_000L)
+
+        val stats: DualCameraStats = tracker.stats
+        assertEquals(4_000_000L, stats.maxSkewNs)
+        assertEquals(3_000_000L, stats.averageSkewNs)
+    }
+
+    @Test
+    fun reset_clearsStats() {
+        val tracker = DualStreamTracker()
+        tracker.onFrame(frameNs, 2, 1, frameNs)
+
+        tracker.reset()
+
+        assertEquals(DualCameraStats(0L, 0L, 0L, 0L, 0L, 0L, 0L), tracker.stats)
+    }
+}
@@ -0,0 +1,70 @@
+package dev.jimmytai.camera_view.glthread
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertFalse
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class FrameRateLimiterTest {
+    companion object {
+        private const val FRAME_30FPS_NS: Long = 33_333_333L
+
+        private const val START_NS: Long = 5_000_000_000L
+    }
+
+    @Test
+    fun unlimited_acceptsEveryFrame() {
+        val limiter = FrameRateLimiter(0)
+
+        for (i in 0 until 10) {
+            assertTrue(limiter.tryAcquire(START_NS))
+        }
+        assertEquals(0L, limiter.skippedFrameCount)
+    }
+
+    @Test
+    fun camera30fps_limitedTo20fps_keepsTwoOfThree() {
+        val limiter = FrameRateLimiter(20)
+
+        val accepted: Int = (0 until 30).count { i ->
+            limiter.tryAcquire(START_NS + i * FRAME_30FPS_NS)
+        }
+
+        assertEquals(20, accepted)
+        assertEquals(10L, limiter.skippedFrameCount)
+    }
+
+    @Test
+    fun camera30fps_limitedTo15fps_keepsEveryOther() {
+        val limiter = FrameRateLimiter(15)
+
+        val accepted: List<Boolean> = (0 until 6).map { i ->
+            limiter.tryAcquire(START_NS + i * FRAME_30FPS_NS)
+        }
+
+        assertEquals(listOf(true, false, true, false, true, false), accepted)
+    }
+
+    @Test
+    fun missingTimestamp_isPacedByNow() {
+        val limiter = FrameRateLimiter(20)
+
+        val accepted: Int = (0 until 30).count { i ->
+            limiter.tryAcquire(0L, nowNs = START_NS + i * FRAME_30FPS_NS)
+        }
+
+        assertEquals(20, accepted)
+    }
+
+    @Test
+    fun afterPause_realignsToNextFrame() {
+        val limiter = FrameRateLimiter(20)
+        assertTrue(limiter.tryAcquire(START_NS))
+
+        // 相機暫停1秒後恢復，恢復後的第一個frame直接輸出，之後以新的frame重新對齊
+        val resumeNs: Long = START_NS + 1_000_000_000L
+        assertTrue(limiter.tryAcquire(resumeNs))
+        assertFalse(limiter.tryAcquire(resumeNs + FRAME_30FPS_NS))
+        assertTrue(limiter.tryAcquire(resumeNs + 2 * FRAME_30FPS_NS))
+    }
+}
@@ -0,0 +1,90 @@
+package dev.jimmytai.camera_view.glthread
+
+import dev.jimmytai.camera_view.model.PresentationTimeReport
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class PresentationTimeTrackerTest {
+    companion object {
+        private const val MS: Long = 1_000_000L
+
+        private const val SECOND: Long = 1_000 * MS
+
+        // System.nanoTime與elapsedRealtimeNanos相差很大，模擬開機後休眠過的裝置
+        private const val NOW_NS: Long = 10 * SECOND
+
+        private const val NOW_REALTIME_NS: Long = 1_000 * SECOND
+    }
+
+    @Test
+    fun monotonicTimestamp_isNotRebased() {
+        val tracker = PresentationTimeTracker()
+
+        val first: Long = tracker.next(NOW_NS - 10 * MS, NOW_NS, NOW_REALTIME_NS)
+        val second: Long = tracker.next(NOW_NS + 23 * MS, NOW_NS + 33 * MS, NOW_REALTIME_NS + 33 * MS)
+
+        assertEquals(NOW_NS - 10 * MS, first)
+        assertEquals(NOW_NS + 23 * MS, second)
+    }
+
+    @Test
+    fun realtimeTimestamp_isRebasedToNanoTime() {
+        val tracker = PresentationTimeTracker()
+
+        val first: Long = tracker.next(NOW_REALTIME_NS - 10 * MS, NOW_NS, NOW_REALTIME_NS)
+        // 第一個frame決定的rebase沿用到之後的frame
+        val second: Long =
+            tracker.next(NOW_REALTIME_NS + 23 * MS, NOW_NS + 33 * MS, NOW_REALTIME_NS + 33 * MS)
+
+        assertEquals(NOW_NS - 10 * MS, first)
+        assertEquals(NOW_NS + 23 * MS, second)
+        assertEquals(0L, tracker.report().correctedFrameCount)
+    }
+
+    @Test
+    fun nonMonotonicTimestamp_isPushedForward() {
+        val tracker = PresentationTimeTracker()
+
+        val first: Long = tracker.next(NOW_NS, NOW_NS, NOW_REALTIME_NS)
+        val repeated: Long = tracker.next(NOW_NS, NOW_NS + 33 * MS, NOW_REALTIME_NS + 33 * MS)
+        val backwards: Long = tracker.next(NOW_NS - 5 * MS, NOW_NS + 66 * MS, NOW_REALTIME_NS + 66 * MS)
+
+        assertEquals(NOW_NS, first)
+        assertEquals(NOW_NS + 1_000L, repeated)
+        assertEquals(NOW_NS + 2_000L, backwards)
+        assertEquals(2L, tracker.report().correctedFrameCount)
+    }
+
+    @Test
+    fun missingTimestamp_usesNowWithOffset() {
+        val tracker = PresentationTimeTracker(offsetNs = 5 * MS)
+
+        assertEquals(NOW_NS + 5 * MS, tracker.next(0L, NOW_NS, NOW_REALTIME_NS))
+        assertEquals(0L, tracker.report().maxDriftNs)
+    }
+
+    @Test
+    fun report_summarizesDrift() {
+        val tracker = PresentationTimeTracker()
+        // drift依序為10ms、20ms、30ms，逐漸落後
+        tracker.next(NOW_NS, NOW_NS + 10 * MS, NOW_REALTIME_NS)
+        tracker.next(NOW_NS + 33 * MS, NOW_NS + 53 * MS, NOW_REALTIME_NS)
+        tracker.next(NOW_NS + 66 * MS, NOW_NS + 96 * MS, NOW_REALTIME_NS)
+
+        val report: PresentationTimeReport = tracker.report()
+        assertEquals(3L, report.frameCount)
+        assertEquals(0L, report.correctedFrameCount)
+        assertEquals(10 * MS, report.minDriftNs)
+        assertEquals(30 * MS, report.maxDriftNs)
+        assertEquals(20 * MS, report.averageDriftNs)
+        assertEquals(20 * MS, report.driftGrowthNs)
+    }
+
+    @Test
+    fun report_withoutFrames_isZero() {
+        assertEquals(
+            PresentationTimeReport(0L, 0L, 0L, 0L, 0L, 0L),
+            PresentationTimeTracker().report()
+        )
+    }
+}
@@ -0,0 +1,73 @@
+package dev.jimmytai.camera_view.model
+
+import dev.jimmytai.camera_view.constant.FrameStage
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class ReplayReportTest {
+    private fun processed(index: Int, processNs: Long): ReplayFrameResult =
+        ReplayFrameResult(
+            index = index,
+            captureOffsetUs = index * 33_333L,
+            dropped = false,
+            updateTexImageNs = 100_000L,
+            preProcessNs = 200_000L,
+            processNs = processNs,
+            readbackNs = 0L,
+            renderNs = 300_000L
+        )
+
+    private fun dropped(index: Int): ReplayFrameResult =
+        ReplayFrameResult(index = index, captureOffsetUs = index * 33_333L, dropped = true)
+
+    @Test
+    fun counts_processedAndDroppedFrames() {
+        val report = ReplayReport(listOf(processed(0, 1_000_000L), dropped(1), processed(2, 2_000_000L)))
+
+        assertEquals(2, report.processedFrameCount)
+        assertEquals(1, report.droppedFrameCount)
+    }
+
+    @Test
+    fun percentile_isExactOverProcessedFrames() {
+        val frames: List<ReplayFrameResult> =
+            List(100) { processed(it, (it + 1) * 10_000L) } + dropped(100)
+        val report = ReplayReport(frames)
+
+        assertEquals(500_000L, report.percentileNs(FrameStage.PROCESS, 50.0))
+        assertEquals(990_000L, report.percentileNs(FrameStage.PROCESS, 99.0))
+        assertEquals(1_000_000L, report.percentileNs(FrameStage.PROCESS, 100.0))
+        // 丟掉的frame不計入
+        assertEquals(10_000L, report.percentileNs(FrameStage.PROCESS, 0.0))
+        assertEquals(
+            600_000L + 10_000L,
+            report.percentileNs(FrameStage.TOTAL, 0.0)
+        )
+    }
+
+    @Test
+    fun percentile_isZeroWithoutProcessedFrames() {
+        assertEquals(0L, ReplayReport(listOf(dropped(0))).percentileNs(FrameStage.TOTAL, 50.0))
+    }
+
+    @Test
+    fun toTsv_listsSummaryAndEveryFrame() {
+        val report = ReplayReport(listOf(processed(0, 1_500_000L), dropped(1)))
+
+        val expected: String = """
+            |# frames	2	processed	1	dropped	1
+            |stage	p50	p90	p99	max
+            |updateTexImage	100	100	100	100
+            |preProcess	200	200	200	200
+            |process	1500	1500	1500	1500
+            |readback	0	0	0	0
+            |render	300	300	300	300
+            |total	2100	2100	2100	2100
+            |
+            |frame	offsetUs	updateTexImage	preProcess	process	readback	render	total
+            |0	0	100	200	1500	0	300	2100
+            |1	33333	dropped
+            |""".trimMargin()
+        assertEquals(expected, report.toTsv())
+    }
+}
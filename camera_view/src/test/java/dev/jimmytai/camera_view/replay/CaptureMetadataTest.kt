@@ -0,0 +1,68 @@
+package dev.jimmytai.camera_view.replay
+
+import android.util.Size
+import org.junit.Assert.assertArrayEquals
+import org.junit.Assert.assertEquals
+import org.junit.Test
+import java.io.BufferedReader
+import java.io.StringReader
+import java.io.StringWriter
+
+class CaptureMetadataTest {
+    private val startNs: Long = 7_000_000_000L
+
+    private fun frame(offsetNs: Long, rotationDegrees: Int = 90): CapturedFrame =
+        CapturedFrame(
+            startNs + offsetNs,
+            rotationDegrees,
+            FloatArray(16) { if (it % 5 == 0) 1f else it / 100f }
+        )
+
+    private fun roundTrip(frames: List<CapturedFrame>): CaptureMetadata {
+        val writer = StringWriter()
+        CaptureMetadata.writeHeader(writer, Size(1280, 720))
+        frames.forEach { writer.write(CaptureMetadata.formatFrame(it)) }
+        return CaptureMetadata.read(BufferedReader(StringReader(writer.toString())))
+    }
+
+    @Test
+    fun read_restoresWrittenFrames() {
+        val frames: List<CapturedFrame> = listOf(frame(0L), frame(33_366_666L, rotationDegrees = 180))
+
+        val metadata: CaptureMetadata = roundTrip(frames)
+
+        assertEquals(Size(1280, 720), metadata.bufferSize)
+        assertEquals(2, metadata.frames.size)
+        for (i in frames.indices) {
+            assertEquals(frames[i].timestampNs, metadata.frames[i].timestampNs)
+            assertEquals(frames[i].rotationDegrees, metadata.frames[i].rotationDegrees)
+            assertArrayEquals(frames[i].transformMatrix, metadata.frames[i].transformMatrix, 0f)
+        }
+    }
+
+    @Test
+    fun indexOf_matchesPresentationTimeRelativeToFirstFrame() {
+        val metadata: CaptureMetadata =
+            roundTrip(listOf(frame(0L), frame(33_366_666L), frame(66_733_333L)))
+
+        assertEquals(0, metadata.indexOf(0L))
+        // encoder以microseconds為單位，捨去或進位都能對應
+        assertEquals(1, metadata.indexOf(33_366L))
+        assertEquals(1, metadata.indexOf(33_367L))
+        assertEquals(2, metadata.indexOf(66_733L))
+    }
+
+    @Test
+    fun indexOf_returnsMinusOneForUnknownTime() {
+        val metadata: CaptureMetadata = roundTrip(listOf(frame(0L), frame(33_366_666L)))
+
+        assertEquals(-1, metadata.indexOf(16_000L))
+        assertEquals(-1, metadata.indexOf(100_000L))
+        assertEquals(-1, roundTrip(emptyList()).indexOf(0L))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun read_rejectsMissingSize() {
+        CaptureMetadata.read(BufferedReader(StringReader("# camera_view stream capture 1\n")))
+    }
+}
@@ -0,0 +1,40 @@
+package dev.jimmytai.camera_view.replay
+
+import org.junit.Assert.assertTrue
+import org.junit.Assert.fail
+import org.junit.Test
+import java.io.File
+import java.util.concurrent.ExecutionException
+
+/**
+ * GLThread釋放時，還沒有開始錄製的StreamCapture的future必須以失敗結束
+ */
+class StreamCaptureTest {
+    private val capture = StreamCapture(File(System.getProperty("java.io.tmpdir")!!, "capture"), 0)
+
+    @Test
+    fun onDiscarded_failsFuture() {
+        // 排入GLThread後、加入之前GLThread就被釋放
+        capture.onDiscarded()
+
+        assertFailed()
+    }
+
+    @Test
+    fun onDetach_withoutFrames_failsFuture() {
+        // 已加入GLThread，但釋放前沒有任何frame，encoder還沒有啟動
+        capture.onDetach()
+
+        assertFailed()
+    }
+
+    private fun assertFailed() {
+        assertTrue(capture.future.isDone)
+        try {
+            capture.future.get()
+            fail("future should fail")
+        } catch (e: ExecutionException) {
+            assertTrue(e.cause is IllegalStateException)
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package dev.jimmytai.camera_view.source
+
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertTrue
+import org.junit.Test
+
+class FrameScheduleTest {
+    @Test
+    fun noJitter_producesFixedIntervals() {
+        val schedule = FrameSchedule(fps = 240, jitterNs = 0L, seed = 0L)
+        schedule.start(1_000L)
+
+        assertEquals(1_000L, schedule.nextDeadlineNs())
+        assertEquals(1_000L + 4_166_666L, schedule.nextDeadlineNs())
+        assertEquals(1_000L + 2 * 4_166_666L, schedule.nextDeadlineNs())
+    }
+
+    @Test
+    fun jitter_staysWithinBoundsAndDoesNotAccumulate() {
+        val jitterNs = 2_000_000L
+        val schedule = FrameSchedule(fps = 60, jitterNs = jitterNs, seed = 7L)
+        schedule.start(0L)
+
+        for (i in 0L until 10_000L) {
+            val nominalNs: Long = i * 16_666_666L
+            val deadlineNs: Long = schedule.nextDeadlineNs()
+            assertTrue("frame $i at $deadlineNs", Math.abs(deadlineNs - nominalNs) <= jitterNs)
+        }
+    }
+
+    @Test
+    fun sameSeed_sameDeadlines() {
+        val a = FrameSchedule(fps = 30, jitterNs = 5_000_000L, seed = 3L).also { it.start(0L) }
+        val b = FrameSchedule(fps = 30, jitterNs = 5_000_000L, seed = 3L).also { it.start(0L) }
+
+        repeat(100) { assertEquals(a.nextDeadlineNs(), b.nextDeadlineNs()) }
+    }
+}
@@ -0,0 +1,51 @@
+package dev.jimmytai.camera_view.source
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class PlaybackClockTest {
+    private val startNs: Long = 5_000_000_000L
+
+    @Test
+    fun timestamps_followPresentationTimeFromFirstFrame() {
+        val clock = PlaybackClock(realTime = true)
+
+        assertEquals(startNs, clock.timestampNs(0L, startNs))
+        // 處理時間不影響timestamp，只依影片的presentation time
+        assertEquals(startNs + 33_000_000L, clock.timestampNs(33_000L, startNs + 50_000_000L))
+    }
+
+    @Test
+    fun realTime_waitsUntilPresentationTime() {
+        val clock = PlaybackClock(realTime = true)
+        clock.timestampNs(0L, startNs)
+        val timestampNs: Long = clock.timestampNs(40_000L, startNs)
+
+        assertEquals(30_000_000L, clock.delayNs(timestampNs, startNs + 10_000_000L))
+        assertEquals(0L, clock.delayNs(timestampNs, startNs + 60_000_000L))
+    }
+
+    @Test
+    fun offline_neverWaits() {
+        val clock = PlaybackClock(realTime = false)
+        clock.timestampNs(0L, startNs)
+        val timestampNs: Long = clock.timestampNs(1_000_000L, startNs)
+
+        assertEquals(startNs + 1_000_000_000L, timestampNs)
+        assertEquals(0L, clock.delayNs(timestampNs, startNs))
+    }
+
+    @Test
+    fun loop_continuesAfterLastFrame() {
+        val clock = PlaybackClock(realTime = true)
+        for (ptsUs in longArrayOf(100_000L, 140_000L, 180_000L)) {
+            clock.timestampNs(ptsUs, startNs)
+        }
+
+        clock.onLoop()
+
+        // 下一輪的第一個frame接在最後一個frame之後一個frame間隔
+        assertEquals(startNs + 120_000_000L, clock.timestampNs(100_000L, startNs))
+        assertEquals(startNs + 160_000_000L, clock.timestampNs(140_000L, startNs))
+    }
+}
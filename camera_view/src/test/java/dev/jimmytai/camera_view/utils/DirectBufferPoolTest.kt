@@ -0,0 +1,122 @@
+package dev.jimmytai.camera_view.utils
+
+import dev.jimmytai.camera_view.model.BufferPoolStats
+import org.junit.Assert.assertEquals
+import org.junit.Assert.assertSame
+import org.junit.Assert.assertTrue
+import org.junit.Before
+import org.junit.Test
+import java.nio.ByteBuffer
+import java.nio.ByteOrder
+
+class DirectBufferPoolTest {
+    @Before
+    fun setUp() {
+        Logger.setCustomLogger(FailOnErrorLogger)
+    }
+
+    @Test
+    fun capacityOf_roundsUpToSizeClass() {
+        assertEquals(4096, DirectBufferPool.capacityOf(0))
+        assertEquals(4096, DirectBufferPool.capacityOf(4096))
+        // 4096 ~ 8192之間以1024為單位
+        assertEquals(5120, DirectBufferPool.capacityOf(4097))
+        assertEquals(6144, DirectBufferPool.capacityOf(6000))
+        assertEquals(8192, DirectBufferPool.capacityOf(8192))
+        // 1080p RGBA
+        assertEquals(8 * 1024 * 1024, DirectBufferPool.capacityOf(1920 * 1080 * 4))
+    }
+
+    @Test(expected = IllegalArgumentException::class)
+    fun capacityOf_negativeSize_throws() {
+        DirectBufferPool.capacityOf(-1)
+    }
+
+    @Test
+    fun acquire_returnsDirectBufferLimitedToSize() {
+        val pool = DirectBufferPool(detectLeaks = false)
+
+        val buffer: ByteBuffer = pool.acquire(6000)
+
+        assertTrue(buffer.isDirect)
+        assertEquals(6144, buffer.capacity())
+        assertEquals(0, buffer.position())
+        assertEquals(6000, buffer.limit())
+        assertEquals(ByteOrder.nativeOrder(), buffer.order())
+    }
+
+    @Test
+    fun release_bufferIsReusedForSameSizeClass() {
+        val pool = DirectBufferPool(detectLeaks = true)
+
+        val first: ByteBuffer = pool.acquire(6000)
+        pool.release(first)
+        val second: ByteBuffer = pool.acquire(5500)
+
+        assertSame(first, second)
+        val stats: BufferPoolStats = pool.stats()
+        assertEquals(2L, stats.acquireCount)
+        assertEquals(1L, stats.hitCount)
+        assertEquals(1L, stats.releaseCount)
+        assertEquals(0L, stats.bytesPooled)
+        assertEquals(6144L, stats.bytesInUse)
+    }
+
+    @Test
+    fun reacquire_resetsPositionAndLimit() {
+        val pool = DirectBufferPool(detectLeaks = false)
+
+        val first: ByteBuffer = pool.acquire(6000)
+        first.position(100)
+        first.limit(200)
+        first.order(ByteOrder.BIG_ENDIAN)
+        pool.release(first)
+        val second: ByteBuffer = pool.acquire(5200)
+
+        assertSame(first, second)
+        assertEquals(0, second.position())
+        assertEquals(5200, second.limit())
+        assertEquals(ByteOrder.nativeOrder(), second.order())
+    }
+
+    @Test
+    fun releaseTwice_withLeakDetection_isIgnored() {
+        assertReleaseTwiceIsIgnored(DirectBufferPool(detectLeaks = true))
+    }
+
+    @Test
+    fun releaseTwice_withoutLeakDetection_isIgnored() {
+        assertReleaseTwiceIsIgnored(DirectBufferPool(detectLeaks = false))
+    }
+
+    @Test
+    fun release_overMaxPooledBytes_dropsBuffer() {
+        val pool = DirectBufferPool(maxPooledBytes = 4096L, detectLeaks = false)
+
+        val first: ByteBuffer = pool.acquire(4096)
+        val second: ByteBuffer = pool.acquire(4096)
+        pool.release(first)
+        pool.release(second)
+
+        val stats: BufferPoolStats = pool.stats()
+        assertEquals(2L, stats.releaseCount)
+        assertEquals(4096L, stats.bytesPooled)
+        assertEquals(0L, stats.bytesInUse)
+    }
+
+    private fun assertReleaseTwiceIsIgnored(pool: DirectBufferPool) {
+        val buffer: ByteBuffer = pool.acquire(6000)
+        pool.release(buffer)
+        pool.release(buffer)
+
+        // 重複歸還不可讓同一個buffer被兩次acquire取得
+        val first: ByteBuffer = pool.acquire(6000)
+        val second: ByteBuffer = pool.acquire(6000)
+        assertSame(buffer, first)
+        assertTrue(first !== second)
+        val stats: BufferPoolStats = pool.stats()
+        assertEquals(1L, stats.releaseCount)
+        assertEquals(1L, stats.hitCount)
+        assertEquals(2L * 6144, stats.bytesInUse)
+    }
+}
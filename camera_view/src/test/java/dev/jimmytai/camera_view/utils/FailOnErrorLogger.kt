@@ -0,0 +1,18 @@
+package dev.jimmytai.camera_view.utils
+
+/**
+ * JVM測試用的[CustomLogger]：android.util.Log在JVM上無法使用，一般訊息直接略過，
+ * [Logger.e]則讓測試失敗，避免GL錯誤只留在log中
+ */
+object FailOnErrorLogger : CustomLogger {
+    override fun verbose(tag: String, message: String, throwable: Throwable?) = Unit
+
+    override fun debug(tag: String, message: String, throwable: Throwable?) = Unit
+
+    override fun info(tag: String, message: String, throwable: Throwable?) = Unit
+
+    override fun warn(tag: String, message: String, throwable: Throwable?) = Unit
+
+    override fun error(tag: String, message: String, throwable: Throwable?) =
+        throw AssertionError("$tag: $message", throwable)
+}
@@ -0,0 +1,53 @@
+package dev.jimmytai.camera_view.utils
+
+import org.junit.Assert.assertEquals
+import org.junit.Test
+
+class LatencyHistogramTest {
+    @Test
+    fun empty_reportsZero() {
+        val histogram = LatencyHistogram()
+
+        assertEquals(0L, histogram.count)
+        assertEquals(0L, histogram.percentile(99.0))
+        assertEquals(0L, histogram.average)
+    }
+
+    @Test
+    fun percentiles_roundUpToBucket() {
+        val histogram = LatencyHistogram(bucketWidthNs = 1_000_000L, maxLatencyNs = 100_000_000L)
+        // 1ms ~ 100ms各一個
+        for (ms in 1L..100L) {
+            histogram.record(ms * 1_000_000L - 500_000L)
+        }
+
+        assertEquals(100L, histogram.count)
+        assertEquals(50_000_000L, histogram.percentile(50.0))
+        assertEquals(99_000_000L, histogram.percentile(99.0))
+        assertEquals(1_000_000L, histogram.percentile(0.0))
+        // 最大值不超過實際記錄的最大值
+        assertEquals(99_500_000L, histogram.percentile(100.0))
+        assertEquals(99_500_000L, histogram.max)
+    }
+
+    @Test
+    fun overflow_keepsExactMax() {
+        val histogram = LatencyHistogram(bucketWidthNs = 1_000_000L, maxLatencyNs = 10_000_000L)
+        histogram.record(2_000_000L)
+        histogram.record(5_000_000_000L)
+
+        assertEquals(5_000_000_000L, histogram.max)
+        assertEquals(5_000_000_000L, histogram.percentile(100.0))
+        assertEquals(3_000_000L, histogram.percentile(50.0))
+    }
+
+    @Test
+    fun reset_clearsEverything() {
+        val histogram = LatencyHistogram()
+        histogram.record(1_000L)
+        histogram.reset()
+
+        assertEquals(0L, histogram.count)
+        assertEquals(0L, histogram.max)
+    }
+}